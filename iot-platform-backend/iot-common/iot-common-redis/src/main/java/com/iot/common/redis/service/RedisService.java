@@ -2,8 +2,11 @@ package com.iot.common.redis.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +38,15 @@ public class RedisService {
         redisTemplate.opsForValue().set(key, value, timeout, unit);
     }
 
+    /**
+     * 键不存在时设置缓存（带过期时间），用于分布式锁
+     *
+     * @return 是否设置成功
+     */
+    public Boolean setIfAbsent(String key, Object value, long timeout, TimeUnit unit) {
+        return redisTemplate.opsForValue().setIfAbsent(key, value, timeout, unit);
+    }
+
     /**
      * 获取缓存
      */
@@ -51,6 +63,13 @@ public class RedisService {
         return value == null ? null : (T) value;
     }
 
+    /**
+     * 批量获取缓存，结果与keys顺序一致，不存在的key对应null
+     */
+    public List<Object> multiGet(Collection<String> keys) {
+        return redisTemplate.opsForValue().multiGet(keys);
+    }
+
     /**
      * 删除缓存
      */
@@ -217,4 +236,40 @@ public class RedisService {
     public Long lSize(String key) {
         return redisTemplate.opsForList().size(key);
     }
-}
\ No newline at end of file
+
+    // ==================== 发布订阅 ====================
+
+    /**
+     * 发布消息到频道
+     */
+    public void publish(String channel, Object message) {
+        redisTemplate.convertAndSend(channel, message);
+    }
+
+    /**
+     * 反序列化订阅收到的消息体（与publish使用相同的序列化方式）
+     */
+    public Object deserialize(byte[] body) {
+        return redisTemplate.getValueSerializer().deserialize(body);
+    }
+
+    // ==================== 脚本 ====================
+
+    /**
+     * 执行Lua脚本，参数按字符串原样传入；需要与缓存值比较的参数先用 {@link #serialize} 序列化
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(RedisScript<T> script, List<String> keys, String... args) {
+        return redisTemplate.execute(script, RedisSerializer.string(),
+                (RedisSerializer<T>) redisTemplate.getValueSerializer(), keys, (Object[]) args);
+    }
+
+    /**
+     * 按缓存值的序列化方式序列化为字符串（与hSet等写入的内容一致）
+     */
+    @SuppressWarnings("unchecked")
+    public String serialize(Object value) {
+        byte[] bytes = ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,283 @@
+package com.iot.device.cache;
+
+import com.alibaba.fastjson2.JSON;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.iot.common.redis.service.RedisService;
+import com.iot.device.config.MetadataCacheProperties;
+import com.iot.device.domain.Device;
+import com.iot.device.domain.Product;
+import com.iot.device.mapper.DeviceMapper;
+import com.iot.device.mapper.ProductMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 设备/产品元数据二级缓存
+ * <p>
+ * 一级为本地缓存（容量上限 + 过期时间），写入超过 refreshSeconds 后的下一次访问在后台线程从数据库刷新
+ * （同时更新Redis），期间返回旧值；同一个键的并发未命中只会触发一次加载，其余调用方等待该次加载的结果。
+ * 二级为Redis（实体以JSON保存），两级都未命中时查询数据库，不存在的实体只在本地缓存。
+ * <p>
+ * 设备、产品的新增/修改/删除事务提交后删除Redis中的实体，并通过Redis频道通知所有节点清除本地缓存；
+ * 为覆盖提交前读到旧数据的并发加载，延迟1秒后再执行一次同样的失效。设备在线状态批量回写数据库后同样失效对应设备。
+ * 返回的实体为缓存中的共享对象，调用方不得修改。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Component
+public class DeviceMetadataCache implements MessageListener {
+
+    private static final String DEVICE_KEY_PREFIX = "device:meta:";
+    private static final String PRODUCT_KEY_PREFIX = "product:meta:";
+    private static final long DOUBLE_DELETE_DELAY_MS = 1000;
+
+    private final DeviceMapper deviceMapper;
+    private final ProductMapper productMapper;
+    private final RedisService redisService;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MetadataCacheProperties properties;
+
+    private ScheduledExecutorService executor;
+    private ChannelTopic topic;
+    private LoadingCache<String, Optional<Device>> devices;
+    private LoadingCache<String, Optional<Product>> products;
+
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder databaseLoads = new LongAdder();
+    private final LongAdder redisFailures = new LongAdder();
+    private final LongAdder invalidationsSent = new LongAdder();
+    private final LongAdder invalidationsReceived = new LongAdder();
+
+    public DeviceMetadataCache(DeviceMapper deviceMapper, ProductMapper productMapper, RedisService redisService,
+                               RedisMessageListenerContainer listenerContainer, MetadataCacheProperties properties) {
+        this.deviceMapper = deviceMapper;
+        this.productMapper = productMapper;
+        this.redisService = redisService;
+        this.listenerContainer = listenerContainer;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(Math.max(1, properties.getRefreshThreads()), r -> {
+            Thread thread = new Thread(r, "metadata-refresh-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        devices = CacheBuilder.newBuilder()
+                .maximumSize(properties.getLocalMaxDevices())
+                .expireAfterWrite(properties.getLocalTtlSeconds(), TimeUnit.SECONDS)
+                .refreshAfterWrite(properties.getRefreshSeconds(), TimeUnit.SECONDS)
+                .recordStats()
+                .build(CacheLoader.asyncReloading(
+                        new MetadataLoader<>(DEVICE_KEY_PREFIX, Device.class, deviceMapper::selectById), executor));
+        products = CacheBuilder.newBuilder()
+                .maximumSize(properties.getLocalMaxProducts())
+                .expireAfterWrite(properties.getLocalTtlSeconds(), TimeUnit.SECONDS)
+                .refreshAfterWrite(properties.getRefreshSeconds(), TimeUnit.SECONDS)
+                .recordStats()
+                .build(CacheLoader.asyncReloading(
+                        new MetadataLoader<>(PRODUCT_KEY_PREFIX, Product.class, productMapper::selectById), executor));
+        topic = new ChannelTopic(properties.getInvalidationChannel());
+        listenerContainer.addMessageListener(this, topic);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        listenerContainer.removeMessageListener(this, topic);
+        executor.shutdownNow();
+    }
+
+    /**
+     * 获取设备，不存在返回null
+     */
+    public Device getDevice(String deviceId) {
+        return devices.getUnchecked(deviceId).orElse(null);
+    }
+
+    /**
+     * 获取产品，不存在返回null
+     */
+    public Product getProduct(String productId) {
+        return products.getUnchecked(productId).orElse(null);
+    }
+
+    /**
+     * 元数据变更的事务提交后失效两级缓存并通知其他节点
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onChange(MetadataChangeEvent event) {
+        invalidateTwice(event.getKind(), event.getIds());
+    }
+
+    /**
+     * 设备数据在缓存之外被修改（如在线状态批量回写）后失效两级缓存并通知其他节点
+     */
+    public void invalidateDevices(List<String> deviceIds) {
+        if (!deviceIds.isEmpty()) {
+            invalidateTwice(MetadataChangeEvent.Kind.DEVICE, deviceIds);
+        }
+    }
+
+    /**
+     * 收到其他节点（包括本节点）的失效通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisService.deserialize(message.getBody());
+        String text = body == null ? "" : body.toString();
+        int separator = text.indexOf(':');
+        if (separator < 0) {
+            log.warn("无法识别的元数据失效通知: {}", text);
+            return;
+        }
+        invalidationsReceived.increment();
+        List<String> ids = Arrays.asList(text.substring(separator + 1).split(","));
+        if (MetadataChangeEvent.Kind.DEVICE.name().equals(text.substring(0, separator))) {
+            devices.invalidateAll(ids);
+        } else {
+            products.invalidateAll(ids);
+        }
+    }
+
+    /**
+     * 缓存指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("devices", cacheStats(devices.size(), devices.stats()));
+        stats.put("products", cacheStats(products.size(), products.stats()));
+        stats.put("redisHits", redisHits.sum());
+        stats.put("databaseLoads", databaseLoads.sum());
+        stats.put("redisFailures", redisFailures.sum());
+        stats.put("invalidationsSent", invalidationsSent.sum());
+        stats.put("invalidationsReceived", invalidationsReceived.sum());
+        return stats;
+    }
+
+    private <T> Optional<T> load(String key, Class<T> type, String id, Function<String, T> loader) {
+        try {
+            String json = redisService.get(key, String.class);
+            if (json != null) {
+                redisHits.increment();
+                return Optional.of(JSON.parseObject(json, type));
+            }
+        } catch (Exception e) {
+            redisFailures.increment();
+            log.warn("读取元数据缓存失败，key: {}", key, e);
+        }
+        return loadFromDatabase(key, id, loader);
+    }
+
+    /**
+     * 从数据库加载并写入Redis
+     */
+    private <T> Optional<T> loadFromDatabase(String key, String id, Function<String, T> loader) {
+        T value = loader.apply(id);
+        databaseLoads.increment();
+        if (value != null) {
+            try {
+                redisService.set(key, JSON.toJSONString(value), properties.getRedisTtlSeconds(), TimeUnit.SECONDS);
+            } catch (Exception e) {
+                redisFailures.increment();
+                log.warn("写入元数据缓存失败，key: {}", key, e);
+            }
+        }
+        return Optional.ofNullable(value);
+    }
+
+    /**
+     * 立即失效，并延迟再失效一次
+     */
+    private void invalidateTwice(MetadataChangeEvent.Kind kind, List<String> ids) {
+        invalidate(kind, ids);
+        executor.schedule(() -> invalidate(kind, ids), DOUBLE_DELETE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void invalidate(MetadataChangeEvent.Kind kind, List<String> ids) {
+        String prefix = kind == MetadataChangeEvent.Kind.DEVICE ? DEVICE_KEY_PREFIX : PRODUCT_KEY_PREFIX;
+        if (kind == MetadataChangeEvent.Kind.DEVICE) {
+            devices.invalidateAll(ids);
+        } else {
+            products.invalidateAll(ids);
+        }
+        try {
+            List<String> keys = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                keys.add(prefix + id);
+            }
+            redisService.delete(keys);
+            redisService.publish(properties.getInvalidationChannel(), kind.name() + ":" + String.join(",", ids));
+            invalidationsSent.increment();
+        } catch (Exception e) {
+            // 其他节点的本地缓存最迟在过期时间后更新
+            redisFailures.increment();
+            log.warn("发送元数据失效通知失败，{}: {}个", kind, ids.size(), e);
+        }
+    }
+
+    /**
+     * 未命中时先读Redis再查数据库；定时刷新直接查数据库，Redis中的副本可能与本地缓存一样旧
+     */
+    private final class MetadataLoader<T> extends CacheLoader<String, Optional<T>> {
+
+        private final String prefix;
+        private final Class<T> type;
+        private final Function<String, T> loader;
+
+        private MetadataLoader(String prefix, Class<T> type, Function<String, T> loader) {
+            this.prefix = prefix;
+            this.type = type;
+            this.loader = loader;
+        }
+
+        @Override
+        public Optional<T> load(String id) {
+            return DeviceMetadataCache.this.load(prefix + id, type, id, loader);
+        }
+
+        @Override
+        public ListenableFuture<Optional<T>> reload(String id, Optional<T> oldValue) {
+            return Futures.immediateFuture(loadFromDatabase(prefix + id, id, loader));
+        }
+    }
+
+    private static Map<String, Object> cacheStats(long size, CacheStats stats) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("size", size);
+        item.put("hits", stats.hitCount());
+        item.put("misses", stats.missCount());
+        item.put("hitRate", String.format("%.4f", stats.hitRate()));
+        item.put("loads", stats.loadCount());
+        item.put("averageLoadMs", String.format("%.2f", stats.averageLoadPenalty() / 1_000_000d));
+        return item;
+    }
+}
@@ -0,0 +1,64 @@
+package com.iot.device.cache;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 设备/产品元数据变更事件
+ * <p>
+ * 由设备、产品服务在事务内发布，监听方在事务提交后处理（缓存失效、索引更新等）。批量导入时一个事件包含多个ID。
+ *
+ * @author IoT Platform
+ */
+public class MetadataChangeEvent {
+
+    public enum Kind {
+        DEVICE,
+        PRODUCT
+    }
+
+    public enum Action {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+
+    private final Kind kind;
+    private final Action action;
+    private final List<String> ids;
+
+    public MetadataChangeEvent(Kind kind, Action action, List<String> ids) {
+        this.kind = kind;
+        this.action = action;
+        this.ids = ids;
+    }
+
+    public static MetadataChangeEvent device(Action action, String id) {
+        return new MetadataChangeEvent(Kind.DEVICE, action, Collections.singletonList(id));
+    }
+
+    public static MetadataChangeEvent devices(Action action, List<String> ids) {
+        return new MetadataChangeEvent(Kind.DEVICE, action, ids);
+    }
+
+    public static MetadataChangeEvent product(Action action, String id) {
+        return new MetadataChangeEvent(Kind.PRODUCT, action, Collections.singletonList(id));
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public List<String> getIds() {
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return kind + ":" + action + ":" + (ids.size() == 1 ? ids.get(0) : ids.size() + "个");
+    }
+}
@@ -0,0 +1,34 @@
+package com.iot.device.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 统计结果缓存块：一段按窗口对齐的时间内的窗口结束时间和统计值
+ *
+ * @author IoT Platform
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeriesChunk implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 窗口结束时间（毫秒）
+     */
+    private long[] times;
+
+    /**
+     * 统计值
+     */
+    private double[] values;
+
+    /**
+     * 数据粒度：raw 或降采样间隔（如 1h），与 {@link com.iot.device.dto.SeriesColumn#getResolution()} 一致
+     */
+    private String resolution;
+}
@@ -0,0 +1,72 @@
+package com.iot.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 冷数据归档配置
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.archive")
+public class ArchiveProperties {
+
+    /**
+     * 是否启用归档任务（仅InfluxDB引擎）；关闭时已有归档文件仍参与查询
+     */
+    private boolean enabled = false;
+
+    /**
+     * 归档目录；可以是挂载的对象存储（s3fs、JuiceFS等）
+     */
+    private String dir = "data/archive";
+
+    /**
+     * 归档目录是否为各节点共享的存储；集群模式下启用归档任务时必须为true。
+     * 共享时各节点定期重新扫描目录加载其他节点发布的归档文件，原始数据在下一轮归档时才删除
+     */
+    private boolean sharedDir = false;
+
+    /**
+     * 共享目录的重新扫描间隔（毫秒），应小于归档任务执行间隔
+     */
+    private long rescanIntervalMs = 60 * 1000L;
+
+    /**
+     * 集群模式下归档锁的过期时间（毫秒），应大于一轮归档的最长耗时
+     */
+    private long lockTtlMs = 4 * 60 * 60 * 1000L;
+
+    /**
+     * 超过多少天的整天分区归档
+     */
+    private int archiveAfterDays = 90;
+
+    /**
+     * 每个压缩块的最大点数
+     */
+    private int blockPoints = 4096;
+
+    /**
+     * 归档任务执行间隔（毫秒）
+     */
+    private long runIntervalMs = 60 * 60 * 1000L;
+
+    /**
+     * 每次最多归档的分区（天）数
+     */
+    private int maxPartitionsPerRun = 7;
+
+    /**
+     * 归档文件落盘后是否从InfluxDB删除对应的原始数据
+     */
+    private boolean deleteAfterArchive = true;
+
+    /**
+     * 从归档读取的历史查询单次最多返回的点数
+     */
+    private int maxQueryPoints = 2000000;
+}
@@ -0,0 +1,26 @@
+package com.iot.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 设备影子配置
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.shadow")
+public class DeviceShadowProperties {
+
+    /**
+     * 影子变更同步到Redis的间隔（毫秒）
+     */
+    private long flushIntervalMs = 1000;
+
+    /**
+     * 影子从Redis重新加载的间隔（毫秒）；单节点部署时只刷新非本节点接入的设备，集群部署时刷新全部设备
+     */
+    private long remoteRefreshMs = 5000;
+}
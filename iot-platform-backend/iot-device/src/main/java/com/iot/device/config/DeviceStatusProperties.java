@@ -0,0 +1,31 @@
+package com.iot.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 设备在线状态回写配置
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.device-status")
+public class DeviceStatusProperties {
+
+    /**
+     * 定时回写间隔（毫秒）
+     */
+    private long flushIntervalMs = 500;
+
+    /**
+     * 待回写设备数达到该值时立即触发回写
+     */
+    private int flushThreshold = 2000;
+
+    /**
+     * 单条UPDATE语句包含的最大设备数
+     */
+    private int maxBatchRows = 500;
+}
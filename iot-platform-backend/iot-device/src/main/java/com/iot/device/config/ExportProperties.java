@@ -0,0 +1,51 @@
+package com.iot.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 数据导出任务配置
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.export")
+public class ExportProperties {
+
+    /**
+     * 导出文件目录，每个任务一个子目录
+     */
+    private String dir = "data/export";
+
+    /**
+     * 每个分片的时间跨度（毫秒），分片是并行查询和断点续传的单位
+     */
+    private long chunkMs = 24 * 60 * 60 * 1000L;
+
+    /**
+     * 并行导出的分片数（所有任务共享）
+     */
+    private int parallelism = 4;
+
+    /**
+     * 同时运行的最大任务数
+     */
+    private int maxRunningJobs = 4;
+
+    /**
+     * 单个任务最大时间跨度（天）
+     */
+    private int maxRangeDays = 366;
+
+    /**
+     * 已结束任务的文件保留时间（小时），过期后删除
+     */
+    private int retentionHours = 72;
+
+    /**
+     * 服务启动时是否自动续传中断的任务
+     */
+    private boolean resumeOnStartup = true;
+}
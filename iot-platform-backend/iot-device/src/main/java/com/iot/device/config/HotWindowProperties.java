@@ -0,0 +1,47 @@
+package com.iot.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 近期数据内存热窗口配置
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.hot-window")
+public class HotWindowProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = true;
+
+    /**
+     * 集群部署时Broker是否保证同一设备的消息只投递到同一节点；为false时集群模式下热窗口不启用，
+     * 避免节点用不完整的数据应答查询
+     */
+    private boolean clusterDeviceAffinity = false;
+
+    /**
+     * 保留最近多长时间的数据（毫秒）
+     */
+    private long windowMs = 6 * 60 * 60 * 1000L;
+
+    /**
+     * 每个压缩块的点数
+     */
+    private int blockPoints = 120;
+
+    /**
+     * 全局内存预算（字节），超出时按最近查询时间淘汰冷设备
+     */
+    private long memoryBudgetBytes = 256L * 1024 * 1024;
+
+    /**
+     * 过期清理和内存检查间隔（毫秒）
+     */
+    private long maintenanceIntervalMs = 1000;
+}
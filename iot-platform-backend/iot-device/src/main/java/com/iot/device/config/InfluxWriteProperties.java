@@ -0,0 +1,77 @@
+package com.iot.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * InfluxDB写入配置
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "influxdb.write")
+public class InfluxWriteProperties {
+
+    /**
+     * 写入模式
+     */
+    private WriteMode mode = WriteMode.BATCH;
+
+    /**
+     * 单批最大点数
+     */
+    private int batchSize = 5000;
+
+    /**
+     * 单批最大字节数（行协议长度）
+     */
+    private int batchBytes = 1024 * 1024;
+
+    /**
+     * 未满批次的最长等待时间（毫秒）
+     */
+    private long flushIntervalMs = 1000;
+
+    /**
+     * 待发送批次队列容量
+     */
+    private int maxPendingBatches = 20;
+
+    /**
+     * 待发送队列满时写入方最长等待时间（毫秒），超时丢弃
+     */
+    private long offerTimeoutMs = 1000;
+
+    /**
+     * 单批最大重试次数
+     */
+    private int maxRetries = 5;
+
+    /**
+     * 重试初始间隔（毫秒），按指数增长并加随机抖动
+     */
+    private long retryBaseDelayMs = 500;
+
+    /**
+     * 重试最大间隔（毫秒）
+     */
+    private long retryMaxDelayMs = 30000;
+
+    /**
+     * 停机时等待剩余批次发送的时间（毫秒）
+     */
+    private long shutdownTimeoutMs = 10000;
+
+    public enum WriteMode {
+        /**
+         * 异步批量写入
+         */
+        BATCH,
+        /**
+         * 逐条同步写入（兼容模式）
+         */
+        BLOCKING
+    }
+}
@@ -0,0 +1,46 @@
+package com.iot.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 设备消息接入流水线配置
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.ingest")
+public class IngestProperties {
+
+    /**
+     * 工作通道数量，同一设备的消息固定落在同一通道，保证顺序；小于等于0时取CPU核数
+     */
+    private int lanes = 0;
+
+    /**
+     * 单个通道的队列容量
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 队列满时的处理策略：BLOCK阻塞接收线程（向Broker施加背压），DROP直接丢弃
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    /**
+     * BLOCK策略下的最长等待时间（毫秒），超时后丢弃
+     */
+    private long offerTimeoutMs = 1000;
+
+    /**
+     * 停机时等待队列排空的最长时间（毫秒）
+     */
+    private long shutdownTimeoutMs = 10000;
+
+    public enum OverflowPolicy {
+        BLOCK,
+        DROP
+    }
+}
@@ -0,0 +1,56 @@
+package com.iot.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 嵌入式时序存储配置（iot.tsdb.engine=local时生效）
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.tsdb.local")
+public class LocalTsdbProperties {
+
+    /**
+     * 数据目录
+     */
+    private String dataDir = "data/tsdb";
+
+    /**
+     * 每个数据块的最大点数，达到后写入段文件
+     */
+    private int blockPoints = 1024;
+
+    /**
+     * 未满数据块在内存中的最长停留时间（毫秒），也是异常退出时最多丢失的数据时长
+     */
+    private long maxBufferMs = 60000;
+
+    /**
+     * 后台检查间隔（毫秒）
+     */
+    private long flushIntervalMs = 1000;
+
+    /**
+     * 单个段文件最大字节数，超出后新建段文件
+     */
+    private long segmentMaxBytes = 64L * 1024 * 1024;
+
+    /**
+     * 数据保留天数，0表示永久保留；按整个段文件删除
+     */
+    private int retentionDays = 0;
+
+    /**
+     * 同时保持内存映射的段文件数
+     */
+    private int maxMappedSegments = 512;
+
+    /**
+     * 单次历史查询最多返回的点数
+     */
+    private int maxQueryPoints = 2000000;
+}
@@ -0,0 +1,51 @@
+package com.iot.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 设备/产品元数据缓存配置
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.metadata-cache")
+public class MetadataCacheProperties {
+
+    /**
+     * 本地缓存的最大设备数
+     */
+    private long localMaxDevices = 100000;
+
+    /**
+     * 本地缓存的最大产品数
+     */
+    private long localMaxProducts = 10000;
+
+    /**
+     * 本地缓存过期时间（秒），兜底未收到失效通知的情况
+     */
+    private long localTtlSeconds = 600;
+
+    /**
+     * 本地缓存写入多久后在下次访问时后台刷新（秒），刷新期间返回旧值
+     */
+    private long refreshSeconds = 60;
+
+    /**
+     * Redis缓存过期时间（秒）
+     */
+    private long redisTtlSeconds = 3600;
+
+    /**
+     * 后台刷新线程数
+     */
+    private int refreshThreads = 2;
+
+    /**
+     * 跨节点失效通知频道
+     */
+    private String invalidationChannel = "iot:metadata:invalidate";
+}
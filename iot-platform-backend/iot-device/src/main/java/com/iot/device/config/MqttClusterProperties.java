@@ -0,0 +1,48 @@
+package com.iot.device.config;
+
+import com.iot.common.core.utils.IdUtils;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * MQTT集群订阅配置
+ * <p>
+ * 开启后以共享订阅（$share/{group}/{filter}）方式订阅，多个iot-device节点及每个节点内的多个
+ * 接收连接组成一个共享组，由Broker在组内分发消息，每条消息只被处理一次。
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mqtt.cluster")
+public class MqttClusterProperties {
+
+    /**
+     * 是否开启集群（共享订阅）模式
+     */
+    private boolean enabled = false;
+
+    /**
+     * 共享订阅组名，同一组内的订阅者分摊消息
+     */
+    private String shareGroup = "iot-device";
+
+    /**
+     * 每个节点的接收连接数
+     */
+    private int inboundClients = 1;
+
+    /**
+     * 节点标识，用于生成全局唯一的clientId；为空时自动生成
+     */
+    private String nodeId;
+
+    public String getNodeId() {
+        if (!StringUtils.hasText(nodeId)) {
+            nodeId = IdUtils.fastUUID().substring(0, 8);
+        }
+        return nodeId;
+    }
+}
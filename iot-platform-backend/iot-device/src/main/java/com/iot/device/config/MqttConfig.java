@@ -1,5 +1,6 @@
 package com.iot.device.config;
 
+import com.iot.device.mqtt.MqttTopic;
 import lombok.Data;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -50,6 +51,8 @@ public class MqttConfig {
 
     /**
      * MQTT输入通道
+     * <p>
+     * 保持DirectChannel：回调线程上只做topic解析和入队，实际处理由IngestPipeline按设备分片并行执行
      */
     @Bean
     public MessageChannel mqttInputChannel() {
@@ -65,17 +68,24 @@ public class MqttConfig {
     }
 
     /**
-     * MQTT消息接收适配器
+     * MQTT消息接收适配器（集群模式下为本节点的第一个接收连接，其余连接由MqttInboundClients创建）
      */
     @Bean
-    public MqttPahoMessageDrivenChannelAdapter inbound() {
+    public MqttPahoMessageDrivenChannelAdapter inbound(MqttClusterProperties cluster) {
+        return createInboundAdapter(0, cluster);
+    }
+
+    /**
+     * 创建接收适配器
+     *
+     * @param index 本节点内的连接序号
+     */
+    public MqttPahoMessageDrivenChannelAdapter createInboundAdapter(int index, MqttClusterProperties cluster) {
+        // 订阅列表与消息分发共用MqttTopic定义
         MqttPahoMessageDrivenChannelAdapter adapter = new MqttPahoMessageDrivenChannelAdapter(
-                clientId + "_inbound",
+                inboundClientId(index, cluster),
                 mqttClientFactory(),
-                "device/+/data",      // 设备数据主题
-                "device/+/status",    // 设备状态主题
-                "iot/device/+/control",  // Home Assistant控制命令 (新增)
-                "iot/scene/+/trigger"    // Home Assistant场景触发 (新增)
+                inboundTopics(cluster)
         );
         adapter.setCompletionTimeout(5000);
         adapter.setConverter(new DefaultPahoMessageConverter());
@@ -89,9 +99,13 @@ public class MqttConfig {
      */
     @Bean
     @ServiceActivator(inputChannel = "mqttOutputChannel")
-    public MessageHandler outbound() {
+    public MessageHandler outbound(MqttClusterProperties cluster) {
+        // 集群模式下各节点的clientId必须不同，否则Broker会互相踢下线
+        String outboundClientId = cluster.isEnabled()
+                ? clientId + "_outbound_" + cluster.getNodeId()
+                : clientId + "_outbound";
         MqttPahoMessageHandler messageHandler = new MqttPahoMessageHandler(
-                clientId + "_outbound",
+                outboundClientId,
                 mqttClientFactory()
         );
         messageHandler.setAsync(true);
@@ -99,4 +113,25 @@ public class MqttConfig {
         messageHandler.setDefaultRetained(false);
         return messageHandler;
     }
-}
\ No newline at end of file
+
+    private String inboundClientId(int index, MqttClusterProperties cluster) {
+        if (!cluster.isEnabled()) {
+            return clientId + "_inbound";
+        }
+        return clientId + "_inbound_" + cluster.getNodeId() + "_" + index;
+    }
+
+    /**
+     * 订阅主题，集群模式下加上共享订阅前缀
+     */
+    private String[] inboundTopics(MqttClusterProperties cluster) {
+        String[] filters = MqttTopic.filters();
+        if (cluster.isEnabled()) {
+            String prefix = "$share/" + cluster.getShareGroup() + "/";
+            for (int i = 0; i < filters.length; i++) {
+                filters[i] = prefix + filters[i];
+            }
+        }
+        return filters;
+    }
+}
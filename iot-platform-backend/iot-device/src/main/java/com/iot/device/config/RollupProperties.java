@@ -0,0 +1,36 @@
+package com.iot.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 时序数据降采样汇总配置
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "influxdb.rollup")
+public class RollupProperties {
+
+    /**
+     * 统计查询是否使用汇总数据
+     */
+    private boolean enabled = true;
+
+    /**
+     * 启动时是否自动创建/更新InfluxDB汇总任务
+     */
+    private boolean manageTasks = true;
+
+    /**
+     * 新建任务时回填的历史时长（Flux时长格式，为空不回填）
+     */
+    private String backfill = "30d";
+
+    /**
+     * 任务相对周期边界的延迟执行时间，用于等待迟到数据
+     */
+    private String taskOffset = "30s";
+}
@@ -0,0 +1,48 @@
+package com.iot.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 遥测数据结构校验配置
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.schema-guard")
+public class SchemaGuardProperties {
+
+    /**
+     * 校验模式：OFF不校验，MONITOR只统计和隔离副本、数据照常写入，ENFORCE剔除违规字段后写入
+     */
+    private Mode mode = Mode.ENFORCE;
+
+    /**
+     * 每个租户最多的不同字段数，超出后未在产品功能定义中声明的新字段被拒绝
+     */
+    private int maxFieldsPerTenant = 1000;
+
+    /**
+     * 是否拒绝未注册设备的数据（每个设备ID都会成为一个新的序列）；默认关闭，与升级前一样写入，
+     * 只计数。开启后ENFORCE模式下先上报后注册的设备在注册前的数据全部丢弃
+     */
+    private boolean rejectUnknownDevices = false;
+
+    /**
+     * 违规数据的隔离主题前缀，完整主题为 前缀 + 设备ID
+     */
+    private String quarantineTopicPrefix = "iot/quarantine/";
+
+    /**
+     * 每秒最多发布的隔离消息数，超出部分只计数
+     */
+    private double quarantineMaxPerSecond = 100;
+
+    public enum Mode {
+        OFF,
+        MONITOR,
+        ENFORCE
+    }
+}
@@ -0,0 +1,56 @@
+package com.iot.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 统计查询缓存配置
+ *
+ * @author IoT Platform
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.stats-cache")
+public class StatisticsCacheProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每个缓存块包含的统计窗口数
+     */
+    private int chunkWindows = 64;
+
+    /**
+     * 窗口结束后超过该时间（毫秒）才视为已封闭可缓存，用于容纳迟到数据
+     */
+    private long closeDelayMs = 300000;
+
+    /**
+     * 本地缓存最大块数
+     */
+    private long localMaxChunks = 20000;
+
+    /**
+     * 本地缓存闲置过期时间（分钟）
+     */
+    private long localExpireMinutes = 60;
+
+    /**
+     * Redis缓存过期时间（小时）
+     */
+    private long redisTtlHours = 168;
+
+    /**
+     * 未封闭块的短期缓存时间（毫秒），合并同一时刻大量相同的看板请求
+     */
+    private long openTtlMs = 10000;
+
+    /**
+     * 单次请求最多涉及的块数，超出时不走缓存
+     */
+    private int maxChunks = 2000;
+}
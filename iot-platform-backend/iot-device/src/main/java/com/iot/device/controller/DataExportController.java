@@ -0,0 +1,114 @@
+package com.iot.device.controller;
+
+import com.iot.common.core.domain.Result;
+import com.iot.device.dto.DeviceBatchQuery;
+import com.iot.device.dto.ExportJob;
+import com.iot.device.service.DataExportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 设备数据导出控制器
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Tag(name = "数据导出", description = "按设备、分组或产品导出时间范围内的遥测数据为gzip压缩的CSV文件")
+@RestController
+@RequestMapping("/device/export")
+@RequiredArgsConstructor
+public class DataExportController {
+
+    private final DataExportService dataExportService;
+
+    /**
+     * 创建导出任务
+     */
+    @Operation(summary = "创建导出任务", description = "deviceIds、groupId、productId三选一；任务在后台分片并行执行")
+    @PostMapping("/jobs")
+    public Result<ExportJob> createJob(
+            @RequestBody DeviceBatchQuery query,
+            @RequestHeader("X-Tenant-Id") String tenantId) {
+        return Result.success(dataExportService.createJob(tenantId, query));
+    }
+
+    /**
+     * 导出任务列表
+     */
+    @Operation(summary = "导出任务列表")
+    @GetMapping("/jobs")
+    public Result<List<ExportJob>> listJobs(@RequestHeader("X-Tenant-Id") String tenantId) {
+        return Result.success(dataExportService.listJobs(tenantId));
+    }
+
+    /**
+     * 查询导出任务进度
+     */
+    @Operation(summary = "导出任务进度", description = "状态、已完成分片数、已导出行数")
+    @GetMapping("/jobs/{jobId}")
+    public Result<ExportJob> getJob(
+            @PathVariable String jobId,
+            @RequestHeader("X-Tenant-Id") String tenantId) {
+        return Result.success(dataExportService.getJob(tenantId, jobId));
+    }
+
+    /**
+     * 续传导出任务
+     */
+    @Operation(summary = "续传导出任务", description = "失败或已取消的任务只重新执行未完成的分片")
+    @PostMapping("/jobs/{jobId}/resume")
+    public Result<ExportJob> resumeJob(
+            @PathVariable String jobId,
+            @RequestHeader("X-Tenant-Id") String tenantId) {
+        return Result.success(dataExportService.resumeJob(tenantId, jobId));
+    }
+
+    /**
+     * 取消导出任务
+     */
+    @Operation(summary = "取消导出任务", description = "已完成的分片保留，可稍后续传")
+    @PostMapping("/jobs/{jobId}/cancel")
+    public Result<ExportJob> cancelJob(
+            @PathVariable String jobId,
+            @RequestHeader("X-Tenant-Id") String tenantId) {
+        return Result.success(dataExportService.cancelJob(tenantId, jobId));
+    }
+
+    /**
+     * 删除导出任务
+     */
+    @Operation(summary = "删除导出任务", description = "运行中的任务先取消，再删除全部文件")
+    @DeleteMapping("/jobs/{jobId}")
+    public Result<Void> deleteJob(
+            @PathVariable String jobId,
+            @RequestHeader("X-Tenant-Id") String tenantId) {
+        dataExportService.deleteJob(tenantId, jobId);
+        return Result.success();
+    }
+
+    /**
+     * 下载导出文件
+     */
+    @Operation(summary = "下载导出文件", description = "gzip压缩的CSV，列为device_id,time,field,value")
+    @GetMapping("/jobs/{jobId}/file")
+    public ResponseEntity<Resource> downloadFile(
+            @PathVariable String jobId,
+            @RequestHeader("X-Tenant-Id") String tenantId) {
+        Path file = dataExportService.getExportFile(tenantId, jobId);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/gzip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"export-" + jobId + ".csv.gz\"")
+                .body(new FileSystemResource(file));
+    }
+}
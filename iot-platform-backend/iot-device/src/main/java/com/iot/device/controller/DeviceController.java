@@ -3,13 +3,22 @@ package com.iot.device.controller;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.iot.common.core.domain.Result;
 import com.iot.device.domain.Device;
+import com.iot.device.dto.CursorPage;
+import com.iot.device.dto.DeviceImportReport;
+import com.iot.device.dto.TagSelection;
+import com.iot.device.service.DeviceImportService;
 import com.iot.device.service.DeviceService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -25,6 +34,7 @@ import java.util.List;
 public class DeviceController {
 
     private final DeviceService deviceService;
+    private final DeviceImportService deviceImportService;
 
     /**
      * 分页查询设备列表
@@ -43,6 +53,52 @@ public class DeviceController {
         return Result.success(page);
     }
 
+    /**
+     * 游标分页查询设备列表
+     */
+    @Operation(summary = "设备列表(游标分页)", description = "按创建时间倒序游标翻页，支持关键字、产品、状态筛选；withTotal=true时返回总数（超过上限时为近似值）")
+    @GetMapping("/list/cursor")
+    public Result<CursorPage<Device>> getDeviceCursorList(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int pageSize,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String productId,
+            @RequestParam(required = false) Integer status,
+            @RequestParam(defaultValue = "false") boolean withTotal,
+            @RequestHeader("X-Tenant-Id") String tenantId) {
+        
+        CursorPage<Device> page = deviceService.getDeviceCursorPage(cursor, pageSize, keyword, productId, status, withTotal, tenantId);
+        return Result.success(page);
+    }
+
+    /**
+     * 关键字搜索设备
+     */
+    @Operation(summary = "搜索设备", description = "按名称、编码、位置、标签搜索设备，支持前缀和子串匹配，前缀匹配在前")
+    @GetMapping("/search")
+    public Result<List<Device>> searchDevices(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestHeader("X-Tenant-Id") String tenantId) {
+        
+        List<Device> devices = deviceService.searchDevices(tenantId, keyword, limit);
+        return Result.success(devices);
+    }
+
+    /**
+     * 按标签表达式选择设备
+     */
+    @Operation(summary = "按标签选择设备", description = "标签表达式如 floor=3 AND type IN (thermostat, sensor) AND NOT disabled，返回匹配总数和设备ID")
+    @GetMapping("/tags/select")
+    public Result<TagSelection> selectDevicesByTags(
+            @RequestParam String expression,
+            @RequestParam(defaultValue = "1000") int limit,
+            @RequestHeader("X-Tenant-Id") String tenantId) {
+        
+        TagSelection selection = deviceService.selectDevicesByTags(tenantId, expression, limit);
+        return Result.success(selection);
+    }
+
     /**
      * 获取设备详情
      */
@@ -69,6 +125,49 @@ public class DeviceController {
         return Result.success("设备创建成功", createdDevice);
     }
 
+    /**
+     * 批量导入设备（上传CSV文件）
+     */
+    @Operation(summary = "批量导入设备", description = "上传CSV文件批量创建设备，表头需包含productId、name、code，返回逐行结果")
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Result<DeviceImportReport> importDevices(
+            @RequestParam("file") MultipartFile file,
+            @RequestHeader("X-Tenant-Id") String tenantId,
+            @RequestHeader("X-User-Id") String userId) throws IOException {
+
+        try (InputStream in = file.getInputStream()) {
+            return Result.success(deviceImportService.importCsv(tenantId, userId, in));
+        }
+    }
+
+    /**
+     * 批量导入设备（请求体为CSV）
+     */
+    @Operation(summary = "批量导入设备(CSV)", description = "请求体为CSV文本，格式同文件上传")
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public Result<DeviceImportReport> importDevicesCsv(
+            HttpServletRequest request,
+            @RequestHeader("X-Tenant-Id") String tenantId,
+            @RequestHeader("X-User-Id") String userId) throws IOException {
+
+        try (InputStream in = request.getInputStream()) {
+            return Result.success(deviceImportService.importCsv(tenantId, userId, in));
+        }
+    }
+
+    /**
+     * 批量导入设备（JSON数组）
+     */
+    @Operation(summary = "批量导入设备(JSON)", description = "请求体为设备数组，字段同创建设备")
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Result<DeviceImportReport> importDevicesJson(
+            @RequestBody List<Device> devices,
+            @RequestHeader("X-Tenant-Id") String tenantId,
+            @RequestHeader("X-User-Id") String userId) {
+
+        return Result.success(deviceImportService.importDevices(tenantId, userId, devices));
+    }
+
     /**
      * 更新设备
      */
@@ -1,13 +1,36 @@
 package com.iot.device.controller;
 
 import com.iot.common.core.domain.Result;
+import com.iot.common.core.exception.BusinessException;
+import com.iot.device.dto.DeviceBatchQuery;
+import com.iot.device.dto.SeriesColumn;
+import com.iot.device.dto.ShadowField;
+import com.iot.device.dto.WindowStatistics;
+import com.iot.device.service.DeviceService;
+import com.iot.device.service.DeviceShadowService;
+import com.iot.device.service.DeviceStatisticsService;
 import com.iot.device.service.InfluxDbService;
+import com.iot.device.tsdb.ColumnarBinaryWriter;
+import com.iot.device.tsdb.NdjsonRecordWriter;
+import com.iot.device.tsdb.QueryLimits;
+import com.iot.device.tsdb.QueryRange;
+import com.iot.device.tsdb.RecordSink;
+import com.iot.device.tsdb.TimeSeriesStore;
+import com.iot.device.tsdb.archive.ArchiveStore;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -23,7 +46,15 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class DeviceDataController {
 
-    private final InfluxDbService influxDbService;
+    private final TimeSeriesStore timeSeriesStore;
+    private final ObjectProvider<InfluxDbService> influxDbServiceProvider;
+    private final DeviceShadowService deviceShadowService;
+    private final DeviceService deviceService;
+    private final DeviceStatisticsService deviceStatisticsService;
+    private final QueryLimits queryLimits;
+    private final ArchiveStore archiveStore;
+
+    private static final String NDJSON = "application/x-ndjson";
 
     /**
      * 查询设备历史数据
@@ -35,24 +66,131 @@ public class DeviceDataController {
             @RequestParam String startTime,
             @RequestParam String endTime) {
         
-        List<Map<String, Object>> data = influxDbService.queryDeviceData(deviceId, startTime, endTime);
+        queryLimits.checkRange(startTime, endTime);
+        List<Map<String, Object>> data = timeSeriesStore.queryDeviceData(deviceId, startTime, endTime);
         return Result.success(data);
     }
 
+    /**
+     * 流式查询设备历史数据
+     */
+    @Operation(summary = "历史数据（流式）", description = "以NDJSON逐行返回历史数据，适合大时间范围导出；客户端断开时查询随之取消")
+    @GetMapping(value = "/history/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamDeviceHistory(
+            @RequestParam String deviceId,
+            @RequestParam String startTime,
+            @RequestParam String endTime) {
+
+        InfluxDbService influxDbService = influx();
+        queryLimits.checkRange(startTime, endTime);
+        requireUnarchived(startTime, endTime);
+        return ndjson(deviceId, false, writer -> influxDbService.streamDeviceData(deviceId, startTime, endTime, writer));
+    }
+
+    /**
+     * 批量查询多台设备历史数据
+     */
+    @Operation(summary = "批量历史数据", description = "按设备ID列表、分组或产品一次查询多台设备，以NDJSON按设备分组流式返回")
+    @PostMapping(value = "/batch/history", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamBatchHistory(
+            @RequestBody DeviceBatchQuery query,
+            @RequestHeader("X-Tenant-Id") String tenantId) {
+
+        InfluxDbService influxDbService = influx();
+        requireTimeRange(query);
+        List<String> deviceIds = deviceService.resolveDeviceIds(tenantId, query);
+        if (deviceIds.isEmpty()) {
+            return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(out -> { });
+        }
+        queryLimits.checkRange(query.getStartTime(), query.getEndTime());
+        requireUnarchived(query.getStartTime(), query.getEndTime());
+        String scope = deviceIds.size() + "台设备";
+        return ndjson(scope, true, writer -> influxDbService.streamBatchDeviceData(
+                deviceIds, query.getStartTime(), query.getEndTime(), writer));
+    }
+
+    /**
+     * 批量查询多台设备数据统计
+     */
+    @Operation(summary = "批量数据统计", description = "一次查询多台设备同一字段的窗口均值，以NDJSON按设备分组流式返回")
+    @PostMapping(value = "/batch/statistics", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamBatchStatistics(
+            @RequestBody DeviceBatchQuery query,
+            @RequestHeader("X-Tenant-Id") String tenantId) {
+
+        InfluxDbService influxDbService = influx();
+        requireTimeRange(query);
+        if (!StringUtils.hasText(query.getField())) {
+            throw new BusinessException("统计字段不能为空");
+        }
+        List<String> deviceIds = deviceService.resolveDeviceIds(tenantId, query);
+        if (deviceIds.isEmpty()) {
+            return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(out -> { });
+        }
+        queryLimits.checkWindows(query.getStartTime(), query.getEndTime(), query.getWindowPeriod(), deviceIds.size());
+        requireUnarchived(query.getStartTime(), query.getEndTime());
+        String scope = deviceIds.size() + "台设备";
+        return ndjson(scope, true, writer -> influxDbService.streamBatchStatistics(deviceIds, query.getField(),
+                query.getStartTime(), query.getEndTime(), query.getWindowPeriod(), writer));
+    }
+
+    /**
+     * 列式查询设备历史数据
+     */
+    @Operation(summary = "历史数据（列式）", description = "每个字段返回一组时间数组和数值数组，适合图表渲染；delta=true时时间差分编码")
+    @GetMapping("/history/columnar")
+    public Result<List<SeriesColumn>> getDeviceHistoryColumnar(
+            @RequestParam String deviceId,
+            @RequestParam String startTime,
+            @RequestParam String endTime,
+            @RequestParam(defaultValue = "false") boolean delta) {
+
+        queryLimits.checkRange(startTime, endTime);
+        requireUnarchived(startTime, endTime);
+        return Result.success(influx().queryDeviceDataColumnar(deviceId, startTime, endTime, delta));
+    }
+
+    /**
+     * 列式查询设备历史数据（二进制）
+     */
+    @Operation(summary = "历史数据（列式二进制）", description = "列式结果的紧凑二进制编码，格式见ColumnarBinaryWriter")
+    @GetMapping(value = "/history/columnar/binary", produces = ColumnarBinaryWriter.CONTENT_TYPE)
+    public ResponseEntity<StreamingResponseBody> getDeviceHistoryBinary(
+            @RequestParam String deviceId,
+            @RequestParam String startTime,
+            @RequestParam String endTime) {
+
+        queryLimits.checkRange(startTime, endTime);
+        requireUnarchived(startTime, endTime);
+        List<SeriesColumn> columns = influx().queryDeviceDataColumnar(deviceId, startTime, endTime, false);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(ColumnarBinaryWriter.CONTENT_TYPE))
+                .body(out -> ColumnarBinaryWriter.write(columns, out));
+    }
+
     /**
      * 查询设备最新数据
      */
-    @Operation(summary = "最新数据", description = "查询设备最新上报的数据")
+    @Operation(summary = "最新数据", description = "查询设备各字段最新上报的值（设备影子）")
     @GetMapping("/latest")
     public Result<Map<String, Object>> getLatestData(@RequestParam String deviceId) {
-        Map<String, Object> data = influxDbService.queryLatestDeviceData(deviceId);
+        Map<String, Object> data = deviceShadowService.getLatestValues(deviceId);
         return Result.success(data);
     }
 
+    /**
+     * 查询设备影子
+     */
+    @Operation(summary = "设备影子", description = "查询设备各字段最新值及上报时间")
+    @GetMapping("/shadow")
+    public Result<Map<String, ShadowField>> getShadow(@RequestParam String deviceId) {
+        return Result.success(deviceShadowService.getShadow(deviceId));
+    }
+
     /**
      * 查询设备数据统计
      */
-    @Operation(summary = "数据统计", description = "查询设备数据的统计信息（平均值、聚合等）")
+    @Operation(summary = "数据统计", description = "查询设备数据的统计信息（平均值、聚合等），已结束的时间段结果会被缓存")
     @GetMapping("/statistics")
     public Result<Map<String, Object>> getDeviceStatistics(
             @RequestParam String deviceId,
@@ -61,8 +199,104 @@ public class DeviceDataController {
             @RequestParam String endTime,
             @RequestParam(defaultValue = "1h") String windowPeriod) {
         
-        Map<String, Object> statistics = influxDbService.queryDeviceDataStatistics(
+        queryLimits.checkWindows(startTime, endTime, windowPeriod, 1);
+        Map<String, Object> statistics = deviceStatisticsService.queryStatistics(
                 deviceId, field, startTime, endTime, windowPeriod);
         return Result.success(statistics);
     }
-}
\ No newline at end of file
+
+    /**
+     * 查询设备数据多聚合统计
+     */
+    @Operation(summary = "多聚合统计", description = "每个窗口一次返回count/min/max/mean/sum/stddev及近似分位数p50/p95/p99")
+    @GetMapping("/statistics/aggregate")
+    public Result<List<WindowStatistics>> getDeviceAggregates(
+            @RequestParam String deviceId,
+            @RequestParam String field,
+            @RequestParam String startTime,
+            @RequestParam String endTime,
+            @RequestParam(defaultValue = "1h") String windowPeriod) {
+
+        queryLimits.checkWindows(startTime, endTime, windowPeriod, 1);
+        return Result.success(deviceStatisticsService.queryAggregates(
+                Collections.singletonList(deviceId), field, startTime, endTime, windowPeriod, true));
+    }
+
+    /**
+     * 批量查询多台设备多聚合统计
+     */
+    @Operation(summary = "批量多聚合统计", description = "多台设备同一字段的多聚合统计；merge=true时各设备按窗口合并（分位数由草图合并得到）")
+    @PostMapping("/batch/statistics/aggregate")
+    public Result<List<WindowStatistics>> getBatchAggregates(
+            @RequestBody DeviceBatchQuery query,
+            @RequestHeader("X-Tenant-Id") String tenantId,
+            @RequestParam(defaultValue = "true") boolean merge) {
+
+        requireTimeRange(query);
+        if (!StringUtils.hasText(query.getField())) {
+            throw new BusinessException("统计字段不能为空");
+        }
+        List<String> deviceIds = deviceService.resolveDeviceIds(tenantId, query);
+        if (deviceIds.isEmpty()) {
+            return Result.success(Collections.emptyList());
+        }
+        queryLimits.checkWindows(query.getStartTime(), query.getEndTime(), query.getWindowPeriod(), deviceIds.size());
+        return Result.success(deviceStatisticsService.queryAggregates(deviceIds, query.getField(),
+                query.getStartTime(), query.getEndTime(), query.getWindowPeriod(), merge));
+    }
+
+    /**
+     * 流式、列式、批量查询依赖Flux，仅InfluxDB引擎支持
+     */
+    private InfluxDbService influx() {
+        InfluxDbService influxDbService = influxDbServiceProvider.getIfAvailable();
+        if (influxDbService == null) {
+            throw new BusinessException("当前时序存储引擎不支持该查询");
+        }
+        return influxDbService;
+    }
+
+    /**
+     * 直接读取InfluxDB的查询不合并归档数据，起始时间早于归档截止时间时拒绝
+     */
+    private void requireUnarchived(String startTime, String endTime) {
+        archiveStore.requireUnarchived(QueryRange.resolve(startTime, endTime).getStart().toEpochMilli());
+    }
+
+    private void requireTimeRange(DeviceBatchQuery query) {
+        if (!StringUtils.hasText(query.getStartTime()) || !StringUtils.hasText(query.getEndTime())) {
+            throw new BusinessException("开始时间和结束时间不能为空");
+        }
+    }
+
+    /**
+     * 以NDJSON流式输出查询结果，客户端断开时查询随之取消；其他失败在末尾输出一行 {"error": ...}
+     */
+    private ResponseEntity<StreamingResponseBody> ndjson(String scope, boolean withDeviceId, StreamQuery query) {
+        StreamingResponseBody body = out -> {
+            NdjsonRecordWriter writer = new NdjsonRecordWriter(out, withDeviceId);
+            try {
+                query.run(writer);
+                writer.flush();
+                log.debug("流式查询设备数据完成，范围: {}, 记录数: {}", scope, writer.getRows());
+            } catch (IOException e) {
+                if (writer.isWriteFailed()) {
+                    log.info("流式查询已取消，客户端断开，范围: {}, 已输出: {}", scope, writer.getRows());
+                    return;
+                }
+                // 查询本身的IO异常（如InfluxDB超时、连接中断），结果不完整，输出错误行告知客户端
+                log.error("流式查询设备数据中断，范围: {}, 已输出: {}", scope, writer.getRows(), e);
+                writer.writeError("查询中断: " + e.getMessage());
+            } catch (Exception e) {
+                log.error("流式查询设备数据失败，范围: {}", scope, e);
+                writer.writeError("查询失败: " + e.getMessage());
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    @FunctionalInterface
+    private interface StreamQuery {
+        void run(RecordSink sink) throws IOException;
+    }
+}
@@ -0,0 +1,145 @@
+package com.iot.device.controller;
+
+import com.iot.common.core.domain.Result;
+import com.iot.device.cache.DeviceMetadataCache;
+import com.iot.device.ingest.IngestPipeline;
+import com.iot.device.ingest.TelemetrySchemaGuard;
+import com.iot.device.search.DeviceIndexMaintainer;
+import com.iot.device.search.DeviceSearchIndex;
+import com.iot.device.search.DeviceTagIndex;
+import com.iot.device.service.DeviceShadowService;
+import com.iot.device.service.DeviceStatisticsService;
+import com.iot.device.service.DeviceStatusWriteBehind;
+import com.iot.device.tsdb.TimeSeriesStore;
+import com.iot.device.tsdb.archive.ArchiveStore;
+import com.iot.device.tsdb.hot.HotWindowTimeSeriesStore;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 运行指标控制器
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Tag(name = "运行指标", description = "消息接入、存储写入等内部组件的运行指标")
+@RestController
+@RequestMapping("/device/metrics")
+@RequiredArgsConstructor
+public class MetricsController {
+
+    private final IngestPipeline ingestPipeline;
+    private final TelemetrySchemaGuard schemaGuard;
+    private final DeviceMetadataCache metadataCache;
+    private final DeviceSearchIndex searchIndex;
+    private final DeviceTagIndex tagIndex;
+    private final DeviceIndexMaintainer indexMaintainer;
+    private final DeviceStatusWriteBehind statusWriteBehind;
+    private final TimeSeriesStore timeSeriesStore;
+    private final DeviceShadowService deviceShadowService;
+    private final DeviceStatisticsService deviceStatisticsService;
+    private final HotWindowTimeSeriesStore hotWindowStore;
+    private final ArchiveStore archiveStore;
+
+    /**
+     * 消息接入流水线指标
+     */
+    @Operation(summary = "接入流水线指标", description = "各通道队列深度、丢弃数、背压次数等")
+    @GetMapping("/ingest")
+    public Result<Map<String, Object>> getIngestMetrics() {
+        return Result.success(ingestPipeline.getStats());
+    }
+
+    /**
+     * 遥测数据结构校验指标
+     */
+    @Operation(summary = "结构校验指标", description = "未声明字段、类型不符、超出租户字段上限、未注册设备、隔离消息数，以及各租户的字段数")
+    @GetMapping("/schema-guard")
+    public Result<Map<String, Object>> getSchemaGuardMetrics() {
+        return Result.success(schemaGuard.getStats());
+    }
+
+    /**
+     * 设备/产品元数据缓存指标
+     */
+    @Operation(summary = "元数据缓存指标", description = "本地缓存大小、命中率、加载次数，Redis命中数、数据库加载数、失效通知收发数")
+    @GetMapping("/metadata-cache")
+    public Result<Map<String, Object>> getMetadataCacheMetrics() {
+        return Result.success(metadataCache.getStats());
+    }
+
+    /**
+     * 设备内存索引指标
+     */
+    @Operation(summary = "设备索引指标", description = "加载耗时、更新次数，搜索索引的文档数、n-gram数、倒排表长度，标签索引的标签项数、位图大小等")
+    @GetMapping({"/device-index", "/search-index"})
+    public Result<Map<String, Object>> getDeviceIndexMetrics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maintainer", indexMaintainer.getStats());
+        stats.put("search", searchIndex.getStats());
+        stats.put("tags", tagIndex.getStats());
+        return Result.success(stats);
+    }
+
+    /**
+     * 设备状态回写指标
+     */
+    @Operation(summary = "状态回写指标", description = "积压设备数、合并次数、批量回写次数等")
+    @GetMapping("/status-writer")
+    public Result<Map<String, Object>> getStatusWriterMetrics() {
+        return Result.success(statusWriteBehind.getStats());
+    }
+
+    /**
+     * 时序数据写入指标
+     */
+    @Operation(summary = "时序写入指标", description = "当前存储引擎的写入指标：InfluxDB为批次大小、刷新耗时、队列深度、重试和失败次数等")
+    @GetMapping({"/tsdb-writer", "/influx-writer"})
+    public Result<Map<String, Object>> getInfluxWriterMetrics() {
+        return Result.success(timeSeriesStore.getWriteStats());
+    }
+
+    /**
+     * 设备影子指标
+     */
+    @Operation(summary = "设备影子指标", description = "内存中的设备数、待同步Redis的设备数")
+    @GetMapping("/shadow")
+    public Result<Map<String, Object>> getShadowMetrics() {
+        return Result.success(deviceShadowService.getStats());
+    }
+
+    /**
+     * 统计查询缓存指标
+     */
+    @Operation(summary = "统计缓存指标", description = "缓存块数、本地/Redis命中数、未命中块数、InfluxDB查询次数等")
+    @GetMapping("/statistics-cache")
+    public Result<Map<String, Object>> getStatisticsCacheMetrics() {
+        return Result.success(deviceStatisticsService.getStats());
+    }
+
+    /**
+     * 近期数据热窗口指标
+     */
+    @Operation(summary = "热窗口指标", description = "内存中的设备数、点数、内存占用、每点字节数、命中/未命中、淘汰设备数")
+    @GetMapping("/hot-window")
+    public Result<Map<String, Object>> getHotWindowMetrics() {
+        return Result.success(hotWindowStore.getStats());
+    }
+
+    /**
+     * 冷数据归档指标
+     */
+    @Operation(summary = "冷数据归档指标", description = "归档分区数、文件数、总大小、最早/最新分区、查询扫描的文件数和数据块数")
+    @GetMapping("/archive")
+    public Result<Map<String, Object>> getArchiveMetrics() {
+        return Result.success(archiveStore.getStats());
+    }
+}
@@ -3,6 +3,7 @@ package com.iot.device.controller;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.iot.common.core.domain.Result;
 import com.iot.device.domain.Product;
+import com.iot.device.dto.CursorPage;
 import com.iot.device.service.ProductService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -39,6 +40,22 @@ public class ProductController {
         return Result.success(page);
     }
 
+    /**
+     * 游标分页查询产品列表
+     */
+    @Operation(summary = "产品列表(游标分页)", description = "按创建时间倒序游标翻页，支持关键字搜索；withTotal=true时返回总数（超过上限时为近似值）")
+    @GetMapping("/list/cursor")
+    public Result<CursorPage<Product>> getProductCursorList(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int pageSize,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(defaultValue = "false") boolean withTotal,
+            @RequestHeader("X-Tenant-Id") String tenantId) {
+        
+        CursorPage<Product> page = productService.getProductCursorPage(cursor, pageSize, keyword, withTotal, tenantId);
+        return Result.success(page);
+    }
+
     /**
      * 获取产品详情
      */
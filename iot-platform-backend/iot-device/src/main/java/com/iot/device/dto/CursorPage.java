@@ -0,0 +1,98 @@
+package com.iot.device.dto;
+
+import com.iot.common.core.exception.BusinessException;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * <p>
+ * 按 (created_at, id) 倒序翻页，nextCursor 为上一页最后一条记录的 (created_at, id) 编码后的不透明字符串，
+ * 下一页查询 {@code created_at <= ? AND (created_at < ? OR id < ?)}，走 (tenant_id, created_at, id) 索引，
+ * 翻到多深都只扫描一页的数据
+ *
+ * @author IoT Platform
+ */
+@Data
+public class CursorPage<T> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 本页记录
+     */
+    private List<T> records;
+
+    /**
+     * 下一页游标，没有更多数据时为null
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasMore;
+
+    /**
+     * 总数，仅在请求时统计；超过统计上限时为上限值
+     */
+    private Long total;
+
+    /**
+     * 总数是否精确（未超过统计上限）
+     */
+    private Boolean totalExact;
+
+    /**
+     * 编码游标
+     */
+    public static String encodeCursor(LocalDateTime createdAt, String id) {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标
+     *
+     * @throws BusinessException 游标格式错误
+     */
+    public static Cursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            if (sep <= 0 || sep == raw.length() - 1) {
+                throw new BusinessException("分页游标无效");
+            }
+            return new Cursor(LocalDateTime.parse(raw.substring(0, sep)), raw.substring(sep + 1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new BusinessException("分页游标无效");
+        }
+    }
+
+    /**
+     * 游标位置：上一页最后一条记录的创建时间和ID
+     */
+    public static class Cursor {
+
+        private final LocalDateTime createdAt;
+        private final String id;
+
+        public Cursor(LocalDateTime createdAt, String id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+
+        public LocalDateTime getCreatedAt() {
+            return createdAt;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+}
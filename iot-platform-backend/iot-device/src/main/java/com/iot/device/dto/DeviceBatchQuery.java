@@ -0,0 +1,58 @@
+package com.iot.device.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 多设备批量查询条件
+ * <p>
+ * deviceIds、groupId、productId、tagSelector四选一
+ *
+ * @author IoT Platform
+ */
+@Data
+public class DeviceBatchQuery implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 设备ID列表
+     */
+    private List<String> deviceIds;
+
+    /**
+     * 设备分组ID
+     */
+    private String groupId;
+
+    /**
+     * 产品ID
+     */
+    private String productId;
+
+    /**
+     * 设备标签表达式，如 floor=3 AND type=thermostat
+     */
+    private String tagSelector;
+
+    /**
+     * 开始时间
+     */
+    private String startTime;
+
+    /**
+     * 结束时间
+     */
+    private String endTime;
+
+    /**
+     * 统计字段（仅统计查询）
+     */
+    private String field;
+
+    /**
+     * 统计窗口（仅统计查询）
+     */
+    private String windowPeriod = "1h";
+}
@@ -0,0 +1,85 @@
+package com.iot.device.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 设备批量导入结果，逐行给出成功（设备ID、密钥）或失败原因
+ *
+ * @author IoT Platform
+ */
+@Data
+public class DeviceImportReport implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 总行数
+     */
+    private int total;
+
+    /**
+     * 成功行数
+     */
+    private int succeeded;
+
+    /**
+     * 失败行数
+     */
+    private int failed;
+
+    /**
+     * 耗时（毫秒）
+     */
+    private long elapsedMs;
+
+    /**
+     * 是否因超过单次导入上限而未读取剩余行
+     */
+    private boolean truncated;
+
+    /**
+     * 逐行结果，按行号排序
+     */
+    private List<Row> rows = new ArrayList<>();
+
+    /**
+     * 单行结果
+     */
+    @Data
+    public static class Row implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 行号（数据行从1开始，不含表头）；CSV导入为记录起始行在表头之后的位置，空行和字段内换行也计入
+         */
+        private int row;
+
+        /**
+         * 设备编码
+         */
+        private String code;
+
+        /**
+         * 是否成功
+         */
+        private boolean success;
+
+        /**
+         * 设备ID（成功时）
+         */
+        private String deviceId;
+
+        /**
+         * 设备密钥（成功时）
+         */
+        private String secret;
+
+        /**
+         * 失败原因
+         */
+        private String error;
+    }
+}
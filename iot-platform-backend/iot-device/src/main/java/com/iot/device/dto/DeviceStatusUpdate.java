@@ -0,0 +1,35 @@
+package com.iot.device.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 设备在线状态变更（批量回写用）
+ *
+ * @author IoT Platform
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceStatusUpdate implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 设备ID
+     */
+    private String deviceId;
+
+    /**
+     * 设备状态：1在线 0离线
+     */
+    private Integer status;
+
+    /**
+     * 状态变化时间
+     */
+    private LocalDateTime changedAt;
+}
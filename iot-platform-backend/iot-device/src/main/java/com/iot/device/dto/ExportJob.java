@@ -0,0 +1,68 @@
+package com.iot.device.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 数据导出任务
+ * <p>
+ * 任务描述保存在任务目录的job.json中（设备ID列表保存在devices.txt），服务重启后据此续传
+ *
+ * @author IoT Platform
+ */
+@Data
+public class ExportJob implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_CANCELLED = "CANCELLED";
+
+    private String jobId;
+
+    private String tenantId;
+
+    private int deviceCount;
+
+    /**
+     * 开始时间（RFC3339）
+     */
+    private String startTime;
+
+    /**
+     * 结束时间（RFC3339）
+     */
+    private String endTime;
+
+    /**
+     * 文件格式，目前为csv.gz
+     */
+    private String format;
+
+    /**
+     * RUNNING/COMPLETED/FAILED/CANCELLED
+     */
+    private String status;
+
+    private int totalChunks;
+
+    private int completedChunks;
+
+    /**
+     * 已导出行数
+     */
+    private long rows;
+
+    /**
+     * 导出文件字节数（完成后）
+     */
+    private long fileBytes;
+
+    private String error;
+
+    private long createTime;
+
+    private Long finishTime;
+}
@@ -0,0 +1,54 @@
+package com.iot.device.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 单个字段的列式时间序列
+ * <p>
+ * time与value（或text）按下标一一对应；数值和布尔字段使用value（布尔为1/0），含字符串的字段使用text。
+ *
+ * @author IoT Platform
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SeriesColumn implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 字段名
+     */
+    private String field;
+
+    /**
+     * 点数
+     */
+    private int count;
+
+    /**
+     * 时间是否差分编码：为true时time[0]为绝对时间，之后每项为与前一项的差值
+     */
+    private boolean delta;
+
+    /**
+     * 毫秒时间戳
+     */
+    private long[] time;
+
+    /**
+     * 数值
+     */
+    private double[] value;
+
+    /**
+     * 字符串值
+     */
+    private String[] text;
+
+    /**
+     * 数据粒度（统计结果）：raw或汇总粒度
+     */
+    private String resolution;
+}
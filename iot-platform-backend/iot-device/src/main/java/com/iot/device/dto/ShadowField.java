@@ -0,0 +1,29 @@
+package com.iot.device.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 设备影子字段：最新值及其上报时间
+ *
+ * @author IoT Platform
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShadowField implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 最新值
+     */
+    private Object value;
+
+    /**
+     * 上报时间（毫秒时间戳）
+     */
+    private long time;
+}
@@ -0,0 +1,36 @@
+package com.iot.device.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 按标签表达式选择设备的结果
+ *
+ * @author IoT Platform
+ */
+@Data
+public class TagSelection implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 标签表达式
+     */
+    private String expression;
+
+    /**
+     * 匹配的设备总数
+     */
+    private int total;
+
+    /**
+     * 设备ID，最多返回请求的条数
+     */
+    private List<String> deviceIds;
+
+    /**
+     * 是否只返回了部分设备ID
+     */
+    private boolean truncated;
+}
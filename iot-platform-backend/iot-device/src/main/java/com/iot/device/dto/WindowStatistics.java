@@ -0,0 +1,52 @@
+package com.iot.device.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * 单个统计窗口的多项聚合结果
+ *
+ * @author IoT Platform
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WindowStatistics implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 设备ID（多设备合并统计时为空）
+     */
+    private String deviceId;
+
+    /**
+     * 窗口结束时间
+     */
+    private Instant time;
+
+    private long count;
+
+    private double min;
+
+    private double max;
+
+    private double mean;
+
+    private double sum;
+
+    /**
+     * 样本标准差
+     */
+    private double stddev;
+
+    /**
+     * 近似分位数（相对误差1%）
+     */
+    private double p50;
+
+    private double p95;
+
+    private double p99;
+}
@@ -0,0 +1,205 @@
+package com.iot.device.ingest;
+
+import com.iot.device.config.IngestProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备消息接入流水线
+ * <p>
+ * 按分片键（通常为deviceId）哈希到固定数量的工作通道，每个通道一个有界队列和一个消费线程：
+ * 同一设备的消息串行处理、保持顺序，不同设备的消息并行处理。
+ * MQTT回调线程只负责入队，慢速的存储写入不会阻塞整个订阅。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Component
+public class IngestPipeline {
+
+    private static final long POLL_INTERVAL_MS = 200;
+
+    private final IngestProperties properties;
+
+    private Lane[] lanes;
+    private volatile boolean running;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder backpressured = new LongAdder();
+
+    public IngestPipeline(IngestProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void start() {
+        int laneCount = properties.getLanes() > 0 ? properties.getLanes() : Runtime.getRuntime().availableProcessors();
+        lanes = new Lane[laneCount];
+        running = true;
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i, properties.getQueueCapacity());
+            lanes[i].thread.start();
+        }
+        log.info("消息接入流水线已启动，通道数: {}, 单通道容量: {}, 溢出策略: {}",
+                laneCount, properties.getQueueCapacity(), properties.getOverflowPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        long deadline = System.currentTimeMillis() + properties.getShutdownTimeoutMs();
+        for (Lane lane : lanes) {
+            try {
+                lane.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int remaining = 0;
+        for (Lane lane : lanes) {
+            remaining += lane.queue.size();
+        }
+        log.info("消息接入流水线已停止，未处理消息数: {}", remaining);
+    }
+
+    /**
+     * 提交任务，同一分片键的任务按提交顺序执行
+     *
+     * @return 是否成功入队
+     */
+    public boolean submit(String shardKey, Runnable task) {
+        if (!running) {
+            dropped.increment();
+            return false;
+        }
+        Lane lane = lanes[laneIndex(shardKey)];
+        submitted.increment();
+
+        if (lane.queue.offer(task)) {
+            return true;
+        }
+
+        // 队列已满
+        if (properties.getOverflowPolicy() == IngestProperties.OverflowPolicy.BLOCK) {
+            backpressured.increment();
+            try {
+                if (lane.queue.offer(task, properties.getOfferTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        dropped.increment();
+        lane.dropped.increment();
+        // 持续溢出时按千分之一采样打印，避免日志本身拖慢接收线程
+        long laneDropped = lane.dropped.sum();
+        if (laneDropped % 1000 == 1) {
+            log.warn("接入通道已满，丢弃消息，lane: {}, key: {}, 累计丢弃: {}", lane.index, shardKey, laneDropped);
+        }
+        return false;
+    }
+
+    /**
+     * 流水线运行指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        List<Map<String, Object>> laneStats = new ArrayList<>(lanes.length);
+        int totalDepth = 0;
+        for (Lane lane : lanes) {
+            int depth = lane.queue.size();
+            totalDepth += depth;
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("lane", lane.index);
+            item.put("depth", depth);
+            item.put("capacity", lane.capacity);
+            item.put("processed", lane.processed.sum());
+            item.put("dropped", lane.dropped.sum());
+            laneStats.add(item);
+        }
+        stats.put("lanes", lanes.length);
+        stats.put("overflowPolicy", properties.getOverflowPolicy());
+        stats.put("queueDepth", totalDepth);
+        stats.put("submitted", submitted.sum());
+        stats.put("processed", processed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("backpressured", backpressured.sum());
+        stats.put("laneStats", laneStats);
+        return stats;
+    }
+
+    private int laneIndex(String shardKey) {
+        int h = shardKey == null ? 0 : shardKey.hashCode();
+        // 打散低位，避免编码规律的deviceId集中到少数通道
+        h ^= (h >>> 16);
+        return Math.floorMod(h, lanes.length);
+    }
+
+    /**
+     * 工作通道：有界队列 + 单消费线程
+     */
+    private final class Lane implements Runnable {
+
+        private final int index;
+        private final int capacity;
+        private final BlockingQueue<Runnable> queue;
+        private final Thread thread;
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+
+        private Lane(int index, int capacity) {
+            this.index = index;
+            this.capacity = capacity;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, "mqtt-ingest-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                try {
+                    task = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (task == null) {
+                    // 停机后队列已排空
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    failed.increment();
+                    log.error("接入任务执行失败，lane: {}", index, e);
+                } finally {
+                    processed.increment();
+                    IngestPipeline.this.processed.increment();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.iot.device.ingest;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.iot.device.telemetry.FieldNames;
+import com.iot.device.telemetry.TelemetryRecord;
+import org.springframework.util.StringUtils;
+
+import java.util.Arrays;
+
+/**
+ * 编译后的产品遥测结构
+ * <p>
+ * 由产品功能定义（{@code Product.features}）中的属性编译而来：每个属性的 identifier 注册为字段ID，
+ * 允许的值类型编码为位掩码，按字段ID存放在数组中，校验一个字段只需一次数组访问。
+ * 结构体属性按 specs 中的子属性展开为点分字段名，与解码器展开嵌套对象的方式一致。
+ * 未定义任何属性的产品不做字段约束。
+ *
+ * @author IoT Platform
+ */
+public final class ProductSchema {
+
+    public static final int OK = 0;
+    public static final int UNDECLARED = 1;
+    public static final int TYPE_MISMATCH = 2;
+
+    /**
+     * 不约束字段的结构
+     */
+    public static final ProductSchema UNRESTRICTED = new ProductSchema(null, 0);
+
+    private static final int NUMBER = mask(TelemetryRecord.TYPE_LONG, TelemetryRecord.TYPE_DOUBLE);
+    private static final int ANY = 0xff;
+
+    /**
+     * 按字段ID索引的允许类型掩码，0表示未声明
+     */
+    private final byte[] allowed;
+    private final int fieldCount;
+
+    private ProductSchema(byte[] allowed, int fieldCount) {
+        this.allowed = allowed;
+        this.fieldCount = fieldCount;
+    }
+
+    /**
+     * 编译产品功能定义
+     *
+     * @throws IllegalArgumentException 功能定义不是合法的JSON
+     */
+    public static ProductSchema compile(String features) {
+        if (!StringUtils.hasText(features)) {
+            return UNRESTRICTED;
+        }
+        JSONObject root;
+        try {
+            root = JSON.parseObject(features);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("产品功能定义格式错误", e);
+        }
+        JSONArray properties = root == null ? null : root.getJSONArray("properties");
+        if (properties == null || properties.isEmpty()) {
+            return UNRESTRICTED;
+        }
+        byte[] allowed = new byte[64];
+        int[] count = new int[1];
+        allowed = declare(allowed, count, "", properties);
+        return count[0] == 0 ? UNRESTRICTED : new ProductSchema(allowed, count[0]);
+    }
+
+    private static byte[] declare(byte[] allowed, int[] count, String prefix, JSONArray properties) {
+        for (int i = 0; i < properties.size(); i++) {
+            JSONObject property = properties.getJSONObject(i);
+            String identifier = property == null ? null : property.getString("identifier");
+            if (!StringUtils.hasText(identifier)) {
+                continue;
+            }
+            String name = prefix + identifier;
+            Object dataType = property.get("dataType");
+            String type = dataType instanceof JSONObject ? ((JSONObject) dataType).getString("type") : (String) dataType;
+            if ("struct".equalsIgnoreCase(type)) {
+                Object specs = dataType instanceof JSONObject ? ((JSONObject) dataType).get("specs") : property.get("specs");
+                if (specs instanceof JSONArray) {
+                    allowed = declare(allowed, count, name + ".", (JSONArray) specs);
+                }
+                continue;
+            }
+            int id = FieldNames.idOf(name);
+            if (id == FieldNames.UNKNOWN) {
+                continue;
+            }
+            if (id >= allowed.length) {
+                allowed = Arrays.copyOf(allowed, Math.max(id + 1, allowed.length * 2));
+            }
+            if (allowed[id] == 0) {
+                count[0]++;
+            }
+            allowed[id] = (byte) maskOf(type);
+        }
+        return allowed;
+    }
+
+    /**
+     * 物模型数据类型对应的解码值类型；整数和浮点写入时均为数值，未知类型不约束取值
+     */
+    private static int maskOf(String type) {
+        if (type == null) {
+            return ANY;
+        }
+        switch (type.toLowerCase()) {
+            case "int":
+            case "integer":
+            case "long":
+                return mask(TelemetryRecord.TYPE_LONG);
+            case "float":
+            case "double":
+            case "number":
+                return NUMBER;
+            case "bool":
+            case "boolean":
+                return mask(TelemetryRecord.TYPE_BOOLEAN);
+            case "text":
+            case "string":
+                return mask(TelemetryRecord.TYPE_STRING);
+            case "enum":
+            case "date":
+                return mask(TelemetryRecord.TYPE_STRING, TelemetryRecord.TYPE_LONG);
+            case "array":
+                return mask(TelemetryRecord.TYPE_RAW);
+            default:
+                return ANY;
+        }
+    }
+
+    private static int mask(byte... types) {
+        int mask = 0;
+        for (byte type : types) {
+            mask |= 1 << type;
+        }
+        return mask;
+    }
+
+    /**
+     * 是否约束字段
+     */
+    public boolean isRestricted() {
+        return allowed != null;
+    }
+
+    /**
+     * 声明的字段数
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * 是否声明了该字段
+     */
+    public boolean declares(int fieldId) {
+        return allowed != null && fieldId >= 0 && fieldId < allowed.length && allowed[fieldId] != 0;
+    }
+
+    /**
+     * 校验一个字段
+     *
+     * @return {@link #OK}、{@link #UNDECLARED} 或 {@link #TYPE_MISMATCH}
+     */
+    public int check(int fieldId, byte type) {
+        if (allowed == null || type == TelemetryRecord.TYPE_NULL) {
+            return OK;
+        }
+        if (fieldId < 0 || fieldId >= allowed.length || allowed[fieldId] == 0) {
+            return UNDECLARED;
+        }
+        return (allowed[fieldId] & (1 << type)) != 0 ? OK : TYPE_MISMATCH;
+    }
+}
@@ -0,0 +1,313 @@
+package com.iot.device.ingest;
+
+import com.alibaba.fastjson2.JSON;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.iot.device.cache.DeviceMetadataCache;
+import com.iot.device.config.SchemaGuardProperties;
+import com.iot.device.domain.Device;
+import com.iot.device.domain.Product;
+import com.iot.device.telemetry.FieldNames;
+import com.iot.device.telemetry.TelemetryRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 遥测数据结构校验
+ * <p>
+ * 写入存储之前按设备所属产品的功能定义校验每个字段：未声明的字段、类型与定义不符的字段视为违规；
+ * 同时按租户统计出现过的不同字段数，超过上限后拒绝未声明的新字段，防止异常固件制造无限多的字段。
+ * 解码器不注册设备上报的字段名，未注册的字段通过租户字段数校验后才注册到 {@link FieldNames}，注册表的增长受租户上限约束。
+ * 设备和产品取自元数据缓存，编译后的产品结构按功能定义文本缓存，字段校验和租户字段计数都是按字段ID的数组/位图访问。
+ * <p>
+ * ENFORCE模式下违规字段从记录中剔除后写入其余字段；两种校验模式下违规数据都发布到隔离主题
+ * （{@code iot/quarantine/{deviceId}}），消息包含原始报文和违规原因，供排查固件问题。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Component
+public class TelemetrySchemaGuard {
+
+    private final DeviceMetadataCache metadataCache;
+    private final MessageChannel mqttOutputChannel;
+    private final SchemaGuardProperties properties;
+
+    /**
+     * 按功能定义文本缓存编译结果；弱引用键按对象identity比较，产品缓存刷新后旧文本随之回收
+     */
+    private final LoadingCache<String, ProductSchema> schemas;
+    private final Map<String, TenantFields> tenants = new ConcurrentHashMap<>();
+    private final RateLimiter quarantineLimiter;
+
+    private final LongAdder checked = new LongAdder();
+    private final LongAdder undeclared = new LongAdder();
+    private final LongAdder typeMismatch = new LongAdder();
+    private final LongAdder cardinalityRejected = new LongAdder();
+    private final LongAdder unknownDevices = new LongAdder();
+    private final LongAdder droppedRecords = new LongAdder();
+    private final LongAdder quarantined = new LongAdder();
+    private final LongAdder quarantineSuppressed = new LongAdder();
+    private final LongAdder quarantineFailed = new LongAdder();
+    private final LongAdder lookupFailed = new LongAdder();
+
+    public TelemetrySchemaGuard(DeviceMetadataCache metadataCache, MessageChannel mqttOutputChannel,
+                                SchemaGuardProperties properties) {
+        this.metadataCache = metadataCache;
+        this.mqttOutputChannel = mqttOutputChannel;
+        this.properties = properties;
+        this.schemas = CacheBuilder.newBuilder()
+                .weakKeys()
+                .build(CacheLoader.from(TelemetrySchemaGuard::compile));
+        this.quarantineLimiter = RateLimiter.create(properties.getQuarantineMaxPerSecond());
+    }
+
+    /**
+     * 校验一条遥测记录，ENFORCE模式下会剔除记录中的违规字段
+     *
+     * @return 是否继续写入（ENFORCE模式下未注册设备或全部字段违规时返回false）
+     */
+    public boolean check(String deviceId, TelemetryRecord record, long time) {
+        SchemaGuardProperties.Mode mode = properties.getMode();
+        if (mode == SchemaGuardProperties.Mode.OFF) {
+            return true;
+        }
+        checked.increment();
+        boolean enforce = mode == SchemaGuardProperties.Mode.ENFORCE;
+
+        Device device;
+        ProductSchema schema;
+        try {
+            device = metadataCache.getDevice(deviceId);
+            Product product = device == null || device.getProductId() == null
+                    ? null : metadataCache.getProduct(device.getProductId());
+            schema = product == null || product.getFeatures() == null
+                    ? ProductSchema.UNRESTRICTED : schemas.getUnchecked(product.getFeatures());
+        } catch (UncheckedExecutionException e) {
+            // 数据库不可用时不阻断接入
+            lookupFailed.increment();
+            log.warn("加载设备结构定义失败，跳过校验，deviceId: {}", deviceId, e.getCause());
+            return true;
+        }
+
+        if (device == null) {
+            unknownDevices.increment();
+            if (!properties.isRejectUnknownDevices()) {
+                return true;
+            }
+            List<Map<String, Object>> violations = new ArrayList<>(1);
+            violations.add(violation(null, null, "设备未注册"));
+            quarantine(deviceId, device, record, time, violations);
+            if (enforce) {
+                droppedRecords.increment();
+                return false;
+            }
+            return true;
+        }
+
+        TenantFields fields = tenants.computeIfAbsent(device.getTenantId() == null ? "" : device.getTenantId(),
+                id -> new TenantFields());
+        int maxFields = properties.getMaxFieldsPerTenant();
+        List<Map<String, Object>> violations = null;
+        // 倒序遍历，剔除字段不影响未访问的下标
+        for (int i = record.size() - 1; i >= 0; i--) {
+            int fieldId = record.fieldId(i);
+            byte type = record.type(i);
+            String reason = null;
+            switch (schema.check(fieldId, type)) {
+                case ProductSchema.UNDECLARED:
+                    undeclared.increment();
+                    reason = "字段未在产品功能定义中声明";
+                    break;
+                case ProductSchema.TYPE_MISMATCH:
+                    typeMismatch.increment();
+                    reason = "字段类型与产品功能定义不符";
+                    break;
+                default:
+                    if (TelemetryRecord.isLocalField(fieldId)) {
+                        fieldId = register(record, i, fields, maxFields);
+                        if (fieldId == FieldNames.UNKNOWN) {
+                            // 注册表已满，按局部字段写入（FieldNames已计数并告警）
+                            break;
+                        }
+                    }
+                    if (fieldId < 0 || !fields.admit(fieldId, schema.declares(fieldId), maxFields)) {
+                        cardinalityRejected.increment();
+                        reason = "租户字段数超过上限" + maxFields;
+                    }
+                    break;
+            }
+            if (reason == null) {
+                continue;
+            }
+            if (violations == null) {
+                violations = new ArrayList<>();
+            }
+            violations.add(violation(record.fieldName(i), typeName(type), reason));
+            if (enforce) {
+                record.remove(i);
+            }
+        }
+        if (violations == null) {
+            return true;
+        }
+        quarantine(deviceId, device, record, time, violations);
+        if (enforce && record.size() == 0) {
+            droppedRecords.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 注册局部字段：租户字段数未达上限时注册到 {@link FieldNames} 并替换记录中的字段ID
+     *
+     * @return 注册后的字段ID；租户字段数已达上限时返回原局部字段ID；注册表已满时返回 {@link FieldNames#UNKNOWN}
+     */
+    private static int register(TelemetryRecord record, int index, TenantFields fields, int maxFields) {
+        int fieldId = record.fieldId(index);
+        if (fields.count.get() >= maxFields) {
+            return fieldId;
+        }
+        int registered = FieldNames.idOf(record.fieldName(index));
+        if (registered != FieldNames.UNKNOWN) {
+            record.setFieldId(index, registered);
+        }
+        return registered;
+    }
+
+    /**
+     * 校验指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", properties.getMode());
+        stats.put("checked", checked.sum());
+        stats.put("undeclaredFields", undeclared.sum());
+        stats.put("typeMismatchFields", typeMismatch.sum());
+        stats.put("cardinalityRejectedFields", cardinalityRejected.sum());
+        stats.put("unknownDevices", unknownDevices.sum());
+        stats.put("droppedRecords", droppedRecords.sum());
+        stats.put("quarantined", quarantined.sum());
+        stats.put("quarantineSuppressed", quarantineSuppressed.sum());
+        stats.put("quarantineFailed", quarantineFailed.sum());
+        stats.put("lookupFailed", lookupFailed.sum());
+        stats.put("compiledSchemas", schemas.size());
+        stats.put("maxFieldsPerTenant", properties.getMaxFieldsPerTenant());
+        stats.put("registeredFields", FieldNames.size());
+        stats.put("fieldRegistryOverflows", FieldNames.overflowCount());
+        Map<String, Integer> tenantFields = new LinkedHashMap<>();
+        tenants.forEach((tenantId, fields) -> tenantFields.put(tenantId, fields.count.get()));
+        stats.put("tenantFields", tenantFields);
+        return stats;
+    }
+
+    private static ProductSchema compile(String features) {
+        try {
+            return ProductSchema.compile(features);
+        } catch (IllegalArgumentException e) {
+            log.warn("产品功能定义无法解析，不校验该产品的字段");
+            return ProductSchema.UNRESTRICTED;
+        }
+    }
+
+    /**
+     * 发布违规数据到隔离主题，超过速率上限时只计数
+     */
+    private void quarantine(String deviceId, Device device, TelemetryRecord record, long time,
+                            List<Map<String, Object>> violations) {
+        if (!quarantineLimiter.tryAcquire()) {
+            quarantineSuppressed.increment();
+            return;
+        }
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("deviceId", deviceId);
+        message.put("tenantId", device == null ? null : device.getTenantId());
+        message.put("productId", device == null ? null : device.getProductId());
+        message.put("time", time);
+        message.put("violations", violations);
+        message.put("payload", new String(record.source(), StandardCharsets.UTF_8));
+        try {
+            mqttOutputChannel.send(MessageBuilder
+                    .withPayload(JSON.toJSONString(message))
+                    .setHeader("mqtt_topic", properties.getQuarantineTopicPrefix() + deviceId)
+                    .setHeader("mqtt_retained", false)
+                    .setHeader("mqtt_qos", 0)
+                    .build());
+            quarantined.increment();
+        } catch (Exception e) {
+            quarantineFailed.increment();
+            log.warn("发布隔离数据失败，deviceId: {}", deviceId, e);
+        }
+    }
+
+    private static Map<String, Object> violation(String field, String type, String reason) {
+        Map<String, Object> violation = new LinkedHashMap<>();
+        violation.put("field", field);
+        violation.put("type", type);
+        violation.put("reason", reason);
+        return violation;
+    }
+
+    private static String typeName(byte type) {
+        switch (type) {
+            case TelemetryRecord.TYPE_DOUBLE:
+                return "double";
+            case TelemetryRecord.TYPE_LONG:
+                return "int";
+            case TelemetryRecord.TYPE_BOOLEAN:
+                return "bool";
+            case TelemetryRecord.TYPE_STRING:
+                return "text";
+            case TelemetryRecord.TYPE_RAW:
+                return "array";
+            default:
+                return "null";
+        }
+    }
+
+    /**
+     * 租户出现过的字段集合：按字段ID的位图，字段ID上限为 {@link FieldNames#MAX_FIELDS}
+     */
+    private static final class TenantFields {
+
+        private final AtomicLongArray bits = new AtomicLongArray(FieldNames.MAX_FIELDS >>> 6);
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * 记录字段；字段已出现过或被产品声明时总是接受，否则字段数达到上限时拒绝
+         */
+        private boolean admit(int fieldId, boolean declared, int maxFields) {
+            int slot = fieldId >>> 6;
+            long bit = 1L << fieldId;
+            while (true) {
+                long word = bits.get(slot);
+                if ((word & bit) != 0) {
+                    return true;
+                }
+                if (!declared && count.get() >= maxFields) {
+                    return false;
+                }
+                if (bits.compareAndSet(slot, word, word | bit)) {
+                    count.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.iot.device.mapper;
 
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
 import com.iot.device.domain.Device;
+import com.iot.device.dto.DeviceStatusUpdate;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
@@ -25,8 +28,23 @@ public interface DeviceMapper extends BaseMapper<Device> {
      */
     Integer countByGroupId(@Param("groupId") String groupId);
 
+    /**
+     * 按条件统计设备数量，最多数到limit条（在带LIMIT的子查询上COUNT，不做全量统计）
+     */
+    long countLimited(@Param(Constants.WRAPPER) Wrapper<Device> wrapper, @Param("limit") int limit);
+
     /**
      * 查询在线设备列表
      */
     List<Device> selectOnlineDevices(@Param("tenantId") String tenantId);
-}
\ No newline at end of file
+
+    /**
+     * 批量更新设备在线状态
+     */
+    int batchUpdateStatus(@Param("list") List<DeviceStatusUpdate> updates);
+
+    /**
+     * 批量插入设备（单条多行INSERT）
+     */
+    int batchInsert(@Param("list") List<Device> devices);
+}
@@ -0,0 +1,85 @@
+package com.iot.device.mqtt;
+
+import com.iot.device.config.MqttClusterProperties;
+import com.iot.device.config.MqttConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 集群模式下的附加接收连接
+ * <p>
+ * 第一个接收连接由 {@link MqttConfig#inbound} 声明为Bean，这里按 mqtt.cluster.inbound-clients
+ * 补齐其余连接，所有连接加入同一个共享订阅组，消息统一进入mqttInputChannel。
+ * 生命周期阶段与第一个连接保持一致，随容器启停。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Component
+public class MqttInboundClients implements SmartLifecycle {
+
+    private final MqttConfig mqttConfig;
+    private final MqttClusterProperties cluster;
+    private final MqttPahoMessageDrivenChannelAdapter primary;
+    private final ApplicationContext applicationContext;
+
+    private final List<MqttPahoMessageDrivenChannelAdapter> adapters = new ArrayList<>();
+    private volatile boolean running;
+
+    public MqttInboundClients(MqttConfig mqttConfig, MqttClusterProperties cluster,
+                              MqttPahoMessageDrivenChannelAdapter inbound, ApplicationContext applicationContext) {
+        this.mqttConfig = mqttConfig;
+        this.cluster = cluster;
+        this.primary = inbound;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void start() {
+        if (cluster.isEnabled()) {
+            for (int i = 1; i < cluster.getInboundClients(); i++) {
+                MqttPahoMessageDrivenChannelAdapter adapter = mqttConfig.createInboundAdapter(i, cluster);
+                adapter.setBeanName("inbound#" + i);
+                adapter.setBeanFactory(applicationContext);
+                adapter.setApplicationContext(applicationContext);
+                adapter.setApplicationEventPublisher(applicationContext);
+                adapter.afterPropertiesSet();
+                adapter.start();
+                adapters.add(adapter);
+            }
+            log.info("MQTT集群订阅已启动，节点: {}, 共享组: {}, 接收连接数: {}",
+                    cluster.getNodeId(), cluster.getShareGroup(), adapters.size() + 1);
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        for (MqttPahoMessageDrivenChannelAdapter adapter : adapters) {
+            try {
+                adapter.stop();
+                adapter.destroy();
+            } catch (Exception e) {
+                log.warn("关闭MQTT接收连接失败: {}", adapter.getComponentName(), e);
+            }
+        }
+        adapters.clear();
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return primary.getPhase();
+    }
+}
@@ -0,0 +1,71 @@
+package com.iot.device.mqtt;
+
+/**
+ * 服务订阅的MQTT主题
+ * <p>
+ * 订阅列表（MqttConfig）和消息分发（MqttMessageService）都以此为唯一来源，
+ * 新增主题族（网关子设备、OTA、告警等）时在这里增加一项并注册对应的处理器即可。
+ *
+ * @author IoT Platform
+ */
+public enum MqttTopic {
+
+    /**
+     * 设备数据上报：device/{deviceId}/data
+     */
+    DEVICE_DATA("device/+/data"),
+
+    /**
+     * 设备状态变化：device/{deviceId}/status
+     */
+    DEVICE_STATUS("device/+/status"),
+
+    /**
+     * Home Assistant控制命令：iot/device/{deviceId}/control
+     */
+    HA_DEVICE_CONTROL("iot/device/+/control"),
+
+    /**
+     * Home Assistant场景触发：iot/scene/{sceneId}/trigger
+     */
+    HA_SCENE_TRIGGER("iot/scene/+/trigger");
+
+    /**
+     * 主题过滤器
+     */
+    private final String filter;
+
+    /**
+     * 作为分片键（决定接入通道）的通配符下标
+     */
+    private final int shardSegment;
+
+    MqttTopic(String filter) {
+        this(filter, 0);
+    }
+
+    MqttTopic(String filter, int shardSegment) {
+        this.filter = filter;
+        this.shardSegment = shardSegment;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public int getShardSegment() {
+        return shardSegment;
+    }
+
+    /**
+     * 全部主题过滤器
+     */
+    public static String[] filters() {
+        MqttTopic[] topics = values();
+        String[] filters = new String[topics.length];
+        for (int i = 0; i < topics.length; i++) {
+            filters[i] = topics[i].filter;
+        }
+        return filters;
+    }
+}
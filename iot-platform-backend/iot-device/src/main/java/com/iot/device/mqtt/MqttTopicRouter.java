@@ -0,0 +1,196 @@
+package com.iot.device.mqtt;
+
+import java.util.Arrays;
+
+/**
+ * MQTT主题过滤器路由表（前缀树）
+ * <p>
+ * 注册时把过滤器按"/"拆分编译成前缀树，匹配时在原始topic字符串上按下标逐级比较，
+ * 不使用正则、不切分字符串；通配符（+ / #）匹配到的层级以偏移量记录，按需取出。
+ * 匹配优先级：精确层级 &gt; 单层通配符 + &gt; 多层通配符 #。
+ * <p>
+ * 注册需在启动阶段完成，之后只读，可被多个接收线程并发匹配。
+ *
+ * @author IoT Platform
+ */
+public class MqttTopicRouter<T> {
+
+    private final Node<T> root = new Node<>();
+
+    /**
+     * 注册主题过滤器
+     *
+     * @throws IllegalArgumentException 过滤器格式错误或重复注册
+     */
+    public void register(String filter, T target) {
+        String[] levels = filter.split("/", -1);
+        Node<T> node = root;
+        for (int i = 0; i < levels.length; i++) {
+            String level = levels[i];
+            if ("#".equals(level)) {
+                if (i != levels.length - 1) {
+                    throw new IllegalArgumentException("通配符#只能出现在最后一级: " + filter);
+                }
+                if (node.multiLevel != null) {
+                    throw new IllegalArgumentException("主题过滤器重复注册: " + filter);
+                }
+                node.multiLevel = target;
+                return;
+            }
+            if (level.indexOf('#') >= 0 || (level.indexOf('+') >= 0 && level.length() > 1)) {
+                throw new IllegalArgumentException("通配符必须独占一级: " + filter);
+            }
+            node = "+".equals(level) ? node.singleLevelChild() : node.child(level);
+        }
+        if (node.target != null) {
+            throw new IllegalArgumentException("主题过滤器重复注册: " + filter);
+        }
+        node.target = target;
+    }
+
+    /**
+     * 匹配topic，未命中返回null
+     */
+    public TopicMatch<T> match(String topic) {
+        int[] captures = new int[8];
+        return match(root, topic, 0, captures, 0, true);
+    }
+
+    private TopicMatch<T> match(Node<T> node, String topic, int start, int[] captures, int captured, boolean first) {
+        int end = topic.indexOf('/', start);
+        boolean last = end < 0;
+        if (last) {
+            end = topic.length();
+        }
+        // 以$开头的系统主题不参与首级通配符匹配
+        boolean wildcardAllowed = !(first && start < topic.length() && topic.charAt(start) == '$');
+
+        Node<T> literal = node.findChild(topic, start, end - start);
+        if (literal != null) {
+            TopicMatch<T> result = last
+                    ? accept(literal, topic, captures, captured)
+                    : match(literal, topic, end + 1, captures, captured, false);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        if (wildcardAllowed && node.singleLevel != null) {
+            int[] next = capture(captures, captured, start, end);
+            TopicMatch<T> result = last
+                    ? accept(node.singleLevel, topic, next, captured + 2)
+                    : match(node.singleLevel, topic, end + 1, next, captured + 2, false);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        if (wildcardAllowed && node.multiLevel != null) {
+            int[] next = capture(captures, captured, start, topic.length());
+            return new TopicMatch<>(node.multiLevel, topic, next, captured + 2);
+        }
+        return null;
+    }
+
+    private TopicMatch<T> accept(Node<T> node, String topic, int[] captures, int captured) {
+        if (node.target != null) {
+            return new TopicMatch<>(node.target, topic, captures, captured);
+        }
+        // "a/#" 同样匹配父级 "a"
+        if (node.multiLevel != null) {
+            return new TopicMatch<>(node.multiLevel, topic, captures, captured);
+        }
+        return null;
+    }
+
+    private static int[] capture(int[] captures, int captured, int start, int end) {
+        int[] next = captured + 2 > captures.length ? Arrays.copyOf(captures, captures.length * 2) : captures;
+        next[captured] = start;
+        next[captured + 1] = end;
+        return next;
+    }
+
+    private static final class Node<T> {
+
+        private String[] literals = new String[0];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Node<T>[] children = new Node[0];
+        private Node<T> singleLevel;
+        private T multiLevel;
+        private T target;
+
+        private Node<T> findChild(String topic, int start, int len) {
+            for (int i = 0; i < literals.length; i++) {
+                String literal = literals[i];
+                if (literal.length() == len && topic.regionMatches(start, literal, 0, len)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node<T> child(String level) {
+            for (int i = 0; i < literals.length; i++) {
+                if (literals[i].equals(level)) {
+                    return children[i];
+                }
+            }
+            Node<T> child = new Node<>();
+            literals = Arrays.copyOf(literals, literals.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            literals[literals.length - 1] = level;
+            children[children.length - 1] = child;
+            return child;
+        }
+
+        private Node<T> singleLevelChild() {
+            if (singleLevel == null) {
+                singleLevel = new Node<>();
+            }
+            return singleLevel;
+        }
+    }
+
+    /**
+     * 匹配结果
+     */
+    public static final class TopicMatch<T> {
+
+        private final T target;
+        private final String topic;
+        private final int[] captures;
+        private final int count;
+
+        private TopicMatch(T target, String topic, int[] captures, int captured) {
+            this.target = target;
+            this.topic = topic;
+            this.captures = captures;
+            this.count = captured / 2;
+        }
+
+        public T getTarget() {
+            return target;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        /**
+         * 通配符匹配到的层级数量
+         */
+        public int segmentCount() {
+            return count;
+        }
+
+        /**
+         * 第index个通配符匹配到的内容（#匹配剩余全部层级）
+         */
+        public String segment(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("通配符下标越界: " + index);
+            }
+            return topic.substring(captures[index * 2], captures[index * 2 + 1]);
+        }
+    }
+}
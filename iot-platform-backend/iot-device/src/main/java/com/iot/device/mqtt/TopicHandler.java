@@ -0,0 +1,18 @@
+package com.iot.device.mqtt;
+
+/**
+ * MQTT主题处理器
+ *
+ * @author IoT Platform
+ */
+@FunctionalInterface
+public interface TopicHandler {
+
+    /**
+     * 处理消息（在接入流水线工作线程中执行）
+     *
+     * @param match   主题匹配结果，可取出通配符层级（如deviceId）
+     * @param payload 原始消息体
+     */
+    void handle(MqttTopicRouter.TopicMatch<MqttTopic> match, byte[] payload);
+}
@@ -0,0 +1,33 @@
+package com.iot.device.search;
+
+import com.iot.device.domain.Device;
+
+/**
+ * 设备内存索引
+ * <p>
+ * 由 {@link DeviceIndexMaintainer} 在同一个后台线程中启动加载、并随设备变更更新，实现类只需处理读写并发
+ *
+ * @author IoT Platform
+ */
+public interface DeviceIndex {
+
+    /**
+     * 是否启用，全部索引都未启用时不加载设备
+     */
+    boolean isEnabled();
+
+    /**
+     * 加入或更新设备（设备可能已更换租户）
+     */
+    void put(Device device);
+
+    /**
+     * 删除设备
+     */
+    void remove(String deviceId);
+
+    /**
+     * 启动加载完成，之后的查询可以使用索引
+     */
+    void onLoaded();
+}
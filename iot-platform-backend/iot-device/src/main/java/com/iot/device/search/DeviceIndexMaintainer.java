@@ -0,0 +1,200 @@
+package com.iot.device.search;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.iot.common.redis.service.RedisService;
+import com.iot.device.cache.MetadataChangeEvent;
+import com.iot.device.config.MetadataCacheProperties;
+import com.iot.device.domain.Device;
+import com.iot.device.mapper.DeviceMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 设备内存索引维护
+ * <p>
+ * 启动后在后台线程按ID分页读取全部设备加载到各个 {@link DeviceIndex}；设备增删改的事务提交后、以及收到其他节点的
+ * 元数据失效通知后，在同一个线程中按ID重新读取这些设备并更新各索引（读不到的视为已删除），更新保持先后顺序。
+ * 本节点发出的变更也会经失效通知再收到一次，索引内容不变时各实现应跳过。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Component
+public class DeviceIndexMaintainer implements MessageListener {
+
+    private final DeviceMapper deviceMapper;
+    private final RedisService redisService;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MetadataCacheProperties cacheProperties;
+    private final List<DeviceIndex> indexes;
+
+    /**
+     * 启动加载时每次读取的设备数
+     */
+    @Value("${iot.device-index.load-page-size:5000}")
+    private int loadPageSize;
+
+    private ExecutorService executor;
+    private ChannelTopic topic;
+    private volatile boolean loaded;
+    private volatile long loadMillis;
+
+    private final LongAdder reindexed = new LongAdder();
+    private final LongAdder updateFailures = new LongAdder();
+
+    public DeviceIndexMaintainer(DeviceMapper deviceMapper, RedisService redisService,
+                                 RedisMessageListenerContainer listenerContainer,
+                                 MetadataCacheProperties cacheProperties, List<DeviceIndex> indexes) {
+        this.deviceMapper = deviceMapper;
+        this.redisService = redisService;
+        this.listenerContainer = listenerContainer;
+        this.cacheProperties = cacheProperties;
+        this.indexes = indexes.stream().filter(DeviceIndex::isEnabled).collect(Collectors.toList());
+    }
+
+    @PostConstruct
+    public void init() {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "device-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        topic = new ChannelTopic(cacheProperties.getInvalidationChannel());
+        listenerContainer.addMessageListener(this, topic);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            listenerContainer.removeMessageListener(this, topic);
+            executor.shutdownNow();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (executor != null) {
+            executor.execute(this::load);
+        }
+    }
+
+    /**
+     * 设备变更的事务提交后更新索引
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onChange(MetadataChangeEvent event) {
+        if (executor != null && event.getKind() == MetadataChangeEvent.Kind.DEVICE) {
+            executor.execute(() -> reindex(event.getIds()));
+        }
+    }
+
+    /**
+     * 收到元数据失效通知（其他节点的设备变更，也包括本节点自己发出的）
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisService.deserialize(message.getBody());
+        String text = body == null ? "" : body.toString();
+        String prefix = MetadataChangeEvent.Kind.DEVICE.name() + ":";
+        if (text.startsWith(prefix)) {
+            List<String> ids = Arrays.asList(text.substring(prefix.length()).split(","));
+            executor.execute(() -> reindex(ids));
+        }
+    }
+
+    /**
+     * 维护指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("indexes", indexes.stream().map(index -> index.getClass().getSimpleName()).collect(Collectors.toList()));
+        stats.put("loaded", loaded);
+        stats.put("loadMillis", loadMillis);
+        stats.put("reindexed", reindexed.sum());
+        stats.put("updateFailures", updateFailures.sum());
+        return stats;
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        String lastId = null;
+        int count = 0;
+        try {
+            while (true) {
+                LambdaQueryWrapper<Device> queryWrapper = new LambdaQueryWrapper<Device>()
+                        .select(Device::getId, Device::getTenantId, Device::getName, Device::getCode,
+                                Device::getLocation, Device::getTags)
+                        .gt(lastId != null, Device::getId, lastId)
+                        .orderByAsc(Device::getId)
+                        .last("LIMIT " + loadPageSize);
+                List<Device> page = deviceMapper.selectList(queryWrapper);
+                for (Device device : page) {
+                    for (DeviceIndex index : indexes) {
+                        index.put(device);
+                    }
+                }
+                count += page.size();
+                if (page.size() < loadPageSize) {
+                    break;
+                }
+                lastId = page.get(page.size() - 1).getId();
+            }
+            loadMillis = System.currentTimeMillis() - start;
+            loaded = true;
+            for (DeviceIndex index : indexes) {
+                index.onLoaded();
+            }
+            log.info("设备索引加载完成，设备数: {}, 耗时: {}ms", count, loadMillis);
+        } catch (Exception e) {
+            log.error("设备索引加载失败，相关查询使用数据库", e);
+        }
+    }
+
+    private void reindex(List<String> ids) {
+        try {
+            Map<String, Device> found = new HashMap<>();
+            for (Device device : deviceMapper.selectByIds(ids)) {
+                found.put(device.getId(), device);
+            }
+            for (String id : ids) {
+                Device device = found.get(id);
+                for (DeviceIndex index : indexes) {
+                    if (device == null) {
+                        index.remove(id);
+                    } else {
+                        index.put(device);
+                    }
+                }
+            }
+            reindexed.add(ids.size());
+        } catch (Exception e) {
+            // 索引与数据库可能不一致，直到下次该设备变更或节点重启
+            updateFailures.increment();
+            log.warn("更新设备索引失败，设备数: {}", ids.size(), e);
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.iot.device.search;
+
+import com.iot.device.domain.Device;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 设备关键字搜索索引
+ * <p>
+ * 按租户在内存中维护设备名称、编码、位置、标签的三字符n-gram倒排表（另对每个字段的前1、2个字符建前缀项），
+ * 关键字不少于3个字符时先在前缀项与各n-gram倒排表的交集中取前缀匹配，再在n-gram交集中取子串匹配，候选逐条核对原文；
+ * 1~2个字符时前缀匹配取自前缀项，子串匹配按从新到旧顺序扫描。结果前缀匹配在前、子串匹配在后，同类中新设备在前，
+ * 凑满limit条后即停止，只在匹配很少的短关键字上才会扫描租户的全部设备。
+ * <p>
+ * 加载和更新由 {@link DeviceIndexMaintainer} 负责，加载完成前 {@link #isReady()} 为false，调用方退回数据库LIKE查询。
+ * 修改后的设备作为新文档追加，旧文档标记删除，删除过半时重建该租户的索引。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Component
+public class DeviceSearchIndex implements DeviceIndex {
+
+    private static final char FIELD_SEPARATOR = '\u0001';
+    private static final long PREFIX1 = 1L << 48;
+    private static final long PREFIX2 = 2L << 48;
+
+    /**
+     * 是否启用搜索索引，关闭时关键字查询使用数据库LIKE
+     */
+    @Value("${iot.search-index.enabled:true}")
+    private boolean enabled;
+
+    private final Map<String, TenantIndex> tenants = new ConcurrentHashMap<>();
+    /**
+     * 设备ID -> 所在租户，用于设备删除或更换租户时定位旧文档
+     */
+    private final Map<String, String> deviceTenants = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onLoaded() {
+        ready = true;
+    }
+
+    /**
+     * 索引是否已加载完成
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 搜索设备
+     *
+     * @param limit 最多返回的设备数
+     * @return 匹配的设备ID，前缀匹配在前；索引未就绪时返回null
+     */
+    public List<String> search(String tenantId, String keyword, int limit) {
+        Matches matches = match(tenantId, keyword, limit);
+        return matches == null ? null : matches.ids;
+    }
+
+    /**
+     * 查找全部匹配的设备，用于替换列表查询中的LIKE条件
+     *
+     * @return 匹配的设备ID；索引未就绪或匹配数超过max时返回null
+     */
+    public List<String> findAll(String tenantId, String keyword, int max) {
+        Matches matches = match(tenantId, keyword, max);
+        return matches == null || matches.truncated ? null : matches.ids;
+    }
+
+    /**
+     * 索引指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        long documents = 0;
+        long deleted = 0;
+        long grams = 0;
+        long postings = 0;
+        for (TenantIndex index : tenants.values()) {
+            ReentrantReadWriteLock.ReadLock lock = index.lock.readLock();
+            lock.lock();
+            try {
+                documents += index.size - index.deleted;
+                deleted += index.deleted;
+                grams += index.postings.size();
+                for (Postings list : index.postings.values()) {
+                    postings += list.size;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        stats.put("tenants", tenants.size());
+        stats.put("documents", documents);
+        stats.put("deletedDocuments", deleted);
+        stats.put("grams", grams);
+        stats.put("postings", postings);
+        stats.put("searches", searches.sum());
+        stats.put("rebuilds", rebuilds.sum());
+        return stats;
+    }
+
+    private Matches match(String tenantId, String keyword, int limit) {
+        if (!ready) {
+            return null;
+        }
+        searches.increment();
+        String query = normalize(keyword);
+        TenantIndex index = tenants.get(tenantId == null ? "" : tenantId);
+        if (query.isEmpty() || index == null || limit <= 0) {
+            return new Matches(new ArrayList<>(), false);
+        }
+        ReentrantReadWriteLock.ReadLock lock = index.lock.readLock();
+        lock.lock();
+        try {
+            return query.length() >= 3 ? index.matchGrams(query, limit) : index.matchShort(query, limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Device device) {
+        String tenantId = device.getTenantId() == null ? "" : device.getTenantId();
+        String previous = deviceTenants.put(device.getId(), tenantId);
+        if (previous != null && !previous.equals(tenantId)) {
+            removeFrom(previous, device.getId());
+        }
+        TenantIndex index = tenants.computeIfAbsent(tenantId, id -> new TenantIndex());
+        index.put(device.getId(), text(device));
+        compact(index);
+    }
+
+    @Override
+    public void remove(String deviceId) {
+        String tenantId = deviceTenants.remove(deviceId);
+        if (tenantId != null) {
+            removeFrom(tenantId, deviceId);
+        }
+    }
+
+    private void removeFrom(String tenantId, String deviceId) {
+        TenantIndex index = tenants.get(tenantId);
+        if (index != null) {
+            index.remove(deviceId);
+            compact(index);
+        }
+    }
+
+    private void compact(TenantIndex index) {
+        if (index.deleted > 1000 && index.deleted * 2 > index.size) {
+            rebuild(index);
+        }
+    }
+
+    /**
+     * 只在索引线程中调用；新索引构建期间搜索仍使用旧索引
+     */
+    private void rebuild(TenantIndex index) {
+        TenantIndex rebuilt = new TenantIndex();
+        for (int doc = 0; doc < index.size; doc++) {
+            if (!index.deletedDocs.get(doc)) {
+                rebuilt.put(index.ids[doc], index.texts[doc]);
+            }
+        }
+        tenants.replaceAll((tenantId, current) -> current == index ? rebuilt : current);
+        rebuilds.increment();
+    }
+
+    private static String text(Device device) {
+        StringBuilder sb = new StringBuilder();
+        for (String field : new String[]{device.getName(), device.getCode(), device.getLocation(), device.getTags()}) {
+            if (sb.length() > 0) {
+                sb.append(FIELD_SEPARATOR);
+            }
+            sb.append(normalize(field));
+        }
+        return sb.toString();
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!Character.isISOControl(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    private static long gram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    private static long prefixKey(String text) {
+        return PREFIX2 | ((long) text.charAt(0) << 16) | text.charAt(1);
+    }
+
+    private static boolean isPrefix(String text, String query) {
+        if (text.startsWith(query)) {
+            return true;
+        }
+        for (int i = text.indexOf(FIELD_SEPARATOR); i >= 0; i = text.indexOf(FIELD_SEPARATOR, i + 1)) {
+            if (text.startsWith(query, i + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一个租户的索引：文档号按加入顺序递增，倒排表中的文档号有序
+     */
+    private static final class TenantIndex {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, Integer> docs = new HashMap<>();
+        private final Map<Long, Postings> postings = new HashMap<>();
+        private final BitSet deletedDocs = new BitSet();
+        private String[] ids = new String[16];
+        private String[] texts = new String[16];
+        private int size;
+        private int deleted;
+
+        private void put(String id, String text) {
+            ReentrantReadWriteLock.WriteLock lock = this.lock.writeLock();
+            lock.lock();
+            try {
+                Integer current = docs.get(id);
+                if (current != null) {
+                    if (texts[current].equals(text)) {
+                        return;
+                    }
+                    delete(current);
+                }
+                int doc = size++;
+                if (doc == ids.length) {
+                    ids = Arrays.copyOf(ids, doc * 2);
+                    texts = Arrays.copyOf(texts, doc * 2);
+                }
+                ids[doc] = id;
+                texts[doc] = text;
+                docs.put(id, doc);
+                int start = 0;
+                while (start <= text.length()) {
+                    int end = text.indexOf(FIELD_SEPARATOR, start);
+                    if (end < 0) {
+                        end = text.length();
+                    }
+                    if (end > start) {
+                        add(PREFIX1 | text.charAt(start), doc);
+                    }
+                    if (end - start >= 2) {
+                        add(prefixKey(text.substring(start, start + 2)), doc);
+                    }
+                    for (int i = start; i + 3 <= end; i++) {
+                        add(gram(text, i), doc);
+                    }
+                    start = end + 1;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove(String id) {
+            ReentrantReadWriteLock.WriteLock lock = this.lock.writeLock();
+            lock.lock();
+            try {
+                Integer current = docs.remove(id);
+                if (current != null) {
+                    delete(current);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void delete(int doc) {
+            deletedDocs.set(doc);
+            texts[doc] = "";
+            deleted++;
+        }
+
+        private void add(long key, int doc) {
+            Postings list = postings.get(key);
+            if (list == null) {
+                list = new Postings();
+                postings.put(key, list);
+            }
+            list.add(doc);
+        }
+
+        /**
+         * 三字符及以上：先在前缀项与各n-gram倒排表的交集中取前缀匹配，不足时再在n-gram交集中取子串匹配
+         */
+        private Matches matchGrams(String query, int limit) {
+            Map<Long, Postings> lists = new HashMap<>();
+            for (int i = 0; i + 3 <= query.length(); i++) {
+                long key = gram(query, i);
+                Postings list = postings.get(key);
+                if (list == null) {
+                    return new Matches(new ArrayList<>(), false);
+                }
+                lists.put(key, list);
+            }
+            Collector collector = new Collector(limit);
+            Postings prefixed = postings.get(prefixKey(query));
+            if (prefixed != null) {
+                List<Postings> withPrefix = new ArrayList<>(lists.values());
+                withPrefix.add(prefixed);
+                intersect(withPrefix, query, collector, true);
+            }
+            if (!collector.full()) {
+                intersect(lists.values(), query, collector, false);
+            }
+            return collector.result(ids);
+        }
+
+        /**
+         * 一两个字符：前缀项取前缀匹配，不足时从新到旧扫描补充子串匹配
+         */
+        private Matches matchShort(String query, int limit) {
+            Collector collector = new Collector(limit);
+            Postings prefixed = postings.get(query.length() == 1 ? PREFIX1 | query.charAt(0) : prefixKey(query));
+            if (prefixed != null) {
+                for (int i = prefixed.size - 1; i >= 0 && !collector.full(); i--) {
+                    int doc = prefixed.docs[i];
+                    if (!deletedDocs.get(doc)) {
+                        collector.offer(doc, texts[doc], query, true);
+                    }
+                }
+            }
+            for (int doc = size - 1; doc >= 0 && !collector.full(); doc--) {
+                if (!deletedDocs.get(doc)) {
+                    collector.offer(doc, texts[doc], query, false);
+                }
+            }
+            return collector.result(ids);
+        }
+
+        /**
+         * 从最短的倒排表倒序（新文档在前）遍历，其余表二分查找
+         */
+        private void intersect(Collection<Postings> lists, String query, Collector collector, boolean prefix) {
+            Postings[] sorted = lists.toArray(new Postings[0]);
+            Arrays.sort(sorted, (a, b) -> Integer.compare(a.size, b.size));
+            Postings shortest = sorted[0];
+            for (int i = shortest.size - 1; i >= 0 && !collector.full(); i--) {
+                int doc = shortest.docs[i];
+                if (deletedDocs.get(doc)) {
+                    continue;
+                }
+                boolean all = true;
+                for (int j = 1; j < sorted.length && all; j++) {
+                    all = sorted[j].contains(doc);
+                }
+                if (all) {
+                    collector.offer(doc, texts[doc], query, prefix);
+                }
+            }
+        }
+    }
+
+    /**
+     * 有序文档号列表
+     */
+    private static final class Postings {
+
+        private int[] docs = new int[4];
+        private int size;
+
+        private void add(int doc) {
+            if (size > 0 && docs[size - 1] == doc) {
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+
+        private boolean contains(int doc) {
+            return Arrays.binarySearch(docs, 0, size, doc) >= 0;
+        }
+    }
+
+    /**
+     * 收集匹配结果：先收集前缀匹配再收集子串匹配，合计超过limit条即可结束（此时结果被截断）
+     */
+    private static final class Collector {
+
+        private final int limit;
+        private final List<Integer> prefixed = new ArrayList<>();
+        private final List<Integer> contained = new ArrayList<>();
+
+        private Collector(int limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * @param prefix true时只接受前缀匹配，false时只接受非前缀的子串匹配（前缀匹配已在前一轮收集）
+         */
+        private void offer(int doc, String text, String query, boolean prefix) {
+            if (isPrefix(text, query)) {
+                if (prefix) {
+                    prefixed.add(doc);
+                }
+            } else if (!prefix && text.contains(query)) {
+                contained.add(doc);
+            }
+        }
+
+        private boolean full() {
+            return prefixed.size() + contained.size() > limit;
+        }
+
+        private Matches result(String[] ids) {
+            List<String> result = new ArrayList<>(Math.min(limit, prefixed.size() + contained.size()));
+            for (int doc : prefixed) {
+                if (result.size() < limit) {
+                    result.add(ids[doc]);
+                }
+            }
+            for (int doc : contained) {
+                if (result.size() < limit) {
+                    result.add(ids[doc]);
+                }
+            }
+            return new Matches(result, full());
+        }
+    }
+
+    private static final class Matches {
+
+        private final List<String> ids;
+        private final boolean truncated;
+
+        private Matches(List<String> ids, boolean truncated) {
+            this.ids = ids;
+            this.truncated = truncated;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.iot.device.search;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONException;
+import com.alibaba.fastjson2.JSONObject;
+import com.iot.device.domain.Device;
+import com.iot.device.dto.TagSelection;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 设备标签索引
+ * <p>
+ * 按租户为每个标签名、每个标签值各维护一个RoaringBitmap（位为租户内的文档号），{@link TagSelector} 表达式
+ * 直接在位图上求交、并、差，选择数千台设备不需要查询数据库。加载和更新由 {@link DeviceIndexMaintainer} 负责，
+ * 删除设备的文档号回收复用，位图保持紧凑。
+ * <p>
+ * tags 字段支持三种写法：JSON对象 {@code {"floor":"3","type":"thermostat"}}（值为数组时每个元素都是一个值）、
+ * JSON数组 {@code ["floor=3","outdoor"]}、逗号分隔 {@code floor=3,outdoor}；没有值的标签只能按标签名匹配。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Component
+public class DeviceTagIndex implements DeviceIndex {
+
+    /**
+     * 是否启用标签索引
+     */
+    @Value("${iot.tag-index.enabled:true}")
+    private boolean enabled;
+
+    private final Map<String, TenantTags> tenants = new ConcurrentHashMap<>();
+    /**
+     * 设备ID -> 所在租户
+     */
+    private final Map<String, String> deviceTenants = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    private final LongAdder selects = new LongAdder();
+    private final LongAdder tagParseFailures = new LongAdder();
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onLoaded() {
+        ready = true;
+    }
+
+    /**
+     * 索引是否已加载完成
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void put(Device device) {
+        String tenantId = device.getTenantId() == null ? "" : device.getTenantId();
+        String previous = deviceTenants.put(device.getId(), tenantId);
+        if (previous != null && !previous.equals(tenantId)) {
+            TenantTags old = tenants.get(previous);
+            if (old != null) {
+                old.remove(device.getId());
+            }
+        }
+        tenants.computeIfAbsent(tenantId, id -> new TenantTags()).put(device.getId(), terms(device.getTags()));
+    }
+
+    @Override
+    public void remove(String deviceId) {
+        String tenantId = deviceTenants.remove(deviceId);
+        TenantTags index = tenantId == null ? null : tenants.get(tenantId);
+        if (index != null) {
+            index.remove(deviceId);
+        }
+    }
+
+    /**
+     * 按标签表达式选择设备
+     *
+     * @param limit 最多返回的设备ID数，总数不受限制
+     * @return 选择结果；索引未就绪时返回null
+     * @throws IllegalArgumentException 表达式格式错误
+     */
+    public TagSelection select(String tenantId, String expression, int limit) {
+        TagSelector selector = TagSelector.parse(expression);
+        if (!ready) {
+            return null;
+        }
+        selects.increment();
+        TagSelection selection = new TagSelection();
+        selection.setExpression(expression);
+        TenantTags index = tenants.get(tenantId == null ? "" : tenantId);
+        if (index == null) {
+            selection.setDeviceIds(new ArrayList<>());
+            return selection;
+        }
+        ReentrantReadWriteLock.ReadLock lock = index.lock.readLock();
+        lock.lock();
+        try {
+            RoaringBitmap matched = selector.evaluate(index);
+            int total = matched.getCardinality();
+            List<String> deviceIds = new ArrayList<>(Math.min(total, limit));
+            IntIterator docs = matched.getIntIterator();
+            while (docs.hasNext() && deviceIds.size() < limit) {
+                deviceIds.add(index.ids.get(docs.next()));
+            }
+            selection.setTotal(total);
+            selection.setDeviceIds(deviceIds);
+            selection.setTruncated(total > deviceIds.size());
+            return selection;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 索引指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        long devices = 0;
+        long terms = 0;
+        long bytes = 0;
+        for (TenantTags index : tenants.values()) {
+            ReentrantReadWriteLock.ReadLock lock = index.lock.readLock();
+            lock.lock();
+            try {
+                devices += index.all.getLongCardinality();
+                terms += index.postings.size();
+                for (RoaringBitmap bitmap : index.postings.values()) {
+                    bytes += bitmap.getLongSizeInBytes();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        stats.put("tenants", tenants.size());
+        stats.put("devices", devices);
+        stats.put("terms", terms);
+        stats.put("bitmapBytes", bytes);
+        stats.put("selects", selects.sum());
+        stats.put("tagParseFailures", tagParseFailures.sum());
+        return stats;
+    }
+
+    /**
+     * 解析设备标签为标签项集合（标签名、标签名+值）
+     */
+    private Set<String> terms(String tags) {
+        Set<String> terms = new HashSet<>();
+        String text = tags == null ? "" : tags.trim();
+        if (text.isEmpty()) {
+            return terms;
+        }
+        try {
+            if (text.startsWith("{")) {
+                JSONObject object = JSON.parseObject(text);
+                for (Map.Entry<String, Object> entry : object.entrySet()) {
+                    Object value = entry.getValue();
+                    if (value instanceof JSONArray) {
+                        for (Object item : (JSONArray) value) {
+                            addTerm(terms, entry.getKey(), item == null ? null : item.toString());
+                        }
+                    } else {
+                        addTerm(terms, entry.getKey(), value == null ? null : value.toString());
+                    }
+                }
+                return terms;
+            }
+            if (text.startsWith("[")) {
+                for (Object item : JSON.parseArray(text)) {
+                    if (item != null) {
+                        addToken(terms, item.toString());
+                    }
+                }
+                return terms;
+            }
+        } catch (JSONException e) {
+            tagParseFailures.increment();
+            return terms;
+        }
+        for (String token : text.split(",")) {
+            addToken(terms, token);
+        }
+        return terms;
+    }
+
+    private static void addToken(Set<String> terms, String token) {
+        int separator = token.indexOf('=');
+        if (separator < 0) {
+            addTerm(terms, token, null);
+        } else {
+            addTerm(terms, token.substring(0, separator), token.substring(separator + 1));
+        }
+    }
+
+    private static void addTerm(Set<String> terms, String key, String value) {
+        if (key == null || key.trim().isEmpty()) {
+            return;
+        }
+        terms.add(TagSelector.term(key));
+        if (value != null && !value.trim().isEmpty()) {
+            terms.add(TagSelector.term(key, value));
+        }
+    }
+
+    /**
+     * 一个租户的标签位图
+     */
+    private static final class TenantTags implements TagSelector.Source {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, Integer> docs = new HashMap<>();
+        private final List<String> ids = new ArrayList<>();
+        private final List<Set<String>> docTerms = new ArrayList<>();
+        private final Deque<Integer> freeDocs = new ArrayDeque<>();
+        private final Map<String, RoaringBitmap> postings = new HashMap<>();
+        private final RoaringBitmap all = new RoaringBitmap();
+
+        @Override
+        public RoaringBitmap all() {
+            return all;
+        }
+
+        @Override
+        public RoaringBitmap get(String term) {
+            return postings.get(term);
+        }
+
+        private void put(String id, Set<String> terms) {
+            ReentrantReadWriteLock.WriteLock lock = this.lock.writeLock();
+            lock.lock();
+            try {
+                Integer doc = docs.get(id);
+                if (doc == null) {
+                    doc = freeDocs.isEmpty() ? ids.size() : freeDocs.pop();
+                    if (doc == ids.size()) {
+                        ids.add(id);
+                        docTerms.add(Collections.emptySet());
+                    } else {
+                        ids.set(doc, id);
+                    }
+                    docs.put(id, doc);
+                    all.add(doc);
+                }
+                Set<String> previous = docTerms.get(doc);
+                if (previous.equals(terms)) {
+                    return;
+                }
+                for (String term : previous) {
+                    if (!terms.contains(term)) {
+                        unset(term, doc);
+                    }
+                }
+                for (String term : terms) {
+                    if (!previous.contains(term)) {
+                        postings.computeIfAbsent(term, t -> new RoaringBitmap()).add(doc);
+                    }
+                }
+                docTerms.set(doc, terms);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove(String id) {
+            ReentrantReadWriteLock.WriteLock lock = this.lock.writeLock();
+            lock.lock();
+            try {
+                Integer doc = docs.remove(id);
+                if (doc == null) {
+                    return;
+                }
+                for (String term : docTerms.get(doc)) {
+                    unset(term, doc);
+                }
+                docTerms.set(doc, Collections.emptySet());
+                ids.set(doc, null);
+                all.remove(doc);
+                freeDocs.push(doc);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void unset(String term, int doc) {
+            RoaringBitmap bitmap = postings.get(term);
+            if (bitmap != null) {
+                bitmap.remove(doc);
+                if (bitmap.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+}
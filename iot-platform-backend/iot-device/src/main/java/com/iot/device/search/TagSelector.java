@@ -0,0 +1,408 @@
+package com.iot.device.search;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 设备标签表达式
+ * <p>
+ * 语法（关键字不区分大小写，标签名和值不区分大小写，含空格或特殊字符的值用单引号或双引号括起）：
+ * <pre>
+ * expr    := and ( OR and )*
+ * and     := unary ( AND unary )*
+ * unary   := NOT unary | primary
+ * primary := '(' expr ')' | key | key '=' value | key '!=' value | key [NOT] IN '(' value ( ',' value )* ')'
+ * </pre>
+ * 单独的 key 表示设备有该标签；{@code key != value} 和 {@code key NOT IN (...)} 也匹配没有该标签的设备。
+ * 例：{@code floor=3 AND type IN (thermostat, sensor) AND NOT disabled}
+ *
+ * @author IoT Platform
+ */
+public final class TagSelector {
+
+    private static final int MAX_LENGTH = 2000;
+    private static final int MAX_TERMS = 100;
+    private static final char VALUE_SEPARATOR = '\u0000';
+
+    private final String expression;
+    private final Node root;
+
+    private TagSelector(String expression, Node root) {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * 解析表达式
+     *
+     * @throws IllegalArgumentException 表达式格式错误
+     */
+    public static TagSelector parse(String expression) {
+        if (expression == null || expression.trim().isEmpty()) {
+            throw new IllegalArgumentException("表达式为空");
+        }
+        if (expression.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("表达式长度超过" + MAX_LENGTH);
+        }
+        Parser parser = new Parser(tokenize(expression));
+        Node root = parser.or();
+        if (parser.peek().type != TokenType.END) {
+            throw new IllegalArgumentException("多余的内容: " + parser.peek().text);
+        }
+        return new TagSelector(expression, root);
+    }
+
+    /**
+     * 计算匹配的文档集合；返回的位图可能是索引中的共享对象，调用方不得修改
+     */
+    public RoaringBitmap evaluate(Source source) {
+        return root.eval(source);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * 标签项：只有标签名时表示有该标签
+     */
+    static String term(String key) {
+        return normalize(key);
+    }
+
+    /**
+     * 标签项：标签名和值
+     */
+    static String term(String key, String value) {
+        return normalize(key) + VALUE_SEPARATOR + normalize(value);
+    }
+
+    private static String normalize(String text) {
+        return text.trim().toLowerCase();
+    }
+
+    /**
+     * 标签位图来源
+     */
+    public interface Source {
+
+        /**
+         * 全部文档
+         */
+        RoaringBitmap all();
+
+        /**
+         * 标签项对应的文档，不存在时返回null
+         */
+        RoaringBitmap get(String term);
+    }
+
+    private interface Node {
+        RoaringBitmap eval(Source source);
+    }
+
+    private static final class Term implements Node {
+
+        private final String term;
+
+        private Term(String term) {
+            this.term = term;
+        }
+
+        @Override
+        public RoaringBitmap eval(Source source) {
+            RoaringBitmap bitmap = source.get(term);
+            return bitmap == null ? new RoaringBitmap() : bitmap;
+        }
+    }
+
+    private static final class Not implements Node {
+
+        private final Node operand;
+
+        private Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public RoaringBitmap eval(Source source) {
+            return RoaringBitmap.andNot(source.all(), operand.eval(source));
+        }
+    }
+
+    private static final class And implements Node {
+
+        private final List<Node> operands;
+
+        private And(List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        public RoaringBitmap eval(Source source) {
+            // 求交集从基数最小的开始，结果为空时提前结束；NOT条件最后用差集去掉，不求补集
+            List<RoaringBitmap> included = new ArrayList<>(operands.size());
+            List<Node> excluded = new ArrayList<>();
+            for (Node operand : operands) {
+                if (operand instanceof Not) {
+                    excluded.add(((Not) operand).operand);
+                    continue;
+                }
+                RoaringBitmap bitmap = operand.eval(source);
+                if (bitmap.isEmpty()) {
+                    return bitmap;
+                }
+                included.add(bitmap);
+            }
+            RoaringBitmap result;
+            if (included.isEmpty()) {
+                result = source.all();
+            } else {
+                included.sort(Comparator.comparingInt(RoaringBitmap::getCardinality));
+                result = included.get(0);
+                for (int i = 1; i < included.size() && !result.isEmpty(); i++) {
+                    result = RoaringBitmap.and(result, included.get(i));
+                }
+            }
+            for (int i = 0; i < excluded.size() && !result.isEmpty(); i++) {
+                result = RoaringBitmap.andNot(result, excluded.get(i).eval(source));
+            }
+            return result;
+        }
+    }
+
+    private static final class Or implements Node {
+
+        private final List<Node> operands;
+
+        private Or(List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        public RoaringBitmap eval(Source source) {
+            RoaringBitmap[] bitmaps = new RoaringBitmap[operands.size()];
+            for (int i = 0; i < bitmaps.length; i++) {
+                bitmaps[i] = operands.get(i).eval(source);
+            }
+            return FastAggregation.or(bitmaps);
+        }
+    }
+
+    private enum TokenType {
+        WORD,
+        STRING,
+        LPAREN,
+        RPAREN,
+        COMMA,
+        EQ,
+        NE,
+        END
+    }
+
+    private static final class Token {
+
+        private final TokenType type;
+        private final String text;
+
+        private Token(TokenType type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+
+        private boolean isKeyword(String keyword) {
+            return type == TokenType.WORD && text.equalsIgnoreCase(keyword);
+        }
+    }
+
+    private static List<Token> tokenize(String expression) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int length = expression.length();
+        while (i < length) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(') {
+                tokens.add(new Token(TokenType.LPAREN, "("));
+                i++;
+            } else if (c == ')') {
+                tokens.add(new Token(TokenType.RPAREN, ")"));
+                i++;
+            } else if (c == ',') {
+                tokens.add(new Token(TokenType.COMMA, ","));
+                i++;
+            } else if (c == '=') {
+                tokens.add(new Token(TokenType.EQ, "="));
+                i++;
+            } else if (c == '!' && i + 1 < length && expression.charAt(i + 1) == '=') {
+                tokens.add(new Token(TokenType.NE, "!="));
+                i += 2;
+            } else if (c == '\'' || c == '"') {
+                StringBuilder sb = new StringBuilder();
+                int j = i + 1;
+                while (true) {
+                    if (j >= length) {
+                        throw new IllegalArgumentException("引号未闭合");
+                    }
+                    char d = expression.charAt(j);
+                    if (d == c) {
+                        // 连续两个引号表示引号本身
+                        if (j + 1 < length && expression.charAt(j + 1) == c) {
+                            sb.append(c);
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    sb.append(d);
+                    j++;
+                }
+                tokens.add(new Token(TokenType.STRING, sb.toString()));
+                i = j + 1;
+            } else {
+                int j = i;
+                while (j < length && isWordChar(expression.charAt(j))) {
+                    j++;
+                }
+                if (j == i) {
+                    throw new IllegalArgumentException("无法识别的字符: " + c);
+                }
+                tokens.add(new Token(TokenType.WORD, expression.substring(i, j)));
+                i = j;
+            }
+        }
+        tokens.add(new Token(TokenType.END, "结尾"));
+        return tokens;
+    }
+
+    private static boolean isWordChar(char c) {
+        return !Character.isWhitespace(c) && c != '(' && c != ')' && c != ',' && c != '=' && c != '!'
+                && c != '\'' && c != '"';
+    }
+
+    private static final class Parser {
+
+        private final List<Token> tokens;
+        private int position;
+        private int terms;
+
+        private Parser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        private Token peek() {
+            return tokens.get(position);
+        }
+
+        private Token next() {
+            return tokens.get(position++);
+        }
+
+        private Node or() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(and());
+            while (peek().isKeyword("OR")) {
+                next();
+                operands.add(and());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        private Node and() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(unary());
+            while (peek().isKeyword("AND")) {
+                next();
+                operands.add(unary());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        private Node unary() {
+            if (peek().isKeyword("NOT")) {
+                next();
+                return new Not(unary());
+            }
+            return primary();
+        }
+
+        private Node primary() {
+            Token token = next();
+            if (token.type == TokenType.LPAREN) {
+                Node node = or();
+                expect(TokenType.RPAREN, ")");
+                return node;
+            }
+            if ((token.type != TokenType.WORD && token.type != TokenType.STRING) || isReserved(token)) {
+                throw new IllegalArgumentException("此处应为标签名: " + token.text);
+            }
+            String key = token.text;
+            Token operator = peek();
+            if (operator.type == TokenType.EQ) {
+                next();
+                return term(key, value());
+            }
+            if (operator.type == TokenType.NE) {
+                next();
+                return new Not(term(key, value()));
+            }
+            if (operator.isKeyword("IN")) {
+                next();
+                return in(key);
+            }
+            if (operator.isKeyword("NOT") && position + 1 < tokens.size() && tokens.get(position + 1).isKeyword("IN")) {
+                position += 2;
+                return new Not(in(key));
+            }
+            return count(new Term(TagSelector.term(key)));
+        }
+
+        private Node in(String key) {
+            expect(TokenType.LPAREN, "(");
+            List<Node> operands = new ArrayList<>();
+            operands.add(term(key, value()));
+            while (peek().type == TokenType.COMMA) {
+                next();
+                operands.add(term(key, value()));
+            }
+            expect(TokenType.RPAREN, ")");
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        private String value() {
+            Token token = next();
+            if (token.type != TokenType.WORD && token.type != TokenType.STRING) {
+                throw new IllegalArgumentException("此处应为标签值: " + token.text);
+            }
+            return token.text;
+        }
+
+        private Node term(String key, String value) {
+            return count(new Term(TagSelector.term(key, value)));
+        }
+
+        private Node count(Node node) {
+            if (++terms > MAX_TERMS) {
+                throw new IllegalArgumentException("标签条件超过" + MAX_TERMS + "个");
+            }
+            return node;
+        }
+
+        private void expect(TokenType type, String text) {
+            Token token = next();
+            if (token.type != type) {
+                throw new IllegalArgumentException("此处应为 " + text + "，实际为: " + token.text);
+            }
+        }
+
+        private static boolean isReserved(Token token) {
+            return token.isKeyword("AND") || token.isKeyword("OR") || token.isKeyword("NOT") || token.isKeyword("IN");
+        }
+    }
+}
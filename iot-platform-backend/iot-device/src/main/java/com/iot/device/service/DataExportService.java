@@ -0,0 +1,487 @@
+package com.iot.device.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.iot.common.core.exception.BusinessException;
+import com.iot.device.config.ExportProperties;
+import com.iot.device.dto.DeviceBatchQuery;
+import com.iot.device.dto.ExportJob;
+import com.iot.device.tsdb.CsvRecordWriter;
+import com.iot.device.tsdb.QueryRange;
+import com.iot.device.tsdb.archive.ArchiveStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 设备数据导出服务
+ * <p>
+ * 导出时间范围按chunkMs切分为分片，分片在共享线程池中并行执行：每个分片一次流式查询，结果逐行写入
+ * 独立的gzip CSV分片文件，写完后原子重命名，因此内存占用与导出规模无关。已完成的分片文件即断点，
+ * 任务失败、取消或服务重启后续传只执行缺失的分片。全部分片完成后，把表头和各分片按顺序拼接为一个文件
+ * （多个gzip成员顺序拼接仍是合法的gzip文件，无需重新压缩）。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Service
+public class DataExportService {
+
+    private static final String JOB_FILE = "job.json";
+    private static final String DEVICES_FILE = "devices.txt";
+    private static final String EXPORT_FILE = "export.csv.gz";
+    private static final String FORMAT = "csv.gz";
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    private final ObjectProvider<InfluxDbService> influxDbServiceProvider;
+    private final DeviceService deviceService;
+    private final ExportProperties properties;
+    private final ArchiveStore archiveStore;
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, RunningJob> running = new ConcurrentHashMap<>();
+    private Path baseDir;
+    private ExecutorService workers;
+    private ScheduledExecutorService cleaner;
+
+    public DataExportService(ObjectProvider<InfluxDbService> influxDbServiceProvider, DeviceService deviceService,
+                             ExportProperties properties, ArchiveStore archiveStore) {
+        this.influxDbServiceProvider = influxDbServiceProvider;
+        this.deviceService = deviceService;
+        this.properties = properties;
+        this.archiveStore = archiveStore;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        baseDir = Paths.get(properties.getDir()).toAbsolutePath();
+        Files.createDirectories(baseDir);
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(properties.getParallelism(), r -> {
+            Thread thread = new Thread(r, "export-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "export-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleWithFixedDelay(this::cleanExpired, 1, 1, TimeUnit.HOURS);
+
+        int resumed = 0;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(baseDir, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                Path jobFile = dir.resolve(JOB_FILE);
+                if (!Files.exists(jobFile)) {
+                    continue;
+                }
+                ExportJob job = JSON.parseObject(new String(Files.readAllBytes(jobFile), StandardCharsets.UTF_8),
+                        ExportJob.class);
+                jobs.put(job.getJobId(), job);
+                if (ExportJob.STATUS_RUNNING.equals(job.getStatus())) {
+                    if (properties.isResumeOnStartup()) {
+                        start(job);
+                        resumed++;
+                    } else {
+                        finish(job, ExportJob.STATUS_FAILED, "服务重启，任务中断");
+                    }
+                }
+            }
+        }
+        log.info("数据导出服务启动，目录: {}, 已有任务数: {}, 续传任务数: {}", baseDir, jobs.size(), resumed);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 运行中的任务保持RUNNING状态，下次启动时续传
+        running.values().forEach(run -> run.cancelled = true);
+        workers.shutdownNow();
+        cleaner.shutdownNow();
+    }
+
+    /**
+     * 创建导出任务
+     */
+    public ExportJob createJob(String tenantId, DeviceBatchQuery query) {
+        influx();
+        if (!StringUtils.hasText(query.getStartTime()) || !StringUtils.hasText(query.getEndTime())) {
+            throw new BusinessException("开始时间和结束时间不能为空");
+        }
+        QueryRange range = QueryRange.resolve(query.getStartTime(), query.getEndTime());
+        if (range.getMillis() <= 0) {
+            throw new BusinessException("结束时间必须晚于开始时间");
+        }
+        if (range.getMillis() > properties.getMaxRangeDays() * DAY_MILLIS) {
+            throw new BusinessException("导出时间跨度不能超过" + properties.getMaxRangeDays() + "天");
+        }
+        // 导出直接读取InfluxDB，已归档删除的时间段会导出空洞
+        archiveStore.requireUnarchived(range.getStart().toEpochMilli());
+        if (running.size() >= properties.getMaxRunningJobs()) {
+            throw new BusinessException("运行中的导出任务已达上限，请稍后再试");
+        }
+        List<String> deviceIds = deviceService.resolveDeviceIds(tenantId, query);
+        if (deviceIds.isEmpty()) {
+            throw new BusinessException("没有符合条件的设备");
+        }
+
+        ExportJob job = new ExportJob();
+        job.setJobId(UUID.randomUUID().toString().replace("-", ""));
+        job.setTenantId(tenantId);
+        job.setDeviceCount(deviceIds.size());
+        job.setStartTime(range.getStart().toString());
+        job.setEndTime(range.getStop().toString());
+        job.setFormat(FORMAT);
+        job.setTotalChunks((int) ((range.getMillis() + properties.getChunkMs() - 1) / properties.getChunkMs()));
+        job.setCreateTime(System.currentTimeMillis());
+        try {
+            Path dir = jobDir(job);
+            Files.createDirectories(dir);
+            Files.write(dir.resolve(DEVICES_FILE), deviceIds, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new BusinessException("创建导出任务失败: " + e.getMessage());
+        }
+        jobs.put(job.getJobId(), job);
+        start(job);
+        log.info("创建导出任务，jobId: {}, 设备数: {}, 分片数: {}", job.getJobId(), deviceIds.size(), job.getTotalChunks());
+        return snapshot(job);
+    }
+
+    /**
+     * 查询任务进度
+     */
+    public ExportJob getJob(String tenantId, String jobId) {
+        return snapshot(requireJob(tenantId, jobId));
+    }
+
+    /**
+     * 租户的全部任务，按创建时间倒序
+     */
+    public List<ExportJob> listJobs(String tenantId) {
+        return jobs.values().stream()
+                .filter(job -> tenantId.equals(job.getTenantId()))
+                .sorted(Comparator.comparingLong(ExportJob::getCreateTime).reversed())
+                .map(this::snapshot)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 续传失败或已取消的任务，只执行缺失的分片
+     */
+    public ExportJob resumeJob(String tenantId, String jobId) {
+        ExportJob job = requireJob(tenantId, jobId);
+        influx();
+        synchronized (job) {
+            if (!ExportJob.STATUS_FAILED.equals(job.getStatus()) && !ExportJob.STATUS_CANCELLED.equals(job.getStatus())) {
+                throw new BusinessException("只能续传失败或已取消的任务");
+            }
+            if (running.size() >= properties.getMaxRunningJobs()) {
+                throw new BusinessException("运行中的导出任务已达上限，请稍后再试");
+            }
+            start(job);
+        }
+        log.info("续传导出任务，jobId: {}, 已完成分片: {}/{}", jobId, job.getCompletedChunks(), job.getTotalChunks());
+        return snapshot(job);
+    }
+
+    /**
+     * 取消运行中的任务，已完成的分片保留用于续传
+     */
+    public ExportJob cancelJob(String tenantId, String jobId) {
+        ExportJob job = requireJob(tenantId, jobId);
+        RunningJob run = running.get(jobId);
+        if (run == null) {
+            throw new BusinessException("任务未在运行");
+        }
+        stop(run);
+        finish(job, ExportJob.STATUS_CANCELLED, null);
+        log.info("取消导出任务，jobId: {}", jobId);
+        return snapshot(job);
+    }
+
+    /**
+     * 删除任务及其文件
+     */
+    public void deleteJob(String tenantId, String jobId) {
+        ExportJob job = requireJob(tenantId, jobId);
+        RunningJob run = running.get(jobId);
+        if (run != null) {
+            stop(run);
+            finish(job, ExportJob.STATUS_CANCELLED, null);
+        }
+        jobs.remove(jobId);
+        deleteDir(jobDir(job));
+        log.info("删除导出任务，jobId: {}", jobId);
+    }
+
+    /**
+     * 已完成任务的导出文件
+     */
+    public Path getExportFile(String tenantId, String jobId) {
+        ExportJob job = requireJob(tenantId, jobId);
+        if (!ExportJob.STATUS_COMPLETED.equals(job.getStatus())) {
+            throw new BusinessException("导出任务尚未完成");
+        }
+        return jobDir(job).resolve(EXPORT_FILE);
+    }
+
+    private void start(ExportJob job) {
+        List<String> deviceIds;
+        try {
+            deviceIds = Files.readAllLines(jobDir(job).resolve(DEVICES_FILE), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            job.setStatus(ExportJob.STATUS_RUNNING);
+            finish(job, ExportJob.STATUS_FAILED, "读取设备列表失败: " + e.getMessage());
+            return;
+        }
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < job.getTotalChunks(); i++) {
+            if (!Files.exists(partFile(job, i))) {
+                pending.add(i);
+            }
+        }
+        RunningJob run = new RunningJob(job, deviceIds, pending.size());
+        synchronized (job) {
+            job.setStatus(ExportJob.STATUS_RUNNING);
+            job.setError(null);
+            job.setFinishTime(null);
+            job.setCompletedChunks(job.getTotalChunks() - pending.size());
+            persist(job);
+        }
+        running.put(job.getJobId(), run);
+        if (pending.isEmpty()) {
+            run.futures.add(workers.submit(() -> assemble(run)));
+            return;
+        }
+        for (int index : pending) {
+            run.futures.add(workers.submit(() -> exportChunk(run, index)));
+        }
+    }
+
+    /**
+     * 导出一个分片：流式查询写入临时文件，完成后原子重命名为分片文件
+     */
+    private void exportChunk(RunningJob run, int index) {
+        ExportJob job = run.job;
+        if (run.cancelled) {
+            return;
+        }
+        Path part = partFile(job, index);
+        Path tmp = part.resolveSibling(part.getFileName() + ".tmp");
+        try {
+            long chunkStart = Instant.parse(job.getStartTime()).toEpochMilli() + index * properties.getChunkMs();
+            long chunkEnd = Math.min(chunkStart + properties.getChunkMs(), Instant.parse(job.getEndTime()).toEpochMilli());
+            // 创建或上次运行之后该时间段可能已被归档
+            archiveStore.requireUnarchived(chunkStart);
+            long rows;
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 65536))) {
+                CsvRecordWriter writer = new CsvRecordWriter(out);
+                influx().streamBatchDeviceData(run.deviceIds, Instant.ofEpochMilli(chunkStart).toString(),
+                        Instant.ofEpochMilli(chunkEnd).toString(), record -> {
+                            if (run.cancelled) {
+                                throw new InterruptedIOException("导出任务已取消");
+                            }
+                            writer.accept(record);
+                        });
+                writer.flush();
+                rows = writer.getRows();
+            }
+            Files.move(tmp, part, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (job) {
+                job.setCompletedChunks(job.getCompletedChunks() + 1);
+                job.setRows(job.getRows() + rows);
+                persist(job);
+            }
+            log.debug("导出分片完成，jobId: {}, 分片: {}, 行数: {}", job.getJobId(), index, rows);
+            if (run.remaining.decrementAndGet() == 0 && !run.cancelled) {
+                assemble(run);
+            }
+        } catch (Exception e) {
+            deleteQuietly(tmp);
+            if (run.cancelled) {
+                return;
+            }
+            log.error("导出分片失败，jobId: {}, 分片: {}", job.getJobId(), index, e);
+            stop(run);
+            finish(job, ExportJob.STATUS_FAILED, "分片" + index + "导出失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 拼接表头和全部分片为最终文件
+     */
+    private void assemble(RunningJob run) {
+        ExportJob job = run.job;
+        Path dir = jobDir(job);
+        Path target = dir.resolve(EXPORT_FILE);
+        Path tmp = dir.resolve(EXPORT_FILE + ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 65536)) {
+                GZIPOutputStream header = new GZIPOutputStream(out);
+                header.write(CsvRecordWriter.HEADER.getBytes(StandardCharsets.UTF_8));
+                header.finish();
+                for (int i = 0; i < job.getTotalChunks(); i++) {
+                    Files.copy(partFile(job, i), out);
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            for (int i = 0; i < job.getTotalChunks(); i++) {
+                deleteQuietly(partFile(job, i));
+            }
+            synchronized (job) {
+                job.setFileBytes(Files.size(target));
+            }
+            finish(job, ExportJob.STATUS_COMPLETED, null);
+            log.info("导出任务完成，jobId: {}, 行数: {}, 文件大小: {}字节", job.getJobId(), job.getRows(), job.getFileBytes());
+        } catch (Exception e) {
+            deleteQuietly(tmp);
+            log.error("合并导出文件失败，jobId: {}", job.getJobId(), e);
+            finish(job, ExportJob.STATUS_FAILED, "合并导出文件失败: " + e.getMessage());
+        }
+    }
+
+    private void stop(RunningJob run) {
+        run.cancelled = true;
+        for (Future<?> future : run.futures) {
+            future.cancel(true);
+        }
+    }
+
+    private void finish(ExportJob job, String status, String error) {
+        synchronized (job) {
+            if (!ExportJob.STATUS_RUNNING.equals(job.getStatus())) {
+                return;
+            }
+            job.setStatus(status);
+            job.setError(error);
+            job.setFinishTime(System.currentTimeMillis());
+            persist(job);
+        }
+        running.remove(job.getJobId());
+    }
+
+    /**
+     * 删除保留期已过的已结束任务
+     */
+    private void cleanExpired() {
+        long expireBefore = System.currentTimeMillis() - properties.getRetentionHours() * 3_600_000L;
+        for (ExportJob job : new ArrayList<>(jobs.values())) {
+            Long finishTime = job.getFinishTime();
+            if (finishTime != null && finishTime < expireBefore && !running.containsKey(job.getJobId())) {
+                jobs.remove(job.getJobId());
+                deleteDir(jobDir(job));
+                log.info("导出任务过期删除，jobId: {}", job.getJobId());
+            }
+        }
+    }
+
+    private void persist(ExportJob job) {
+        Path dir = jobDir(job);
+        Path tmp = dir.resolve(JOB_FILE + ".tmp");
+        try {
+            Files.write(tmp, JSON.toJSONString(job).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, dir.resolve(JOB_FILE), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("保存导出任务状态失败，jobId: {}", job.getJobId(), e);
+        }
+    }
+
+    private ExportJob requireJob(String tenantId, String jobId) {
+        ExportJob job = jobs.get(jobId);
+        if (job == null || !job.getTenantId().equals(tenantId)) {
+            throw new BusinessException("导出任务不存在");
+        }
+        return job;
+    }
+
+    private ExportJob snapshot(ExportJob job) {
+        synchronized (job) {
+            return JSON.parseObject(JSON.toJSONString(job), ExportJob.class);
+        }
+    }
+
+    private InfluxDbService influx() {
+        InfluxDbService influxDbService = influxDbServiceProvider.getIfAvailable();
+        if (influxDbService == null) {
+            throw new BusinessException("当前时序存储引擎不支持数据导出");
+        }
+        return influxDbService;
+    }
+
+    private Path jobDir(ExportJob job) {
+        return baseDir.resolve(job.getJobId());
+    }
+
+    private Path partFile(ExportJob job, int index) {
+        return jobDir(job).resolve(String.format("part-%05d.csv.gz", index));
+    }
+
+    private static void deleteDir(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                deleteQuietly(file);
+            }
+        } catch (IOException e) {
+            log.warn("删除导出目录失败: {}", dir, e);
+        }
+        deleteQuietly(dir);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除文件失败: {}", file, e);
+        }
+    }
+
+    /**
+     * 运行中任务的执行状态
+     */
+    private static final class RunningJob {
+
+        private final ExportJob job;
+        private final List<String> deviceIds;
+        private final AtomicInteger remaining;
+        private final List<Future<?>> futures = new CopyOnWriteArrayList<>();
+        private volatile boolean cancelled;
+
+        private RunningJob(ExportJob job, List<String> deviceIds, int pendingChunks) {
+            this.job = job;
+            this.deviceIds = deviceIds;
+            this.remaining = new AtomicInteger(pendingChunks);
+        }
+    }
+}
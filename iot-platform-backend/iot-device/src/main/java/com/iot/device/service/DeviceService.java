@@ -5,19 +5,34 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.iot.common.core.exception.BusinessException;
 import com.iot.common.redis.service.RedisService;
+import com.iot.device.cache.DeviceMetadataCache;
+import com.iot.device.cache.MetadataChangeEvent;
 import com.iot.device.domain.Device;
 import com.iot.device.domain.Product;
+import com.iot.device.dto.CursorPage;
+import com.iot.device.dto.DeviceBatchQuery;
+import com.iot.device.dto.DeviceStatusUpdate;
+import com.iot.device.dto.TagSelection;
 import com.iot.device.mapper.DeviceMapper;
 import com.iot.device.mapper.ProductMapper;
+import com.iot.device.search.DeviceSearchIndex;
+import com.iot.device.search.DeviceTagIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -33,9 +48,44 @@ public class DeviceService {
     private final DeviceMapper deviceMapper;
     private final ProductMapper productMapper;
     private final RedisService redisService;
+    private final DeviceStatusWriteBehind statusWriteBehind;
+    private final DeviceShadowService deviceShadowService;
+    private final DeviceMetadataCache metadataCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DeviceSearchIndex searchIndex;
+    private final DeviceTagIndex tagIndex;
 
     private static final String DEVICE_STATUS_KEY_PREFIX = "device:status:";
-    private static final String DEVICE_DATA_KEY_PREFIX = "device:data:";
+
+    /**
+     * 批量查询单次最多包含的设备数
+     */
+    @Value("${iot.query.max-batch-devices:500}")
+    private int maxBatchDevices;
+
+    /**
+     * 游标分页单页最多条数
+     */
+    @Value("${iot.query.max-cursor-page-size:200}")
+    private int maxCursorPageSize;
+
+    /**
+     * 游标分页统计总数时最多数到的条数
+     */
+    @Value("${iot.query.max-count-rows:10000}")
+    private int maxCountRows;
+
+    /**
+     * 列表关键字筛选换成ID列表查询时最多的匹配数，超出时使用LIKE
+     */
+    @Value("${iot.search-index.max-filter-ids:1000}")
+    private int maxKeywordMatches;
+
+    /**
+     * 标签选择单次最多返回的设备数
+     */
+    @Value("${iot.tag-index.max-select:10000}")
+    private int maxTagSelect;
 
     /**
      * 分页查询设备列表
@@ -43,14 +93,103 @@ public class DeviceService {
     public IPage<Device> getDevicePage(int pageNum, int pageSize, String keyword, String productId, 
                                         Integer status, String tenantId) {
         Page<Device> page = new Page<>(pageNum, pageSize);
+        LambdaQueryWrapper<Device> queryWrapper = listQuery(keyword, productId, status, tenantId);
+        queryWrapper.orderByDesc(Device::getCreatedAt);
+        return deviceMapper.selectPage(page, queryWrapper);
+    }
+
+    /**
+     * 游标分页查询设备列表
+     * <p>
+     * 按 (created_at, id) 倒序，不使用OFFSET，深翻页耗时不随页码增长；总数只在 withTotal 时统计，
+     * 且最多数到 {@code iot.query.max-count-rows} 条
+     *
+     * @param cursor 上一页返回的 nextCursor，首页为空
+     */
+    public CursorPage<Device> getDeviceCursorPage(String cursor, int pageSize, String keyword, String productId,
+                                                  Integer status, boolean withTotal, String tenantId) {
+        int limit = Math.max(1, Math.min(pageSize, maxCursorPageSize));
+        LambdaQueryWrapper<Device> queryWrapper = listQuery(keyword, productId, status, tenantId);
+        if (StringUtils.hasText(cursor)) {
+            CursorPage.Cursor position = CursorPage.decodeCursor(cursor);
+            queryWrapper.le(Device::getCreatedAt, position.getCreatedAt())
+                    .and(wrapper -> wrapper
+                            .lt(Device::getCreatedAt, position.getCreatedAt())
+                            .or()
+                            .lt(Device::getId, position.getId()));
+        }
+        queryWrapper.orderByDesc(Device::getCreatedAt, Device::getId)
+                .last("LIMIT " + (limit + 1));
+        List<Device> devices = deviceMapper.selectList(queryWrapper);
+
+        CursorPage<Device> page = new CursorPage<>();
+        page.setHasMore(devices.size() > limit);
+        if (page.isHasMore()) {
+            devices = devices.subList(0, limit);
+            Device last = devices.get(limit - 1);
+            page.setNextCursor(CursorPage.encodeCursor(last.getCreatedAt(), last.getId()));
+        }
+        page.setRecords(devices);
+        if (withTotal) {
+            // 只数到上限+1条，大租户下不做全量COUNT
+            long counted = deviceMapper.countLimited(listQuery(keyword, productId, status, tenantId), maxCountRows + 1);
+            page.setTotal(Math.min(counted, maxCountRows));
+            page.setTotalExact(counted <= maxCountRows);
+        }
+        return page;
+    }
+
+    /**
+     * 按关键字搜索设备（名称、编码、位置、标签），前缀匹配在前，用于搜索框联想
+     */
+    public List<Device> searchDevices(String tenantId, String keyword, int limit) {
+        if (!StringUtils.hasText(keyword)) {
+            return new ArrayList<>();
+        }
+        int size = Math.max(1, Math.min(limit, maxCursorPageSize));
+        List<String> ids = searchIndex.search(tenantId, keyword, size);
+        if (ids == null) {
+            return deviceMapper.selectList(listQuery(keyword, null, null, tenantId)
+                    .orderByDesc(Device::getCreatedAt)
+                    .last("LIMIT " + size));
+        }
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, Device> devices = deviceMapper.selectByIds(ids).stream()
+                .filter(device -> tenantId.equals(device.getTenantId()))
+                .collect(Collectors.toMap(Device::getId, device -> device));
+        List<Device> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Device device = devices.get(id);
+            if (device != null) {
+                result.add(device);
+            }
+        }
+        return result;
+    }
+
+    private LambdaQueryWrapper<Device> listQuery(String keyword, String productId, Integer status, String tenantId) {
         LambdaQueryWrapper<Device> queryWrapper = new LambdaQueryWrapper<>();
         queryWrapper.eq(Device::getTenantId, tenantId);
         
         if (StringUtils.hasText(keyword)) {
-            queryWrapper.and(wrapper -> wrapper
-                    .like(Device::getName, keyword)
-                    .or()
-                    .like(Device::getCode, keyword));
+            // 优先用搜索索引换成按ID查询，索引未就绪或匹配过多时退回LIKE，匹配的字段与索引一致
+            List<String> ids = searchIndex.findAll(tenantId, keyword, maxKeywordMatches);
+            if (ids == null) {
+                queryWrapper.and(wrapper -> wrapper
+                        .like(Device::getName, keyword)
+                        .or()
+                        .like(Device::getCode, keyword)
+                        .or()
+                        .like(Device::getLocation, keyword)
+                        .or()
+                        .like(Device::getTags, keyword));
+            } else if (ids.isEmpty()) {
+                queryWrapper.apply("1 = 0");
+            } else {
+                queryWrapper.in(Device::getId, ids);
+            }
         }
         
         if (StringUtils.hasText(productId)) {
@@ -60,21 +199,27 @@ public class DeviceService {
         if (status != null) {
             queryWrapper.eq(Device::getStatus, status);
         }
-        
-        queryWrapper.orderByDesc(Device::getCreatedAt);
-        return deviceMapper.selectPage(page, queryWrapper);
+        return queryWrapper;
     }
 
     /**
      * 获取设备详情
      */
     public Device getDeviceById(String id) {
-        Device device = deviceMapper.selectById(id);
-        if (device == null) {
+        Device cached = metadataCache.getDevice(id);
+        if (cached == null) {
             throw new BusinessException("设备不存在");
         }
+        // 缓存中的实体是共享对象，复制后再叠加实时状态
+        Device device = new Device();
+        BeanUtils.copyProperties(cached, device);
         
-        // 从Redis获取实时状态
+        // 优先取尚未回写数据库的状态，其次取Redis中的实时状态
+        DeviceStatusUpdate pending = statusWriteBehind.getPending(id);
+        if (pending != null) {
+            applyStatus(device, pending);
+            return device;
+        }
         String statusKey = DEVICE_STATUS_KEY_PREFIX + id;
         Integer realtimeStatus = redisService.get(statusKey, Integer.class);
         if (realtimeStatus != null) {
@@ -90,7 +235,7 @@ public class DeviceService {
     @Transactional(rollbackFor = Exception.class)
     public Device createDevice(Device device) {
         // 校验产品是否存在
-        Product product = productMapper.selectById(device.getProductId());
+        Product product = metadataCache.getProduct(device.getProductId());
         if (product == null) {
             throw new BusinessException("产品不存在");
         }
@@ -111,6 +256,7 @@ public class DeviceService {
         device.setUpdatedAt(LocalDateTime.now());
         
         deviceMapper.insert(device);
+        eventPublisher.publishEvent(MetadataChangeEvent.device(MetadataChangeEvent.Action.CREATE, device.getId()));
         log.info("创建设备成功，deviceId: {}, code: {}", device.getId(), device.getCode());
         
         return device;
@@ -139,6 +285,7 @@ public class DeviceService {
         
         device.setUpdatedAt(LocalDateTime.now());
         deviceMapper.updateById(device);
+        eventPublisher.publishEvent(MetadataChangeEvent.device(MetadataChangeEvent.Action.UPDATE, device.getId()));
         log.info("更新设备成功，deviceId: {}", device.getId());
         
         return deviceMapper.selectById(device.getId());
@@ -155,36 +302,29 @@ public class DeviceService {
         }
         
         deviceMapper.deleteById(id);
+        statusWriteBehind.discard(id);
         
         // 清除Redis缓存
         redisService.delete(DEVICE_STATUS_KEY_PREFIX + id);
-        redisService.delete(DEVICE_DATA_KEY_PREFIX + id);
+        deviceShadowService.remove(id);
+        eventPublisher.publishEvent(MetadataChangeEvent.device(MetadataChangeEvent.Action.DELETE, id));
         
         log.info("删除设备成功，deviceId: {}", id);
     }
 
     /**
      * 更新设备在线状态
+     * <p>
+     * Redis立即更新；数据库由 {@link DeviceStatusWriteBehind} 合并后批量回写
      */
-    @Transactional(rollbackFor = Exception.class)
     public void updateDeviceStatus(String deviceId, Integer status) {
-        Device device = new Device();
-        device.setId(deviceId);
-        device.setStatus(status);
-        
-        if (status == 1) {
-            device.setLastOnlineTime(LocalDateTime.now());
-        } else {
-            device.setLastOfflineTime(LocalDateTime.now());
-        }
-        
-        deviceMapper.updateById(device);
+        statusWriteBehind.offer(deviceId, status);
         
         // 更新Redis缓存
         String statusKey = DEVICE_STATUS_KEY_PREFIX + deviceId;
         redisService.set(statusKey, status, 1, TimeUnit.HOURS);
         
-        log.info("更新设备状态成功，deviceId: {}, status: {}", deviceId, status == 1 ? "在线" : "离线");
+        log.debug("更新设备状态，deviceId: {}, status: {}", deviceId, status == 1 ? "在线" : "离线");
     }
 
     /**
@@ -207,6 +347,7 @@ public class DeviceService {
         updateDevice.setActivatedAt(LocalDateTime.now());
         
         deviceMapper.updateById(updateDevice);
+        eventPublisher.publishEvent(MetadataChangeEvent.device(MetadataChangeEvent.Action.UPDATE, deviceId));
         log.info("激活设备成功，deviceId: {}", deviceId);
     }
 
@@ -217,6 +358,78 @@ public class DeviceService {
         return deviceMapper.selectOnlineDevices(tenantId);
     }
 
+    /**
+     * 用尚未回写的状态覆盖数据库中的值
+     */
+    private void applyStatus(Device device, DeviceStatusUpdate update) {
+        device.setStatus(update.getStatus());
+        if (update.getStatus() == 1) {
+            device.setLastOnlineTime(update.getChangedAt());
+        } else {
+            device.setLastOfflineTime(update.getChangedAt());
+        }
+    }
+
+    /**
+     * 按标签表达式选择设备
+     *
+     * @param limit 最多返回的设备ID数
+     */
+    public TagSelection selectDevicesByTags(String tenantId, String expression, int limit) {
+        if (!tagIndex.isEnabled()) {
+            // 未启用时索引不会加载，不能按“加载中”处理让调用方无限重试
+            throw new BusinessException("设备标签索引未启用，无法按标签表达式选择设备");
+        }
+        TagSelection selection;
+        try {
+            selection = tagIndex.select(tenantId, expression, Math.max(1, Math.min(limit, maxTagSelect)));
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("标签表达式错误: " + e.getMessage());
+        }
+        if (selection == null) {
+            throw new BusinessException("设备标签索引加载中，请稍后重试");
+        }
+        return selection;
+    }
+
+    /**
+     * 解析批量查询的设备范围（设备ID列表、分组、产品、标签表达式四选一），只返回属于当前租户的设备
+     */
+    public List<String> resolveDeviceIds(String tenantId, DeviceBatchQuery query) {
+        LambdaQueryWrapper<Device> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.select(Device::getId);
+        queryWrapper.eq(Device::getTenantId, tenantId);
+        if (!CollectionUtils.isEmpty(query.getDeviceIds())) {
+            if (query.getDeviceIds().size() > maxBatchDevices) {
+                throw new BusinessException("单次最多查询" + maxBatchDevices + "台设备");
+            }
+            queryWrapper.in(Device::getId, query.getDeviceIds());
+        } else if (StringUtils.hasText(query.getGroupId())) {
+            queryWrapper.eq(Device::getGroupId, query.getGroupId());
+        } else if (StringUtils.hasText(query.getProductId())) {
+            queryWrapper.eq(Device::getProductId, query.getProductId());
+        } else if (StringUtils.hasText(query.getTagSelector())) {
+            // 标签表达式直接由标签索引求出设备，不查询数据库
+            TagSelection selection = selectDevicesByTags(tenantId, query.getTagSelector(), maxBatchDevices);
+            if (selection.isTruncated()) {
+                throw new BusinessException("设备数量超过" + maxBatchDevices + "台，请缩小查询范围");
+            }
+            return selection.getDeviceIds();
+        } else {
+            throw new BusinessException("设备ID列表、分组ID、产品ID、标签表达式至少指定一项");
+        }
+        // 多查一条用于判断是否超出上限
+        queryWrapper.last("LIMIT " + (maxBatchDevices + 1));
+
+        List<String> deviceIds = deviceMapper.selectList(queryWrapper).stream()
+                .map(Device::getId)
+                .collect(Collectors.toList());
+        if (deviceIds.size() > maxBatchDevices) {
+            throw new BusinessException("设备数量超过" + maxBatchDevices + "台，请缩小查询范围");
+        }
+        return deviceIds;
+    }
+
     /**
      * 生成设备密钥
      */
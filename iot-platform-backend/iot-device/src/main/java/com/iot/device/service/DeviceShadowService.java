@@ -0,0 +1,297 @@
+package com.iot.device.service;
+
+import com.iot.common.redis.service.RedisService;
+import com.iot.device.config.DeviceShadowProperties;
+import com.iot.device.config.MqttClusterProperties;
+import com.iot.device.dto.ShadowField;
+import com.iot.device.telemetry.TelemetryRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备影子服务
+ * <p>
+ * 在内存中维护每台设备每个字段的最新值和上报时间，由数据上报直接更新，最新数据查询不再访问InfluxDB。
+ * 变更按固定间隔批量同步到Redis哈希（device:data:{deviceId}），服务重启或其他节点查询时从Redis加载。
+ * <p>
+ * 每个字段按上报时间合并：本地更新、从Redis加载和写回Redis都只接受时间不早于现有值的字段，乱序到达的旧数据被丢弃。
+ * 写回Redis由Lua脚本逐字段比较时间后写入，多个节点同时写同一设备时不会用旧值覆盖新值。
+ * <p>
+ * 集群部署（共享订阅）时同一设备的消息可能分散到多个节点，任何节点都不持有完整的影子，
+ * 所有设备的影子都按 remoteRefreshMs 从Redis重新加载；单节点部署时本节点接入的设备以内存为准。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Service
+public class DeviceShadowService {
+
+    private static final String SHADOW_KEY_PREFIX = "device:data:";
+
+    /**
+     * 逐字段比较上报时间后写入：ARGV按 (字段名, 时间, 序列化后的值) 三个一组，
+     * Redis中已有字段的时间更晚时跳过；值按缓存序列化方式存放，类型信息包装为 [类名, 对象]
+     */
+    private static final RedisScript<Long> MERGE_SCRIPT = new DefaultRedisScript<>(
+            "local written = 0\n"
+                    + "for i = 1, #ARGV, 3 do\n"
+                    + "  local newer = true\n"
+                    + "  local current = redis.call('HGET', KEYS[1], ARGV[i])\n"
+                    + "  if current then\n"
+                    + "    local ok, decoded = pcall(cjson.decode, current)\n"
+                    + "    if ok and type(decoded) == 'table' then\n"
+                    + "      local field = decoded[2] or decoded\n"
+                    + "      local time = type(field) == 'table' and tonumber(field['time'])\n"
+                    + "      if time and time > tonumber(ARGV[i + 1]) then\n"
+                    + "        newer = false\n"
+                    + "      end\n"
+                    + "    end\n"
+                    + "  end\n"
+                    + "  if newer then\n"
+                    + "    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 2])\n"
+                    + "    written = written + 1\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "return written", Long.class);
+
+    private final RedisService redisService;
+    private final DeviceShadowProperties properties;
+    private final MqttClusterProperties cluster;
+
+    private final ConcurrentHashMap<String, Shadow> shadows = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final LongAdder outOfOrder = new LongAdder();
+    private final LongAdder staleWritesSkipped = new LongAdder();
+    private ScheduledExecutorService executor;
+
+    public DeviceShadowService(RedisService redisService, DeviceShadowProperties properties,
+                               MqttClusterProperties cluster) {
+        this.redisService = redisService;
+        this.properties = properties;
+        this.cluster = cluster;
+    }
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "device-shadow-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushQuietly, properties.getFlushIntervalMs(),
+                properties.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(properties.getFlushIntervalMs() * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        log.info("设备影子已停止，未同步设备数: {}", dirty.size());
+    }
+
+    /**
+     * 用上报数据更新设备影子
+     */
+    public void update(String deviceId, TelemetryRecord data, long time) {
+        Shadow shadow = shadows.get(deviceId);
+        if (shadow == null) {
+            // 重启后首次上报先加载Redis中的历史字段，保证查询结果完整
+            shadow = load(deviceId, new Shadow());
+            Shadow existing = shadows.putIfAbsent(deviceId, shadow);
+            if (existing != null) {
+                shadow = existing;
+            }
+        }
+        shadow.local = true;
+        boolean changed = false;
+        for (int i = 0; i < data.size(); i++) {
+            Object value = toValue(data, i);
+            if (value == null) {
+                continue;
+            }
+            ShadowField incoming = new ShadowField(value, time);
+            if (shadow.fields.merge(data.fieldName(i), incoming, DeviceShadowService::newer) == incoming) {
+                changed = true;
+            } else {
+                outOfOrder.increment();
+            }
+        }
+        if (changed) {
+            dirty.add(deviceId);
+        }
+    }
+
+    /**
+     * 设备各字段最新值及上报时间，设备从未上报返回空Map
+     */
+    public Map<String, ShadowField> getShadow(String deviceId) {
+        Shadow shadow = shadows.get(deviceId);
+        if (shadow == null) {
+            shadow = load(deviceId, new Shadow());
+            if (shadow.fields.isEmpty()) {
+                // 不缓存空影子，避免无效设备ID占用内存
+                return Collections.emptyMap();
+            }
+            Shadow existing = shadows.putIfAbsent(deviceId, shadow);
+            if (existing != null) {
+                shadow = existing;
+            }
+        } else if ((!shadow.local || cluster.isEnabled())
+                && System.currentTimeMillis() - shadow.loadedAt >= properties.getRemoteRefreshMs()) {
+            load(deviceId, shadow);
+        }
+        return Collections.unmodifiableMap(shadow.fields);
+    }
+
+    /**
+     * 设备各字段最新值
+     */
+    public Map<String, Object> getLatestValues(String deviceId) {
+        Map<String, ShadowField> fields = getShadow(deviceId);
+        Map<String, Object> result = new HashMap<>(fields.size() * 2);
+        fields.forEach((name, field) -> result.put(name, field.getValue()));
+        return result;
+    }
+
+    /**
+     * 删除设备影子（设备删除时调用）
+     */
+    public void remove(String deviceId) {
+        shadows.remove(deviceId);
+        dirty.remove(deviceId);
+        redisService.delete(SHADOW_KEY_PREFIX + deviceId);
+    }
+
+    /**
+     * 影子运行指标
+     */
+    public Map<String, Object> getStats() {
+        int local = 0;
+        for (Shadow shadow : shadows.values()) {
+            if (shadow.local) {
+                local++;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("devices", shadows.size());
+        stats.put("localDevices", local);
+        stats.put("dirty", dirty.size());
+        stats.put("outOfOrderFields", outOfOrder.sum());
+        stats.put("staleWritesSkipped", staleWritesSkipped.sum());
+        return stats;
+    }
+
+    /**
+     * 从Redis加载影子并按字段时间合并到目标影子中
+     */
+    private Shadow load(String deviceId, Shadow target) {
+        target.loadedAt = System.currentTimeMillis();
+        Map<Object, Object> stored;
+        try {
+            stored = redisService.hGetAll(SHADOW_KEY_PREFIX + deviceId);
+        } catch (Exception e) {
+            log.warn("加载设备影子失败，deviceId: {}, 原因: {}", deviceId, e.getMessage());
+            return target;
+        }
+        if (stored == null) {
+            return target;
+        }
+        stored.forEach((name, value) -> {
+            if (value instanceof ShadowField) {
+                ShadowField remote = (ShadowField) value;
+                target.fields.merge(String.valueOf(name), remote, DeviceShadowService::newer);
+            }
+        });
+        return target;
+    }
+
+    private void flush() {
+        for (String deviceId : dirty) {
+            dirty.remove(deviceId);
+            Shadow shadow = shadows.get(deviceId);
+            if (shadow == null) {
+                continue;
+            }
+            List<String> args = new ArrayList<>(shadow.fields.size() * 3);
+            shadow.fields.forEach((name, field) -> {
+                args.add(name);
+                args.add(Long.toString(field.getTime()));
+                args.add(redisService.serialize(field));
+            });
+            try {
+                Long written = redisService.execute(MERGE_SCRIPT, Collections.singletonList(SHADOW_KEY_PREFIX + deviceId),
+                        args.toArray(new String[0]));
+                if (written != null) {
+                    staleWritesSkipped.add(args.size() / 3 - written);
+                }
+            } catch (Exception e) {
+                dirty.add(deviceId);
+                throw e;
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("设备影子同步Redis失败，待同步设备数: {}", dirty.size(), e);
+        }
+    }
+
+    /**
+     * 按上报时间合并字段，时间相同时取新值
+     */
+    private static ShadowField newer(ShadowField current, ShadowField incoming) {
+        return incoming.getTime() >= current.getTime() ? incoming : current;
+    }
+
+    /**
+     * 数值统一按double保存，与InfluxDB中的字段类型一致
+     */
+    private static Object toValue(TelemetryRecord data, int index) {
+        switch (data.type(index)) {
+            case TelemetryRecord.TYPE_DOUBLE:
+            case TelemetryRecord.TYPE_LONG:
+                return data.getDouble(index);
+            case TelemetryRecord.TYPE_BOOLEAN:
+                return data.getBoolean(index);
+            case TelemetryRecord.TYPE_NULL:
+                return null;
+            default:
+                return data.getString(index);
+        }
+    }
+
+    private static final class Shadow {
+
+        private final ConcurrentHashMap<String, ShadowField> fields = new ConcurrentHashMap<>();
+        /**
+         * 是否有本节点接入的上报数据
+         */
+        private volatile boolean local;
+        private volatile long loadedAt;
+    }
+}
@@ -0,0 +1,308 @@
+package com.iot.device.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.iot.common.core.exception.BusinessException;
+import com.iot.common.redis.service.RedisService;
+import com.iot.device.cache.SeriesChunk;
+import com.iot.device.config.StatisticsCacheProperties;
+import com.iot.device.dto.SeriesColumn;
+import com.iot.device.dto.WindowStatistics;
+import com.iot.device.tsdb.FluxTimes;
+import com.iot.device.tsdb.TimeSeriesStore;
+import com.iot.device.tsdb.WindowStatsCollector;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备数据统计服务（带时间块缓存）
+ * <p>
+ * 统计结果按"窗口 × chunkWindows"对齐的时间块缓存，缓存键为 设备+字段+聚合函数+窗口+块起点。
+ * 全部窗口都已结束（超过closeDelay）的块结果不会再变化，写入本地缓存（有界）和Redis；
+ * 仍在进行中的块只做秒级短期缓存。一次请求只向时序数据库查询缺失或未封闭的块，相邻的缺失块合并为一次查询。
+ * <p>
+ * 走缓存时时间范围按窗口边界对齐：返回与[startTime, endTime)有交集的完整窗口。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Service
+public class DeviceStatisticsService {
+
+    private static final String CHUNK_KEY_PREFIX = "device:stats:";
+    private static final String AGGREGATE_MEAN = "mean";
+
+    private final TimeSeriesStore timeSeriesStore;
+    private final RedisService redisService;
+    private final StatisticsCacheProperties properties;
+
+    @Value("${iot.query.max-windows:50000}")
+    private int maxWindows;
+
+    private Cache<String, SeriesChunk> closedChunks;
+    private Cache<String, SeriesChunk> openChunks;
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder openHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder influxQueries = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+
+    public DeviceStatisticsService(TimeSeriesStore timeSeriesStore, RedisService redisService,
+                                   StatisticsCacheProperties properties) {
+        this.timeSeriesStore = timeSeriesStore;
+        this.redisService = redisService;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void init() {
+        closedChunks = CacheBuilder.newBuilder()
+                .maximumSize(properties.getLocalMaxChunks())
+                .expireAfterAccess(properties.getLocalExpireMinutes(), TimeUnit.MINUTES)
+                .build();
+        openChunks = CacheBuilder.newBuilder()
+                .maximumSize(properties.getLocalMaxChunks())
+                .expireAfterWrite(properties.getOpenTtlMs(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 查询设备数据统计（窗口均值）
+     */
+    public Map<String, Object> queryStatistics(String deviceId, String field, String startTime, String endTime,
+                                               String windowPeriod) {
+        Instant now = Instant.now();
+        long window = FluxTimes.durationMillis(windowPeriod);
+        Instant start = FluxTimes.resolve(startTime, now);
+        Instant stop = FluxTimes.resolve(endTime, now);
+        if (!properties.isEnabled() || window <= 0 || start == null || stop == null || !stop.isAfter(start)) {
+            bypassed.increment();
+            return timeSeriesStore.queryDeviceDataStatistics(deviceId, field, startTime, endTime, windowPeriod);
+        }
+
+        long span = window * properties.getChunkWindows();
+        long first = FluxTimes.floor(start.toEpochMilli(), span);
+        long last = FluxTimes.floor(stop.toEpochMilli() - 1, span) + span;
+        int chunkCount = (int) Math.min(Integer.MAX_VALUE, (last - first) / span);
+        if (chunkCount > properties.getMaxChunks()) {
+            bypassed.increment();
+            return timeSeriesStore.queryDeviceDataStatistics(deviceId, field, startTime, endTime, windowPeriod);
+        }
+
+        long closedBefore = FluxTimes.floor(now.toEpochMilli() - properties.getCloseDelayMs(), window);
+        String keyPrefix = CHUNK_KEY_PREFIX + deviceId + ":" + field + ":" + AGGREGATE_MEAN + ":" + window + ":";
+        String[] keys = new String[chunkCount];
+        boolean[] closed = new boolean[chunkCount];
+        SeriesChunk[] chunks = new SeriesChunk[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            long chunkStart = first + i * span;
+            keys[i] = keyPrefix + chunkStart;
+            closed[i] = chunkStart + span <= closedBefore;
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        List<Map<String, Object>> dataPoints = new ArrayList<>();
+        lookup(keys, closed, chunks);
+        try {
+            fetchMissing(deviceId, field, windowPeriod, window, first, span, keys, closed, chunks);
+        } catch (Exception e) {
+            // 与未缓存时一致：查询失败返回空结果，失败结果不进入缓存
+            log.error("查询设备数据统计失败，deviceId: {}", deviceId, e);
+            result.put("data", dataPoints);
+            result.put("count", 0);
+            return result;
+        }
+
+        // 拼接与请求范围有交集的窗口
+        long startMillis = start.toEpochMilli();
+        long stopMillis = stop.toEpochMilli();
+        String resolution = null;
+        for (SeriesChunk chunk : chunks) {
+            resolution = coarser(resolution, chunk.getResolution());
+            long[] times = chunk.getTimes();
+            double[] values = chunk.getValues();
+            for (int j = 0; j < times.length; j++) {
+                if (times[j] > startMillis && times[j] - window < stopMillis) {
+                    Map<String, Object> point = new HashMap<>(4);
+                    point.put("time", Instant.ofEpochMilli(times[j]));
+                    point.put("value", values[j]);
+                    dataPoints.add(point);
+                }
+            }
+        }
+
+        result.put("data", dataPoints);
+        result.put("count", dataPoints.size());
+        result.put("resolution", resolution);
+        return result;
+    }
+
+    /**
+     * 各块可能来自不同粒度的查询（原始数据或不同的降采样），结果的粒度取其中最粗的
+     */
+    private static String coarser(String current, String candidate) {
+        if (current == null) {
+            return candidate;
+        }
+        if (candidate == null) {
+            return current;
+        }
+        return FluxTimes.durationMillis(candidate) > FluxTimes.durationMillis(current) ? candidate : current;
+    }
+
+    /**
+     * 多聚合窗口统计：一次读取原始数据，同时计算min/max/mean/count/sum/stddev和p50/p95/p99
+     *
+     * @param merge 多台设备时是否按窗口合并为一条序列；否则按设备分别返回
+     */
+    public List<WindowStatistics> queryAggregates(Collection<String> deviceIds, String field, String startTime,
+                                                  String endTime, String windowPeriod, boolean merge) {
+        long window = FluxTimes.durationMillis(windowPeriod);
+        if (window <= 0) {
+            throw new BusinessException("不支持的统计窗口: " + windowPeriod);
+        }
+        long start = System.currentTimeMillis();
+        WindowStatsCollector collector = new WindowStatsCollector(window, maxWindows);
+        try {
+            timeSeriesStore.scanNumericField(deviceIds, field, startTime, endTime, collector);
+        } catch (IOException e) {
+            throw new BusinessException("查询设备数据统计失败", e);
+        }
+        List<WindowStatistics> result = merge ? collector.toMergedStatistics() : collector.toStatistics();
+        log.debug("多聚合统计完成，设备数: {}, field: {}, 窗口数: {}, 耗时: {}ms",
+                deviceIds.size(), field, result.size(), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * 依次查本地缓存、Redis、未封闭块短期缓存
+     */
+    private void lookup(String[] keys, boolean[] closed, SeriesChunk[] chunks) {
+        List<String> redisKeys = new ArrayList<>();
+        List<Integer> redisIndexes = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (closed[i]) {
+                chunks[i] = closedChunks.getIfPresent(keys[i]);
+                if (chunks[i] != null) {
+                    localHits.increment();
+                } else {
+                    redisKeys.add(keys[i]);
+                    redisIndexes.add(i);
+                }
+            } else {
+                chunks[i] = openChunks.getIfPresent(keys[i]);
+                if (chunks[i] != null) {
+                    openHits.increment();
+                }
+            }
+        }
+        if (redisKeys.isEmpty()) {
+            return;
+        }
+        List<Object> values;
+        try {
+            values = redisService.multiGet(redisKeys);
+        } catch (Exception e) {
+            log.warn("读取统计缓存失败，按未命中处理，原因: {}", e.getMessage());
+            return;
+        }
+        for (int k = 0; values != null && k < values.size(); k++) {
+            Object value = values.get(k);
+            if (value instanceof SeriesChunk) {
+                int i = redisIndexes.get(k);
+                chunks[i] = (SeriesChunk) value;
+                closedChunks.put(keys[i], chunks[i]);
+                redisHits.increment();
+            }
+        }
+    }
+
+    /**
+     * 查询缺失的块，相邻缺失块合并为一次查询
+     */
+    private void fetchMissing(String deviceId, String field, String windowPeriod, long window, long first, long span,
+                              String[] keys, boolean[] closed, SeriesChunk[] chunks) {
+        int i = 0;
+        while (i < chunks.length) {
+            if (chunks[i] != null) {
+                i++;
+                continue;
+            }
+            int runStart = i;
+            while (i < chunks.length && chunks[i] == null) {
+                i++;
+            }
+            int runEnd = i;
+            misses.add(runEnd - runStart);
+            influxQueries.increment();
+
+            long from = first + runStart * span;
+            long to = first + runEnd * span;
+            SeriesColumn series = timeSeriesStore.queryStatisticsSeries(deviceId, field,
+                    Instant.ofEpochMilli(from).toString(), Instant.ofEpochMilli(to).toString(), windowPeriod);
+            split(series, window, first, span, runStart, runEnd, keys, closed, chunks);
+        }
+    }
+
+    /**
+     * 把查询结果按块切分并写入缓存；窗口按起点（结束时间 - 窗口）归属到块
+     */
+    private void split(SeriesColumn series, long window, long first, long span, int runStart, int runEnd,
+                       String[] keys, boolean[] closed, SeriesChunk[] chunks) {
+        long[] times = series.getTime();
+        double[] values = series.getValue();
+        int p = 0;
+        for (int c = runStart; c < runEnd; c++) {
+            long chunkEnd = first + (c + 1) * span;
+            int from = p;
+            while (p < series.getCount() && times[p] - window < chunkEnd) {
+                p++;
+            }
+            SeriesChunk chunk = new SeriesChunk(Arrays.copyOfRange(times, from, p), Arrays.copyOfRange(values, from, p),
+                    series.getResolution());
+            chunks[c] = chunk;
+            if (closed[c]) {
+                closedChunks.put(keys[c], chunk);
+                try {
+                    redisService.set(keys[c], chunk, properties.getRedisTtlHours(), TimeUnit.HOURS);
+                } catch (Exception e) {
+                    log.warn("写入统计缓存失败，key: {}, 原因: {}", keys[c], e.getMessage());
+                }
+            } else {
+                openChunks.put(keys[c], chunk);
+            }
+        }
+    }
+
+    /**
+     * 缓存运行指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("localChunks", closedChunks.size());
+        stats.put("openChunks", openChunks.size());
+        stats.put("localHits", localHits.sum());
+        stats.put("redisHits", redisHits.sum());
+        stats.put("openHits", openHits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("influxQueries", influxQueries.sum());
+        stats.put("bypassed", bypassed.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,173 @@
+package com.iot.device.service;
+
+import com.iot.device.cache.DeviceMetadataCache;
+import com.iot.device.config.DeviceStatusProperties;
+import com.iot.device.dto.DeviceStatusUpdate;
+import com.iot.device.mapper.DeviceMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备在线状态回写缓冲
+ * <p>
+ * 状态变更先写入内存（同一设备只保留最后一次状态），由单独线程按固定间隔或积压数量
+ * 批量回写数据库，一条UPDATE语句更新多台设备。设备上下线风暴时数据库写入量取决于设备数，
+ * 而不是状态消息数。
+ * <p>
+ * 回写成功后才从缓冲中移除，且只移除回写时的那次状态；回写期间到达的新状态保留到下一轮。
+ * 每批回写后失效这些设备的元数据缓存，设备详情中的状态和上下线时间不会停留在缓存中的旧值。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Component
+public class DeviceStatusWriteBehind {
+
+    private final DeviceMapper deviceMapper;
+    private final DeviceStatusProperties properties;
+    private final DeviceMetadataCache metadataCache;
+
+    private final ConcurrentHashMap<String, DeviceStatusUpdate> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public DeviceStatusWriteBehind(DeviceMapper deviceMapper, DeviceStatusProperties properties,
+                                   DeviceMetadataCache metadataCache) {
+        this.deviceMapper = deviceMapper;
+        this.properties = properties;
+        this.metadataCache = metadataCache;
+    }
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "device-status-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushQuietly, properties.getFlushIntervalMs(),
+                properties.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        log.info("设备状态回写已启动，回写间隔: {}ms, 触发阈值: {}", properties.getFlushIntervalMs(), properties.getFlushThreshold());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(properties.getFlushIntervalMs() * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 停机前把剩余状态写完
+        flushQuietly();
+        log.info("设备状态回写已停止，未回写设备数: {}", pending.size());
+    }
+
+    /**
+     * 记录设备状态变更
+     */
+    public void offer(String deviceId, Integer status) {
+        pending.put(deviceId, new DeviceStatusUpdate(deviceId, status, LocalDateTime.now()));
+        received.increment();
+        if (pending.size() >= properties.getFlushThreshold() && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::flushQuietly);
+            } catch (Exception e) {
+                // 停机过程中不再接受任务，由stop()统一回写
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * 查询尚未回写的状态，没有返回null
+     */
+    public DeviceStatusUpdate getPending(String deviceId) {
+        return pending.get(deviceId);
+    }
+
+    /**
+     * 放弃设备尚未回写的状态（设备删除时调用）
+     */
+    public void discard(String deviceId) {
+        pending.remove(deviceId);
+    }
+
+    /**
+     * 回写全部积压状态
+     */
+    public synchronized void flush() {
+        flushRequested.set(false);
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<DeviceStatusUpdate> batch = new ArrayList<>(Math.min(pending.size(), properties.getMaxBatchRows()));
+        for (DeviceStatusUpdate update : pending.values()) {
+            batch.add(update);
+            if (batch.size() >= properties.getMaxBatchRows()) {
+                writeBatch(batch);
+                batch = new ArrayList<>(properties.getMaxBatchRows());
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    private void writeBatch(List<DeviceStatusUpdate> batch) {
+        deviceMapper.batchUpdateStatus(batch);
+        flushes.increment();
+        written.add(batch.size());
+        List<String> deviceIds = new ArrayList<>(batch.size());
+        for (DeviceStatusUpdate update : batch) {
+            // 只移除本次写入的状态，期间被覆盖的新状态留到下一轮
+            pending.remove(update.getDeviceId(), update);
+            deviceIds.add(update.getDeviceId());
+        }
+        metadataCache.invalidateDevices(deviceIds);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            failures.increment();
+            log.error("设备状态批量回写失败，积压设备数: {}", pending.size(), e);
+        }
+    }
+
+    /**
+     * 回写运行指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long receivedCount = received.sum();
+        long writtenCount = written.sum();
+        stats.put("pending", pending.size());
+        stats.put("received", receivedCount);
+        stats.put("written", writtenCount);
+        stats.put("coalesced", Math.max(0, receivedCount - writtenCount - pending.size()));
+        stats.put("flushes", flushes.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+}
@@ -1,6 +1,6 @@
 package com.iot.device.service;
 
-import com.alibaba.fastjson2.JSONObject;
+import com.influxdb.Cancellable;
 import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.InfluxDBClientFactory;
 import com.influxdb.client.WriteApiBlocking;
@@ -8,26 +8,147 @@ import com.influxdb.client.domain.WritePrecision;
 import com.influxdb.client.write.Point;
 import com.influxdb.query.FluxRecord;
 import com.influxdb.query.FluxTable;
+import com.iot.common.core.exception.BusinessException;
+import com.iot.device.config.InfluxWriteProperties;
+import com.iot.device.config.RollupProperties;
+import com.iot.device.dto.SeriesColumn;
+import com.iot.device.telemetry.TelemetryRecord;
+import com.iot.device.tsdb.ColumnarCollector;
+import com.iot.device.tsdb.FluxTemplate;
+import com.iot.device.tsdb.FluxTimes;
+import com.iot.device.tsdb.InfluxBatchWriter;
+import com.iot.device.tsdb.LineProtocolEncoder;
+import com.iot.device.tsdb.QueryLimits;
+import com.iot.device.tsdb.QueryRange;
+import com.iot.device.tsdb.RecordSink;
+import com.iot.device.tsdb.RollupResolution;
+import com.iot.device.tsdb.TimeSeriesStore;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * InfluxDB时序数据库服务
+ * <p>
+ * 默认的 {@link TimeSeriesStore} 实现（iot.tsdb.engine=influxdb）；流式、列式、批量查询及降采样汇总仅在该引擎下可用。
  *
  * @author IoT Platform
  */
 @Slf4j
 @Service
-public class InfluxDbService {
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "iot.tsdb", name = "engine", havingValue = "influxdb", matchIfMissing = true)
+@Qualifier(TimeSeriesStore.ENGINE)
+public class InfluxDbService implements TimeSeriesStore {
+
+    private static final String MEASUREMENT = "device_data";
+    private static final String TAG_DEVICE_ID = "device_id";
+
+    /**
+     * 批量模式下每个写入线程复用的行协议缓冲区
+     */
+    private static final ThreadLocal<StringBuilder> LINE = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private static final FluxTemplate HISTORY = FluxTemplate.compile(
+            "from(bucket: ${bucket}) "
+                    + "|> range(start: ${start}, stop: ${stop}) "
+                    + "|> filter(fn: (r) => r._measurement == \"device_data\") "
+                    + "|> filter(fn: (r) => r.device_id == ${deviceId})");
+
+    private static final FluxTemplate BATCH_HISTORY = FluxTemplate.compile(
+            "from(bucket: ${bucket}) "
+                    + "|> range(start: ${start}, stop: ${stop}) "
+                    + "|> filter(fn: (r) => r._measurement == \"device_data\") "
+                    + "|> filter(fn: (r) => ${devices}) "
+                    + "|> group(columns: [\"device_id\"])");
+
+    private static final FluxTemplate BATCH_STATISTICS = FluxTemplate.compile(
+            "from(bucket: ${bucket}) "
+                    + "|> range(start: ${start}, stop: ${stop}) "
+                    + "|> filter(fn: (r) => r._measurement == \"device_data\") "
+                    + "|> filter(fn: (r) => ${devices}) "
+                    + "|> filter(fn: (r) => r._field == ${field}) "
+                    + "|> aggregateWindow(every: ${every}, fn: mean, createEmpty: false) "
+                    + "|> group(columns: [\"device_id\"])");
+
+    private static final FluxTemplate SCAN_FIELD = FluxTemplate.compile(
+            "from(bucket: ${bucket}) "
+                    + "|> range(start: ${start}, stop: ${stop}) "
+                    + "|> filter(fn: (r) => r._measurement == \"device_data\") "
+                    + "|> filter(fn: (r) => ${devices}) "
+                    + "|> filter(fn: (r) => r._field == ${field}) "
+                    + "|> keep(columns: [\"_time\", \"_value\", \"device_id\"])");
+
+    private static final FluxTemplate LATEST = FluxTemplate.compile(
+            "from(bucket: ${bucket}) "
+                    + "|> range(start: -1h) "
+                    + "|> filter(fn: (r) => r._measurement == \"device_data\") "
+                    + "|> filter(fn: (r) => r.device_id == ${deviceId}) "
+                    + "|> last()");
+
+    private static final FluxTemplate STATISTICS = FluxTemplate.compile(
+            "from(bucket: ${bucket}) "
+                    + "|> range(start: ${start}, stop: ${stop}) "
+                    + "|> filter(fn: (r) => r._measurement == \"device_data\") "
+                    + "|> filter(fn: (r) => r.device_id == ${deviceId}) "
+                    + "|> filter(fn: (r) => r._field == ${field}) "
+                    + "|> aggregateWindow(every: ${every}, fn: mean, createEmpty: false)");
+
+    /**
+     * 已汇总时间段按sum/count重新计算均值
+     */
+    private static final String ROLLUP_PART =
+            "rollup = from(bucket: ${bucket})\n"
+                    + "    |> range(start: ${start}, stop: ${boundary})\n"
+                    + "    |> filter(fn: (r) => r._measurement == ${rollupMeasurement})\n"
+                    + "    |> filter(fn: (r) => r.device_id == ${deviceId})\n"
+                    + "    |> filter(fn: (r) => r._field == ${field})\n"
+                    + "    |> filter(fn: (r) => r.agg == \"sum\" or r.agg == \"count\")\n"
+                    + "    |> aggregateWindow(every: ${every}, fn: sum, createEmpty: false)\n"
+                    + "    |> group(columns: [\"device_id\", \"_field\"])\n"
+                    + "    |> pivot(rowKey: [\"_time\"], columnKey: [\"agg\"], valueColumn: \"_value\")\n"
+                    + "    |> filter(fn: (r) => r.count > 0.0)\n"
+                    + "    |> map(fn: (r) => ({_time: r._time, _value: r.sum / r.count}))\n\n";
+
+    private static final FluxTemplate ROLLUP_STATISTICS = FluxTemplate.compile(
+            ROLLUP_PART + "rollup |> keep(columns: [\"_time\", \"_value\"])\n");
+
+    /**
+     * 汇总边界之后的时间段读原始数据，与汇总部分按时间拼接
+     */
+    private static final FluxTemplate ROLLUP_RAW_STATISTICS = FluxTemplate.compile(
+            ROLLUP_PART
+                    + "raw = from(bucket: ${bucket})\n"
+                    + "    |> range(start: ${boundary}, stop: ${stop})\n"
+                    + "    |> filter(fn: (r) => r._measurement == \"device_data\")\n"
+                    + "    |> filter(fn: (r) => r.device_id == ${deviceId})\n"
+                    + "    |> filter(fn: (r) => r._field == ${field})\n"
+                    + "    |> aggregateWindow(every: ${every}, fn: mean, createEmpty: false)\n"
+                    + "    |> keep(columns: [\"_time\", \"_value\"])\n\n"
+                    + "union(tables: [rollup |> keep(columns: [\"_time\", \"_value\"]), raw])\n"
+                    + "    |> group()\n"
+                    + "    |> sort(columns: [\"_time\"])\n");
+
+    private final InfluxWriteProperties writeProperties;
+    private final RollupProperties rollupProperties;
 
     @Value("${influxdb.url}")
     private String url;
@@ -41,14 +162,31 @@ public class InfluxDbService {
     @Value("${influxdb.bucket}")
     private String bucket;
 
+    /**
+     * 非流式查询单次最多返回的点数
+     */
+    @Value("${influxdb.query.max-points:2000000}")
+    private int maxQueryPoints;
+
+    /**
+     * 流式查询单次最多输出的点数
+     */
+    @Value("${influxdb.query.max-stream-points:50000000}")
+    private long maxStreamPoints;
+
     private InfluxDBClient influxDBClient;
     private WriteApiBlocking writeApi;
+    private InfluxBatchWriter batchWriter;
 
     @PostConstruct
     public void init() {
         try {
             influxDBClient = InfluxDBClientFactory.create(url, token.toCharArray(), organization, bucket);
             writeApi = influxDBClient.getWriteApiBlocking();
+            if (writeProperties.getMode() == InfluxWriteProperties.WriteMode.BATCH) {
+                batchWriter = new InfluxBatchWriter(writeApi, bucket, organization, writeProperties);
+                batchWriter.start();
+            }
             log.info("InfluxDB连接成功，url: {}, org: {}, bucket: {}", url, organization, bucket);
         } catch (Exception e) {
             log.error("InfluxDB连接失败", e);
@@ -57,6 +195,9 @@ public class InfluxDbService {
 
     @PreDestroy
     public void destroy() {
+        if (batchWriter != null) {
+            batchWriter.stop();
+        }
         if (influxDBClient != null) {
             influxDBClient.close();
             log.info("InfluxDB连接已关闭");
@@ -66,23 +207,37 @@ public class InfluxDbService {
     /**
      * 写入设备数据
      */
-    public void writeDeviceData(String deviceId, JSONObject data) {
+    @Override
+    public void writeDeviceData(String deviceId, TelemetryRecord data, long time) {
+        if (batchWriter != null) {
+            StringBuilder line = LINE.get();
+            line.setLength(0);
+            if (LineProtocolEncoder.encode(line, MEASUREMENT, TAG_DEVICE_ID, deviceId, data, time)) {
+                batchWriter.write(line);
+            }
+            return;
+        }
         try {
-            Point point = Point.measurement("device_data")
-                    .addTag("device_id", deviceId)
-                    .time(Instant.now(), WritePrecision.MS);
-
-            // 添加所有字段
-            for (Map.Entry<String, Object> entry : data.entrySet()) {
-                String key = entry.getKey();
-                Object value = entry.getValue();
-
-                if (value instanceof Number) {
-                    point.addField(key, ((Number) value).doubleValue());
-                } else if (value instanceof Boolean) {
-                    point.addField(key, (Boolean) value);
-                } else {
-                    point.addField(key, value.toString());
+            Point point = Point.measurement(MEASUREMENT)
+                    .addTag(TAG_DEVICE_ID, deviceId)
+                    .time(time, WritePrecision.MS);
+
+            // 添加所有字段（数值统一按浮点写入，与已有数据的字段类型保持一致）
+            for (int i = 0; i < data.size(); i++) {
+                String key = data.fieldName(i);
+                switch (data.type(i)) {
+                    case TelemetryRecord.TYPE_DOUBLE:
+                    case TelemetryRecord.TYPE_LONG:
+                        point.addField(key, data.getDouble(i));
+                        break;
+                    case TelemetryRecord.TYPE_BOOLEAN:
+                        point.addField(key, data.getBoolean(i));
+                        break;
+                    case TelemetryRecord.TYPE_NULL:
+                        break;
+                    default:
+                        point.addField(key, data.getString(i));
+                        break;
                 }
             }
 
@@ -94,35 +249,52 @@ public class InfluxDbService {
         }
     }
 
+    public InfluxDBClient getClient() {
+        return influxDBClient;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getOrganization() {
+        return organization;
+    }
+
+    /**
+     * 写入运行指标
+     */
+    @Override
+    public Map<String, Object> getWriteStats() {
+        if (batchWriter != null) {
+            return batchWriter.getStats();
+        }
+        return Collections.singletonMap("mode", writeProperties.getMode());
+    }
+
     /**
      * 查询设备历史数据
      */
+    @Override
     public List<Map<String, Object>> queryDeviceData(String deviceId, String startTime, String endTime) {
         List<Map<String, Object>> result = new ArrayList<>();
 
         try {
-            String flux = String.format(
-                    "from(bucket: \"%s\") "
-                            + "|> range(start: %s, stop: %s) "
-                            + "|> filter(fn: (r) => r._measurement == \"device_data\") "
-                            + "|> filter(fn: (r) => r.device_id == \"%s\")",
-                    bucket, startTime, endTime, deviceId
-            );
-
-            List<FluxTable> tables = influxDBClient.getQueryApi().query(flux, organization);
-
-            for (FluxTable table : tables) {
-                for (FluxRecord record : table.getRecords()) {
-                    Map<String, Object> dataPoint = new HashMap<>();
-                    dataPoint.put("time", record.getTime());
-                    dataPoint.put("field", record.getField());
-                    dataPoint.put("value", record.getValue());
-                    result.add(dataPoint);
+            streamQuery(historyFlux(deviceId, startTime, endTime), record -> {
+                if (result.size() >= maxQueryPoints) {
+                    throw new BusinessException("查询结果超过" + maxQueryPoints + "个点，请缩小时间范围或使用流式接口");
                 }
-            }
+                Map<String, Object> dataPoint = new HashMap<>();
+                dataPoint.put("time", record.getTime());
+                dataPoint.put("field", record.getField());
+                dataPoint.put("value", record.getValue());
+                result.add(dataPoint);
+            });
 
             log.debug("查询设备数据成功，deviceId: {}, 记录数: {}", deviceId, result.size());
 
+        } catch (BusinessException e) {
+            throw e;
         } catch (Exception e) {
             log.error("查询设备数据失败，deviceId: {}", deviceId, e);
         }
@@ -130,21 +302,147 @@ public class InfluxDbService {
         return result;
     }
 
+    /**
+     * 按列式结构查询设备历史数据（每个字段一组时间数组和数值数组）
+     *
+     * @param delta 时间是否差分编码
+     */
+    public List<SeriesColumn> queryDeviceDataColumnar(String deviceId, String startTime, String endTime, boolean delta) {
+        ColumnarCollector collector = new ColumnarCollector(maxQueryPoints);
+        try {
+            streamQuery(historyFlux(deviceId, startTime, endTime), collector);
+        } catch (IOException e) {
+            throw new IllegalStateException("列式查询失败", e);
+        }
+        log.debug("列式查询设备数据成功，deviceId: {}, 点数: {}", deviceId, collector.getPoints());
+        return collector.toColumns(delta);
+    }
+
+    /**
+     * 流式查询设备历史数据，结果逐条交给sink，内存占用与结果集大小无关
+     *
+     * @throws IOException sink写出失败（如客户端断开），此时查询已被取消
+     */
+    public void streamDeviceData(String deviceId, String startTime, String endTime, RecordSink sink) throws IOException {
+        streamQuery(historyFlux(deviceId, startTime, endTime), limited(sink));
+    }
+
+    /**
+     * 流式查询多台设备的历史数据，一次查询，结果按设备分组输出
+     */
+    public void streamBatchDeviceData(Collection<String> deviceIds, String startTime, String endTime,
+                                      RecordSink sink) throws IOException {
+        QueryRange range = QueryRange.resolve(startTime, endTime);
+        String flux = BATCH_HISTORY.bind()
+                .string("bucket", bucket)
+                .time("start", range.getStart())
+                .time("stop", range.getStop())
+                .anyOf("devices", TAG_DEVICE_ID, deviceIds)
+                .render();
+        streamQuery(flux, limited(sink));
+    }
+
+    /**
+     * 流式查询多台设备同一字段的窗口统计，一次查询，结果按设备分组输出
+     */
+    public void streamBatchStatistics(Collection<String> deviceIds, String field, String startTime, String endTime,
+                                      String windowPeriod, RecordSink sink) throws IOException {
+        QueryRange range = QueryRange.resolve(startTime, endTime);
+        String flux = BATCH_STATISTICS.bind()
+                .string("bucket", bucket)
+                .time("start", range.getStart())
+                .time("stop", range.getStop())
+                .anyOf("devices", TAG_DEVICE_ID, deviceIds)
+                .string("field", field)
+                .duration("every", QueryLimits.windowMillis(windowPeriod))
+                .render();
+        streamQuery(flux, limited(sink));
+    }
+
+    /**
+     * 流式查询一台或多台设备单个字段的原始数据，只返回时间、值和设备ID列
+     */
+    @Override
+    public void scanNumericField(Collection<String> deviceIds, String field, String startTime, String endTime,
+                                 PointConsumer consumer) throws IOException {
+        QueryRange range = QueryRange.resolve(startTime, endTime);
+        String flux = SCAN_FIELD.bind()
+                .string("bucket", bucket)
+                .time("start", range.getStart())
+                .time("stop", range.getStop())
+                .anyOf("devices", TAG_DEVICE_ID, deviceIds)
+                .string("field", field)
+                .render();
+        streamQuery(flux, record -> {
+            if (record.getTime() != null && record.getValue() instanceof Number) {
+                consumer.accept(String.valueOf(record.getValueByKey(TAG_DEVICE_ID)),
+                        record.getTime().toEpochMilli(), ((Number) record.getValue()).doubleValue());
+            }
+        });
+    }
+
+    /**
+     * 流式执行Flux查询
+     * <p>
+     * 使用客户端的回调查询接口边解析边回调，sink抛出异常或当前线程被中断时取消查询
+     */
+    public void streamQuery(String flux, RecordSink sink) throws IOException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicReference<Cancellable> query = new AtomicReference<>();
+
+        influxDBClient.getQueryApi().query(flux, organization, (cancellable, record) -> {
+            query.set(cancellable);
+            if (failure.get() != null) {
+                return;
+            }
+            try {
+                sink.accept(record);
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                cancellable.cancel();
+                done.countDown();
+            }
+        }, error -> {
+            failure.compareAndSet(null, error);
+            done.countDown();
+        }, done::countDown);
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Cancellable cancellable = query.get();
+            if (cancellable != null) {
+                cancellable.cancel();
+            }
+            throw new InterruptedIOException("流式查询被中断");
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error != null) {
+            throw new IllegalStateException("流式查询失败", error);
+        }
+    }
+
     /**
      * 查询设备最新数据
      */
+    @Override
     public Map<String, Object> queryLatestDeviceData(String deviceId) {
         Map<String, Object> result = new HashMap<>();
 
         try {
-            String flux = String.format(
-                    "from(bucket: \"%s\") "
-                            + "|> range(start: -1h) "
-                            + "|> filter(fn: (r) => r._measurement == \"device_data\") "
-                            + "|> filter(fn: (r) => r.device_id == \"%s\") "
-                            + "|> last()",
-                    bucket, deviceId
-            );
+            String flux = LATEST.bind()
+                    .string("bucket", bucket)
+                    .string("deviceId", deviceId)
+                    .render();
 
             List<FluxTable> tables = influxDBClient.getQueryApi().query(flux, organization);
 
@@ -165,43 +463,141 @@ public class InfluxDbService {
 
     /**
      * 查询设备数据统计
+     * <p>
+     * 统计窗口是某个汇总粒度的整数倍时，已汇总的时间段读取最粗的可用汇总数据（按sum/count重新计算均值），
+     * 尚未汇总的最近时间段读取原始数据，两部分按窗口边界拼接。
      */
+    @Override
     public Map<String, Object> queryDeviceDataStatistics(String deviceId, String field, 
                                                           String startTime, String endTime, String windowPeriod) {
-        Map<String, Object> result = new HashMap<>();
-
         try {
-            String flux = String.format(
-                    "from(bucket: \"%s\") "
-                            + "|> range(start: %s, stop: %s) "
-                            + "|> filter(fn: (r) => r._measurement == \"device_data\") "
-                            + "|> filter(fn: (r) => r.device_id == \"%s\") "
-                            + "|> filter(fn: (r) => r._field == \"%s\") "
-                            + "|> aggregateWindow(every: %s, fn: mean, createEmpty: false)",
-                    bucket, startTime, endTime, deviceId, field, windowPeriod
-            );
+            return TimeSeriesStore.super.queryDeviceDataStatistics(deviceId, field, startTime, endTime, windowPeriod);
+        } catch (Exception e) {
+            log.error("查询设备数据统计失败，deviceId: {}", deviceId, e);
+            return new HashMap<>();
+        }
+    }
 
-            List<FluxTable> tables = influxDBClient.getQueryApi().query(flux, organization);
-            List<Map<String, Object>> dataPoints = new ArrayList<>();
+    /**
+     * 查询窗口均值序列，time为窗口结束时间（毫秒）
+     *
+     * @throws RuntimeException 查询失败
+     */
+    @Override
+    public SeriesColumn queryStatisticsSeries(String deviceId, String field, String startTime, String endTime,
+                                              String windowPeriod) {
+        Instant now = Instant.now();
+        QueryRange range = QueryRange.resolve(startTime, endTime);
+        long windowMillis = QueryLimits.windowMillis(windowPeriod);
+        RollupResolution resolution = selectRollup(range, windowMillis, now);
+        String flux;
+        if (resolution != null) {
+            flux = rollupStatisticsFlux(resolution, deviceId, field, range, windowMillis, now);
+        } else {
+            flux = STATISTICS.bind()
+                    .string("bucket", bucket)
+                    .time("start", range.getStart())
+                    .time("stop", range.getStop())
+                    .string("deviceId", deviceId)
+                    .string("field", field)
+                    .duration("every", windowMillis)
+                    .render();
+        }
 
-            for (FluxTable table : tables) {
-                for (FluxRecord record : table.getRecords()) {
-                    Map<String, Object> point = new HashMap<>();
-                    point.put("time", record.getTime());
-                    point.put("value", record.getValue());
-                    dataPoints.add(point);
+        List<FluxTable> tables = influxDBClient.getQueryApi().query(flux, organization);
+        int size = 0;
+        for (FluxTable table : tables) {
+            size += table.getRecords().size();
+        }
+        long[] times = new long[size];
+        double[] values = new double[size];
+        int count = 0;
+        for (FluxTable table : tables) {
+            for (FluxRecord record : table.getRecords()) {
+                if (record.getTime() == null || !(record.getValue() instanceof Number)) {
+                    continue;
                 }
+                times[count] = record.getTime().toEpochMilli();
+                values[count] = ((Number) record.getValue()).doubleValue();
+                count++;
             }
+        }
 
-            result.put("data", dataPoints);
-            result.put("count", dataPoints.size());
+        SeriesColumn series = new SeriesColumn();
+        series.setField(field);
+        series.setResolution(resolution == null ? "raw" : resolution.getEvery());
+        series.setCount(count);
+        series.setTime(count == size ? times : Arrays.copyOf(times, count));
+        series.setValue(count == size ? values : Arrays.copyOf(values, count));
+        log.debug("查询设备数据统计成功，deviceId: {}, field: {}, 数据粒度: {}, 窗口数: {}",
+                deviceId, field, series.getResolution(), count);
+        return series;
+    }
 
-            log.debug("查询设备数据统计成功，deviceId: {}, field: {}", deviceId, field);
+    /**
+     * 选择统计查询使用的汇总粒度：统计窗口需为汇总粒度的整数倍，且查询范围内存在已汇总的时间段；否则返回null读原始数据
+     */
+    private RollupResolution selectRollup(QueryRange range, long windowMillis, Instant now) {
+        if (!rollupProperties.isEnabled()) {
+            return null;
+        }
+        RollupResolution resolution = RollupResolution.coarsestFor(windowMillis);
+        if (resolution == null) {
+            return null;
+        }
+        return rollupBoundary(resolution, windowMillis, range.getStop(), now).isAfter(range.getStart()) ? resolution : null;
+    }
 
-        } catch (Exception e) {
-            log.error("查询设备数据统计失败，deviceId: {}", deviceId, e);
+    /**
+     * 汇总数据只覆盖到 now - 2个汇总周期 之前（等待任务执行），该边界再向下对齐到统计窗口，
+     * 保证同一个统计窗口只来自汇总数据或原始数据之一
+     */
+    private static Instant rollupBoundary(RollupResolution resolution, long windowMillis, Instant stop, Instant now) {
+        long boundary = FluxTimes.floor(now.toEpochMilli() - 2 * resolution.getMillis(), windowMillis);
+        return Instant.ofEpochMilli(Math.min(boundary, stop.toEpochMilli()));
+    }
+
+    /**
+     * 基于汇总数据的统计脚本：已汇总时间段按sum/count重新计算均值，之后的时间段读原始数据
+     */
+    private String rollupStatisticsFlux(RollupResolution resolution, String deviceId, String field,
+                                        QueryRange range, long windowMillis, Instant now) {
+        Instant boundary = rollupBoundary(resolution, windowMillis, range.getStop(), now);
+        boolean withRaw = range.getStop().isAfter(boundary);
+        FluxTemplate.Binding binding = (withRaw ? ROLLUP_RAW_STATISTICS : ROLLUP_STATISTICS).bind()
+                .string("bucket", bucket)
+                .time("start", range.getStart())
+                .time("boundary", boundary)
+                .string("rollupMeasurement", resolution.getMeasurement())
+                .string("deviceId", deviceId)
+                .string("field", field)
+                .duration("every", windowMillis);
+        if (withRaw) {
+            binding.time("stop", range.getStop());
         }
+        return binding.render();
+    }
 
-        return result;
+    /**
+     * 流式查询输出点数上限，超出时取消查询
+     */
+    private RecordSink limited(RecordSink sink) {
+        long[] rows = new long[1];
+        return record -> {
+            if (++rows[0] > maxStreamPoints) {
+                throw new BusinessException("查询结果超过" + maxStreamPoints + "个点，请缩小时间范围");
+            }
+            sink.accept(record);
+        };
+    }
+
+    private String historyFlux(String deviceId, String startTime, String endTime) {
+        QueryRange range = QueryRange.resolve(startTime, endTime);
+        return HISTORY.bind()
+                .string("bucket", bucket)
+                .time("start", range.getStart())
+                .time("stop", range.getStop())
+                .string("deviceId", deviceId)
+                .render();
     }
-}
\ No newline at end of file
+}
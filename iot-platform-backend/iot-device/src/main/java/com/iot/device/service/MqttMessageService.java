@@ -2,6 +2,15 @@ package com.iot.device.service;
 
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
+import com.iot.device.ingest.IngestPipeline;
+import com.iot.device.ingest.TelemetrySchemaGuard;
+import com.iot.device.mqtt.MqttTopic;
+import com.iot.device.mqtt.MqttTopicRouter;
+import com.iot.device.mqtt.TopicHandler;
+import com.iot.device.telemetry.FieldNames;
+import com.iot.device.telemetry.TelemetryDecoder;
+import com.iot.device.telemetry.TelemetryRecord;
+import com.iot.device.tsdb.TimeSeriesStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.integration.annotation.ServiceActivator;
@@ -9,8 +18,10 @@ import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * MQTT消息处理服务
@@ -23,51 +34,82 @@ import java.util.regex.Pattern;
 public class MqttMessageService {
 
     private final DeviceService deviceService;
-    private final InfluxDbService influxDbService;
+    private final TimeSeriesStore timeSeriesStore;
     private final HomeAssistantService homeAssistantService;
+    private final IngestPipeline ingestPipeline;
+    private final DeviceShadowService deviceShadowService;
+    private final TelemetrySchemaGuard schemaGuard;
 
-    // Topic格式：device/{deviceId}/data 或 device/{deviceId}/status 或 device/{deviceId}/control
-    private static final Pattern TOPIC_PATTERN = Pattern.compile("device/([^/]+)/(data|status|control)");
-    // 场景触发格式：scene/{sceneId}/trigger
-    private static final Pattern SCENE_PATTERN = Pattern.compile("scene/([^/]+)/trigger");
+    /**
+     * 主题路由表，由 {@link MqttTopic} 驱动，与订阅列表保持一致
+     */
+    private final MqttTopicRouter<MqttTopic> router = new MqttTopicRouter<>();
+    private final Map<MqttTopic, TopicHandler> handlers = new EnumMap<>(MqttTopic.class);
+
+    // 控制命令参数字段（嵌套的params对象被解码器展开为点分字段名）
+    private static final int PARAM_POWER = FieldNames.idOf("params.power");
+    private static final int PARAM_ATTRIBUTE = FieldNames.idOf("params.attribute");
+    private static final int PARAM_VALUE = FieldNames.idOf("params.value");
+    private static final int PARAM_BRIGHTNESS = FieldNames.idOf("params.brightness");
+    private static final int PARAM_COLOR = FieldNames.idOf("params.color");
+
+    /**
+     * 每个接入工作线程复用一个遥测记录，避免逐条消息分配
+     */
+    private static final ThreadLocal<TelemetryRecord> RECORD = ThreadLocal.withInitial(TelemetryRecord::new);
+
+    /**
+     * 注册主题处理器
+     */
+    @PostConstruct
+    public void initRouter() {
+        handlers.put(MqttTopic.DEVICE_DATA, (match, payload) -> handleDeviceData(match.segment(0), payload));
+        handlers.put(MqttTopic.DEVICE_STATUS, (match, payload) -> handleDeviceStatus(match.segment(0), payload));
+        handlers.put(MqttTopic.HA_DEVICE_CONTROL, (match, payload) -> handleControlCommand(match.segment(0), payload));
+        handlers.put(MqttTopic.HA_SCENE_TRIGGER, (match, payload) ->
+                handleSceneTrigger(match.segment(0), new String(payload, StandardCharsets.UTF_8)));
+
+        for (MqttTopic topic : MqttTopic.values()) {
+            if (!handlers.containsKey(topic)) {
+                throw new IllegalStateException("MQTT主题未注册处理器: " + topic.getFilter());
+            }
+            router.register(topic.getFilter(), topic);
+        }
+    }
 
     /**
      * 处理MQTT消息
+     * <p>
+     * 运行在MQTT回调线程上，只匹配topic并按分片键（设备ID）投递到接入流水线，
+     * 消息体解析和存储写入在流水线工作线程中完成。
      */
     @ServiceActivator(inputChannel = "mqttInputChannel")
     public void handleMessage(Message<?> message) {
         try {
             String topic = (String) message.getHeaders().get("mqtt_receivedTopic");
-            String payload = new String((byte[]) message.getPayload());
-            
-            log.info("收到MQTT消息，topic: {}, payload: {}", topic, payload);
-            
-            // 检查是否为场景触发
-            Matcher sceneMatcher = SCENE_PATTERN.matcher(topic);
-            if (sceneMatcher.matches()) {
-                String sceneId = sceneMatcher.group(1);
-                handleSceneTrigger(sceneId, payload);
-                return;
-            }
-            
-            // 解析topic获取设备ID和消息类型
-            Matcher matcher = TOPIC_PATTERN.matcher(topic);
-            if (!matcher.matches()) {
+            byte[] payload = (byte[]) message.getPayload();
+
+            MqttTopicRouter.TopicMatch<MqttTopic> match = router.match(topic);
+            if (match == null) {
                 log.warn("无效的topic格式: {}", topic);
                 return;
             }
-            
-            String deviceId = matcher.group(1);
-            String messageType = matcher.group(2);
-            
-            // 根据消息类型分发处理
-            if ("data".equals(messageType)) {
-                handleDeviceData(deviceId, payload);
-            } else if ("status".equals(messageType)) {
-                handleDeviceStatus(deviceId, payload);
-            } else if ("control".equals(messageType)) {
-                handleControlCommand(deviceId, payload);
+
+            MqttTopic route = match.getTarget();
+            TopicHandler handler = handlers.get(route);
+            String shardKey = match.segment(route.getShardSegment());
+            if (shardKey.isEmpty()) {
+                log.warn("topic缺少设备标识: {}", topic);
+                return;
             }
+
+            // 同一设备的消息进入同一通道，保证处理顺序
+            ingestPipeline.submit(shardKey, () -> {
+                if (log.isDebugEnabled()) {
+                    log.debug("收到MQTT消息，topic: {}, payload: {}", topic, new String(payload, StandardCharsets.UTF_8));
+                }
+                handler.handle(match, payload);
+            });
             
         } catch (Exception e) {
             log.error("处理MQTT消息失败", e);
@@ -77,13 +119,21 @@ public class MqttMessageService {
     /**
      * 处理设备数据上报
      */
-    private void handleDeviceData(String deviceId, String payload) {
+    private void handleDeviceData(String deviceId, byte[] payload) {
         try {
-            JSONObject data = JSON.parseObject(payload);
-            log.info("设备数据上报，deviceId: {}, data: {}", deviceId, data);
+            TelemetryRecord data = RECORD.get();
+            TelemetryDecoder.decode(payload, data);
+            log.debug("设备数据上报，deviceId: {}, data: {}", deviceId, data);
             
-            // 存储到InfluxDB
-            influxDbService.writeDeviceData(deviceId, data);
+            long now = System.currentTimeMillis();
+            // 按产品功能定义校验字段，违规字段被剔除并发布到隔离主题
+            if (!schemaGuard.check(deviceId, data, now)) {
+                return;
+            }
+            // 存储到时序数据库
+            timeSeriesStore.writeDeviceData(deviceId, data, now);
+            // 更新设备影子
+            deviceShadowService.update(deviceId, data, now);
             
             // TODO: 触发规则引擎检查
             // TODO: 检查告警规则
@@ -96,10 +146,11 @@ public class MqttMessageService {
     /**
      * 处理设备状态变化
      */
-    private void handleDeviceStatus(String deviceId, String payload) {
+    private void handleDeviceStatus(String deviceId, byte[] payload) {
         try {
-            JSONObject statusData = JSON.parseObject(payload);
-            Integer status = statusData.getInteger("status");
+            TelemetryRecord statusData = RECORD.get();
+            TelemetryDecoder.decode(payload, statusData);
+            Integer status = readInteger(statusData, FieldNames.STATUS);
             
             if (status == null) {
                 log.warn("设备状态消息缺少status字段，deviceId: {}", deviceId);
@@ -119,18 +170,18 @@ public class MqttMessageService {
     /**
      * 处理Home Assistant控制命令
      */
-    private void handleControlCommand(String deviceId, String payload) {
+    private void handleControlCommand(String deviceId, byte[] payload) {
         try {
-            JSONObject json = JSON.parseObject(payload);
-            String action = json.getString("action");
-            JSONObject params = json.getJSONObject("params");
-            String requestId = json.getString("requestId");
+            TelemetryRecord params = RECORD.get();
+            TelemetryDecoder.decode(payload, params);
+            String action = params.findString(FieldNames.ACTION);
+            String requestId = params.findString(FieldNames.REQUEST_ID);
             
             log.info("收到Home Assistant控制命令: deviceId={}, action={}, params={}, requestId={}",
                     deviceId, action, params, requestId);
             
             // 根据action类型执行相应的设备控制
-            switch (action) {
+            switch (action == null ? "" : action) {
                 case "switch":
                     handleSwitchControl(deviceId, params);
                     break;
@@ -161,8 +212,8 @@ public class MqttMessageService {
     /**
      * 处理开关控制
      */
-    private void handleSwitchControl(String deviceId, JSONObject params) {
-        String power = params.getString("power");
+    private void handleSwitchControl(String deviceId, TelemetryRecord params) {
+        String power = params.findString(PARAM_POWER);
         log.info("执行开关控制: deviceId={}, power={}", deviceId, power);
         
         // TODO: 调用实际的设备控制服务
@@ -175,9 +226,10 @@ public class MqttMessageService {
     /**
      * 处理数值设置
      */
-    private void handleSetValue(String deviceId, JSONObject params) {
-        String attribute = params.getString("attribute");
-        Object value = params.get("value");
+    private void handleSetValue(String deviceId, TelemetryRecord params) {
+        String attribute = params.findString(PARAM_ATTRIBUTE);
+        int valueIndex = params.indexOf(PARAM_VALUE);
+        Object value = valueIndex < 0 ? null : params.getValue(valueIndex);
         log.info("执行数值设置: deviceId={}, attribute={}, value={}", deviceId, attribute, value);
         
         // TODO: 调用实际的设备控制服务
@@ -187,8 +239,8 @@ public class MqttMessageService {
     /**
      * 处理亮度调节
      */
-    private void handleAdjustBrightness(String deviceId, JSONObject params) {
-        Integer brightness = params.getInteger("brightness");
+    private void handleAdjustBrightness(String deviceId, TelemetryRecord params) {
+        Integer brightness = readInteger(params, PARAM_BRIGHTNESS);
         log.info("执行亮度调节: deviceId={}, brightness={}", deviceId, brightness);
         
         // TODO: 调用实际的设备控制服务
@@ -198,14 +250,35 @@ public class MqttMessageService {
     /**
      * 处理颜色设置
      */
-    private void handleSetColor(String deviceId, JSONObject params) {
-        String color = params.getString("color");
+    private void handleSetColor(String deviceId, TelemetryRecord params) {
+        String color = params.findString(PARAM_COLOR);
         log.info("执行颜色设置: deviceId={}, color={}", deviceId, color);
         
         // TODO: 调用实际的设备控制服务
         // deviceControlService.setColor(deviceId, color);
     }
 
+    /**
+     * 读取整数字段，兼容数字字符串；字段不存在或无法转换时返回null
+     */
+    private static Integer readInteger(TelemetryRecord record, int fieldId) {
+        int index = record.indexOf(fieldId);
+        if (index < 0) {
+            return null;
+        }
+        if (record.isNumber(index)) {
+            return (int) record.getLong(index);
+        }
+        if (record.type(index) == TelemetryRecord.TYPE_STRING) {
+            try {
+                return Integer.valueOf(record.getString(index).trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     /**
      * 处理场景触发
      */
@@ -4,16 +4,24 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.iot.common.core.exception.BusinessException;
+import com.iot.device.cache.DeviceMetadataCache;
+import com.iot.device.cache.MetadataChangeEvent;
 import com.iot.device.domain.Product;
+import com.iot.device.dto.CursorPage;
+import com.iot.device.ingest.ProductSchema;
 import com.iot.device.mapper.DeviceMapper;
 import com.iot.device.mapper.ProductMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -28,12 +36,69 @@ public class ProductService {
 
     private final ProductMapper productMapper;
     private final DeviceMapper deviceMapper;
+    private final DeviceMetadataCache metadataCache;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * 游标分页单页最多条数
+     */
+    @Value("${iot.query.max-cursor-page-size:200}")
+    private int maxCursorPageSize;
+
+    /**
+     * 游标分页统计总数时最多数到的条数
+     */
+    @Value("${iot.query.max-count-rows:10000}")
+    private int maxCountRows;
 
     /**
      * 分页查询产品列表
      */
     public IPage<Product> getProductPage(int pageNum, int pageSize, String keyword, String tenantId) {
         Page<Product> page = new Page<>(pageNum, pageSize);
+        LambdaQueryWrapper<Product> queryWrapper = listQuery(keyword, tenantId);
+        queryWrapper.orderByDesc(Product::getCreatedAt);
+        return productMapper.selectPage(page, queryWrapper);
+    }
+
+    /**
+     * 游标分页查询产品列表，见 {@link DeviceService#getDeviceCursorPage}
+     */
+    public CursorPage<Product> getProductCursorPage(String cursor, int pageSize, String keyword,
+                                                    boolean withTotal, String tenantId) {
+        int limit = Math.max(1, Math.min(pageSize, maxCursorPageSize));
+        LambdaQueryWrapper<Product> queryWrapper = listQuery(keyword, tenantId);
+        if (StringUtils.hasText(cursor)) {
+            CursorPage.Cursor position = CursorPage.decodeCursor(cursor);
+            queryWrapper.le(Product::getCreatedAt, position.getCreatedAt())
+                    .and(wrapper -> wrapper
+                            .lt(Product::getCreatedAt, position.getCreatedAt())
+                            .or()
+                            .lt(Product::getId, position.getId()));
+        }
+        queryWrapper.orderByDesc(Product::getCreatedAt, Product::getId)
+                .last("LIMIT " + (limit + 1));
+        List<Product> products = productMapper.selectList(queryWrapper);
+
+        CursorPage<Product> page = new CursorPage<>();
+        page.setHasMore(products.size() > limit);
+        if (page.isHasMore()) {
+            products = products.subList(0, limit);
+            Product last = products.get(limit - 1);
+            page.setNextCursor(CursorPage.encodeCursor(last.getCreatedAt(), last.getId()));
+        }
+        page.setRecords(products);
+        if (withTotal) {
+            int counted = productMapper.selectObjs(listQuery(keyword, tenantId)
+                    .select(Product::getId)
+                    .last("LIMIT " + (maxCountRows + 1))).size();
+            page.setTotal((long) Math.min(counted, maxCountRows));
+            page.setTotalExact(counted <= maxCountRows);
+        }
+        return page;
+    }
+
+    private LambdaQueryWrapper<Product> listQuery(String keyword, String tenantId) {
         LambdaQueryWrapper<Product> queryWrapper = new LambdaQueryWrapper<>();
         queryWrapper.eq(Product::getTenantId, tenantId);
         
@@ -43,19 +108,19 @@ public class ProductService {
                     .or()
                     .like(Product::getCode, keyword));
         }
-        
-        queryWrapper.orderByDesc(Product::getCreatedAt);
-        return productMapper.selectPage(page, queryWrapper);
+        return queryWrapper;
     }
 
     /**
      * 获取产品详情
      */
     public Product getProductById(String id) {
-        Product product = productMapper.selectById(id);
-        if (product == null) {
+        Product cached = metadataCache.getProduct(id);
+        if (cached == null) {
             throw new BusinessException("产品不存在");
         }
+        Product product = new Product();
+        BeanUtils.copyProperties(cached, product);
         
         // 统计设备数量
         Integer deviceCount = deviceMapper.countByProductId(id);
@@ -77,6 +142,8 @@ public class ProductService {
             throw new BusinessException("产品编码已存在");
         }
         
+        checkFeatures(product.getFeatures());
+        
         product.setId(UUID.randomUUID().toString().replace("-", ""));
         product.setStatus(1);
         product.setDeviceCount(0);
@@ -84,6 +151,7 @@ public class ProductService {
         product.setUpdatedAt(LocalDateTime.now());
         
         productMapper.insert(product);
+        eventPublisher.publishEvent(MetadataChangeEvent.product(MetadataChangeEvent.Action.CREATE, product.getId()));
         log.info("创建产品成功，productId: {}, name: {}", product.getId(), product.getName());
         
         return product;
@@ -110,8 +178,11 @@ public class ProductService {
             }
         }
         
+        checkFeatures(product.getFeatures());
+        
         product.setUpdatedAt(LocalDateTime.now());
         productMapper.updateById(product);
+        eventPublisher.publishEvent(MetadataChangeEvent.product(MetadataChangeEvent.Action.UPDATE, product.getId()));
         log.info("更新产品成功，productId: {}", product.getId());
         
         return productMapper.selectById(product.getId());
@@ -134,6 +205,18 @@ public class ProductService {
         }
         
         productMapper.deleteById(id);
+        eventPublisher.publishEvent(MetadataChangeEvent.product(MetadataChangeEvent.Action.DELETE, id));
         log.info("删除产品成功，productId: {}", id);
     }
-}
\ No newline at end of file
+
+    /**
+     * 校验功能定义能否编译为遥测结构
+     */
+    private void checkFeatures(String features) {
+        try {
+            ProductSchema.compile(features);
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("功能定义格式错误，应为JSON对象");
+        }
+    }
+}
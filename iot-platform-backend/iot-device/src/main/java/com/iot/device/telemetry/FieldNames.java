@@ -0,0 +1,217 @@
+package com.iot.device.telemetry;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 遥测字段名注册表
+ * <p>
+ * 将字段名映射为进程内唯一的整数ID。解码时直接用原始字节查表，命中时不产生任何对象分配；
+ * 读操作无锁，新字段注册时加锁写入当前表，只有容量翻倍时才重建并发布新表，注册摊还O(1)。
+ * <p>
+ * 注册表只接收可信来源的字段名：产品功能定义中声明的属性、代码中的常量，以及通过租户字段数上限校验的字段。
+ * 解码器对设备上报的字段名只做查找（{@link #find}），未注册的字段名作为记录内的局部字段保留原始字符串，
+ * 不会因为异常固件上报大量随机字段名而撑满注册表。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+public final class FieldNames {
+
+    /**
+     * 注册字段名上限，超出后新字段返回 {@link #UNKNOWN}，由调用方按局部字段处理
+     */
+    public static final int MAX_FIELDS = 1 << 16;
+
+    /**
+     * 未注册的字段（查找未命中或注册表已满）
+     */
+    public static final int UNKNOWN = -1;
+
+    /**
+     * 注册表已满时每隔多少次溢出打印一次告警
+     */
+    private static final long OVERFLOW_LOG_INTERVAL = 10000;
+
+    private static final Object LOCK = new Object();
+    private static final AtomicLong OVERFLOWS = new AtomicLong();
+
+    private static volatile Table table = new Table(1024, 256);
+
+    /**
+     * 常用字段
+     */
+    public static final int STATUS = idOf("status");
+    public static final int ACTION = idOf("action");
+    public static final int REQUEST_ID = idOf("requestId");
+
+    private FieldNames() {
+    }
+
+    /**
+     * 按字段名查找ID，不存在则注册
+     *
+     * @return 字段ID；注册表已满时返回 {@link #UNKNOWN}
+     */
+    public static int idOf(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return idOf(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 按UTF-8字节查找ID，不存在则注册
+     *
+     * @return 字段ID；注册表已满时返回 {@link #UNKNOWN}
+     */
+    public static int idOf(byte[] buf, int off, int len) {
+        int hash = hash(buf, off, len);
+        int id = table.find(buf, off, len, hash);
+        if (id != UNKNOWN) {
+            return id;
+        }
+        synchronized (LOCK) {
+            Table current = table;
+            id = current.find(buf, off, len, hash);
+            if (id != UNKNOWN) {
+                return id;
+            }
+            if (current.size >= MAX_FIELDS) {
+                long overflows = OVERFLOWS.incrementAndGet();
+                if (overflows % OVERFLOW_LOG_INTERVAL == 1) {
+                    log.warn("字段注册表已满（{}），新字段按局部字段处理，累计溢出 {} 次",
+                            MAX_FIELDS, overflows);
+                }
+                return UNKNOWN;
+            }
+            if (!current.hasRoom()) {
+                current = current.grow();
+                table = current;
+            }
+            byte[] bytes = Arrays.copyOfRange(buf, off, off + len);
+            return current.add(new String(bytes, StandardCharsets.UTF_8), bytes, hash);
+        }
+    }
+
+    /**
+     * 按UTF-8字节查找已注册的ID，不注册
+     *
+     * @return 字段ID，未注册返回 {@link #UNKNOWN}
+     */
+    public static int find(byte[] buf, int off, int len) {
+        return table.find(buf, off, len, hash(buf, off, len));
+    }
+
+    /**
+     * 按ID获取字段名
+     */
+    public static String nameOf(int id) {
+        return table.names[id];
+    }
+
+    /**
+     * 按ID获取字段名的UTF-8字节（调用方不得修改）
+     */
+    public static byte[] bytesOf(int id) {
+        return table.bytes[id];
+    }
+
+    /**
+     * 已注册字段数
+     */
+    public static int size() {
+        return table.size;
+    }
+
+    /**
+     * 注册表已满导致字段未能注册的累计次数
+     */
+    public static long overflowCount() {
+        return OVERFLOWS.get();
+    }
+
+    private static int hash(byte[] buf, int off, int len) {
+        int h = 1;
+        for (int i = off, end = off + len; i < end; i++) {
+            h = 31 * h + buf[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 开放寻址哈希表
+     * <p>
+     * 只在持有 {@link #LOCK} 时写入：先写字段名，再以volatile语义写槽位，最后更新size，
+     * 无锁读取方从槽位读到的ID对应的字段名一定可见。
+     */
+    private static final class Table {
+
+        private final AtomicIntegerArray slots;
+        private final int mask;
+        private final String[] names;
+        private final byte[][] bytes;
+        private volatile int size;
+
+        private Table(int capacity, int nameCapacity) {
+            this.slots = new AtomicIntegerArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                slots.lazySet(i, UNKNOWN);
+            }
+            this.mask = capacity - 1;
+            this.names = new String[nameCapacity];
+            this.bytes = new byte[nameCapacity][];
+        }
+
+        private int find(byte[] buf, int off, int len, int hash) {
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                int id = slots.get(i);
+                if (id == UNKNOWN) {
+                    return UNKNOWN;
+                }
+                byte[] candidate = bytes[id];
+                if (candidate.length == len
+                        && Arrays.equals(candidate, 0, len, buf, off, off + len)) {
+                    return id;
+                }
+            }
+        }
+
+        /**
+         * 负载因子不超过0.5且字段名数组未满
+         */
+        private boolean hasRoom() {
+            return size < names.length && (size + 1) * 2 <= slots.length();
+        }
+
+        private int add(String name, byte[] nameBytes, int hash) {
+            int id = size;
+            names[id] = name;
+            bytes[id] = nameBytes;
+            int i = hash & mask;
+            while (slots.get(i) != UNKNOWN) {
+                i = (i + 1) & mask;
+            }
+            slots.set(i, id);
+            size = id + 1;
+            return id;
+        }
+
+        /**
+         * 容量翻倍后重建
+         */
+        private Table grow() {
+            int capacity = slots.length();
+            while ((size + 1) * 2 > capacity) {
+                capacity <<= 1;
+            }
+            Table next = new Table(capacity, Math.max(names.length, size) * 2);
+            for (int id = 0; id < size; id++) {
+                next.add(names[id], bytes[id], hash(bytes[id], 0, bytes[id].length));
+            }
+            return next;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.iot.device.telemetry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 遥测消息解码器
+ * <p>
+ * 直接扫描原始JSON字节填充 {@link TelemetryRecord}，不构造中间String和JSONObject：
+ * 字段名通过 {@link FieldNames} 以字节查表（未注册的字段名作为局部字段保留，不写入注册表），数值就地解析为long/double，字符串只记录位置。
+ * 嵌套对象展开为点分字段名，数组作为原始JSON片段保留。
+ *
+ * @author IoT Platform
+ */
+public final class TelemetryDecoder {
+
+    /**
+     * 嵌套对象最大深度
+     */
+    private static final int MAX_DEPTH = 8;
+
+    /**
+     * 可精确表示的10的幂（Clinger快速路径）
+     */
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final int ESCAPED = 1 << 31;
+
+    private TelemetryDecoder() {
+    }
+
+    /**
+     * 解码JSON对象到记录中（记录会先被清空）
+     *
+     * @throws IllegalArgumentException 消息不是合法的JSON对象
+     */
+    public static void decode(byte[] buf, TelemetryRecord record) {
+        record.reset(buf);
+        int pos = skipWhitespace(buf, 0);
+        if (pos >= buf.length || buf[pos] != '{') {
+            throw error(buf, pos, "消息必须是JSON对象");
+        }
+        pos = parseObject(buf, pos, record, 0, 0);
+        if (skipWhitespace(buf, pos) != buf.length) {
+            throw error(buf, pos, "JSON对象之后存在多余内容");
+        }
+    }
+
+    private static int parseObject(byte[] buf, int pos, TelemetryRecord record, int prefixLen, int depth) {
+        pos = skipWhitespace(buf, pos + 1);
+        if (pos < buf.length && buf[pos] == '}') {
+            return pos + 1;
+        }
+        while (true) {
+            if (pos >= buf.length || buf[pos] != '"') {
+                throw error(buf, pos, "缺少字段名");
+            }
+            int end = scanString(buf, pos);
+            int keyEnd = end & ~ESCAPED;
+            int keyLen = appendKey(record, prefixLen, buf, pos + 1, keyEnd - pos - 1, end < 0);
+
+            pos = skipWhitespace(buf, keyEnd + 1);
+            if (pos >= buf.length || buf[pos] != ':') {
+                throw error(buf, pos, "缺少冒号");
+            }
+            pos = skipWhitespace(buf, pos + 1);
+            if (pos >= buf.length) {
+                throw error(buf, pos, "缺少字段值");
+            }
+
+            if (buf[pos] == '{') {
+                if (depth >= MAX_DEPTH) {
+                    throw error(buf, pos, "嵌套层级过深");
+                }
+                ensureScratch(record, keyLen + 1);
+                record.keyScratch[keyLen] = '.';
+                pos = parseObject(buf, pos, record, keyLen + 1, depth + 1);
+            } else {
+                // 只查找不注册：设备上报的字段名不可信，未注册的作为局部字段保留
+                int fieldId = FieldNames.find(record.keyScratch, 0, keyLen);
+                if (fieldId == FieldNames.UNKNOWN) {
+                    fieldId = record.localField(record.keyScratch, keyLen);
+                }
+                pos = parseValue(buf, pos, record, fieldId);
+            }
+
+            pos = skipWhitespace(buf, pos);
+            if (pos >= buf.length) {
+                throw error(buf, pos, "JSON对象未结束");
+            }
+            if (buf[pos] == ',') {
+                pos = skipWhitespace(buf, pos + 1);
+            } else if (buf[pos] == '}') {
+                return pos + 1;
+            } else {
+                throw error(buf, pos, "缺少逗号或右括号");
+            }
+        }
+    }
+
+    /**
+     * 解析标量值或数组，fieldId为UNKNOWN时只跳过不记录
+     */
+    private static int parseValue(byte[] buf, int pos, TelemetryRecord record, int fieldId) {
+        boolean keep = fieldId != FieldNames.UNKNOWN;
+        byte c = buf[pos];
+        switch (c) {
+            case '"': {
+                int end = scanString(buf, pos);
+                int strEnd = end & ~ESCAPED;
+                if (keep) {
+                    int len = strEnd - pos - 1;
+                    record.addSlice(fieldId, TelemetryRecord.TYPE_STRING, pos + 1, end < 0 ? -len : len);
+                }
+                return strEnd + 1;
+            }
+            case 't':
+                pos = expectLiteral(buf, pos, "true");
+                if (keep) {
+                    record.addBoolean(fieldId, true);
+                }
+                return pos;
+            case 'f':
+                pos = expectLiteral(buf, pos, "false");
+                if (keep) {
+                    record.addBoolean(fieldId, false);
+                }
+                return pos;
+            case 'n':
+                pos = expectLiteral(buf, pos, "null");
+                if (keep) {
+                    record.addNull(fieldId);
+                }
+                return pos;
+            case '[': {
+                int end = skipComposite(buf, pos);
+                if (keep) {
+                    record.addSlice(fieldId, TelemetryRecord.TYPE_RAW, pos, end - pos);
+                }
+                return end;
+            }
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return parseNumber(buf, pos, record, fieldId, keep);
+                }
+                throw error(buf, pos, "无法识别的值");
+        }
+    }
+
+    private static int parseNumber(byte[] buf, int pos, TelemetryRecord record, int fieldId, boolean keep) {
+        int start = pos;
+        boolean negative = false;
+        if (buf[pos] == '-') {
+            negative = true;
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean integral = true;
+        boolean exact = true;
+        int digitStart = pos;
+
+        while (pos < buf.length && buf[pos] >= '0' && buf[pos] <= '9') {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (buf[pos] - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exact = false;
+                exponent++;
+            }
+            pos++;
+        }
+        if (pos == digitStart) {
+            throw error(buf, pos, "数字格式错误");
+        }
+
+        if (pos < buf.length && buf[pos] == '.') {
+            integral = false;
+            pos++;
+            int fracStart = pos;
+            while (pos < buf.length && buf[pos] >= '0' && buf[pos] <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (buf[pos] - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+                pos++;
+            }
+            if (pos == fracStart) {
+                throw error(buf, pos, "数字格式错误");
+            }
+        }
+
+        if (pos < buf.length && (buf[pos] == 'e' || buf[pos] == 'E')) {
+            integral = false;
+            pos++;
+            boolean negativeExp = false;
+            if (pos < buf.length && (buf[pos] == '+' || buf[pos] == '-')) {
+                negativeExp = buf[pos] == '-';
+                pos++;
+            }
+            int expStart = pos;
+            int exp = 0;
+            while (pos < buf.length && buf[pos] >= '0' && buf[pos] <= '9') {
+                if (exp < 10000) {
+                    exp = exp * 10 + (buf[pos] - '0');
+                }
+                pos++;
+            }
+            if (pos == expStart) {
+                throw error(buf, pos, "数字格式错误");
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+
+        if (!keep) {
+            return pos;
+        }
+        if (integral && exact) {
+            record.addLong(fieldId, negative ? -mantissa : mantissa);
+        } else if (exact && digits <= 15 && exponent >= -22 && exponent <= 22) {
+            double value = exponent >= 0 ? mantissa * POW10[exponent] : mantissa / POW10[-exponent];
+            record.addDouble(fieldId, negative ? -value : value);
+        } else {
+            // 超出快速路径精度范围，回退到JDK解析保证正确舍入
+            record.addDouble(fieldId, Double.parseDouble(new String(buf, start, pos - start, StandardCharsets.ISO_8859_1)));
+        }
+        return pos;
+    }
+
+    /**
+     * 把字段名（可能带有父级前缀）写入keyScratch，返回完整长度
+     */
+    private static int appendKey(TelemetryRecord record, int prefixLen, byte[] buf, int off, int len, boolean escaped) {
+        if (escaped) {
+            byte[] key = unescape(buf, off, len).getBytes(StandardCharsets.UTF_8);
+            ensureScratch(record, prefixLen + key.length);
+            System.arraycopy(key, 0, record.keyScratch, prefixLen, key.length);
+            return prefixLen + key.length;
+        }
+        ensureScratch(record, prefixLen + len);
+        System.arraycopy(buf, off, record.keyScratch, prefixLen, len);
+        return prefixLen + len;
+    }
+
+    private static void ensureScratch(TelemetryRecord record, int required) {
+        if (record.keyScratch.length <= required) {
+            record.keyScratch = Arrays.copyOf(record.keyScratch, Math.max(required + 1, record.keyScratch.length * 2));
+        }
+    }
+
+    /**
+     * 扫描字符串，返回右引号位置；含转义字符时最高位置1
+     */
+    private static int scanString(byte[] buf, int pos) {
+        boolean escaped = false;
+        int i = pos + 1;
+        while (i < buf.length) {
+            byte c = buf[i];
+            if (c == '"') {
+                return escaped ? i | ESCAPED : i;
+            }
+            if (c == '\\') {
+                escaped = true;
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        throw error(buf, pos, "字符串未结束");
+    }
+
+    /**
+     * 跳过数组或对象，返回结束位置之后的下标
+     */
+    private static int skipComposite(byte[] buf, int pos) {
+        int depth = 0;
+        int i = pos;
+        while (i < buf.length) {
+            byte c = buf[i];
+            if (c == '"') {
+                i = (scanString(buf, i) & ~ESCAPED) + 1;
+                continue;
+            }
+            if (c == '[' || c == '{') {
+                depth++;
+            } else if (c == ']' || c == '}') {
+                if (--depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        throw error(buf, pos, "数组未结束");
+    }
+
+    private static int expectLiteral(byte[] buf, int pos, String literal) {
+        int len = literal.length();
+        if (pos + len > buf.length) {
+            throw error(buf, pos, "无法识别的值");
+        }
+        for (int i = 0; i < len; i++) {
+            if (buf[pos + i] != literal.charAt(i)) {
+                throw error(buf, pos, "无法识别的值");
+            }
+        }
+        return pos + len;
+    }
+
+    private static int skipWhitespace(byte[] buf, int pos) {
+        while (pos < buf.length) {
+            byte c = buf[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * 反转义JSON字符串内容（不含引号）
+     */
+    static String unescape(byte[] buf, int off, int len) {
+        StringBuilder sb = new StringBuilder(len);
+        int end = off + len;
+        int runStart = off;
+        int i = off;
+        while (i < end) {
+            if (buf[i] != '\\') {
+                i++;
+                continue;
+            }
+            if (i > runStart) {
+                sb.append(new String(buf, runStart, i - runStart, StandardCharsets.UTF_8));
+            }
+            byte c = i + 1 < end ? buf[i + 1] : 0;
+            switch (c) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    if (i + 6 > end) {
+                        throw error(buf, i, "转义字符格式错误");
+                    }
+                    sb.append((char) Integer.parseInt(new String(buf, i + 2, 4, StandardCharsets.ISO_8859_1), 16));
+                    i += 4;
+                    break;
+                default:
+                    sb.append((char) c);
+                    break;
+            }
+            i += 2;
+            runStart = i;
+        }
+        if (runStart < end) {
+            sb.append(new String(buf, runStart, end - runStart, StandardCharsets.UTF_8));
+        }
+        return sb.toString();
+    }
+
+    private static IllegalArgumentException error(byte[] buf, int pos, String reason) {
+        return new IllegalArgumentException("非法的JSON消息，" + reason + "，位置: " + pos);
+    }
+}
@@ -0,0 +1,293 @@
+package com.iot.device.telemetry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 扁平化遥测记录（可复用）
+ * <p>
+ * 由 {@link TelemetryDecoder} 直接从原始消息字节填充：字段以 {@link FieldNames} 的整数ID标识，
+ * 未注册的字段名作为局部字段保存字符串，以负数ID标识（见 {@link #isLocalField}），只在本条记录内有效；
+ * 数值以原始类型存放在long槽位中（double保存其位模式），字符串只记录在源字节中的偏移和长度，按需物化。
+ * 嵌套对象展开为以"."连接的字段名，例如 {"params":{"power":"on"}} 展开为 params.power。
+ * <p>
+ * 非线程安全，通常每个接入工作线程持有一个实例反复使用。
+ *
+ * @author IoT Platform
+ */
+public final class TelemetryRecord {
+
+    public static final byte TYPE_DOUBLE = 1;
+    public static final byte TYPE_LONG = 2;
+    public static final byte TYPE_BOOLEAN = 3;
+    public static final byte TYPE_STRING = 4;
+    public static final byte TYPE_NULL = 5;
+    /**
+     * 原样保留的JSON片段（数组）
+     */
+    public static final byte TYPE_RAW = 6;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private byte[] source;
+    private int size;
+    private int[] fieldIds = new int[INITIAL_CAPACITY];
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    /**
+     * 字符串/原始片段在源字节中的偏移和长度；STRING类型的长度为负表示含转义字符
+     */
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    /**
+     * 局部字段名，局部字段ID为 -2 - 下标
+     */
+    private String[] localNames = new String[4];
+    private int localCount;
+
+    /**
+     * 解码时拼接嵌套字段名的缓冲区
+     */
+    byte[] keyScratch = new byte[64];
+
+    /**
+     * 清空记录并绑定新的源字节
+     */
+    public void reset(byte[] source) {
+        this.source = source;
+        this.size = 0;
+        this.localCount = 0;
+    }
+
+    /**
+     * 是否为局部字段ID（字段名未在 {@link FieldNames} 注册）
+     */
+    public static boolean isLocalField(int fieldId) {
+        return fieldId < FieldNames.UNKNOWN;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] source() {
+        return source;
+    }
+
+    public int fieldId(int index) {
+        return fieldIds[index];
+    }
+
+    public String fieldName(int index) {
+        int fieldId = fieldIds[index];
+        return fieldId >= 0 ? FieldNames.nameOf(fieldId) : localNames[-2 - fieldId];
+    }
+
+    /**
+     * 局部字段注册到 {@link FieldNames} 后替换为全局字段ID
+     */
+    public void setFieldId(int index, int fieldId) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("字段下标越界: " + index);
+        }
+        fieldIds[index] = fieldId;
+    }
+
+    public byte type(int index) {
+        return types[index];
+    }
+
+    /**
+     * 查找字段所在下标，不存在返回-1
+     */
+    public int indexOf(int fieldId) {
+        for (int i = 0; i < size; i++) {
+            if (fieldIds[i] == fieldId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 字符串/原始片段在源字节中的偏移
+     */
+    public int offset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * 字符串/原始片段的字节长度，为负表示字符串含转义字符（实际长度取绝对值）
+     */
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public boolean isNumber(int index) {
+        return types[index] == TYPE_DOUBLE || types[index] == TYPE_LONG;
+    }
+
+    /**
+     * 数值字段按double读取
+     */
+    public double getDouble(int index) {
+        switch (types[index]) {
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(values[index]);
+            case TYPE_LONG:
+                return values[index];
+            case TYPE_BOOLEAN:
+                return values[index] == 0 ? 0d : 1d;
+            default:
+                throw new IllegalStateException("字段不是数值类型: " + fieldName(index));
+        }
+    }
+
+    /**
+     * 数值字段按long读取（小数截断）
+     */
+    public long getLong(int index) {
+        switch (types[index]) {
+            case TYPE_LONG:
+            case TYPE_BOOLEAN:
+                return values[index];
+            case TYPE_DOUBLE:
+                return (long) Double.longBitsToDouble(values[index]);
+            default:
+                throw new IllegalStateException("字段不是数值类型: " + fieldName(index));
+        }
+    }
+
+    public boolean getBoolean(int index) {
+        return values[index] != 0;
+    }
+
+    /**
+     * 物化字符串值；数值、布尔按文本返回，null返回null
+     */
+    public String getString(int index) {
+        switch (types[index]) {
+            case TYPE_STRING:
+                int len = lengths[index];
+                return len >= 0
+                        ? new String(source, offsets[index], len, StandardCharsets.UTF_8)
+                        : TelemetryDecoder.unescape(source, offsets[index], -len);
+            case TYPE_RAW:
+                return new String(source, offsets[index], lengths[index], StandardCharsets.UTF_8);
+            case TYPE_DOUBLE:
+                return Double.toString(getDouble(index));
+            case TYPE_LONG:
+                return Long.toString(values[index]);
+            case TYPE_BOOLEAN:
+                return Boolean.toString(values[index] != 0);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 按装箱对象读取（仅用于低频路径）
+     */
+    public Object getValue(int index) {
+        switch (types[index]) {
+            case TYPE_DOUBLE:
+                return getDouble(index);
+            case TYPE_LONG:
+                return values[index];
+            case TYPE_BOOLEAN:
+                return values[index] != 0;
+            case TYPE_NULL:
+                return null;
+            default:
+                return getString(index);
+        }
+    }
+
+    /**
+     * 按字段ID读取字符串，不存在返回null
+     */
+    public String findString(int fieldId) {
+        int index = indexOf(fieldId);
+        return index < 0 ? null : getString(index);
+    }
+
+    /**
+     * 移除一个字段，其后的字段前移
+     */
+    public void remove(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("字段下标越界: " + index);
+        }
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(fieldIds, index + 1, fieldIds, index, moved);
+            System.arraycopy(types, index + 1, types, index, moved);
+            System.arraycopy(values, index + 1, values, index, moved);
+            System.arraycopy(offsets, index + 1, offsets, index, moved);
+            System.arraycopy(lengths, index + 1, lengths, index, moved);
+        }
+        size--;
+    }
+
+    /**
+     * 登记局部字段名，返回局部字段ID
+     */
+    int localField(byte[] name, int len) {
+        if (localCount == localNames.length) {
+            localNames = Arrays.copyOf(localNames, localCount * 2);
+        }
+        localNames[localCount] = new String(name, 0, len, StandardCharsets.UTF_8);
+        return -2 - localCount++;
+    }
+
+    void addDouble(int fieldId, double value) {
+        int i = append(fieldId, TYPE_DOUBLE);
+        values[i] = Double.doubleToRawLongBits(value);
+    }
+
+    void addLong(int fieldId, long value) {
+        int i = append(fieldId, TYPE_LONG);
+        values[i] = value;
+    }
+
+    void addBoolean(int fieldId, boolean value) {
+        int i = append(fieldId, TYPE_BOOLEAN);
+        values[i] = value ? 1 : 0;
+    }
+
+    void addNull(int fieldId) {
+        append(fieldId, TYPE_NULL);
+    }
+
+    void addSlice(int fieldId, byte type, int offset, int length) {
+        int i = append(fieldId, type);
+        offsets[i] = offset;
+        lengths[i] = length;
+    }
+
+    private int append(int fieldId, byte type) {
+        if (size == fieldIds.length) {
+            int capacity = size * 2;
+            fieldIds = Arrays.copyOf(fieldIds, capacity);
+            types = Arrays.copyOf(types, capacity);
+            values = Arrays.copyOf(values, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        fieldIds[size] = fieldId;
+        types[size] = type;
+        return size++;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(fieldName(i)).append('=').append(getValue(i));
+        }
+        return sb.append('}').toString();
+    }
+}
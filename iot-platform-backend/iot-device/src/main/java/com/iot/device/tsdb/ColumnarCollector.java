@@ -0,0 +1,143 @@
+package com.iot.device.tsdb;
+
+import com.influxdb.query.FluxRecord;
+import com.iot.common.core.exception.BusinessException;
+import com.iot.device.dto.SeriesColumn;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 列式结果收集器
+ * <p>
+ * 把流式查询结果按字段直接追加到原始类型数组中（时间long[]、数值double[]），
+ * 不为每条记录创建Map。Flux结果按字段分表输出，连续记录通常属于同一字段，只在字段切换时查表。
+ *
+ * @author IoT Platform
+ */
+public class ColumnarCollector implements RecordSink {
+
+    private final int maxPoints;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private Column last;
+    private int points;
+
+    /**
+     * @param maxPoints 最多收集的点数，超出时抛出BusinessException
+     */
+    public ColumnarCollector(int maxPoints) {
+        this.maxPoints = maxPoints;
+    }
+
+    @Override
+    public void accept(FluxRecord record) {
+        Instant time = record.getTime();
+        Object value = record.getValue();
+        if (time == null || value == null) {
+            return;
+        }
+        if (++points > maxPoints) {
+            throw new BusinessException("查询结果超过" + maxPoints + "个点，请缩小时间范围或使用流式接口");
+        }
+        String field = record.getField();
+        Column column = last;
+        if (column == null || !column.field.equals(field)) {
+            column = columns.computeIfAbsent(field, Column::new);
+            last = column;
+        }
+        column.add(time.toEpochMilli(), value);
+    }
+
+    public int getPoints() {
+        return Math.min(points, maxPoints);
+    }
+
+    /**
+     * 生成列式结果
+     *
+     * @param delta 时间是否差分编码
+     */
+    public List<SeriesColumn> toColumns(boolean delta) {
+        List<SeriesColumn> result = new ArrayList<>(columns.size());
+        for (Column column : columns.values()) {
+            SeriesColumn series = new SeriesColumn();
+            series.setField(column.field);
+            series.setCount(column.size);
+            series.setDelta(delta);
+            long[] times = Arrays.copyOf(column.times, column.size);
+            if (delta) {
+                deltaEncode(times);
+            }
+            series.setTime(times);
+            if (column.texts != null) {
+                series.setText(Arrays.copyOf(column.texts, column.size));
+            } else {
+                series.setValue(Arrays.copyOf(column.values, column.size));
+            }
+            result.add(series);
+        }
+        return result;
+    }
+
+    /**
+     * 原地差分编码：首项保持绝对值，之后每项为与前一项的差值
+     */
+    static void deltaEncode(long[] times) {
+        for (int i = times.length - 1; i > 0; i--) {
+            times[i] -= times[i - 1];
+        }
+    }
+
+    private static final class Column {
+
+        private final String field;
+        private long[] times = new long[64];
+        private double[] values = new double[64];
+        /**
+         * 出现字符串值后切换为文本列
+         */
+        private String[] texts;
+        private int size;
+
+        private Column(String field) {
+            this.field = field;
+        }
+
+        private void add(long time, Object value) {
+            if (size == times.length) {
+                int capacity = size * 2;
+                times = Arrays.copyOf(times, capacity);
+                if (texts != null) {
+                    texts = Arrays.copyOf(texts, capacity);
+                } else {
+                    values = Arrays.copyOf(values, capacity);
+                }
+            }
+            times[size] = time;
+            if (texts == null) {
+                if (value instanceof Number) {
+                    values[size++] = ((Number) value).doubleValue();
+                    return;
+                }
+                if (value instanceof Boolean) {
+                    values[size++] = (Boolean) value ? 1d : 0d;
+                    return;
+                }
+                switchToText();
+            }
+            texts[size++] = value.toString();
+        }
+
+        private void switchToText() {
+            texts = new String[times.length];
+            for (int i = 0; i < size; i++) {
+                texts[i] = Double.toString(values[i]);
+            }
+            values = null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.iot.device.tsdb;
+
+import com.influxdb.query.FluxRecord;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 以CSV格式逐行输出查询结果：device_id,time,field,value
+ * <p>
+ * 含逗号、引号或换行的值按RFC 4180加引号转义。
+ *
+ * @author IoT Platform
+ */
+public class CsvRecordWriter implements RecordSink {
+
+    public static final String HEADER = "device_id,time,field,value\n";
+
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder(128);
+    private long rows;
+
+    public CsvRecordWriter(OutputStream out) {
+        this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void accept(FluxRecord record) throws IOException {
+        line.setLength(0);
+        appendCell(line, record.getValueByKey("device_id"));
+        line.append(',');
+        appendCell(line, record.getTime());
+        line.append(',');
+        appendCell(line, record.getField());
+        line.append(',');
+        appendCell(line, record.getValue());
+        line.append('\n');
+        writer.append(line);
+        rows++;
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    private static void appendCell(StringBuilder sb, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Double && !Double.isFinite((Double) value)) {
+            return;
+        }
+        String s = value.toString();
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(s);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,239 @@
+package com.iot.device.tsdb;
+
+import com.iot.common.core.exception.BusinessException;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 预编译的Flux查询模板
+ * <p>
+ * 模板中的 ${name} 为参数占位符，编译时切分为常量片段和参数位置，编译结果按模板文本缓存。
+ * 参数只能按类型绑定：字符串渲染为转义后的字符串字面量，时间渲染为RFC3339时间字面量，
+ * 时长渲染为校验过的时长字面量，任何调用方输入都不会作为脚本文本直接拼入。
+ * <p>
+ * InfluxDB OSS 2.x 不支持Flux查询参数（params仅InfluxDB Cloud可用），因此在客户端完成类型化绑定。
+ *
+ * @author IoT Platform
+ */
+public final class FluxTemplate {
+
+    private static final Map<String, FluxTemplate> CACHE = new ConcurrentHashMap<>();
+    private static final Pattern COLUMN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final String[] literals;
+    private final String[] params;
+    private final Map<String, Integer> index = new HashMap<>();
+    private final int literalLength;
+
+    private FluxTemplate(String text) {
+        List<String> literalList = new ArrayList<>();
+        List<String> paramList = new ArrayList<>();
+        int pos = 0;
+        int length = 0;
+        while (true) {
+            int open = text.indexOf("${", pos);
+            if (open < 0) {
+                break;
+            }
+            int close = text.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("模板占位符未闭合: " + text.substring(open));
+            }
+            String name = text.substring(open + 2, close);
+            if (!COLUMN.matcher(name).matches()) {
+                throw new IllegalArgumentException("模板参数名不合法: " + name);
+            }
+            literalList.add(text.substring(pos, open));
+            length += open - pos;
+            paramList.add(name);
+            index.putIfAbsent(name, index.size());
+            pos = close + 1;
+        }
+        literalList.add(text.substring(pos));
+        length += text.length() - pos;
+        this.literals = literalList.toArray(new String[0]);
+        this.params = paramList.toArray(new String[0]);
+        this.literalLength = length;
+    }
+
+    /**
+     * 编译模板，同一模板文本只编译一次
+     */
+    public static FluxTemplate compile(String text) {
+        return CACHE.computeIfAbsent(text, FluxTemplate::new);
+    }
+
+    /**
+     * 开始一次参数绑定
+     */
+    public Binding bind() {
+        return new Binding();
+    }
+
+    /**
+     * 一次查询的参数绑定，所有参数绑定后调用 {@link #render()} 得到脚本
+     */
+    public final class Binding {
+
+        private final String[] values = new String[index.size()];
+
+        /**
+         * 绑定字符串字面量
+         */
+        public Binding string(String name, String value) {
+            return set(name, quote(value));
+        }
+
+        /**
+         * 绑定时间字面量
+         */
+        public Binding time(String name, Instant value) {
+            return set(name, value.toString());
+        }
+
+        /**
+         * 绑定时长字面量
+         *
+         * @param millis 时长（毫秒），必须大于0
+         */
+        public Binding duration(String name, long millis) {
+            if (millis <= 0) {
+                throw new BusinessException("时长必须大于0");
+            }
+            return set(name, durationLiteral(millis));
+        }
+
+        /**
+         * 绑定"列等于任一值"的过滤表达式（r.column == "a" or r.column == "b"），
+         * InfluxDB可以下推到存储层按序列索引读取
+         */
+        public Binding anyOf(String name, String column, Collection<String> values) {
+            if (!COLUMN.matcher(column).matches()) {
+                throw new IllegalArgumentException("列名不合法: " + column);
+            }
+            if (values.isEmpty()) {
+                throw new BusinessException("过滤值不能为空");
+            }
+            StringBuilder sb = new StringBuilder(values.size() * (column.length() + 32));
+            for (String value : values) {
+                if (sb.length() > 0) {
+                    sb.append(" or ");
+                }
+                sb.append("r.").append(column).append(" == ");
+                appendQuoted(sb, value);
+            }
+            return set(name, sb.toString());
+        }
+
+        /**
+         * 渲染脚本
+         *
+         * @throws IllegalStateException 存在未绑定的参数
+         */
+        public String render() {
+            int length = literalLength;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    throw new IllegalStateException("Flux模板参数未绑定: " + nameOf(i));
+                }
+                length += values[i].length();
+            }
+            StringBuilder sb = new StringBuilder(length);
+            for (int i = 0; i < params.length; i++) {
+                sb.append(literals[i]).append(values[index.get(params[i])]);
+            }
+            return sb.append(literals[params.length]).toString();
+        }
+
+        private Binding set(String name, String rendered) {
+            Integer i = index.get(name);
+            if (i == null) {
+                throw new IllegalArgumentException("Flux模板中没有参数: " + name);
+            }
+            values[i] = rendered;
+            return this;
+        }
+
+        private String nameOf(int position) {
+            for (Map.Entry<String, Integer> entry : index.entrySet()) {
+                if (entry.getValue() == position) {
+                    return entry.getKey();
+                }
+            }
+            return String.valueOf(position);
+        }
+    }
+
+    /**
+     * 转义为Flux字符串字面量：反斜杠、双引号、插值起始符 ${ 和换行类字符转义，其他控制字符拒绝
+     */
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value == null ? 2 : value.length() + 2);
+        appendQuoted(sb, value);
+        return sb.toString();
+    }
+
+    private static void appendQuoted(StringBuilder sb, String value) {
+        if (value == null) {
+            throw new BusinessException("查询参数不能为空");
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    sb.append('\\').append(c);
+                    break;
+                case '$':
+                    if (i + 1 < value.length() && value.charAt(i + 1) == '{') {
+                        sb.append('\\');
+                    }
+                    sb.append(c);
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x7f) {
+                        throw new BusinessException("查询参数包含非法字符");
+                    }
+                    sb.append(c);
+                    break;
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * 按能整除的最大单位输出时长字面量，如 3600000 -> 1h
+     */
+    private static String durationLiteral(long millis) {
+        if (millis % 86_400_000L == 0) {
+            return millis / 86_400_000L + "d";
+        }
+        if (millis % 3_600_000L == 0) {
+            return millis / 3_600_000L + "h";
+        }
+        if (millis % 60_000L == 0) {
+            return millis / 60_000L + "m";
+        }
+        if (millis % 1_000L == 0) {
+            return millis / 1_000L + "s";
+        }
+        return millis + "ms";
+    }
+}
@@ -0,0 +1,97 @@
+package com.iot.device.tsdb;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Flux时间参数解析
+ *
+ * @author IoT Platform
+ */
+public final class FluxTimes {
+
+    private FluxTimes() {
+    }
+
+    /**
+     * 解析Flux时长（如 30s、5m、1h30m、7d、2w）为毫秒；
+     * 月、年等不定长单位或格式错误返回-1
+     */
+    public static long durationMillis(String duration) {
+        if (duration == null || duration.isEmpty()) {
+            return -1;
+        }
+        long total = 0;
+        int i = 0;
+        int len = duration.length();
+        while (i < len) {
+            int numStart = i;
+            while (i < len && Character.isDigit(duration.charAt(i))) {
+                i++;
+            }
+            if (i == numStart || i - numStart > 12) {
+                return -1;
+            }
+            long value = Long.parseLong(duration.substring(numStart, i));
+            int unitStart = i;
+            while (i < len && Character.isLetter(duration.charAt(i))) {
+                i++;
+            }
+            long unit = unitMillis(duration.substring(unitStart, i));
+            if (unit < 0) {
+                return -1;
+            }
+            total += value * unit;
+        }
+        return total;
+    }
+
+    /**
+     * 解析range的起止时间：now()、相对时长（-1h）或RFC3339时间；无法解析返回null
+     */
+    public static Instant resolve(String expression, Instant now) {
+        if (expression == null) {
+            return null;
+        }
+        String value = expression.trim();
+        if ("now()".equals(value)) {
+            return now;
+        }
+        if (value.startsWith("-")) {
+            long millis = durationMillis(value.substring(1));
+            return millis < 0 ? null : now.minusMillis(millis);
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 向下对齐到窗口边界（与aggregateWindow默认的纪元对齐方式一致）
+     */
+    public static long floor(long epochMillis, long windowMillis) {
+        return Math.floorDiv(epochMillis, windowMillis) * windowMillis;
+    }
+
+    private static long unitMillis(String unit) {
+        switch (unit) {
+            case "ms":
+                return 1L;
+            case "s":
+                return 1_000L;
+            case "m":
+                return 60_000L;
+            case "h":
+                return 3_600_000L;
+            case "d":
+                return 86_400_000L;
+            case "w":
+                return 604_800_000L;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.iot.device.tsdb;
+
+import com.influxdb.client.WriteApiBlocking;
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.exceptions.InfluxException;
+import com.iot.device.config.InfluxWriteProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * InfluxDB批量写入器
+ * <p>
+ * 写入方只把行协议追加到当前批次，批次按点数、字节数或等待时间封口后交给后台发送线程，
+ * 一个批次一次HTTP请求。发送失败时按指数退避加随机抖动重试，服务端返回Retry-After时以其为准；
+ * 4xx（格式错误、权限不足等）不重试。
+ * 待发送队列满时写入方最多等待 offerTimeoutMs，超时丢弃该批次并计数。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+public class InfluxBatchWriter {
+
+    private final WriteApiBlocking writeApi;
+    private final String bucket;
+    private final String organization;
+    private final InfluxWriteProperties properties;
+
+    private final Object lock = new Object();
+    private final BlockingQueue<Batch> pending;
+    private final Thread sender;
+    private Batch current;
+    private volatile boolean running;
+    private volatile long shutdownDeadline = Long.MAX_VALUE;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder pointsWritten = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile int lastBatchSize;
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder failedPoints = new LongAdder();
+    private final LongAdder droppedPoints = new LongAdder();
+
+    public InfluxBatchWriter(WriteApiBlocking writeApi, String bucket, String organization,
+                             InfluxWriteProperties properties) {
+        this.writeApi = writeApi;
+        this.bucket = bucket;
+        this.organization = organization;
+        this.properties = properties;
+        this.pending = new ArrayBlockingQueue<>(properties.getMaxPendingBatches());
+        this.sender = new Thread(this::runSender, "influx-batch-sender");
+        this.sender.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        sender.start();
+        log.info("InfluxDB批量写入已启动，批次点数: {}, 批次字节: {}, 刷新间隔: {}ms",
+                properties.getBatchSize(), properties.getBatchBytes(), properties.getFlushIntervalMs());
+    }
+
+    /**
+     * 停止写入并尽量发送剩余数据
+     */
+    public void stop() {
+        shutdownDeadline = System.currentTimeMillis() + properties.getShutdownTimeoutMs();
+        running = false;
+        try {
+            sender.join(properties.getShutdownTimeoutMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("InfluxDB批量写入已停止，未发送批次数: {}", pending.size());
+    }
+
+    /**
+     * 追加一行行协议（不含换行符）
+     *
+     * @return 是否被接收；停机后或待发送队列持续已满时返回false
+     */
+    public boolean write(CharSequence line) {
+        if (!running) {
+            droppedPoints.increment();
+            return false;
+        }
+        Batch sealed = null;
+        synchronized (lock) {
+            if (current == null) {
+                current = new Batch(Math.min(properties.getBatchBytes(), 64 * 1024));
+            }
+            current.append(line);
+            if (current.points >= properties.getBatchSize() || current.lines.length() >= properties.getBatchBytes()) {
+                sealed = current;
+                current = null;
+            }
+        }
+        return sealed == null || enqueue(sealed);
+    }
+
+    private boolean enqueue(Batch batch) {
+        try {
+            if (pending.offer(batch, properties.getOfferTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        droppedPoints.add(batch.points);
+        log.warn("InfluxDB待发送队列已满，丢弃批次，点数: {}, 累计丢弃: {}", batch.points, droppedPoints.sum());
+        return false;
+    }
+
+    /**
+     * 取出等待超时（或停机时）的未满批次
+     */
+    private Batch sealExpired(boolean force) {
+        synchronized (lock) {
+            if (current == null || current.points == 0) {
+                return null;
+            }
+            long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - current.createdAt);
+            if (!force && waited < properties.getFlushIntervalMs()) {
+                return null;
+            }
+            Batch sealed = current;
+            current = null;
+            return sealed;
+        }
+    }
+
+    private void runSender() {
+        long tick = Math.max(10, properties.getFlushIntervalMs() / 4);
+        while (true) {
+            boolean stopping = !running;
+            Batch expired = sealExpired(stopping);
+            if (expired != null) {
+                send(expired);
+            }
+            Batch batch;
+            try {
+                batch = pending.poll(tick, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (batch != null) {
+                send(batch);
+            } else if (stopping && expired == null) {
+                // 停机后当前批次和待发送队列均已清空
+                return;
+            }
+        }
+    }
+
+    private void send(Batch batch) {
+        String body = batch.lines.toString();
+        for (int attempt = 0; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                writeApi.writeRecord(bucket, organization, WritePrecision.MS, body);
+                long elapsed = System.nanoTime() - start;
+                batches.increment();
+                pointsWritten.add(batch.points);
+                bytesWritten.add(body.length());
+                flushNanos.add(elapsed);
+                maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+                lastFlushNanos = elapsed;
+                lastBatchSize = batch.points;
+                log.debug("InfluxDB批量写入成功，点数: {}, 耗时: {}ms", batch.points, TimeUnit.NANOSECONDS.toMillis(elapsed));
+                return;
+            } catch (Exception e) {
+                if (!isRetryable(e) || attempt >= properties.getMaxRetries()
+                        || System.currentTimeMillis() >= shutdownDeadline) {
+                    failedBatches.increment();
+                    failedPoints.add(batch.points);
+                    log.error("InfluxDB批量写入失败，放弃该批次，点数: {}, 已重试: {}次", batch.points, attempt, e);
+                    return;
+                }
+                long delay = retryDelay(attempt, e);
+                retries.increment();
+                log.warn("InfluxDB批量写入失败，{}ms后第{}次重试，点数: {}, 原因: {}",
+                        delay, attempt + 1, batch.points, e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    failedBatches.increment();
+                    failedPoints.add(batch.points);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 网络异常、429和5xx可重试，其余4xx重试也不会成功
+     */
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof InfluxException) {
+            int status = ((InfluxException) e).status();
+            return status == 0 || status == 429 || status >= 500;
+        }
+        return true;
+    }
+
+    /**
+     * 指数退避 + 抖动：在 [cap/2, cap] 内随机，避免多个实例同时重试
+     */
+    private long retryDelay(int attempt, Exception e) {
+        if (e instanceof InfluxException) {
+            Map<String, String> headers = ((InfluxException) e).headers();
+            String retryAfter = headers == null ? null : headers.get("Retry-After");
+            if (retryAfter != null) {
+                try {
+                    return Math.min(properties.getRetryMaxDelayMs(), Long.parseLong(retryAfter.trim()) * 1000);
+                } catch (NumberFormatException ignored) {
+                    // 非秒数格式时按退避策略处理
+                }
+            }
+        }
+        long cap = Math.min(properties.getRetryMaxDelayMs(), properties.getRetryBaseDelayMs() << Math.min(attempt, 20));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    /**
+     * 写入运行指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        int bufferedPoints;
+        synchronized (lock) {
+            bufferedPoints = current == null ? 0 : current.points;
+        }
+        long batchCount = batches.sum();
+        long points = pointsWritten.sum();
+        stats.put("mode", InfluxWriteProperties.WriteMode.BATCH);
+        stats.put("pendingBatches", pending.size());
+        stats.put("bufferedPoints", bufferedPoints);
+        stats.put("batches", batchCount);
+        stats.put("pointsWritten", points);
+        stats.put("bytesWritten", bytesWritten.sum());
+        stats.put("lastBatchSize", lastBatchSize);
+        stats.put("avgBatchSize", batchCount == 0 ? 0 : points / batchCount);
+        stats.put("lastFlushMs", TimeUnit.NANOSECONDS.toMillis(lastFlushNanos));
+        stats.put("avgFlushMs", batchCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(flushNanos.sum() / batchCount));
+        stats.put("maxFlushMs", TimeUnit.NANOSECONDS.toMillis(maxFlushNanos.get()));
+        stats.put("retries", retries.sum());
+        stats.put("failedBatches", failedBatches.sum());
+        stats.put("failedPoints", failedPoints.sum());
+        stats.put("droppedPoints", droppedPoints.sum());
+        return stats;
+    }
+
+    /**
+     * 待发送批次：换行分隔的行协议
+     */
+    private static final class Batch {
+
+        private final StringBuilder lines;
+        private final long createdAt = System.nanoTime();
+        private int points;
+
+        private Batch(int initialCapacity) {
+            this.lines = new StringBuilder(initialCapacity);
+        }
+
+        private void append(CharSequence line) {
+            if (points > 0) {
+                lines.append('\n');
+            }
+            lines.append(line);
+            points++;
+        }
+    }
+}
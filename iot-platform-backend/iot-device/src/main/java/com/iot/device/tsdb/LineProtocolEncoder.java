@@ -0,0 +1,231 @@
+package com.iot.device.tsdb;
+
+import com.iot.device.telemetry.FieldNames;
+import com.iot.device.telemetry.TelemetryRecord;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * InfluxDB行协议编码器
+ * <p>
+ * 直接从 {@link TelemetryRecord} 生成一行行协议追加到调用方复用的StringBuilder中，
+ * 不构造Point和字段Map：字段名取自 {@link FieldNames} 缓存的字符串，ASCII字符串值直接从源字节拷贝。
+ * 数值字段统一按浮点写入（不带i后缀），与历史数据的字段类型保持一致，避免InfluxDB字段类型冲突。
+ * 输出与 {@code Point.toLineProtocol()} 逐字节一致：字段按名称排序，同名字段取最后一个非null值，
+ * 布尔写true/false，浮点按Point的NumberFormat规则写成不带指数的十进制（常见范围内直接用Double.toString）。
+ *
+ * @author IoT Platform
+ */
+public final class LineProtocolEncoder {
+
+    private static final double PLAIN_MIN = 1e-3;
+    private static final double PLAIN_MAX = 1e7;
+    private static final double EXACT_LONG_MAX = 0x1p53;
+
+    /**
+     * 字段按名称排序后的下标
+     */
+    private static final ThreadLocal<int[]> ORDER = ThreadLocal.withInitial(() -> new int[32]);
+
+    /**
+     * 与Point相同的数值格式
+     */
+    private static final ThreadLocal<NumberFormat> NUMBER_FORMAT = ThreadLocal.withInitial(() -> {
+        NumberFormat format = NumberFormat.getInstance(Locale.ENGLISH);
+        format.setMaximumFractionDigits(340);
+        format.setGroupingUsed(false);
+        format.setMinimumFractionDigits(1);
+        return format;
+    });
+
+    private LineProtocolEncoder() {
+    }
+
+    /**
+     * 编码一个数据点
+     *
+     * @param out         输出缓冲区，行追加在末尾（不含换行符）
+     * @param measurement 测量名
+     * @param tagKey      标签名
+     * @param tagValue    标签值
+     * @param record      字段
+     * @param timestampMs 毫秒时间戳
+     * @return 是否写入了数据点；没有可写字段时恢复缓冲区并返回false
+     */
+    public static boolean encode(StringBuilder out, String measurement, String tagKey, String tagValue,
+                                 TelemetryRecord record, long timestampMs) {
+        int start = out.length();
+        appendEscaped(out, measurement, false);
+        if (tagValue != null && !tagValue.isEmpty()) {
+            out.append(',');
+            appendEscaped(out, tagKey, true);
+            out.append('=');
+            appendEscaped(out, tagValue, true);
+        }
+
+        int size = record.size();
+        int[] order = sortFields(record);
+        int fields = 0;
+        for (int k = 0; k < size; k++) {
+            int i = order[k];
+            byte type = record.type(i);
+            if (type == TelemetryRecord.TYPE_NULL || hasLaterValue(record, order, k)) {
+                continue;
+            }
+            if (type == TelemetryRecord.TYPE_DOUBLE && !Double.isFinite(record.getDouble(i))) {
+                // 行协议不支持NaN和Infinity
+                continue;
+            }
+            out.append(fields == 0 ? ' ' : ',');
+            appendEscaped(out, record.fieldName(i), true);
+            out.append('=');
+            switch (type) {
+                case TelemetryRecord.TYPE_DOUBLE:
+                case TelemetryRecord.TYPE_LONG:
+                    appendNumber(out, record.getDouble(i));
+                    break;
+                case TelemetryRecord.TYPE_BOOLEAN:
+                    out.append(record.getBoolean(i) ? "true" : "false");
+                    break;
+                default:
+                    appendStringValue(out, record, i);
+                    break;
+            }
+            fields++;
+        }
+
+        if (fields == 0) {
+            out.setLength(start);
+            return false;
+        }
+        out.append(' ').append(timestampMs);
+        return true;
+    }
+
+    /**
+     * 按字段名排序（插入排序，稳定，同名字段保持原有先后顺序）
+     */
+    private static int[] sortFields(TelemetryRecord record) {
+        int size = record.size();
+        int[] order = ORDER.get();
+        if (order.length < size) {
+            order = new int[Math.max(size, order.length * 2)];
+            ORDER.set(order);
+        }
+        for (int i = 0; i < size; i++) {
+            String name = record.fieldName(i);
+            int j = i - 1;
+            while (j >= 0 && record.fieldName(order[j]).compareTo(name) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = i;
+        }
+        return order;
+    }
+
+    /**
+     * 之后是否还有同名的非null字段（Point的字段Map中后写入的值覆盖先写入的值）
+     */
+    private static boolean hasLaterValue(TelemetryRecord record, int[] order, int k) {
+        String name = record.fieldName(order[k]);
+        for (int j = k + 1; j < record.size(); j++) {
+            int index = order[j];
+            if (!record.fieldName(index).equals(name)) {
+                return false;
+            }
+            if (record.type(index) != TelemetryRecord.TYPE_NULL) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 浮点值：Double.toString在[1e-3, 1e7)内不使用指数形式，与NumberFormat结果相同；
+     * 2^53以内的整数直接写整数部分加".0"；其余交给NumberFormat
+     */
+    private static void appendNumber(StringBuilder out, double value) {
+        double abs = Math.abs(value);
+        if (abs == 0 || (abs >= PLAIN_MIN && abs < PLAIN_MAX)) {
+            out.append(value);
+        } else if (abs < EXACT_LONG_MAX && value == (long) value) {
+            out.append((long) value).append(".0");
+        } else {
+            out.append(NUMBER_FORMAT.get().format(value));
+        }
+    }
+
+    /**
+     * 字符串字段值：双引号包裹，转义 " 和 \
+     */
+    private static void appendStringValue(StringBuilder out, TelemetryRecord record, int index) {
+        out.append('"');
+        byte[] source = record.source();
+        int offset = record.offset(index);
+        int length = record.length(index);
+        if (length >= 0 && isAscii(source, offset, length)) {
+            for (int i = offset, end = offset + length; i < end; i++) {
+                char c = (char) source[i];
+                if (c == '"' || c == '\\') {
+                    out.append('\\');
+                }
+                out.append(c);
+            }
+        } else {
+            // 含转义或非ASCII字符时物化后再编码
+            String value = record.getString(index);
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    out.append('\\');
+                }
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * 测量名转义逗号和空格；标签名、标签值、字段名额外转义等号；控制字符与Point的转义规则一致
+     */
+    private static void appendEscaped(StringBuilder out, String value, boolean escapeEquals) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case ',':
+                case ' ':
+                    out.append('\\').append(c);
+                    break;
+                case '=':
+                    if (escapeEquals) {
+                        out.append('\\');
+                    }
+                    out.append(c);
+                    break;
+                default:
+                    out.append(c);
+                    break;
+            }
+        }
+    }
+
+    private static boolean isAscii(byte[] buf, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (buf[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+package com.iot.device.tsdb;
+
+import com.iot.device.dto.SeriesColumn;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 由原始数据点计算窗口均值序列，窗口划分与Flux aggregateWindow一致：
+ * 按纪元对齐，时间取窗口结束时间且不超过查询结束时间
+ *
+ * @author IoT Platform
+ */
+public class MeanSeriesBuilder {
+
+    private final long windowMillis;
+    private final long stop;
+    /**
+     * 窗口起点 -> {sum, count}
+     */
+    private final TreeMap<Long, double[]> windows = new TreeMap<>();
+
+    public MeanSeriesBuilder(long windowMillis, long stop) {
+        this.windowMillis = windowMillis;
+        this.stop = stop;
+    }
+
+    public void add(long time, double value) {
+        double[] acc = windows.computeIfAbsent(FluxTimes.floor(time, windowMillis), k -> new double[2]);
+        acc[0] += value;
+        acc[1]++;
+    }
+
+    public SeriesColumn build(String field, String resolution) {
+        long[] times = new long[windows.size()];
+        double[] values = new double[windows.size()];
+        int count = 0;
+        for (Map.Entry<Long, double[]> entry : windows.entrySet()) {
+            times[count] = Math.min(entry.getKey() + windowMillis, stop);
+            values[count] = entry.getValue()[0] / entry.getValue()[1];
+            count++;
+        }
+        SeriesColumn series = new SeriesColumn();
+        series.setField(field);
+        series.setResolution(resolution);
+        series.setCount(count);
+        series.setTime(times);
+        series.setValue(values);
+        return series;
+    }
+}
@@ -0,0 +1,154 @@
+package com.iot.device.tsdb;
+
+import com.influxdb.query.FluxRecord;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * 以NDJSON格式逐行输出查询结果：{"time":"...","field":"...","value":...}
+ * <p>
+ * 每隔固定行数主动flush一次，客户端可以边接收边处理；写入失败（客户端断开）时抛出IOException由调用方取消查询，
+ * 并记录 {@link #isWriteFailed()}，调用方据此区分客户端断开和查询本身的IO异常（如InfluxDB连接中断）。
+ *
+ * @author IoT Platform
+ */
+public class NdjsonRecordWriter implements RecordSink {
+
+    private static final int FLUSH_EVERY_ROWS = 500;
+
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder(128);
+    private final boolean withDeviceId;
+    private long rows;
+    private boolean writeFailed;
+
+    public NdjsonRecordWriter(OutputStream out) {
+        this(out, false);
+    }
+
+    /**
+     * @param withDeviceId 是否在每行输出deviceId（多设备查询）
+     */
+    public NdjsonRecordWriter(OutputStream out, boolean withDeviceId) {
+        this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        this.withDeviceId = withDeviceId;
+    }
+
+    @Override
+    public void accept(FluxRecord record) throws IOException {
+        line.setLength(0);
+        line.append('{');
+        if (withDeviceId) {
+            line.append("\"deviceId\":");
+            appendValue(line, record.getValueByKey("device_id"));
+            line.append(',');
+        }
+        line.append("\"time\":");
+        appendValue(line, record.getTime());
+        line.append(",\"field\":");
+        appendValue(line, record.getField());
+        line.append(",\"value\":");
+        appendValue(line, record.getValue());
+        line.append("}\n");
+        write(line, ++rows % FLUSH_EVERY_ROWS == 0);
+    }
+
+    /**
+     * 输出一行错误信息（结果已部分输出，无法再修改HTTP状态码）
+     */
+    public void writeError(String message) throws IOException {
+        line.setLength(0);
+        line.append("{\"error\":");
+        appendValue(line, message);
+        line.append("}\n");
+        write(line, true);
+    }
+
+    public void flush() throws IOException {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            writeFailed = true;
+            throw e;
+        }
+    }
+
+    /**
+     * 是否因写出失败（客户端断开）而抛出过IOException
+     */
+    public boolean isWriteFailed() {
+        return writeFailed;
+    }
+
+    private void write(CharSequence text, boolean flush) throws IOException {
+        try {
+            writer.append(text);
+            if (flush) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            writeFailed = true;
+            throw e;
+        }
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    static void appendValue(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof Double) {
+            double d = (Double) value;
+            if (Double.isFinite(d)) {
+                sb.append(d);
+            } else {
+                sb.append("null");
+            }
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else if (value instanceof Instant) {
+            sb.append('"').append(value).append('"');
+        } else {
+            appendString(sb, value.toString());
+        }
+    }
+
+    static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+    }
+}
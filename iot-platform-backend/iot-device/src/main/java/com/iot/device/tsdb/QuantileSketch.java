@@ -0,0 +1,156 @@
+package com.iot.device.tsdb;
+
+/**
+ * 可合并的分位数草图（对数分桶）
+ * <p>
+ * 按 gamma = (1 + a) / (1 - a) 的对数把数值映射到桶，每个桶只记录计数，返回的分位数相对误差不超过 a。
+ * 桶边界只由 a 决定，同一精度的草图可以按桶直接相加合并（多窗口、多设备汇总），合并结果与一次性统计完全相同。
+ * 正数和负数分别分桶，绝对值小于 {@link #MIN_INDEXABLE} 的值计为0。
+ *
+ * @author IoT Platform
+ */
+public class QuantileSketch {
+
+    /**
+     * 默认相对误差1%
+     */
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    private static final double MIN_INDEXABLE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    private final Bins positive = new Bins();
+    private final Bins negative = new Bins();
+    private long zeroCount;
+    private long count;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("relativeAccuracy must be in (0, 1)");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        if (value > MIN_INDEXABLE) {
+            positive.increment(index(value), 1);
+        } else if (value < -MIN_INDEXABLE) {
+            negative.increment(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+    }
+
+    /**
+     * 合并另一个同精度草图
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("cannot merge sketches with different accuracy");
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    /**
+     * 分位数
+     *
+     * @param q 0~1
+     * @return 近似值；草图为空返回NaN
+     */
+    public double quantile(double q) {
+        if (count == 0 || q < 0 || q > 1) {
+            return Double.NaN;
+        }
+        long rank = (long) (q * (count - 1));
+        // 从最小值开始累计：负数桶按绝对值从大到小，然后是0，最后正数桶从小到大
+        long seen = 0;
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            seen += negative.counts[i];
+            if (seen > rank) {
+                return -value(negative.offset + i);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return value(positive.offset + i);
+            }
+        }
+        return value(positive.offset + positive.counts.length - 1);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    private int index(double absValue) {
+        return (int) Math.ceil(Math.log(absValue) / logGamma);
+    }
+
+    /**
+     * 桶 (gamma^(i-1), gamma^i] 的代表值，与桶内任意值的相对误差不超过 a
+     */
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * 连续桶计数，按需向两端扩展
+     */
+    private static final class Bins {
+
+        private long[] counts = new long[0];
+        private int offset;
+
+        private void increment(int index, long n) {
+            if (counts.length == 0) {
+                counts = new long[16];
+                offset = index - 8;
+            } else if (index < offset || index >= offset + counts.length) {
+                extend(index);
+            }
+            counts[index - offset] += n;
+        }
+
+        private void extend(int index) {
+            int low = Math.min(offset, index);
+            int high = Math.max(offset + counts.length - 1, index);
+            // 多留一些余量，减少连续扩展
+            int margin = Math.max(8, (high - low) / 4);
+            int newOffset = index < offset ? low - margin : low;
+            int newLength = high - newOffset + 1 + (index >= offset + counts.length ? margin : 0);
+            long[] extended = new long[newLength];
+            System.arraycopy(counts, 0, extended, offset - newOffset, counts.length);
+            counts = extended;
+            offset = newOffset;
+        }
+
+        private void merge(Bins other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    increment(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+    }
+}
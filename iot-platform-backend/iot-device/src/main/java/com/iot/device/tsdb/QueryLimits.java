@@ -0,0 +1,74 @@
+package com.iot.device.tsdb;
+
+import com.iot.common.core.exception.BusinessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 查询开销上限
+ * <p>
+ * 接口层在访问存储引擎之前校验时间范围和统计窗口数，与具体引擎无关；
+ * 返回点数的上限由各引擎在读取结果时控制。
+ *
+ * @author IoT Platform
+ */
+@Component
+public class QueryLimits {
+
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    /**
+     * 单次查询最大时间跨度（天）
+     */
+    @Value("${iot.query.max-range-days:366}")
+    private int maxRangeDays;
+
+    /**
+     * 统计查询单次最多的窗口数（多设备按设备分别计数）
+     */
+    @Value("${iot.query.max-windows:50000}")
+    private int maxWindows;
+
+    public int getMaxWindows() {
+        return maxWindows;
+    }
+
+    /**
+     * 校验时间格式和时间跨度
+     */
+    public QueryRange checkRange(String startTime, String endTime) {
+        QueryRange range = QueryRange.resolve(startTime, endTime);
+        if (range.getMillis() > maxRangeDays * DAY_MILLIS) {
+            throw new BusinessException("查询时间跨度不能超过" + maxRangeDays + "天");
+        }
+        return range;
+    }
+
+    /**
+     * 校验统计查询：时间跨度、窗口格式，以及 窗口数 × 设备数 不超过上限
+     *
+     * @return 窗口长度（毫秒）
+     */
+    public long checkWindows(String startTime, String endTime, String windowPeriod, int devices) {
+        QueryRange range = checkRange(startTime, endTime);
+        long windowMillis = windowMillis(windowPeriod);
+        long windows = (range.getMillis() + windowMillis - 1) / windowMillis + 1;
+        if (windows * devices > maxWindows) {
+            throw new BusinessException("统计窗口数超过" + maxWindows + "，请增大窗口或缩小时间范围");
+        }
+        return windowMillis;
+    }
+
+    /**
+     * 解析统计窗口
+     *
+     * @throws BusinessException 格式错误或为月、年等不定长单位
+     */
+    public static long windowMillis(String windowPeriod) {
+        long windowMillis = FluxTimes.durationMillis(windowPeriod);
+        if (windowMillis <= 0) {
+            throw new BusinessException("不支持的统计窗口: " + windowPeriod);
+        }
+        return windowMillis;
+    }
+}
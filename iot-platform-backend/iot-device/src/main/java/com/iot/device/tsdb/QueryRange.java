@@ -0,0 +1,42 @@
+package com.iot.device.tsdb;
+
+import com.iot.common.core.exception.BusinessException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * 解析后的查询时间范围 [start, stop)
+ *
+ * @author IoT Platform
+ */
+@Getter
+@AllArgsConstructor
+public final class QueryRange {
+
+    private final Instant start;
+    private final Instant stop;
+
+    /**
+     * 解析起止时间（now()、相对时长或RFC3339时间），相对时间以同一时刻为基准
+     *
+     * @throws BusinessException 时间格式不支持或开始时间晚于结束时间
+     */
+    public static QueryRange resolve(String startTime, String endTime) {
+        Instant now = Instant.now();
+        Instant start = FluxTimes.resolve(startTime, now);
+        Instant stop = FluxTimes.resolve(endTime, now);
+        if (start == null || stop == null) {
+            throw new BusinessException("不支持的时间格式，请使用now()、相对时长（如-1h）或RFC3339时间");
+        }
+        if (start.isAfter(stop)) {
+            throw new BusinessException("开始时间不能晚于结束时间");
+        }
+        return new QueryRange(start, stop);
+    }
+
+    public long getMillis() {
+        return stop.toEpochMilli() - start.toEpochMilli();
+    }
+}
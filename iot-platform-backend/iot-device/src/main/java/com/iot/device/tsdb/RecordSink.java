@@ -0,0 +1,19 @@
+package com.iot.device.tsdb;
+
+import com.influxdb.query.FluxRecord;
+
+import java.io.IOException;
+
+/**
+ * 流式查询结果接收方，查询结果逐条回调，不在内存中累积
+ *
+ * @author IoT Platform
+ */
+@FunctionalInterface
+public interface RecordSink {
+
+    /**
+     * 接收一条记录，抛出异常时取消查询
+     */
+    void accept(FluxRecord record) throws IOException;
+}
@@ -0,0 +1,138 @@
+package com.iot.device.tsdb;
+
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.TasksApi;
+import com.influxdb.client.TasksQuery;
+import com.influxdb.client.domain.Task;
+import com.influxdb.client.domain.TaskCreateRequest;
+import com.influxdb.client.domain.TaskStatusType;
+import com.iot.device.config.RollupProperties;
+import com.iot.device.service.InfluxDbService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 降采样汇总任务管理
+ * <p>
+ * 为每个 {@link RollupResolution} 维护一个InfluxDB任务：按粒度周期对原始device_data中的数值字段
+ * 计算min/max/mean/count/sum，写入同一bucket的device_data_{粒度} measurement。
+ * 任务每次重算最近 lookback 时长内已结束的窗口，迟到数据会在后续执行中被覆盖修正。
+ * 启动时按名称查找任务，不存在则创建（并按配置异步回填历史），脚本变化则更新。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "iot.tsdb", name = "engine", havingValue = "influxdb", matchIfMissing = true)
+public class RollupManager {
+
+    private final InfluxDbService influxDbService;
+    private final RollupProperties properties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureTasks() {
+        if (!properties.isManageTasks() || influxDbService.getClient() == null) {
+            return;
+        }
+        InfluxDBClient client = influxDbService.getClient();
+        TasksApi tasksApi = client.getTasksApi();
+        List<RollupResolution> created = new ArrayList<>();
+        for (RollupResolution resolution : RollupResolution.values()) {
+            try {
+                if (ensureTask(tasksApi, resolution)) {
+                    created.add(resolution);
+                }
+            } catch (Exception e) {
+                log.error("汇总任务创建失败，task: {}", resolution.getTaskName(), e);
+            }
+        }
+        if (!created.isEmpty() && StringUtils.hasText(properties.getBackfill())) {
+            Thread thread = new Thread(() -> backfill(created), "influx-rollup-backfill");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * @return 是否新建了任务
+     */
+    private boolean ensureTask(TasksApi tasksApi, RollupResolution resolution) {
+        String flux = taskFlux(resolution);
+        TasksQuery query = new TasksQuery();
+        query.setName(resolution.getTaskName());
+        query.setOrg(influxDbService.getOrganization());
+        List<Task> tasks = tasksApi.findTasks(query);
+
+        if (tasks.isEmpty()) {
+            tasksApi.createTask(new TaskCreateRequest()
+                    .org(influxDbService.getOrganization())
+                    .flux(flux)
+                    .status(TaskStatusType.ACTIVE)
+                    .description("IoT设备数据" + resolution.getEvery() + "汇总"));
+            log.info("汇总任务已创建，task: {}", resolution.getTaskName());
+            return true;
+        }
+        Task task = tasks.get(0);
+        if (!flux.equals(task.getFlux())) {
+            task.setFlux(flux);
+            tasksApi.updateTask(task);
+            log.info("汇总任务已更新，task: {}", resolution.getTaskName());
+        }
+        return false;
+    }
+
+    private void backfill(List<RollupResolution> resolutions) {
+        for (RollupResolution resolution : resolutions) {
+            long start = System.currentTimeMillis();
+            try {
+                String flux = rollupFlux(resolution, properties.getBackfill());
+                influxDbService.getClient().getQueryApi().query(flux, influxDbService.getOrganization());
+                log.info("汇总数据回填完成，粒度: {}, 时长: {}, 耗时: {}ms",
+                        resolution.getEvery(), properties.getBackfill(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.error("汇总数据回填失败，粒度: {}", resolution.getEvery(), e);
+            }
+        }
+    }
+
+    private String taskFlux(RollupResolution resolution) {
+        return "option task = {name: \"" + resolution.getTaskName() + "\", every: " + resolution.getEvery()
+                + ", offset: " + properties.getTaskOffset() + "}\n\n"
+                + rollupFlux(resolution, resolution.getLookback());
+    }
+
+    /**
+     * 汇总脚本：只处理已结束的完整窗口，窗口起点作为数据点时间
+     */
+    private String rollupFlux(RollupResolution resolution, String lookback) {
+        String every = resolution.getEvery();
+        StringBuilder flux = new StringBuilder(1024);
+        flux.append("import \"date\"\n")
+                .append("import \"types\"\n\n")
+                .append("start = date.truncate(t: -").append(lookback).append(", unit: ").append(every).append(")\n")
+                .append("stop = date.truncate(t: now(), unit: ").append(every).append(")\n\n")
+                .append("data = from(bucket: \"").append(influxDbService.getBucket()).append("\")\n")
+                .append("    |> range(start: start, stop: stop)\n")
+                .append("    |> filter(fn: (r) => r._measurement == \"device_data\")\n")
+                .append("    |> filter(fn: (r) => types.isType(v: r._value, type: \"float\"))\n\n")
+                .append("rollup = (tables=<-, fn, agg) => tables\n")
+                .append("    |> aggregateWindow(every: ").append(every).append(", fn: fn, timeSrc: \"_start\", createEmpty: false)\n")
+                .append("    |> toFloat()\n")
+                .append("    |> set(key: \"agg\", value: agg)\n")
+                .append("    |> set(key: \"_measurement\", value: \"").append(resolution.getMeasurement()).append("\")\n")
+                .append("    |> to(bucket: \"").append(influxDbService.getBucket()).append("\")\n\n");
+        for (String aggregate : RollupResolution.AGGREGATES) {
+            flux.append("data |> rollup(fn: ").append(aggregate).append(", agg: \"").append(aggregate).append("\")\n");
+        }
+        return flux.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package com.iot.device.tsdb;
+
+/**
+ * 汇总粒度
+ * <p>
+ * 每个粒度对应一个measurement，按device_id、_field和agg标签保存min/max/mean/count/sum，
+ * 数据点时间为窗口起点。
+ *
+ * @author IoT Platform
+ */
+public enum RollupResolution {
+
+    MINUTE("1m", 60_000L, "5m"),
+    HOUR("1h", 3_600_000L, "2h"),
+    DAY("1d", 86_400_000L, "2d");
+
+    /**
+     * 汇总的聚合函数
+     */
+    public static final String[] AGGREGATES = {"min", "max", "mean", "count", "sum"};
+
+    private final String every;
+    private final long millis;
+    private final String lookback;
+
+    RollupResolution(String every, long millis, String lookback) {
+        this.every = every;
+        this.millis = millis;
+        this.lookback = lookback;
+    }
+
+    /**
+     * Flux时长
+     */
+    public String getEvery() {
+        return every;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * 每次任务重算的时长，覆盖迟到数据
+     */
+    public String getLookback() {
+        return lookback;
+    }
+
+    public String getMeasurement() {
+        return "device_data_" + every;
+    }
+
+    public String getTaskName() {
+        return "iot-rollup-" + every;
+    }
+
+    /**
+     * 能整除统计窗口的最粗粒度，没有返回null
+     */
+    public static RollupResolution coarsestFor(long windowMillis) {
+        RollupResolution[] values = values();
+        for (int i = values.length - 1; i >= 0; i--) {
+            if (windowMillis >= values[i].millis && windowMillis % values[i].millis == 0) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+package com.iot.device.tsdb;
+
+import com.iot.device.dto.SeriesColumn;
+import com.iot.device.telemetry.TelemetryRecord;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 时序数据存储
+ * <p>
+ * 由 iot.tsdb.engine 选择实现：influxdb（默认，{@link com.iot.device.service.InfluxDbService}）
+ * 或 local（嵌入式引擎 {@link com.iot.device.tsdb.local.LocalTimeSeriesStore}，无需外部InfluxDB）。
+ * 时间参数与Flux range一致：now()、相对时长（-1h）或RFC3339时间。
+ *
+ * @author IoT Platform
+ */
+public interface TimeSeriesStore {
+
+    /**
+     * 存储引擎实现的限定名，装饰器（如内存热窗口）按该名称注入被装饰的引擎
+     */
+    String ENGINE = "tsdbEngine";
+
+    /**
+     * 合并存储引擎与冷数据归档的实现的限定名
+     */
+    String FEDERATED = "tsdbFederated";
+
+    /**
+     * 写入设备数据
+     *
+     * @param time 数据时间（毫秒）
+     */
+    void writeDeviceData(String deviceId, TelemetryRecord data, long time);
+
+    /**
+     * 写入设备数据，时间取当前时间
+     */
+    default void writeDeviceData(String deviceId, TelemetryRecord data) {
+        writeDeviceData(deviceId, data, System.currentTimeMillis());
+    }
+
+    /**
+     * 查询设备历史数据，每个点为 {time, field, value}
+     */
+    List<Map<String, Object>> queryDeviceData(String deviceId, String startTime, String endTime);
+
+    /**
+     * 查询设备各字段最新值
+     */
+    Map<String, Object> queryLatestDeviceData(String deviceId);
+
+    /**
+     * 查询窗口均值序列，time为窗口结束时间（毫秒）
+     *
+     * @throws RuntimeException 查询失败
+     */
+    SeriesColumn queryStatisticsSeries(String deviceId, String field, String startTime, String endTime,
+                                       String windowPeriod);
+
+    /**
+     * 逐点读取一台或多台设备单个字段的数值数据，供服务端聚合
+     *
+     * @throws IOException consumer抛出的异常
+     */
+    void scanNumericField(Collection<String> deviceIds, String field, String startTime, String endTime,
+                          PointConsumer consumer) throws IOException;
+
+    /**
+     * 写入运行指标
+     */
+    Map<String, Object> getWriteStats();
+
+    /**
+     * 查询设备数据统计：窗口均值序列转换为 {data: [{time, value}], count, resolution}
+     */
+    default Map<String, Object> queryDeviceDataStatistics(String deviceId, String field,
+                                                          String startTime, String endTime, String windowPeriod) {
+        Map<String, Object> result = new HashMap<>();
+        SeriesColumn series = queryStatisticsSeries(deviceId, field, startTime, endTime, windowPeriod);
+        List<Map<String, Object>> dataPoints = new ArrayList<>(series.getCount());
+        for (int i = 0; i < series.getCount(); i++) {
+            Map<String, Object> point = new HashMap<>();
+            point.put("time", Instant.ofEpochMilli(series.getTime()[i]));
+            point.put("value", series.getValue()[i]);
+            dataPoints.add(point);
+        }
+        result.put("data", dataPoints);
+        result.put("count", dataPoints.size());
+        result.put("resolution", series.getResolution());
+        return result;
+    }
+
+    /**
+     * 数值数据点回调
+     */
+    @FunctionalInterface
+    interface PointConsumer {
+
+        void accept(String deviceId, long time, double value) throws IOException;
+    }
+}
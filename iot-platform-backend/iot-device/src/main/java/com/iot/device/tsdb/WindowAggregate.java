@@ -0,0 +1,81 @@
+package com.iot.device.tsdb;
+
+/**
+ * 单个统计窗口的可合并聚合状态
+ * <p>
+ * 一次遍历同时维护计数、最小值、最大值、均值与二阶中心矩（Welford算法，避免平方和相减的精度损失）
+ * 以及分位数草图；两个状态可按并行方差公式合并，用于多设备汇总。
+ *
+ * @author IoT Platform
+ */
+public class WindowAggregate {
+
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double mean;
+    private double m2;
+    private final QuantileSketch sketch = new QuantileSketch();
+
+    public void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+        sketch.add(value);
+    }
+
+    public void merge(WindowAggregate other) {
+        if (other.count == 0) {
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * count * other.count / total;
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sketch.merge(other.sketch);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getSum() {
+        return mean * count;
+    }
+
+    /**
+     * 样本标准差，与Flux stddev()默认的sample模式一致；少于2个点时为0
+     */
+    public double getStddev() {
+        return count < 2 ? 0 : Math.sqrt(m2 / (count - 1));
+    }
+
+    public double quantile(double q) {
+        return sketch.quantile(q);
+    }
+}
@@ -0,0 +1,99 @@
+package com.iot.device.tsdb;
+
+import com.iot.common.core.exception.BusinessException;
+import com.iot.device.dto.WindowStatistics;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 多聚合窗口统计收集器
+ * <p>
+ * 对逐点读取的原始数据一次遍历，按设备和窗口（按纪元对齐，与aggregateWindow一致）累计
+ * {@link WindowAggregate}，同时得到min/max/mean/count/sum/stddev和分位数。
+ * 多设备查询可按窗口把各设备的聚合状态合并为一条序列。
+ *
+ * @author IoT Platform
+ */
+public class WindowStatsCollector implements TimeSeriesStore.PointConsumer {
+
+    private final long windowMillis;
+    private final int maxWindows;
+    private final Map<String, TreeMap<Long, WindowAggregate>> devices = new HashMap<>();
+    private String lastDevice;
+    private TreeMap<Long, WindowAggregate> last;
+    private int windows;
+
+    /**
+     * @param windowMillis 窗口长度（毫秒）
+     * @param maxWindows   最多的设备窗口数，超出时抛出BusinessException
+     */
+    public WindowStatsCollector(long windowMillis, int maxWindows) {
+        this.windowMillis = windowMillis;
+        this.maxWindows = maxWindows;
+    }
+
+    @Override
+    public void accept(String deviceId, long time, double value) {
+        TreeMap<Long, WindowAggregate> series = last;
+        if (series == null || !deviceId.equals(lastDevice)) {
+            series = devices.computeIfAbsent(deviceId, id -> new TreeMap<>());
+            last = series;
+            lastDevice = deviceId;
+        }
+        long windowStart = FluxTimes.floor(time, windowMillis);
+        WindowAggregate aggregate = series.get(windowStart);
+        if (aggregate == null) {
+            if (++windows > maxWindows) {
+                throw new BusinessException("统计窗口数超过" + maxWindows + "，请增大窗口或缩小时间范围");
+            }
+            aggregate = new WindowAggregate();
+            series.put(windowStart, aggregate);
+        }
+        aggregate.add(value);
+    }
+
+    /**
+     * 按设备分别输出
+     */
+    public List<WindowStatistics> toStatistics() {
+        List<WindowStatistics> result = new ArrayList<>(windows);
+        devices.forEach((deviceId, series) ->
+                series.forEach((windowStart, aggregate) -> result.add(toStatistics(deviceId, windowStart, aggregate))));
+        return result;
+    }
+
+    /**
+     * 各设备同一窗口合并后输出
+     */
+    public List<WindowStatistics> toMergedStatistics() {
+        TreeMap<Long, WindowAggregate> merged = new TreeMap<>();
+        for (TreeMap<Long, WindowAggregate> series : devices.values()) {
+            series.forEach((windowStart, aggregate) ->
+                    merged.computeIfAbsent(windowStart, k -> new WindowAggregate()).merge(aggregate));
+        }
+        List<WindowStatistics> result = new ArrayList<>(merged.size());
+        merged.forEach((windowStart, aggregate) -> result.add(toStatistics(null, windowStart, aggregate)));
+        return result;
+    }
+
+    private WindowStatistics toStatistics(String deviceId, long windowStart, WindowAggregate aggregate) {
+        WindowStatistics statistics = new WindowStatistics();
+        statistics.setDeviceId(deviceId);
+        statistics.setTime(Instant.ofEpochMilli(windowStart + windowMillis));
+        statistics.setCount(aggregate.getCount());
+        statistics.setMin(aggregate.getMin());
+        statistics.setMax(aggregate.getMax());
+        statistics.setMean(aggregate.getMean());
+        statistics.setSum(aggregate.getSum());
+        statistics.setStddev(aggregate.getStddev());
+        statistics.setP50(aggregate.quantile(0.5));
+        statistics.setP95(aggregate.quantile(0.95));
+        statistics.setP99(aggregate.quantile(0.99));
+        return statistics;
+    }
+}
@@ -0,0 +1,215 @@
+package com.iot.device.tsdb.archive;
+
+import com.iot.common.core.exception.BusinessException;
+import com.iot.device.config.ArchiveProperties;
+import com.iot.device.dto.SeriesColumn;
+import com.iot.device.telemetry.TelemetryRecord;
+import com.iot.device.tsdb.MeanSeriesBuilder;
+import com.iot.device.tsdb.QueryLimits;
+import com.iot.device.tsdb.QueryRange;
+import com.iot.device.tsdb.TimeSeriesStore;
+import com.iot.device.tsdb.local.GorillaCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 存储引擎与冷数据归档的合并查询
+ * <p>
+ * 以归档截止时间（最新归档分区的结束时间）为界：之前的部分从归档文件读取，之后的部分转发给存储引擎，
+ * 调用方无需感知数据所在的层级。没有归档文件时全部转发。
+ * <p>
+ * 统计窗口能整除一天时，两部分的窗口边界在分界处对齐，归档部分按原始数据计算窗口均值后与引擎的结果直接拼接；
+ * 否则引擎部分也读取原始数据，与归档数据一起计算。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Service
+@Qualifier(TimeSeriesStore.FEDERATED)
+public class ArchiveFederatedStore implements TimeSeriesStore {
+
+    private final TimeSeriesStore delegate;
+    private final ArchiveStore archiveStore;
+    private final ArchiveProperties properties;
+
+    public ArchiveFederatedStore(@Qualifier(TimeSeriesStore.ENGINE) TimeSeriesStore delegate,
+                                 ArchiveStore archiveStore, ArchiveProperties properties) {
+        this.delegate = delegate;
+        this.archiveStore = archiveStore;
+        this.properties = properties;
+    }
+
+    @Override
+    public void writeDeviceData(String deviceId, TelemetryRecord data, long time) {
+        delegate.writeDeviceData(deviceId, data, time);
+    }
+
+    @Override
+    public List<Map<String, Object>> queryDeviceData(String deviceId, String startTime, String endTime) {
+        long boundary = archiveStore.getArchivedBefore();
+        if (boundary == Long.MIN_VALUE) {
+            return delegate.queryDeviceData(deviceId, startTime, endTime);
+        }
+        QueryRange range = QueryRange.resolve(startTime, endTime);
+        long start = range.getStart().toEpochMilli();
+        long stop = range.getStop().toEpochMilli();
+        if (start >= boundary) {
+            return delegate.queryDeviceData(deviceId, startTime, endTime);
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        int maxPoints = properties.getMaxQueryPoints();
+        try {
+            archiveStore.scan(deviceId, null, start, Math.min(stop, boundary), (field, type, count, times, values, texts) -> {
+                for (int i = 0; i < count; i++) {
+                    if (times[i] < start || times[i] >= stop) {
+                        continue;
+                    }
+                    if (result.size() >= maxPoints) {
+                        throw new BusinessException("查询结果超过" + maxPoints + "个点，请缩小时间范围");
+                    }
+                    Map<String, Object> dataPoint = new HashMap<>();
+                    dataPoint.put("time", Instant.ofEpochMilli(times[i]));
+                    dataPoint.put("field", field);
+                    dataPoint.put("value", value(type, values, texts, i));
+                    result.add(dataPoint);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取归档数据失败", e);
+        }
+        if (stop > boundary) {
+            result.addAll(delegate.queryDeviceData(deviceId, Instant.ofEpochMilli(boundary).toString(), endOf(range)));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Object> queryLatestDeviceData(String deviceId) {
+        return delegate.queryLatestDeviceData(deviceId);
+    }
+
+    @Override
+    public SeriesColumn queryStatisticsSeries(String deviceId, String field, String startTime, String endTime,
+                                              String windowPeriod) {
+        long boundary = archiveStore.getArchivedBefore();
+        if (boundary == Long.MIN_VALUE) {
+            return delegate.queryStatisticsSeries(deviceId, field, startTime, endTime, windowPeriod);
+        }
+        QueryRange range = QueryRange.resolve(startTime, endTime);
+        long start = range.getStart().toEpochMilli();
+        long stop = range.getStop().toEpochMilli();
+        if (start >= boundary) {
+            return delegate.queryStatisticsSeries(deviceId, field, startTime, endTime, windowPeriod);
+        }
+        long windowMillis = QueryLimits.windowMillis(windowPeriod);
+        boolean aligned = ArchiveStore.DAY_MILLIS % windowMillis == 0;
+        long archiveStop = Math.min(stop, boundary);
+
+        MeanSeriesBuilder builder = new MeanSeriesBuilder(windowMillis, aligned ? archiveStop : stop);
+        PointConsumer consumer = (id, time, value) -> builder.add(time, value);
+        try {
+            scanArchive(deviceId, field, start, archiveStop, consumer);
+            if (stop > boundary && !aligned) {
+                delegate.scanNumericField(Collections.singletonList(deviceId), field,
+                        Instant.ofEpochMilli(boundary).toString(), endOf(range), consumer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取归档数据失败", e);
+        }
+        SeriesColumn archived = builder.build(field, "raw");
+        if (stop <= boundary || !aligned) {
+            return archived;
+        }
+        SeriesColumn hot = delegate.queryStatisticsSeries(deviceId, field,
+                Instant.ofEpochMilli(boundary).toString(), endOf(range), windowPeriod);
+        return concat(archived, hot);
+    }
+
+    @Override
+    public void scanNumericField(Collection<String> deviceIds, String field, String startTime, String endTime,
+                                 PointConsumer consumer) throws IOException {
+        long boundary = archiveStore.getArchivedBefore();
+        if (boundary == Long.MIN_VALUE) {
+            delegate.scanNumericField(deviceIds, field, startTime, endTime, consumer);
+            return;
+        }
+        QueryRange range = QueryRange.resolve(startTime, endTime);
+        long start = range.getStart().toEpochMilli();
+        long stop = range.getStop().toEpochMilli();
+        if (start >= boundary) {
+            delegate.scanNumericField(deviceIds, field, startTime, endTime, consumer);
+            return;
+        }
+        for (String deviceId : deviceIds) {
+            scanArchive(deviceId, field, start, Math.min(stop, boundary), consumer);
+        }
+        if (stop > boundary) {
+            delegate.scanNumericField(deviceIds, field, Instant.ofEpochMilli(boundary).toString(), endOf(range), consumer);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getWriteStats() {
+        return delegate.getWriteStats();
+    }
+
+    private void scanArchive(String deviceId, String field, long start, long stop, PointConsumer consumer)
+            throws IOException {
+        archiveStore.scan(deviceId, field, start, stop, (f, type, count, times, values, texts) -> {
+            if (type != GorillaCodec.TYPE_DOUBLE) {
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                if (times[i] >= start && times[i] < stop) {
+                    consumer.accept(deviceId, times[i], values[i]);
+                }
+            }
+        });
+    }
+
+    private static String endOf(QueryRange range) {
+        return range.getStop().toString();
+    }
+
+    private static Object value(byte type, double[] values, String[] texts, int index) {
+        switch (type) {
+            case GorillaCodec.TYPE_DOUBLE:
+                return values[index];
+            case GorillaCodec.TYPE_BOOLEAN:
+                return values[index] != 0;
+            default:
+                return texts[index];
+        }
+    }
+
+    /**
+     * 按时间拼接归档部分和引擎部分的窗口序列，数据粒度取引擎部分
+     */
+    private static SeriesColumn concat(SeriesColumn archived, SeriesColumn hot) {
+        int count = archived.getCount() + hot.getCount();
+        long[] times = Arrays.copyOf(archived.getTime(), count);
+        double[] values = Arrays.copyOf(archived.getValue(), count);
+        System.arraycopy(hot.getTime(), 0, times, archived.getCount(), hot.getCount());
+        System.arraycopy(hot.getValue(), 0, values, archived.getCount(), hot.getCount());
+        SeriesColumn series = new SeriesColumn();
+        series.setField(archived.getField());
+        series.setResolution(hot.getResolution());
+        series.setCount(count);
+        series.setTime(times);
+        series.setValue(values);
+        return series;
+    }
+}
@@ -0,0 +1,199 @@
+package com.iot.device.tsdb.archive;
+
+import com.iot.device.tsdb.local.GorillaCodec;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 归档文件（一个时间分区的全部设备数据，只读）
+ * <p>
+ * 文件布局：
+ * <pre>
+ * 文件头   int 魔数"IOTA", byte 版本号
+ * 数据块   连续的压缩块（{@link GorillaCodec}），同一块只含一个设备的一个字段
+ * 块索引段 每个设备一段：int 块数, 每块 {字段名, 类型, 点数, 最小/最大时间, 最小/最大值, 偏移, 长度, CRC32}
+ * 设备目录 int 设备数, 每个设备 {设备ID, 索引段偏移, 长度, CRC32, 最小/最大时间}
+ * 文件尾   long 目录偏移, int 目录长度, int 目录CRC32, int 魔数
+ * </pre>
+ * 打开时只读取设备目录；查询时读取该设备的块索引段，按字段和时间范围（块的最小/最大时间）跳过无关的块。
+ *
+ * @author IoT Platform
+ */
+final class ArchiveFile {
+
+    static final int MAGIC = 0x494F5441;
+    static final byte VERSION = 1;
+    static final int HEADER = 5;
+    static final int FOOTER = 8 + 4 + 4 + 4;
+
+    @Getter
+    private final Path path;
+    @Getter
+    private final long size;
+    private final Map<String, DeviceSection> devices;
+
+    private ArchiveFile(Path path, long size, Map<String, DeviceSection> devices) {
+        this.path = path;
+        this.size = size;
+        this.devices = devices;
+    }
+
+    /**
+     * 打开归档文件并读取设备目录
+     *
+     * @throws IOException 文件不完整或校验失败
+     */
+    static ArchiveFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER + FOOTER) {
+                throw new IOException("归档文件不完整: " + path);
+            }
+            ByteBuffer header = read(channel, 0, HEADER);
+            ByteBuffer footer = read(channel, size - FOOTER, FOOTER);
+            if (header.getInt() != MAGIC || header.get() != VERSION || footer.getInt(16) != MAGIC) {
+                throw new IOException("归档文件格式无效: " + path);
+            }
+            long directoryOffset = footer.getLong();
+            int directoryLength = footer.getInt();
+            int directoryCrc = footer.getInt();
+            byte[] bytes = read(channel, directoryOffset, directoryLength).array();
+            if (crc(bytes) != directoryCrc) {
+                throw new IOException("归档文件目录校验失败: " + path);
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            int count = in.readInt();
+            Map<String, DeviceSection> devices = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String deviceId = in.readUTF();
+                devices.put(deviceId, new DeviceSection(in.readLong(), in.readInt(), in.readInt(),
+                        in.readLong(), in.readLong()));
+            }
+            return new ArchiveFile(path, size, devices);
+        }
+    }
+
+    int getDeviceCount() {
+        return devices.size();
+    }
+
+    /**
+     * 读取一个设备与[start, stop)相交的数据块
+     *
+     * @param field 字段名，null表示全部字段
+     */
+    void read(String deviceId, String field, long start, long stop, BlockConsumer consumer) throws IOException {
+        DeviceSection section = devices.get(deviceId);
+        if (section == null || section.maxTime < start || section.minTime >= stop) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            byte[] bytes = read(channel, section.offset, section.length).array();
+            if (crc(bytes) != section.crc) {
+                throw new IOException("归档文件索引校验失败: " + path + ", 设备: " + deviceId);
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                BlockIndex block = BlockIndex.readFrom(in);
+                if (block.maxTime < start || block.minTime >= stop || (field != null && !field.equals(block.field))) {
+                    continue;
+                }
+                ByteBuffer payload = read(channel, block.offset, block.length);
+                if (crc(payload.array()) != block.crc) {
+                    throw new IOException("归档数据块校验失败: " + path + ", 设备: " + deviceId);
+                }
+                long[] times = new long[block.count];
+                double[] values = block.type == GorillaCodec.TYPE_STRING ? null : new double[block.count];
+                String[] texts = block.type == GorillaCodec.TYPE_STRING ? new String[block.count] : null;
+                GorillaCodec.decode(payload, 0, block.type, block.count, times, values, texts);
+                consumer.accept(block.field, block.type, block.count, times, values, texts);
+            }
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new IOException("归档文件不完整");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 已解码数据块的接收方
+     */
+    @FunctionalInterface
+    interface BlockConsumer {
+
+        void accept(String field, byte type, int count, long[] times, double[] values, String[] texts) throws IOException;
+    }
+
+    @AllArgsConstructor
+    private static final class DeviceSection {
+
+        private final long offset;
+        private final int length;
+        private final int crc;
+        private final long minTime;
+        private final long maxTime;
+    }
+
+    /**
+     * 块索引项：时间范围和数值范围（非数值块为NaN）
+     */
+    @Getter
+    @AllArgsConstructor
+    static final class BlockIndex {
+
+        private final String field;
+        private final byte type;
+        private final int count;
+        private final long minTime;
+        private final long maxTime;
+        private final double minValue;
+        private final double maxValue;
+        private final long offset;
+        private final int length;
+        private final int crc;
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeUTF(field);
+            out.writeByte(type);
+            out.writeInt(count);
+            out.writeLong(minTime);
+            out.writeLong(maxTime);
+            out.writeDouble(minValue);
+            out.writeDouble(maxValue);
+            out.writeLong(offset);
+            out.writeInt(length);
+            out.writeInt(crc);
+        }
+
+        static BlockIndex readFrom(DataInputStream in) throws IOException {
+            return new BlockIndex(in.readUTF(), in.readByte(), in.readInt(), in.readLong(), in.readLong(),
+                    in.readDouble(), in.readDouble(), in.readLong(), in.readInt(), in.readInt());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.iot.device.tsdb.archive;
+
+import com.iot.device.tsdb.local.GorillaCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 归档文件写入器
+ * <p>
+ * 按(设备, 字段)顺序追加数据点，每满blockPoints个点压缩为一个块写出；块索引在内存中按设备累积，
+ * {@link #finish()} 时写出各设备的块索引段、设备目录和文件尾，最后落盘。文件格式见 {@link ArchiveFile}。
+ *
+ * @author IoT Platform
+ */
+final class ArchiveFileWriter implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final int blockPoints;
+    private final Map<String, List<ArchiveFile.BlockIndex>> index = new LinkedHashMap<>();
+    private long position;
+    private long points;
+
+    private String deviceId;
+    private String field;
+    private byte type;
+    private final long[] times;
+    private final double[] values;
+    private final String[] texts;
+    private int size;
+
+    ArchiveFileWriter(Path path, int blockPoints) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.blockPoints = blockPoints;
+        this.times = new long[blockPoints];
+        this.values = new double[blockPoints];
+        this.texts = new String[blockPoints];
+        ByteBuffer header = ByteBuffer.allocate(ArchiveFile.HEADER).putInt(ArchiveFile.MAGIC).put(ArchiveFile.VERSION);
+        header.flip();
+        write(header);
+    }
+
+    /**
+     * 追加一个数据点；同一序列的点需按时间顺序追加
+     */
+    void append(String deviceId, String field, byte type, long time, double value, String text) throws IOException {
+        if (size > 0 && (type != this.type || !field.equals(this.field) || !deviceId.equals(this.deviceId))) {
+            flushBlock();
+        }
+        if (size == 0) {
+            this.deviceId = deviceId;
+            this.field = field;
+            this.type = type;
+        }
+        times[size] = time;
+        values[size] = value;
+        texts[size] = text;
+        size++;
+        if (size == blockPoints) {
+            flushBlock();
+        }
+    }
+
+    long getPoints() {
+        return points + size;
+    }
+
+    /**
+     * 写出索引和文件尾并落盘
+     *
+     * @return 文件字节数
+     */
+    long finish() throws IOException {
+        if (size > 0) {
+            flushBlock();
+        }
+        ByteArrayOutputStream directoryBytes = new ByteArrayOutputStream(index.size() * 48 + 4);
+        DataOutputStream directory = new DataOutputStream(directoryBytes);
+        directory.writeInt(index.size());
+        for (Map.Entry<String, List<ArchiveFile.BlockIndex>> entry : index.entrySet()) {
+            ByteArrayOutputStream sectionBytes = new ByteArrayOutputStream(entry.getValue().size() * 64 + 4);
+            DataOutputStream section = new DataOutputStream(sectionBytes);
+            long minTime = Long.MAX_VALUE;
+            long maxTime = Long.MIN_VALUE;
+            section.writeInt(entry.getValue().size());
+            for (ArchiveFile.BlockIndex block : entry.getValue()) {
+                block.writeTo(section);
+                minTime = Math.min(minTime, block.getMinTime());
+                maxTime = Math.max(maxTime, block.getMaxTime());
+            }
+            byte[] bytes = sectionBytes.toByteArray();
+            long offset = position;
+            write(ByteBuffer.wrap(bytes));
+            directory.writeUTF(entry.getKey());
+            directory.writeLong(offset);
+            directory.writeInt(bytes.length);
+            directory.writeInt(crc(bytes));
+            directory.writeLong(minTime);
+            directory.writeLong(maxTime);
+        }
+        byte[] bytes = directoryBytes.toByteArray();
+        long directoryOffset = position;
+        write(ByteBuffer.wrap(bytes));
+        ByteBuffer footer = ByteBuffer.allocate(ArchiveFile.FOOTER)
+                .putLong(directoryOffset).putInt(bytes.length).putInt(crc(bytes)).putInt(ArchiveFile.MAGIC);
+        footer.flip();
+        write(footer);
+        channel.force(true);
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void flushBlock() throws IOException {
+        byte[] payload = GorillaCodec.encode(type, times, values, texts, size);
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        double minValue = Double.NaN;
+        double maxValue = Double.NaN;
+        for (int i = 0; i < size; i++) {
+            minTime = Math.min(minTime, times[i]);
+            maxTime = Math.max(maxTime, times[i]);
+            if (type == GorillaCodec.TYPE_DOUBLE) {
+                minValue = i == 0 ? values[i] : Math.min(minValue, values[i]);
+                maxValue = i == 0 ? values[i] : Math.max(maxValue, values[i]);
+            }
+        }
+        index.computeIfAbsent(deviceId, id -> new ArrayList<>()).add(new ArchiveFile.BlockIndex(
+                field, type, size, minTime, maxTime, minValue, maxValue, position, payload.length, crc(payload)));
+        write(ByteBuffer.wrap(payload));
+        points += size;
+        Arrays.fill(texts, 0, size, null);
+        size = 0;
+    }
+
+    private void write(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+}
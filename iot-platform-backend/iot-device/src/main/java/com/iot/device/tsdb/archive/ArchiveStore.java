@@ -0,0 +1,273 @@
+package com.iot.device.tsdb.archive;
+
+import com.iot.common.core.exception.BusinessException;
+import com.iot.device.config.ArchiveProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 归档文件目录
+ * <p>
+ * 归档按UTC自然日分区，文件名为 yyyy-MM-dd.序号.col；同一天可以有多个文件（迟到数据在后续归档中追加）。
+ * 查询按时间范围裁剪分区，再由文件内的设备目录和块索引裁剪数据块。
+ * 目录为各节点共享的存储时（sharedDir）定期重新扫描，其他节点发布的文件加载后参与查询。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Component
+public class ArchiveStore {
+
+    static final long DAY_MILLIS = 86_400_000L;
+    static final String SUFFIX = ".col";
+    static final String TMP_SUFFIX = ".tmp";
+
+    private final ArchiveProperties properties;
+    private final NavigableMap<Long, List<ArchiveFile>> partitions = new ConcurrentSkipListMap<>();
+    /**
+     * 已加载（或无法加载而跳过）的文件名
+     */
+    private final Set<String> loaded = ConcurrentHashMap.newKeySet();
+    private Path dir;
+    private ScheduledExecutorService executor;
+
+    private final LongAdder scannedFiles = new LongAdder();
+    private final LongAdder readBlocks = new LongAdder();
+
+    public ArchiveStore(ArchiveProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        dir = Paths.get(properties.getDir()).toAbsolutePath();
+        Files.createDirectories(dir);
+        deleteStaleTempFiles();
+        rescan();
+        log.info("归档目录加载完成，目录: {}, 分区数: {}, 归档截止: {}", dir, partitions.size(),
+                partitions.isEmpty() ? "-" : LocalDate.ofEpochDay(partitions.lastKey() / DAY_MILLIS).plusDays(1));
+        if (properties.isSharedDir()) {
+            // 共享目录中其他节点发布的归档文件定期加载，各节点的归档截止时间随之推进
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "archive-rescan");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::rescanQuietly, properties.getRescanIntervalMs(),
+                    properties.getRescanIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 加载目录中尚未加载的归档文件
+     */
+    synchronized void rescan() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (loaded.contains(name)) {
+                    continue;
+                }
+                long day = parseDay(name);
+                if (day == Long.MIN_VALUE) {
+                    log.warn("忽略无法识别的归档文件: {}", file);
+                    loaded.add(name);
+                    continue;
+                }
+                try {
+                    add(day, name, ArchiveFile.open(file));
+                } catch (IOException e) {
+                    log.error("归档文件无法读取，已跳过: {}", file, e);
+                    loaded.add(name);
+                }
+            }
+        }
+    }
+
+    private void rescanQuietly() {
+        try {
+            int before = loaded.size();
+            rescan();
+            if (loaded.size() > before) {
+                log.info("加载其他节点发布的归档文件{}个，归档截止: {}", loaded.size() - before,
+                        Instant.ofEpochMilli(getArchivedBefore()));
+            }
+        } catch (Exception e) {
+            log.warn("重新扫描归档目录失败，目录: {}", dir, e);
+        }
+    }
+
+    /**
+     * 删除未完成的归档临时文件，下次归档时重新生成；共享目录中的临时文件可能正由其他节点写入，只删除超过锁过期时间的
+     */
+    private void deleteStaleTempFiles() throws IOException {
+        long staleBefore = System.currentTimeMillis() - properties.getLockTtlMs();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + TMP_SUFFIX)) {
+            for (Path file : files) {
+                if (!properties.isSharedDir() || Files.getLastModifiedTime(file).toMillis() < staleBefore) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 已归档数据的截止时间（最新归档分区的结束时间），早于该时间的数据从归档读取；无归档时返回Long.MIN_VALUE
+     */
+    public long getArchivedBefore() {
+        Map.Entry<Long, List<ArchiveFile>> last = partitions.lastEntry();
+        return last == null ? Long.MIN_VALUE : last.getKey() + DAY_MILLIS;
+    }
+
+    /**
+     * 校验查询起始时间不早于归档截止时间
+     * <p>
+     * 流式、列式、批量查询和数据导出直接读取InfluxDB，不合并归档文件；冷数据归档删除原始数据后，
+     * 这些查询在已归档的时间段会返回空洞，因此直接拒绝，已归档的数据通过历史数据和统计接口查询。
+     *
+     * @param start 查询起始时间（毫秒）
+     * @throws BusinessException 查询范围包含已归档的时间段
+     */
+    public void requireUnarchived(long start) {
+        long boundary = getArchivedBefore();
+        if (boundary != Long.MIN_VALUE && start < boundary) {
+            throw new BusinessException("查询范围包含已归档的数据（" + Instant.ofEpochMilli(boundary)
+                    + " 之前），该查询不读取归档，请将开始时间调整到该时间之后，或使用历史数据、数据统计接口查询");
+        }
+    }
+
+    /**
+     * 归档运行指标
+     */
+    public Map<String, Object> getStats() {
+        int files = 0;
+        long bytes = 0;
+        for (List<ArchiveFile> list : partitions.values()) {
+            for (ArchiveFile file : list) {
+                files++;
+                bytes += file.getSize();
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("dir", dir.toString());
+        stats.put("partitions", partitions.size());
+        stats.put("files", files);
+        stats.put("bytes", bytes);
+        stats.put("firstPartition", partitions.isEmpty() ? null : LocalDate.ofEpochDay(partitions.firstKey() / DAY_MILLIS));
+        stats.put("lastPartition", partitions.isEmpty() ? null : LocalDate.ofEpochDay(partitions.lastKey() / DAY_MILLIS));
+        stats.put("scannedFiles", scannedFiles.sum());
+        stats.put("readBlocks", readBlocks.sum());
+        return stats;
+    }
+
+    /**
+     * 读取一个设备在[start, stop)内与之相交的归档数据块
+     *
+     * @param field 字段名，null表示全部字段
+     */
+    void scan(String deviceId, String field, long start, long stop, ArchiveFile.BlockConsumer consumer) throws IOException {
+        if (start >= stop) {
+            return;
+        }
+        long from = Math.floorDiv(start, DAY_MILLIS) * DAY_MILLIS;
+        for (List<ArchiveFile> files : partitions.subMap(from, true, stop, false).values()) {
+            for (ArchiveFile file : files) {
+                scannedFiles.increment();
+                file.read(deviceId, field, start, stop, (f, type, count, times, values, texts) -> {
+                    readBlocks.increment();
+                    consumer.accept(f, type, count, times, values, texts);
+                });
+            }
+        }
+    }
+
+    boolean hasPartition(long day) {
+        return partitions.containsKey(day);
+    }
+
+    /**
+     * 分区下一个文件的临时路径；跳过已存在的正式文件和临时文件，写入方以CREATE_NEW创建，
+     * 与其他节点同时选中同一序号时只有一方能创建成功
+     */
+    Path newTempFile(long day) {
+        List<ArchiveFile> files = partitions.get(day);
+        int sequence = files == null ? 0 : files.size();
+        Path target;
+        Path tmp;
+        do {
+            target = dir.resolve(fileName(day, sequence++));
+            tmp = target.resolveSibling(target.getFileName() + TMP_SUFFIX);
+        } while (Files.exists(target) || Files.exists(tmp));
+        return tmp;
+    }
+
+    /**
+     * 把写完并落盘的临时文件发布为正式归档文件，之后即参与查询
+     */
+    synchronized void commit(long day, Path tmp) throws IOException {
+        String name = tmp.getFileName().toString();
+        Path target = tmp.resolveSibling(name.substring(0, name.length() - TMP_SUFFIX.length()));
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        add(day, target.getFileName().toString(), ArchiveFile.open(target));
+    }
+
+    Path getDir() {
+        return dir;
+    }
+
+    private void add(long day, String name, ArchiveFile file) {
+        loaded.add(name);
+        partitions.computeIfAbsent(day, d -> new CopyOnWriteArrayList<>()).add(file);
+    }
+
+    static String fileName(long day, int sequence) {
+        return LocalDate.ofEpochDay(day / DAY_MILLIS) + "." + sequence + SUFFIX;
+    }
+
+    /**
+     * 文件名中的分区日期（UTC零点毫秒）；无法识别返回Long.MIN_VALUE
+     */
+    static long parseDay(String name) {
+        int dot = name.indexOf('.');
+        if (dot < 0) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return LocalDate.parse(name.substring(0, dot)).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.iot.device.tsdb.archive;
+
+import com.iot.common.redis.service.RedisService;
+import com.iot.device.config.ArchiveProperties;
+import com.iot.device.config.MqttClusterProperties;
+import com.iot.device.service.InfluxDbService;
+import com.iot.device.tsdb.FluxTemplate;
+import com.iot.device.tsdb.FluxTimes;
+import com.iot.device.tsdb.local.GorillaCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 冷数据归档任务
+ * <p>
+ * 定期把早于 archiveAfterDays 天的整天分区从InfluxDB流式读出，按(设备, 字段)压缩写入归档文件，
+ * 文件落盘并发布后再从InfluxDB删除该天的原始数据。删除前先写删除标记，进程在发布与删除之间退出时，
+ * 下次运行按标记补做删除，避免同一天的数据被重复归档。
+ * <p>
+ * 集群模式下要求归档目录为各节点共享的存储（sharedDir），否则拒绝启动：归档节点删除共享InfluxDB中的原始数据后，
+ * 其他节点没有对应的归档文件，查询会静默返回空结果。每轮归档前通过Redis锁保证只有一个节点执行；
+ * 共享目录下原始数据推迟到下一轮才删除，其间其他节点重新扫描目录加载新文件，各节点的归档截止时间一起推进。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "iot.archive", name = "enabled", havingValue = "true")
+public class ColdArchiver {
+
+    private static final String DELETE_PENDING = ".delete-pending";
+    private static final String RAW_PREDICATE = "_measurement=\"device_data\"";
+    private static final String LOCK_KEY = "iot:archive:lock";
+
+    /**
+     * 只释放自己持有的锁
+     */
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0", Long.class);
+
+    private static final FluxTemplate OLDEST = FluxTemplate.compile(
+            "from(bucket: ${bucket}) "
+                    + "|> range(start: 1970-01-01T00:00:00Z, stop: ${stop}) "
+                    + "|> filter(fn: (r) => r._measurement == \"device_data\") "
+                    + "|> first() "
+                    + "|> keep(columns: [\"_time\"]) "
+                    + "|> group() "
+                    + "|> min(column: \"_time\")");
+
+    private static final FluxTemplate PARTITION = FluxTemplate.compile(
+            "from(bucket: ${bucket}) "
+                    + "|> range(start: ${start}, stop: ${stop}) "
+                    + "|> filter(fn: (r) => r._measurement == \"device_data\") "
+                    + "|> keep(columns: [\"_time\", \"_value\", \"_field\", \"device_id\"])");
+
+    private final ObjectProvider<InfluxDbService> influxDbServiceProvider;
+    private final ArchiveStore archiveStore;
+    private final ArchiveProperties properties;
+    private final MqttClusterProperties cluster;
+    private final RedisService redisService;
+    private ScheduledExecutorService executor;
+
+    public ColdArchiver(ObjectProvider<InfluxDbService> influxDbServiceProvider, ArchiveStore archiveStore,
+                        ArchiveProperties properties, MqttClusterProperties cluster, RedisService redisService) {
+        this.influxDbServiceProvider = influxDbServiceProvider;
+        this.archiveStore = archiveStore;
+        this.properties = properties;
+        this.cluster = cluster;
+        this.redisService = redisService;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (cluster.isEnabled() && !properties.isSharedDir()) {
+            throw new IllegalStateException("集群模式下启用冷数据归档要求归档目录为各节点共享的存储"
+                    + "（iot.archive.shared-dir=true），否则其他节点无法读取已从InfluxDB删除的数据");
+        }
+        if (influxDbServiceProvider.getIfAvailable() == null) {
+            log.warn("当前时序存储引擎不是InfluxDB，冷数据归档任务不启动");
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cold-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::runOnce, 60_000L, properties.getRunIntervalMs(), TimeUnit.MILLISECONDS);
+        log.info("冷数据归档任务启动，归档{}天前的数据，间隔: {}ms", properties.getArchiveAfterDays(), properties.getRunIntervalMs());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 执行一轮归档：补做未完成的删除，再从最早的未归档分区开始，最多归档 maxPartitionsPerRun 天
+     */
+    void runOnce() {
+        String token = null;
+        if (cluster.isEnabled()) {
+            token = cluster.getNodeId() + ":" + System.nanoTime();
+            if (!tryLock(token)) {
+                log.debug("其他节点正在归档，本轮跳过");
+                return;
+            }
+        }
+        try {
+            archive();
+        } finally {
+            if (token != null) {
+                unlock(token);
+            }
+        }
+    }
+
+    private void archive() {
+        try {
+            InfluxDbService influx = influxDbServiceProvider.getObject();
+            if (properties.isSharedDir()) {
+                // 上一轮可能由其他节点执行
+                archiveStore.rescan();
+            }
+            retryPendingDeletes(influx);
+            long cutoff = FluxTimes.floor(System.currentTimeMillis()
+                    - properties.getArchiveAfterDays() * ArchiveStore.DAY_MILLIS, ArchiveStore.DAY_MILLIS);
+            Instant oldest = findOldest(influx, cutoff);
+            if (oldest == null) {
+                return;
+            }
+            long day = FluxTimes.floor(oldest.toEpochMilli(), ArchiveStore.DAY_MILLIS);
+            if (!properties.isDeleteAfterArchive()) {
+                // 原始数据保留时，已归档的分区仍在InfluxDB中，从归档截止时间之后继续
+                day = Math.max(day, archiveStore.getArchivedBefore());
+            }
+            for (int n = 0; day < cutoff && n < properties.getMaxPartitionsPerRun(); n++, day += ArchiveStore.DAY_MILLIS) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                archivePartition(influx, day);
+            }
+        } catch (Exception e) {
+            log.error("冷数据归档失败", e);
+        }
+    }
+
+    /**
+     * InfluxDB中早于cutoff的最早数据时间；没有则返回null
+     */
+    private Instant findOldest(InfluxDbService influx, long cutoff) throws IOException {
+        String flux = OLDEST.bind()
+                .string("bucket", influx.getBucket())
+                .time("stop", Instant.ofEpochMilli(cutoff))
+                .render();
+        AtomicReference<Instant> oldest = new AtomicReference<>();
+        influx.streamQuery(flux, record -> oldest.set(record.getTime()));
+        return oldest.get();
+    }
+
+    private void archivePartition(InfluxDbService influx, long day) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        Instant start = Instant.ofEpochMilli(day);
+        Instant stop = Instant.ofEpochMilli(day + ArchiveStore.DAY_MILLIS);
+        String flux = PARTITION.bind()
+                .string("bucket", influx.getBucket())
+                .time("start", start)
+                .time("stop", stop)
+                .render();
+
+        Path tmp = archiveStore.newTempFile(day);
+        long points;
+        long bytes;
+        try (ArchiveFileWriter writer = new ArchiveFileWriter(tmp, properties.getBlockPoints())) {
+            influx.streamQuery(flux, record -> {
+                Object deviceId = record.getValueByKey("device_id");
+                Object value = record.getValue();
+                if (deviceId == null || record.getField() == null || record.getTime() == null || value == null) {
+                    return;
+                }
+                long time = record.getTime().toEpochMilli();
+                if (value instanceof Boolean) {
+                    writer.append(deviceId.toString(), record.getField(), GorillaCodec.TYPE_BOOLEAN, time,
+                            (Boolean) value ? 1 : 0, null);
+                } else if (value instanceof Number) {
+                    writer.append(deviceId.toString(), record.getField(), GorillaCodec.TYPE_DOUBLE, time,
+                            ((Number) value).doubleValue(), null);
+                } else {
+                    writer.append(deviceId.toString(), record.getField(), GorillaCodec.TYPE_STRING, time,
+                            0, value.toString());
+                }
+            });
+            points = writer.getPoints();
+            bytes = points == 0 ? 0 : writer.finish();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        if (points == 0) {
+            Files.deleteIfExists(tmp);
+            return;
+        }
+
+        Path marker = null;
+        if (properties.isDeleteAfterArchive()) {
+            marker = markerFor(tmp);
+            Files.write(marker, new byte[0]);
+        }
+        archiveStore.commit(day, tmp);
+        if (marker != null && !properties.isSharedDir()) {
+            deleteRaw(influx, day);
+            Files.deleteIfExists(marker);
+        }
+        log.info("归档分区完成，日期: {}, 点数: {}, 文件大小: {}字节, 每点字节数: {}, 耗时: {}ms",
+                start.atOffset(ZoneOffset.UTC).toLocalDate(), points, bytes,
+                String.format("%.2f", (double) bytes / points), System.currentTimeMillis() - startMillis);
+    }
+
+    private boolean tryLock(String token) {
+        try {
+            return Boolean.TRUE.equals(redisService.setIfAbsent(LOCK_KEY, token, properties.getLockTtlMs(),
+                    TimeUnit.MILLISECONDS));
+        } catch (Exception e) {
+            log.warn("获取归档锁失败，本轮跳过，原因: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void unlock(String token) {
+        try {
+            redisService.execute(UNLOCK_SCRIPT, Collections.singletonList(LOCK_KEY), redisService.serialize(token));
+        } catch (Exception e) {
+            log.warn("释放归档锁失败，锁将在过期后释放，原因: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 补做上次未完成的删除（共享目录下为上一轮推迟的删除）；标记对应的归档文件不存在（发布前退出）时只清除标记
+     */
+    private void retryPendingDeletes(InfluxDbService influx) throws IOException {
+        try (DirectoryStream<Path> markers = Files.newDirectoryStream(archiveStore.getDir(), "*" + DELETE_PENDING)) {
+            for (Path marker : markers) {
+                String name = marker.getFileName().toString();
+                Path archived = marker.resolveSibling(name.substring(0, name.length() - DELETE_PENDING.length()));
+                if (Files.exists(archived)) {
+                    long day = ArchiveStore.parseDay(archived.getFileName().toString());
+                    deleteRaw(influx, day);
+                    log.info("补做归档后删除，文件: {}", archived.getFileName());
+                }
+                Files.deleteIfExists(marker);
+            }
+        }
+    }
+
+    private void deleteRaw(InfluxDbService influx, long day) {
+        // 删除接口的起止时间均为闭区间
+        influx.getClient().getDeleteApi().delete(
+                Instant.ofEpochMilli(day).atOffset(ZoneOffset.UTC),
+                Instant.ofEpochMilli(day + ArchiveStore.DAY_MILLIS).minusNanos(1).atOffset(ZoneOffset.UTC),
+                RAW_PREDICATE, influx.getBucket(), influx.getOrganization());
+    }
+
+    /**
+     * 删除标记以正式文件名命名（去掉临时后缀）
+     */
+    private static Path markerFor(Path tmp) {
+        String name = tmp.getFileName().toString();
+        String target = name.substring(0, name.length() - ArchiveStore.TMP_SUFFIX.length());
+        return tmp.resolveSibling(target + DELETE_PENDING);
+    }
+}
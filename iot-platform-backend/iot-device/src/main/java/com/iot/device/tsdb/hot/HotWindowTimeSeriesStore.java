@@ -0,0 +1,617 @@
+package com.iot.device.tsdb.hot;
+
+import com.iot.device.config.HotWindowProperties;
+import com.iot.device.config.MqttClusterProperties;
+import com.iot.device.dto.SeriesColumn;
+import com.iot.device.telemetry.TelemetryRecord;
+import com.iot.device.tsdb.FluxTimes;
+import com.iot.device.tsdb.MeanSeriesBuilder;
+import com.iot.device.tsdb.TimeSeriesStore;
+import com.iot.device.tsdb.local.GorillaCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 近期数据内存热窗口
+ * <p>
+ * 装饰存储引擎（经冷数据归档合并后）：写入时同时把数据追加到每台设备每个字段的内存环中，满 blockPoints 个点后用
+ * {@link GorillaCodec} 压缩（时间戳二阶差分、浮点值异或），超出 windowMs 的块从环头丢弃。
+ * 历史数据、数据统计、多聚合统计查询的开始时间不早于热窗口覆盖范围时直接由内存计算，否则转发给存储引擎。
+ * <p>
+ * 设备的覆盖范围从本节点开始记录其数据算起（重启或被淘汰后需重新积累）。全局内存超出预算时，
+ * 按最近查询时间从最冷的设备开始整体淘汰。
+ * <p>
+ * 热窗口只有在本节点收到设备全部消息时才是完整的。集群部署（共享订阅）时同一设备的消息分散到多个节点，
+ * 本节点只有部分数据，由它应答查询会返回残缺结果并被写入统计缓存，因此集群模式下默认不启用，
+ * 除非通过 clusterDeviceAffinity 声明Broker保证同一设备的消息只投递到同一节点。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Service
+@Primary
+public class HotWindowTimeSeriesStore implements TimeSeriesStore {
+
+    /**
+     * 每个压缩块的对象开销估算（字节）
+     */
+    private static final int BLOCK_OVERHEAD = 48;
+    private static final int FIELD_OVERHEAD = 128;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final TimeSeriesStore delegate;
+    private final HotWindowProperties properties;
+    /**
+     * 配置启用且本节点能收到设备全部消息
+     */
+    private final boolean active;
+
+    private final ConcurrentHashMap<String, DeviceWindow> devices = new ConcurrentHashMap<>();
+    private final AtomicLong memoryBytes = new AtomicLong();
+    private ScheduledExecutorService executor;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictedDevices = new LongAdder();
+    private final LongAdder sealedBlocks = new LongAdder();
+
+    public HotWindowTimeSeriesStore(@Qualifier(TimeSeriesStore.FEDERATED) TimeSeriesStore delegate,
+                                    HotWindowProperties properties, MqttClusterProperties cluster) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.active = properties.isEnabled() && (!cluster.isEnabled() || properties.isClusterDeviceAffinity());
+        if (properties.isEnabled() && !active) {
+            log.warn("集群模式下设备消息分散到多个节点，本节点数据不完整，热窗口不启用；"
+                    + "Broker保证设备亲和时可设置 iot.hot-window.cluster-device-affinity=true");
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hot-window-maintain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::maintain, properties.getMaintenanceIntervalMs(),
+                properties.getMaintenanceIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void writeDeviceData(String deviceId, TelemetryRecord data, long time) {
+        delegate.writeDeviceData(deviceId, data, time);
+        if (active) {
+            record(deviceId, data, time);
+        }
+    }
+
+    @Override
+    public List<Map<String, Object>> queryDeviceData(String deviceId, String startTime, String endTime) {
+        long[] range = resolveRange(startTime, endTime);
+        DeviceWindow window = range == null ? null : covering(deviceId, range[0]);
+        if (window == null) {
+            return delegate.queryDeviceData(deviceId, startTime, endTime);
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Segment segment : window.snapshot(null)) {
+            for (int i = 0; i < segment.count; i++) {
+                long time = segment.times[i];
+                if (time >= range[0] && time < range[1]) {
+                    Map<String, Object> dataPoint = new HashMap<>();
+                    dataPoint.put("time", Instant.ofEpochMilli(time));
+                    dataPoint.put("field", segment.field);
+                    dataPoint.put("value", segment.value(i));
+                    result.add(dataPoint);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Object> queryLatestDeviceData(String deviceId) {
+        return delegate.queryLatestDeviceData(deviceId);
+    }
+
+    @Override
+    public SeriesColumn queryStatisticsSeries(String deviceId, String field, String startTime, String endTime,
+                                              String windowPeriod) {
+        long windowMillis = FluxTimes.durationMillis(windowPeriod);
+        long[] range = resolveRange(startTime, endTime);
+        DeviceWindow window = range == null || windowMillis <= 0 ? null : covering(deviceId, range[0]);
+        if (window == null) {
+            return delegate.queryStatisticsSeries(deviceId, field, startTime, endTime, windowPeriod);
+        }
+        MeanSeriesBuilder builder = new MeanSeriesBuilder(windowMillis, range[1]);
+        for (Segment segment : window.snapshot(field)) {
+            if (segment.type != GorillaCodec.TYPE_DOUBLE) {
+                continue;
+            }
+            for (int i = 0; i < segment.count; i++) {
+                long time = segment.times[i];
+                if (time >= range[0] && time < range[1]) {
+                    builder.add(time, segment.values[i]);
+                }
+            }
+        }
+        return builder.build(field, "raw");
+    }
+
+    @Override
+    public void scanNumericField(Collection<String> deviceIds, String field, String startTime, String endTime,
+                                 PointConsumer consumer) throws IOException {
+        long[] range = resolveRange(startTime, endTime);
+        List<DeviceWindow> windows = new ArrayList<>(deviceIds.size());
+        for (String deviceId : deviceIds) {
+            DeviceWindow window = range == null ? null : covering(deviceId, range[0]);
+            if (window == null) {
+                // 任一设备不在热窗口内时整体转发，保持一次查询
+                delegate.scanNumericField(deviceIds, field, startTime, endTime, consumer);
+                return;
+            }
+            windows.add(window);
+        }
+        for (DeviceWindow window : windows) {
+            for (Segment segment : window.snapshot(field)) {
+                if (segment.type != GorillaCodec.TYPE_DOUBLE) {
+                    continue;
+                }
+                for (int i = 0; i < segment.count; i++) {
+                    if (segment.times[i] >= range[0] && segment.times[i] < range[1]) {
+                        consumer.accept(window.deviceId, segment.times[i], segment.values[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> getWriteStats() {
+        return delegate.getWriteStats();
+    }
+
+    /**
+     * 热窗口运行指标
+     */
+    public Map<String, Object> getStats() {
+        long points = 0;
+        long fields = 0;
+        for (DeviceWindow window : devices.values()) {
+            synchronized (window) {
+                fields += window.fields.size();
+                for (FieldRing ring : window.fields.values()) {
+                    points += ring.points();
+                }
+            }
+        }
+        long bytes = memoryBytes.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("active", active);
+        stats.put("windowMs", properties.getWindowMs());
+        stats.put("devices", devices.size());
+        stats.put("fields", fields);
+        stats.put("points", points);
+        stats.put("memoryBytes", bytes);
+        stats.put("memoryBudgetBytes", properties.getMemoryBudgetBytes());
+        stats.put("bytesPerPoint", points == 0 ? 0 : (double) bytes / points);
+        stats.put("sealedBlocks", sealedBlocks.sum());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictedDevices", evictedDevices.sum());
+        return stats;
+    }
+
+    private void record(String deviceId, TelemetryRecord data, long time) {
+        while (true) {
+            DeviceWindow window = devices.computeIfAbsent(deviceId, id -> new DeviceWindow(id, time));
+            synchronized (window) {
+                if (window.evicted) {
+                    // 并发淘汰，重新创建
+                    continue;
+                }
+                for (int i = 0; i < data.size(); i++) {
+                    switch (data.type(i)) {
+                        case TelemetryRecord.TYPE_DOUBLE:
+                        case TelemetryRecord.TYPE_LONG:
+                            double value = data.getDouble(i);
+                            if (Double.isFinite(value)) {
+                                window.append(data.fieldName(i), GorillaCodec.TYPE_DOUBLE, time, value, null);
+                            }
+                            break;
+                        case TelemetryRecord.TYPE_BOOLEAN:
+                            window.append(data.fieldName(i), GorillaCodec.TYPE_BOOLEAN, time,
+                                    data.getBoolean(i) ? 1 : 0, null);
+                            break;
+                        case TelemetryRecord.TYPE_NULL:
+                            break;
+                        default:
+                            window.append(data.fieldName(i), GorillaCodec.TYPE_STRING, time, 0, data.getString(i));
+                            break;
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 覆盖从start开始的数据的设备热窗口；未启用（含集群模式下未声明设备亲和）、未覆盖返回null
+     */
+    private DeviceWindow covering(String deviceId, long start) {
+        if (!active) {
+            return null;
+        }
+        DeviceWindow window = devices.get(deviceId);
+        long coveredFrom = System.currentTimeMillis() - properties.getWindowMs();
+        if (window == null || start < Math.max(window.trackedSince, coveredFrom)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        window.lastAccess = System.currentTimeMillis();
+        return window;
+    }
+
+    private void maintain() {
+        try {
+            long now = System.currentTimeMillis();
+            long cutoff = now - properties.getWindowMs();
+            for (DeviceWindow window : devices.values()) {
+                synchronized (window) {
+                    window.trim(cutoff);
+                    if (window.isEmpty() && window.lastWrite < cutoff) {
+                        evict(window);
+                    }
+                }
+            }
+            long budget = properties.getMemoryBudgetBytes();
+            if (memoryBytes.get() > budget) {
+                evictColdDevices(budget - budget / 10);
+            }
+        } catch (Exception e) {
+            log.error("热窗口维护任务失败", e);
+        }
+    }
+
+    /**
+     * 按最近查询时间从冷到热淘汰设备，直到内存降到target以下
+     */
+    private void evictColdDevices(long target) {
+        List<DeviceWindow> candidates = new ArrayList<>(devices.values());
+        candidates.sort(Comparator.comparingLong(window -> window.lastAccess));
+        int evicted = 0;
+        for (DeviceWindow window : candidates) {
+            if (memoryBytes.get() <= target) {
+                break;
+            }
+            synchronized (window) {
+                evict(window);
+            }
+            evicted++;
+        }
+        log.info("热窗口内存超出预算，淘汰设备数: {}, 当前内存: {}字节", evicted, memoryBytes.get());
+    }
+
+    private void evict(DeviceWindow window) {
+        if (window.evicted) {
+            return;
+        }
+        window.evicted = true;
+        devices.remove(window.deviceId, window);
+        memoryBytes.addAndGet(-window.bytes);
+        window.bytes = 0;
+        window.fields.clear();
+        evictedDevices.increment();
+    }
+
+    private static long[] resolveRange(String startTime, String endTime) {
+        Instant now = Instant.now();
+        Instant start = FluxTimes.resolve(startTime, now);
+        Instant stop = FluxTimes.resolve(endTime, now);
+        if (start == null || stop == null) {
+            return null;
+        }
+        return new long[]{start.toEpochMilli(), stop.toEpochMilli()};
+    }
+
+    /**
+     * 单台设备的热窗口，所有修改在对象锁内进行
+     */
+    private final class DeviceWindow {
+
+        private final String deviceId;
+        /**
+         * 开始记录该设备数据的时间，早于该时间的数据不在热窗口中
+         */
+        private final long trackedSince;
+        private final Map<String, FieldRing> fields = new HashMap<>();
+        private volatile long lastAccess;
+        private long lastWrite;
+        private long bytes;
+        private boolean evicted;
+
+        private DeviceWindow(String deviceId, long trackedSince) {
+            this.deviceId = deviceId;
+            this.trackedSince = trackedSince;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        private void append(String field, byte type, long time, double value, String text) {
+            FieldRing ring = fields.get(field);
+            if (ring == null) {
+                ring = new FieldRing(field);
+                fields.put(field, ring);
+                account(FIELD_OVERHEAD);
+            }
+            account(ring.append(type, time, value, text));
+            lastWrite = time;
+        }
+
+        private void trim(long cutoff) {
+            for (FieldRing ring : fields.values()) {
+                account(ring.trim(cutoff));
+            }
+            fields.values().removeIf(ring -> {
+                if (ring.isEmpty()) {
+                    account(-ring.capacityBytes() - FIELD_OVERHEAD);
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        private boolean isEmpty() {
+            return fields.isEmpty();
+        }
+
+        private void account(long delta) {
+            if (delta != 0) {
+                bytes += delta;
+                memoryBytes.addAndGet(delta);
+            }
+        }
+
+        /**
+         * 复制压缩块引用和未压缩缓冲，解码在锁外进行
+         *
+         * @param field 字段名，null表示全部字段
+         */
+        private List<Segment> snapshot(String field) {
+            List<Block> blocks = new ArrayList<>();
+            List<Segment> segments = new ArrayList<>();
+            synchronized (this) {
+                if (field != null) {
+                    FieldRing ring = fields.get(field);
+                    if (ring != null) {
+                        ring.snapshot(blocks, segments);
+                    }
+                } else {
+                    for (FieldRing ring : fields.values()) {
+                        ring.snapshot(blocks, segments);
+                    }
+                }
+            }
+            for (int i = 0; i < blocks.size(); i++) {
+                Block block = blocks.get(i);
+                Segment segment = segments.get(i);
+                if (segment.times == null) {
+                    segment.times = new long[block.count];
+                    segment.values = block.type == GorillaCodec.TYPE_STRING ? null : new double[block.count];
+                    segment.texts = block.type == GorillaCodec.TYPE_STRING ? new String[block.count] : null;
+                    GorillaCodec.decode(ByteBuffer.wrap(block.payload), 0, block.type, block.count,
+                            segment.times, segment.values, segment.texts);
+                }
+            }
+            return segments;
+        }
+    }
+
+    /**
+     * 单个字段的环：按时间顺序的压缩块和一个未压缩的当前块
+     */
+    private final class FieldRing {
+
+        private final String name;
+        private final ArrayDeque<Block> blocks = new ArrayDeque<>();
+        private int sealedPoints;
+
+        private byte openType;
+        private long[] times;
+        private double[] values;
+        private String[] texts;
+        private int size;
+
+        private FieldRing(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return 内存变化量（字节）
+         */
+        private long append(byte type, long time, double value, String text) {
+            long delta = 0;
+            if (size > 0 && openType != type) {
+                delta += seal();
+            }
+            if (size == 0) {
+                openType = type;
+            }
+            if (times == null || size == times.length) {
+                int capacity = times == null ? INITIAL_CAPACITY : Math.min(times.length * 2, properties.getBlockPoints());
+                long before = capacityBytes();
+                times = times == null ? new long[capacity] : Arrays.copyOf(times, capacity);
+                values = values == null ? new double[capacity] : Arrays.copyOf(values, capacity);
+                texts = texts == null ? null : Arrays.copyOf(texts, capacity);
+                delta += capacityBytes() - before;
+            }
+            if (type == GorillaCodec.TYPE_STRING && texts == null) {
+                texts = new String[times.length];
+                delta += (long) times.length * 8;
+            }
+            times[size] = time;
+            values[size] = value;
+            if (type == GorillaCodec.TYPE_STRING) {
+                texts[size] = text;
+                delta += 40 + 2L * text.length();
+            }
+            size++;
+            if (size >= properties.getBlockPoints()) {
+                delta += seal();
+            }
+            return delta;
+        }
+
+        /**
+         * 压缩当前块，缓冲数组保留复用
+         */
+        private long seal() {
+            byte[] payload = GorillaCodec.encode(openType, times, values, texts, size);
+            long released = 0;
+            if (openType == GorillaCodec.TYPE_STRING) {
+                for (int i = 0; i < size; i++) {
+                    released += 40 + 2L * texts[i].length();
+                    texts[i] = null;
+                }
+            }
+            long maxTime = times[0];
+            for (int i = 1; i < size; i++) {
+                maxTime = Math.max(maxTime, times[i]);
+            }
+            blocks.addLast(new Block(openType, size, maxTime, payload));
+            sealedPoints += size;
+            size = 0;
+            sealedBlocks.increment();
+            return payload.length + BLOCK_OVERHEAD - released;
+        }
+
+        /**
+         * 丢弃全部早于cutoff的压缩块；当前块也已过期时一并清空
+         */
+        private long trim(long cutoff) {
+            long delta = 0;
+            while (!blocks.isEmpty() && blocks.peekFirst().maxTime < cutoff) {
+                Block block = blocks.pollFirst();
+                sealedPoints -= block.count;
+                delta -= block.payload.length + BLOCK_OVERHEAD;
+            }
+            if (size > 0 && times[size - 1] < cutoff) {
+                if (openType == GorillaCodec.TYPE_STRING) {
+                    for (int i = 0; i < size; i++) {
+                        delta -= 40 + 2L * texts[i].length();
+                        texts[i] = null;
+                    }
+                }
+                size = 0;
+            }
+            return delta;
+        }
+
+        private boolean isEmpty() {
+            return blocks.isEmpty() && size == 0;
+        }
+
+        private int points() {
+            return sealedPoints + size;
+        }
+
+        private long capacityBytes() {
+            if (times == null) {
+                return 0;
+            }
+            return (long) times.length * 16 + (texts == null ? 0 : (long) texts.length * 8);
+        }
+
+        private void snapshot(List<Block> blockOut, List<Segment> segmentOut) {
+            for (Block block : blocks) {
+                blockOut.add(block);
+                segmentOut.add(new Segment(name, block.type, block.count));
+            }
+            if (size > 0) {
+                Segment segment = new Segment(name, openType, size);
+                segment.times = Arrays.copyOf(times, size);
+                segment.values = Arrays.copyOf(values, size);
+                segment.texts = openType == GorillaCodec.TYPE_STRING ? Arrays.copyOf(texts, size) : null;
+                // 占位，保持blocks与segments下标一致
+                blockOut.add(null);
+                segmentOut.add(segment);
+            }
+        }
+    }
+
+    /**
+     * 压缩块，创建后不再修改，可在锁外解码
+     */
+    private static final class Block {
+
+        private final byte type;
+        private final int count;
+        private final long maxTime;
+        private final byte[] payload;
+
+        private Block(byte type, int count, long maxTime, byte[] payload) {
+            this.type = type;
+            this.count = count;
+            this.maxTime = maxTime;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * 查询快照中的一段已解码数据
+     */
+    private static final class Segment {
+
+        private final String field;
+        private final byte type;
+        private final int count;
+        private long[] times;
+        private double[] values;
+        private String[] texts;
+
+        private Segment(String field, byte type, int count) {
+            this.field = field;
+            this.type = type;
+            this.count = count;
+        }
+
+        private Object value(int index) {
+            switch (type) {
+                case GorillaCodec.TYPE_DOUBLE:
+                    return values[index];
+                case GorillaCodec.TYPE_BOOLEAN:
+                    return values[index] != 0;
+                default:
+                    return texts[index];
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.iot.device.tsdb.local;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 按位读取（高位在前），只使用ByteBuffer的绝对位置读取，多个读取方可共享同一个映射缓冲区
+ *
+ * @author IoT Platform
+ */
+final class BitReader {
+
+    private final ByteBuffer buf;
+    private final int base;
+    private long bitPos;
+
+    BitReader(ByteBuffer buf, int offset) {
+        this.buf = buf;
+        this.base = offset;
+    }
+
+    boolean readBit() {
+        return readBits(1) != 0;
+    }
+
+    long readBits(int n) {
+        long value = 0;
+        while (n > 0) {
+            int avail = 8 - (int) (bitPos & 7);
+            int take = Math.min(avail, n);
+            int b = buf.get(base + (int) (bitPos >>> 3)) & 0xFF;
+            value = (value << take) | ((b >>> (avail - take)) & ((1 << take) - 1));
+            bitPos += take;
+            n -= take;
+        }
+        return value;
+    }
+
+    /**
+     * 读取n位有符号数（补码）
+     */
+    long readSigned(int n) {
+        long value = readBits(n);
+        return n == 64 ? value : (value << (64 - n)) >> (64 - n);
+    }
+}
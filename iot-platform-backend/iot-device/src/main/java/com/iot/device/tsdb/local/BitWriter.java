@@ -0,0 +1,48 @@
+package com.iot.device.tsdb.local;
+
+import java.util.Arrays;
+
+/**
+ * 按位写入缓冲区（高位在前）
+ *
+ * @author IoT Platform
+ */
+final class BitWriter {
+
+    private byte[] buf;
+    private long bitPos;
+
+    BitWriter(int initialBytes) {
+        this.buf = new byte[Math.max(16, initialBytes)];
+    }
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * 写入value的低n位（n不超过64）
+     */
+    void writeBits(long value, int n) {
+        ensure(n);
+        while (n > 0) {
+            int free = 8 - (int) (bitPos & 7);
+            int take = Math.min(free, n);
+            int bits = (int) ((value >>> (n - take)) & ((1 << take) - 1));
+            buf[(int) (bitPos >>> 3)] |= (byte) (bits << (free - take));
+            bitPos += take;
+            n -= take;
+        }
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, (int) ((bitPos + 7) >>> 3));
+    }
+
+    private void ensure(int bits) {
+        long required = (bitPos + bits + 7) >>> 3;
+        if (required > buf.length) {
+            buf = Arrays.copyOf(buf, (int) Math.max(required, buf.length * 2L));
+        }
+    }
+}
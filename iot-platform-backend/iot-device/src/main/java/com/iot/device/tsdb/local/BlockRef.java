@@ -0,0 +1,23 @@
+package com.iot.device.tsdb.local;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 时间索引项：一个字段数据块在段文件中的位置和时间范围
+ *
+ * @author IoT Platform
+ */
+@Getter
+@AllArgsConstructor
+final class BlockRef {
+
+    private final String field;
+    private final byte type;
+    private final int count;
+    private final long minTime;
+    private final long maxTime;
+    private final SegmentFile segment;
+    private final long payloadOffset;
+    private final int payloadLength;
+}
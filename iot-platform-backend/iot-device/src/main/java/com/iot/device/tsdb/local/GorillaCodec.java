@@ -0,0 +1,178 @@
+package com.iot.device.tsdb.local;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 数据块编解码（Gorilla压缩）
+ * <p>
+ * 时间戳：首个时间戳64位，之后写二阶差分（delta of delta），0用1位，其余按大小用7/9/12/64位。
+ * 浮点值：首个值64位，之后与前值异或，相同用1位；不同时若有效位落在上一次的前导零/尾随零范围内
+ * 只写有效位，否则写5位前导零数、6位有效位长度和有效位。
+ * 布尔值每个1位；字符串按32位长度加UTF-8字节写入。
+ *
+ * @author IoT Platform
+ */
+public final class GorillaCodec {
+
+    public static final byte TYPE_DOUBLE = 0;
+    public static final byte TYPE_BOOLEAN = 1;
+    public static final byte TYPE_STRING = 2;
+
+    private GorillaCodec() {
+    }
+
+    /**
+     * 编码一个数据块
+     *
+     * @param values 浮点值（布尔为1/0），字符串块可为null
+     * @param texts  字符串值，仅字符串块
+     */
+    public static byte[] encode(byte type, long[] times, double[] values, String[] texts, int count) {
+        BitWriter writer = new BitWriter(count * 4 + 16);
+        writeTimes(writer, times, count);
+        switch (type) {
+            case TYPE_DOUBLE:
+                writeDoubles(writer, values, count);
+                break;
+            case TYPE_BOOLEAN:
+                for (int i = 0; i < count; i++) {
+                    writer.writeBit(values[i] != 0);
+                }
+                break;
+            default:
+                for (int i = 0; i < count; i++) {
+                    byte[] bytes = texts[i].getBytes(StandardCharsets.UTF_8);
+                    writer.writeBits(bytes.length, 32);
+                    for (byte b : bytes) {
+                        writer.writeBits(b, 8);
+                    }
+                }
+                break;
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * 解码一个数据块到调用方提供的数组（长度不小于count）
+     */
+    public static void decode(ByteBuffer buf, int offset, byte type, int count,
+                              long[] times, double[] values, String[] texts) {
+        BitReader reader = new BitReader(buf, offset);
+        readTimes(reader, times, count);
+        switch (type) {
+            case TYPE_DOUBLE:
+                readDoubles(reader, values, count);
+                break;
+            case TYPE_BOOLEAN:
+                for (int i = 0; i < count; i++) {
+                    values[i] = reader.readBit() ? 1 : 0;
+                }
+                break;
+            default:
+                for (int i = 0; i < count; i++) {
+                    byte[] bytes = new byte[(int) reader.readBits(32)];
+                    for (int j = 0; j < bytes.length; j++) {
+                        bytes[j] = (byte) reader.readBits(8);
+                    }
+                    texts[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+                break;
+        }
+    }
+
+    private static void writeTimes(BitWriter writer, long[] times, int count) {
+        writer.writeBits(times[0], 64);
+        long prevDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = times[i] - times[i - 1];
+            long dod = delta - prevDelta;
+            if (dod == 0) {
+                writer.writeBit(false);
+            } else if (dod >= -64 && dod <= 63) {
+                writer.writeBits(0b10, 2);
+                writer.writeBits(dod, 7);
+            } else if (dod >= -256 && dod <= 255) {
+                writer.writeBits(0b110, 3);
+                writer.writeBits(dod, 9);
+            } else if (dod >= -2048 && dod <= 2047) {
+                writer.writeBits(0b1110, 4);
+                writer.writeBits(dod, 12);
+            } else {
+                writer.writeBits(0b1111, 4);
+                writer.writeBits(dod, 64);
+            }
+            prevDelta = delta;
+        }
+    }
+
+    private static void readTimes(BitReader reader, long[] times, int count) {
+        times[0] = reader.readBits(64);
+        long prevDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long dod;
+            if (!reader.readBit()) {
+                dod = 0;
+            } else if (!reader.readBit()) {
+                dod = reader.readSigned(7);
+            } else if (!reader.readBit()) {
+                dod = reader.readSigned(9);
+            } else if (!reader.readBit()) {
+                dod = reader.readSigned(12);
+            } else {
+                dod = reader.readBits(64);
+            }
+            prevDelta += dod;
+            times[i] = times[i - 1] + prevDelta;
+        }
+    }
+
+    private static void writeDoubles(BitWriter writer, double[] values, int count) {
+        long prev = Double.doubleToRawLongBits(values[0]);
+        writer.writeBits(prev, 64);
+        int prevLeading = -1;
+        int prevTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            long current = Double.doubleToRawLongBits(values[i]);
+            long xor = current ^ prev;
+            if (xor == 0) {
+                writer.writeBit(false);
+            } else {
+                writer.writeBit(true);
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                    writer.writeBit(false);
+                    writer.writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+                } else {
+                    int significant = 64 - leading - trailing;
+                    writer.writeBit(true);
+                    writer.writeBits(leading, 5);
+                    writer.writeBits(significant - 1, 6);
+                    writer.writeBits(xor >>> trailing, significant);
+                    prevLeading = leading;
+                    prevTrailing = trailing;
+                }
+            }
+            prev = current;
+        }
+    }
+
+    private static void readDoubles(BitReader reader, double[] values, int count) {
+        long prev = reader.readBits(64);
+        values[0] = Double.longBitsToDouble(prev);
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            if (reader.readBit()) {
+                if (reader.readBit()) {
+                    leading = (int) reader.readBits(5);
+                    int significant = (int) reader.readBits(6) + 1;
+                    trailing = 64 - leading - significant;
+                }
+                prev ^= reader.readBits(64 - leading - trailing) << trailing;
+            }
+            values[i] = Double.longBitsToDouble(prev);
+        }
+    }
+}
@@ -0,0 +1,689 @@
+package com.iot.device.tsdb.local;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.iot.common.core.exception.BusinessException;
+import com.iot.device.config.LocalTsdbProperties;
+import com.iot.device.dto.SeriesColumn;
+import com.iot.device.telemetry.TelemetryRecord;
+import com.iot.device.tsdb.FluxTimes;
+import com.iot.device.tsdb.MeanSeriesBuilder;
+import com.iot.device.tsdb.QueryRange;
+import com.iot.device.tsdb.TimeSeriesStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 嵌入式时序存储（iot.tsdb.engine=local）
+ * <p>
+ * 每台设备一个目录，数据按字段在内存中攒成块（blockPoints个点或停留maxBufferMs），
+ * 用 {@link GorillaCodec} 压缩后追加到设备的段文件；读取时内存映射段文件，只解码与查询时间范围相交的块。
+ * 时间索引（每个字段的块列表及其时间范围）常驻内存，启动时扫描段文件的块头重建。
+ * <p>
+ * 适用于边缘小规模部署和无InfluxDB的集成测试；不支持Flux相关的流式、列式、批量查询和降采样汇总。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "iot.tsdb", name = "engine", havingValue = "local")
+@Qualifier(TimeSeriesStore.ENGINE)
+public class LocalTimeSeriesStore implements TimeSeriesStore {
+
+    private static final long RETENTION_CHECK_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final LocalTsdbProperties properties;
+
+    private final ConcurrentHashMap<String, DeviceSeries> devices = new ConcurrentHashMap<>();
+    private Path dataDir;
+    private Cache<SegmentFile, MappedByteBuffer> mappings;
+    private ScheduledExecutorService executor;
+    private long lastRetentionCheck;
+
+    private final LongAdder pointsWritten = new LongAdder();
+    private final LongAdder bufferedPoints = new LongAdder();
+    private final LongAdder blocksWritten = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder failedPoints = new LongAdder();
+
+    public LocalTimeSeriesStore(LocalTsdbProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        dataDir = Paths.get(properties.getDataDir()).toAbsolutePath();
+        Files.createDirectories(dataDir);
+        mappings = CacheBuilder.newBuilder().maximumSize(properties.getMaxMappedSegments()).build();
+
+        long begin = System.currentTimeMillis();
+        int blocks = 0;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(dataDir, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                String deviceId = decodeDeviceId(dir.getFileName().toString());
+                if (deviceId == null) {
+                    continue;
+                }
+                DeviceSeries device = new DeviceSeries(deviceId, dir);
+                blocks += device.load();
+                devices.put(deviceId, device);
+            }
+        }
+        log.info("本地时序存储已启动，目录: {}, 设备数: {}, 数据块数: {}, 耗时: {}ms",
+                dataDir, devices.size(), blocks, System.currentTimeMillis() - begin);
+
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "local-tsdb-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::backgroundTask, properties.getFlushIntervalMs(),
+                properties.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(properties.getFlushIntervalMs() * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (DeviceSeries device : devices.values()) {
+            synchronized (device) {
+                device.flushAll(Long.MAX_VALUE);
+            }
+        }
+        log.info("本地时序存储已停止，累计写入点数: {}", pointsWritten.sum());
+    }
+
+    @Override
+    public void writeDeviceData(String deviceId, TelemetryRecord data, long time) {
+        DeviceSeries device = devices.computeIfAbsent(deviceId,
+                id -> new DeviceSeries(id, dataDir.resolve(encodeDeviceId(id))));
+        synchronized (device) {
+            for (int i = 0; i < data.size(); i++) {
+                switch (data.type(i)) {
+                    case TelemetryRecord.TYPE_DOUBLE:
+                    case TelemetryRecord.TYPE_LONG:
+                        double value = data.getDouble(i);
+                        if (Double.isFinite(value)) {
+                            device.append(data.fieldName(i), GorillaCodec.TYPE_DOUBLE, time, value, null);
+                        }
+                        break;
+                    case TelemetryRecord.TYPE_BOOLEAN:
+                        device.append(data.fieldName(i), GorillaCodec.TYPE_BOOLEAN, time,
+                                data.getBoolean(i) ? 1 : 0, null);
+                        break;
+                    case TelemetryRecord.TYPE_NULL:
+                        break;
+                    default:
+                        device.append(data.fieldName(i), GorillaCodec.TYPE_STRING, time, 0, data.getString(i));
+                        break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<Map<String, Object>> queryDeviceData(String deviceId, String startTime, String endTime) {
+        long[] range = resolveRange(startTime, endTime);
+        List<Map<String, Object>> result = new ArrayList<>();
+        DeviceSeries device = devices.get(deviceId);
+        if (device == null) {
+            return result;
+        }
+        for (Chunk chunk : device.snapshot(null, range[0], range[1])) {
+            decode(chunk);
+            for (int i = 0; i < chunk.count; i++) {
+                long time = chunk.times[i];
+                if (time < range[0] || time >= range[1]) {
+                    continue;
+                }
+                if (result.size() >= properties.getMaxQueryPoints()) {
+                    throw new BusinessException("查询结果超过" + properties.getMaxQueryPoints() + "个点，请缩小时间范围");
+                }
+                Map<String, Object> dataPoint = new HashMap<>();
+                dataPoint.put("time", Instant.ofEpochMilli(time));
+                dataPoint.put("field", chunk.field);
+                dataPoint.put("value", chunk.value(i));
+                result.add(dataPoint);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Object> queryLatestDeviceData(String deviceId) {
+        Map<String, Object> result = new HashMap<>();
+        DeviceSeries device = devices.get(deviceId);
+        if (device == null) {
+            return result;
+        }
+        for (Chunk chunk : device.latestChunks()) {
+            decode(chunk);
+            int latest = 0;
+            for (int i = 1; i < chunk.count; i++) {
+                if (chunk.times[i] >= chunk.times[latest]) {
+                    latest = i;
+                }
+            }
+            result.put(chunk.field, chunk.value(latest));
+        }
+        return result;
+    }
+
+    @Override
+    public SeriesColumn queryStatisticsSeries(String deviceId, String field, String startTime, String endTime,
+                                              String windowPeriod) {
+        long window = FluxTimes.durationMillis(windowPeriod);
+        if (window <= 0) {
+            throw new BusinessException("不支持的统计窗口: " + windowPeriod);
+        }
+        long[] range = resolveRange(startTime, endTime);
+        MeanSeriesBuilder builder = new MeanSeriesBuilder(window, range[1]);
+        DeviceSeries device = devices.get(deviceId);
+        if (device != null) {
+            for (Chunk chunk : device.snapshot(field, range[0], range[1])) {
+                if (chunk.type != GorillaCodec.TYPE_DOUBLE) {
+                    continue;
+                }
+                decode(chunk);
+                for (int i = 0; i < chunk.count; i++) {
+                    long time = chunk.times[i];
+                    if (time >= range[0] && time < range[1]) {
+                        builder.add(time, chunk.values[i]);
+                    }
+                }
+            }
+        }
+        return builder.build(field, "raw");
+    }
+
+    @Override
+    public void scanNumericField(Collection<String> deviceIds, String field, String startTime, String endTime,
+                                 PointConsumer consumer) throws IOException {
+        long[] range = resolveRange(startTime, endTime);
+        for (String deviceId : deviceIds) {
+            DeviceSeries device = devices.get(deviceId);
+            if (device == null) {
+                continue;
+            }
+            for (Chunk chunk : device.snapshot(field, range[0], range[1])) {
+                if (chunk.type != GorillaCodec.TYPE_DOUBLE) {
+                    continue;
+                }
+                decode(chunk);
+                for (int i = 0; i < chunk.count; i++) {
+                    if (chunk.times[i] >= range[0] && chunk.times[i] < range[1]) {
+                        consumer.accept(deviceId, chunk.times[i], chunk.values[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> getWriteStats() {
+        int segments = 0;
+        for (DeviceSeries device : devices.values()) {
+            segments += device.segments.size();
+        }
+        long points = pointsWritten.sum();
+        long bytes = bytesWritten.sum();
+        long flushedPoints = points - bufferedPoints.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", "LOCAL");
+        stats.put("devices", devices.size());
+        stats.put("segments", segments);
+        stats.put("mappedSegments", mappings.size());
+        stats.put("pointsWritten", points);
+        stats.put("bufferedPoints", bufferedPoints.sum());
+        stats.put("blocksWritten", blocksWritten.sum());
+        stats.put("bytesWritten", bytes);
+        // 相对于每点16字节（时间戳+浮点值）的压缩后平均字节数
+        stats.put("bytesPerPoint", flushedPoints <= 0 ? 0 : (double) bytes / flushedPoints);
+        stats.put("failedPoints", failedPoints.sum());
+        return stats;
+    }
+
+    private void backgroundTask() {
+        try {
+            long now = System.currentTimeMillis();
+            long flushBefore = now - properties.getMaxBufferMs();
+            for (DeviceSeries device : devices.values()) {
+                synchronized (device) {
+                    device.flushAll(flushBefore);
+                }
+            }
+            if (properties.getRetentionDays() > 0 && now - lastRetentionCheck >= RETENTION_CHECK_MS) {
+                lastRetentionCheck = now;
+                long cutoff = now - TimeUnit.DAYS.toMillis(properties.getRetentionDays());
+                for (DeviceSeries device : devices.values()) {
+                    synchronized (device) {
+                        device.dropSegmentsBefore(cutoff);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("本地时序存储后台任务失败", e);
+        }
+    }
+
+    private void decode(Chunk chunk) {
+        if (chunk.block == null || chunk.times != null) {
+            return;
+        }
+        BlockRef block = chunk.block;
+        chunk.times = new long[block.getCount()];
+        chunk.values = block.getType() == GorillaCodec.TYPE_STRING ? null : new double[block.getCount()];
+        chunk.texts = block.getType() == GorillaCodec.TYPE_STRING ? new String[block.getCount()] : null;
+        try {
+            ByteBuffer buf = mapped(block.getSegment(), block.getPayloadOffset() + block.getPayloadLength());
+            GorillaCodec.decode(buf, (int) block.getPayloadOffset(), block.getType(), block.getCount(),
+                    chunk.times, chunk.values, chunk.texts);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取段文件失败: " + block.getSegment().getPath(), e);
+        }
+    }
+
+    private ByteBuffer mapped(SegmentFile segment, long required) throws IOException {
+        MappedByteBuffer buffer = mappings.getIfPresent(segment);
+        if (buffer == null || buffer.capacity() < required) {
+            buffer = segment.map();
+            mappings.put(segment, buffer);
+        }
+        return buffer;
+    }
+
+    private static long[] resolveRange(String startTime, String endTime) {
+        QueryRange range = QueryRange.resolve(startTime, endTime);
+        return new long[]{range.getStart().toEpochMilli(), range.getStop().toEpochMilli()};
+    }
+
+    /**
+     * 设备ID只含字母、数字、下划线和连字符时直接作为目录名，否则使用"~"加UTF-8十六进制编码
+     */
+    static String encodeDeviceId(String deviceId) {
+        if (deviceId.matches("[A-Za-z0-9_-]{1,100}")) {
+            return deviceId;
+        }
+        StringBuilder sb = new StringBuilder("~");
+        for (byte b : deviceId.getBytes(StandardCharsets.UTF_8)) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    static String decodeDeviceId(String dirName) {
+        if (!dirName.startsWith("~")) {
+            return dirName.matches("[A-Za-z0-9_-]{1,100}") ? dirName : null;
+        }
+        String hex = dirName.substring(1);
+        if (hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 单台设备的数据：段文件、各字段的时间索引和内存缓冲，所有修改在设备对象锁内进行
+     */
+    private final class DeviceSeries {
+
+        private final String deviceId;
+        private final Path dir;
+        private final List<SegmentFile> segments = new ArrayList<>();
+        private final Map<String, FieldSeries> fields = new HashMap<>();
+
+        private DeviceSeries(String deviceId, Path dir) {
+            this.deviceId = deviceId;
+            this.dir = dir;
+        }
+
+        /**
+         * 扫描段文件重建时间索引
+         */
+        private int load() throws IOException {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir,
+                    SegmentFile.PREFIX + "*" + SegmentFile.SUFFIX)) {
+                stream.forEach(files::add);
+            }
+            files.sort(null);
+            int count = 0;
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int sequence;
+                try {
+                    sequence = Integer.parseInt(name.substring(SegmentFile.PREFIX.length(),
+                            name.length() - SegmentFile.SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                List<BlockRef> blocks = new ArrayList<>();
+                SegmentFile segment = SegmentFile.open(file, sequence, blocks);
+                if (segment == null) {
+                    log.warn("忽略无效段文件: {}", file);
+                    continue;
+                }
+                segments.add(segment);
+                for (BlockRef block : blocks) {
+                    fields.computeIfAbsent(block.getField(), FieldSeries::new).addBlock(block);
+                }
+                count += blocks.size();
+            }
+            return count;
+        }
+
+        private void append(String field, byte type, long time, double value, String text) {
+            FieldSeries series = fields.computeIfAbsent(field, FieldSeries::new);
+            if (series.size > 0 && series.bufferType != type) {
+                // 字段类型变化时先把已有缓冲写成一个块，一个块内类型一致
+                flush(series);
+            }
+            series.add(type, time, value, text);
+            pointsWritten.increment();
+            bufferedPoints.increment();
+            if (series.size >= properties.getBlockPoints()) {
+                flush(series);
+            }
+        }
+
+        /**
+         * 写出首个点早于flushBefore的缓冲
+         */
+        private void flushAll(long flushBefore) {
+            for (FieldSeries series : fields.values()) {
+                if (series.size > 0 && series.bufferedSince <= flushBefore) {
+                    flush(series);
+                }
+            }
+        }
+
+        private void flush(FieldSeries series) {
+            int count = series.size;
+            try {
+                byte[] payload = GorillaCodec.encode(series.bufferType, series.times, series.values, series.texts, count);
+                long minTime = Long.MAX_VALUE;
+                long maxTime = Long.MIN_VALUE;
+                for (int i = 0; i < count; i++) {
+                    minTime = Math.min(minTime, series.times[i]);
+                    maxTime = Math.max(maxTime, series.times[i]);
+                }
+                BlockRef block = currentSegment(payload.length)
+                        .append(series.name, series.bufferType, count, minTime, maxTime, payload);
+                series.addBlock(block);
+                blocksWritten.increment();
+                bytesWritten.add(payload.length);
+            } catch (IOException e) {
+                failedPoints.add(count);
+                log.error("写入段文件失败，丢弃数据块，deviceId: {}, field: {}, 点数: {}", deviceId, series.name, count, e);
+            } finally {
+                bufferedPoints.add(-count);
+                series.clear();
+            }
+        }
+
+        private SegmentFile currentSegment(int incoming) throws IOException {
+            SegmentFile current = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            long maxBytes = Math.min(properties.getSegmentMaxBytes(), Integer.MAX_VALUE);
+            if (current == null || current.getSize() + incoming > maxBytes) {
+                Files.createDirectories(dir);
+                current = SegmentFile.create(dir, current == null ? 1 : current.getSequence() + 1);
+                segments.add(current);
+            }
+            return current;
+        }
+
+        /**
+         * 删除全部数据早于cutoff的段文件（当前写入的段文件除外）
+         */
+        private void dropSegmentsBefore(long cutoff) {
+            Iterator<SegmentFile> iterator = segments.iterator();
+            while (iterator.hasNext()) {
+                SegmentFile segment = iterator.next();
+                if (segment == segments.get(segments.size() - 1) || segment.getMaxTime() >= cutoff) {
+                    continue;
+                }
+                for (FieldSeries series : fields.values()) {
+                    series.blocks.removeIf(block -> block.getSegment() == segment);
+                }
+                mappings.invalidate(segment);
+                iterator.remove();
+                try {
+                    segment.delete();
+                    log.info("段文件已过期删除，deviceId: {}, file: {}", deviceId, segment.getPath().getFileName());
+                } catch (IOException e) {
+                    log.warn("删除过期段文件失败，file: {}", segment.getPath(), e);
+                }
+            }
+        }
+
+        /**
+         * 复制与时间范围相交的块引用和缓冲数据，解码在锁外进行
+         *
+         * @param field 字段名，null表示全部字段
+         */
+        private List<Chunk> snapshot(String field, long start, long stop) {
+            List<Chunk> chunks = new ArrayList<>();
+            synchronized (this) {
+                if (field != null) {
+                    FieldSeries series = fields.get(field);
+                    if (series != null) {
+                        series.snapshot(start, stop, chunks);
+                    }
+                } else {
+                    for (FieldSeries series : fields.values()) {
+                        series.snapshot(start, stop, chunks);
+                    }
+                }
+            }
+            return chunks;
+        }
+
+        /**
+         * 各字段最新的数据块（缓冲优先）
+         */
+        private List<Chunk> latestChunks() {
+            List<Chunk> chunks = new ArrayList<>();
+            synchronized (this) {
+                for (FieldSeries series : fields.values()) {
+                    if (series.size > 0) {
+                        chunks.add(series.bufferChunk());
+                    } else if (!series.blocks.isEmpty()) {
+                        BlockRef latest = series.blocks.get(0);
+                        for (BlockRef block : series.blocks) {
+                            if (block.getMaxTime() >= latest.getMaxTime()) {
+                                latest = block;
+                            }
+                        }
+                        chunks.add(new Chunk(series.name, latest));
+                    }
+                }
+            }
+            return chunks;
+        }
+    }
+
+    /**
+     * 单个字段：按最小时间排序的块列表（时间索引）和未满的内存缓冲
+     */
+    private static final class FieldSeries {
+
+        private final String name;
+        private final List<BlockRef> blocks = new ArrayList<>();
+        /**
+         * 块的时间范围是否有重叠（系统时钟回拨），重叠时查询退化为顺序扫描
+         */
+        private boolean overlapping;
+
+        private byte bufferType;
+        private long[] times;
+        private double[] values;
+        private String[] texts;
+        private int size;
+        private long bufferedSince;
+
+        private FieldSeries(String name) {
+            this.name = name;
+        }
+
+        private void addBlock(BlockRef block) {
+            if (!blocks.isEmpty()) {
+                BlockRef last = blocks.get(blocks.size() - 1);
+                if (block.getMinTime() < last.getMaxTime()) {
+                    overlapping = true;
+                }
+            }
+            blocks.add(block);
+        }
+
+        private void add(byte type, long time, double value, String text) {
+            if (size == 0) {
+                bufferType = type;
+                bufferedSince = System.currentTimeMillis();
+            }
+            if (times == null || size == times.length) {
+                int capacity = times == null ? 16 : times.length * 2;
+                times = times == null ? new long[capacity] : Arrays.copyOf(times, capacity);
+                values = values == null ? new double[capacity] : Arrays.copyOf(values, capacity);
+                if (type == GorillaCodec.TYPE_STRING) {
+                    texts = texts == null ? new String[capacity] : Arrays.copyOf(texts, capacity);
+                }
+            } else if (type == GorillaCodec.TYPE_STRING && texts == null) {
+                texts = new String[times.length];
+            }
+            times[size] = time;
+            values[size] = value;
+            if (texts != null) {
+                texts[size] = text;
+            }
+            size++;
+        }
+
+        /**
+         * 写出后释放缓冲，低频字段不长期占用数组
+         */
+        private void clear() {
+            size = 0;
+            times = null;
+            values = null;
+            texts = null;
+        }
+
+        private void snapshot(long start, long stop, List<Chunk> out) {
+            int from = 0;
+            if (!overlapping) {
+                // 块按时间有序且不重叠：二分查找第一个最大时间不早于start的块
+                int low = 0;
+                int high = blocks.size();
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (blocks.get(mid).getMaxTime() < start) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                from = low;
+            }
+            for (int i = from; i < blocks.size(); i++) {
+                BlockRef block = blocks.get(i);
+                if (block.getMinTime() >= stop) {
+                    if (overlapping) {
+                        continue;
+                    }
+                    break;
+                }
+                if (block.getMaxTime() >= start) {
+                    out.add(new Chunk(name, block));
+                }
+            }
+            if (size > 0) {
+                out.add(bufferChunk());
+            }
+        }
+
+        private Chunk bufferChunk() {
+            Chunk chunk = new Chunk(name, null);
+            chunk.type = bufferType;
+            chunk.count = size;
+            chunk.times = Arrays.copyOf(times, size);
+            chunk.values = Arrays.copyOf(values, size);
+            chunk.texts = texts == null ? null : Arrays.copyOf(texts, size);
+            return chunk;
+        }
+    }
+
+    /**
+     * 查询快照中的一段数据：已落盘的块（解码前times为null）或缓冲副本
+     */
+    private static final class Chunk {
+
+        private final String field;
+        private final BlockRef block;
+        private byte type;
+        private int count;
+        private long[] times;
+        private double[] values;
+        private String[] texts;
+
+        private Chunk(String field, BlockRef block) {
+            this.field = field;
+            this.block = block;
+            if (block != null) {
+                this.type = block.getType();
+                this.count = block.getCount();
+            }
+        }
+
+        private Object value(int index) {
+            switch (type) {
+                case GorillaCodec.TYPE_DOUBLE:
+                    return values[index];
+                case GorillaCodec.TYPE_BOOLEAN:
+                    return values[index] != 0;
+                default:
+                    return texts[index];
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.iot.device.tsdb.local;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 设备段文件（只追加）
+ * <p>
+ * 文件头为魔数"IOTS"和版本号，之后是连续的数据块：
+ * <pre>
+ * int    块长度（不含本字段）
+ * short  字段名长度, byte[] 字段名(UTF-8)
+ * byte   值类型
+ * int    点数
+ * long   最小时间, long 最大时间
+ * int    数据CRC32
+ * byte[] 数据（{@link GorillaCodec}）
+ * </pre>
+ * 写入时不常驻文件句柄；读取通过内存映射。启动扫描时遇到不完整或校验失败的块，从该块起截断（进程异常退出时的半写块）。
+ *
+ * @author IoT Platform
+ */
+@Slf4j
+final class SegmentFile {
+
+    static final String PREFIX = "seg-";
+    static final String SUFFIX = ".dat";
+
+    private static final int MAGIC = 0x494F5453;
+    private static final byte VERSION = 1;
+    private static final int FILE_HEADER = 5;
+    private static final int BLOCK_FIXED = 2 + 1 + 4 + 8 + 8 + 4;
+
+    private final Path path;
+    private final int sequence;
+    private volatile long size;
+    private volatile long maxTime = Long.MIN_VALUE;
+
+    private SegmentFile(Path path, int sequence, long size) {
+        this.path = path;
+        this.sequence = sequence;
+        this.size = size;
+    }
+
+    static String fileName(int sequence) {
+        return String.format("%s%08d%s", PREFIX, sequence, SUFFIX);
+    }
+
+    static SegmentFile create(Path dir, int sequence) throws IOException {
+        Path path = dir.resolve(fileName(sequence));
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putInt(MAGIC).put(VERSION);
+        header.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(header);
+        }
+        return new SegmentFile(path, sequence, FILE_HEADER);
+    }
+
+    /**
+     * 打开已有段文件并扫描数据块
+     *
+     * @return 文件头无效时返回null
+     */
+    static SegmentFile open(Path path, int sequence, List<BlockRef> blocks) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            if (fileSize < FILE_HEADER) {
+                return null;
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (buf.getInt(0) != MAGIC || buf.get(4) != VERSION) {
+                return null;
+            }
+            SegmentFile segment = new SegmentFile(path, sequence, fileSize);
+            int pos = FILE_HEADER;
+            while (pos < fileSize) {
+                BlockRef block = segment.readBlock(buf, pos, fileSize);
+                if (block == null) {
+                    log.warn("段文件存在不完整数据块，截断，file: {}, 位置: {}, 原大小: {}", path, pos, fileSize);
+                    channel.truncate(pos);
+                    segment.size = pos;
+                    break;
+                }
+                blocks.add(block);
+                segment.updateMaxTime(block.getMaxTime());
+                pos = (int) (block.getPayloadOffset() + block.getPayloadLength());
+            }
+            return segment;
+        }
+    }
+
+    private BlockRef readBlock(ByteBuffer buf, int pos, long fileSize) {
+        if (pos + 4 > fileSize) {
+            return null;
+        }
+        int length = buf.getInt(pos);
+        if (length < BLOCK_FIXED || pos + 4L + length > fileSize) {
+            return null;
+        }
+        int p = pos + 4;
+        int nameLength = buf.getShort(p) & 0xFFFF;
+        if (BLOCK_FIXED + nameLength > length) {
+            return null;
+        }
+        p += 2;
+        byte[] name = new byte[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+            name[i] = buf.get(p + i);
+        }
+        p += nameLength;
+        byte type = buf.get(p);
+        int count = buf.getInt(p + 1);
+        long minTime = buf.getLong(p + 5);
+        long maxTime = buf.getLong(p + 13);
+        int crc = buf.getInt(p + 21);
+        p += 25;
+        int payloadLength = length - BLOCK_FIXED - nameLength;
+        CRC32 crc32 = new CRC32();
+        ByteBuffer payload = buf.duplicate();
+        payload.limit(p + payloadLength).position(p);
+        crc32.update(payload);
+        if ((int) crc32.getValue() != crc || count <= 0) {
+            return null;
+        }
+        return new BlockRef(new String(name, StandardCharsets.UTF_8), type, count, minTime, maxTime, this, p, payloadLength);
+    }
+
+    /**
+     * 追加一个数据块
+     */
+    BlockRef append(String field, byte type, int count, long minTime, long maxTime, byte[] payload) throws IOException {
+        byte[] name = field.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload);
+        ByteBuffer block = ByteBuffer.allocate(4 + BLOCK_FIXED + name.length + payload.length);
+        block.putInt(BLOCK_FIXED + name.length + payload.length)
+                .putShort((short) name.length).put(name)
+                .put(type).putInt(count).putLong(minTime).putLong(maxTime)
+                .putInt((int) crc32.getValue())
+                .put(payload);
+        block.flip();
+        long offset = size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            long position = offset;
+            while (block.hasRemaining()) {
+                position += channel.write(block, position);
+            }
+        }
+        size = offset + block.capacity();
+        updateMaxTime(maxTime);
+        return new BlockRef(field, type, count, minTime, maxTime, this,
+                offset + block.capacity() - payload.length, payload.length);
+    }
+
+    /**
+     * 映射当前文件全部内容（只读）
+     */
+    MappedByteBuffer map() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    private void updateMaxTime(long time) {
+        if (time > maxTime) {
+            maxTime = time;
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    int getSequence() {
+        return sequence;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getMaxTime() {
+        return maxTime;
+    }
+}
@@ -0,0 +1,74 @@
+package com.iot.device.service;
+
+import com.iot.common.core.exception.BusinessException;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 设备导入CSV读取测试
+ *
+ * @author IoT Platform
+ */
+class CsvReaderTest {
+
+    @Test
+    void quotedFieldsAcrossLines() throws IOException {
+        DeviceImportService.CsvReader csv = reader("\uFEFFproductId,name,description\r\n"
+                + "p1,\"a, b\",\"line1\r\nline2\n\nline4\"\n"
+                + "\n"
+                + "p2,\"say \"\"hi\"\"\",\n");
+
+        assertTrue(csv.next());
+        assertEquals(Arrays.asList("productId", "name", "description"), csv.values());
+        assertEquals(1, csv.lineNumber());
+
+        assertTrue(csv.next());
+        assertEquals(2, csv.recordLine());
+        assertEquals(Arrays.asList("p1", "a, b", "line1\nline2\n\nline4"), csv.values());
+        assertEquals(5, csv.lineNumber());
+
+        assertTrue(csv.next());
+        assertTrue(csv.isBlank());
+        assertEquals(6, csv.recordLine());
+
+        assertTrue(csv.next());
+        assertEquals(7, csv.recordLine());
+        assertEquals(Arrays.asList("p2", "say \"hi\"", ""), csv.values());
+
+        assertFalse(csv.next());
+    }
+
+    @Test
+    void unclosedQuoteAtEndOfFile() throws IOException {
+        DeviceImportService.CsvReader csv = reader("p1,ok\np2,\"open\nrest");
+        assertTrue(csv.next());
+        assertEquals(Arrays.asList("p1", "ok"), csv.values());
+        assertTrue(csv.next());
+        assertEquals(2, csv.recordLine());
+        assertThrows(IllegalArgumentException.class, csv::values);
+        assertFalse(csv.next());
+    }
+
+    @Test
+    void overlongRecordIsRejected() {
+        StringBuilder sb = new StringBuilder("p1,\"");
+        for (int i = 0; i < 10_000; i++) {
+            sb.append("0123456789\n");
+        }
+        DeviceImportService.CsvReader csv = reader(sb.toString());
+        assertThrows(BusinessException.class, csv::next);
+    }
+
+    private static DeviceImportService.CsvReader reader(String text) {
+        return new DeviceImportService.CsvReader(new BufferedReader(new StringReader(text)));
+    }
+}
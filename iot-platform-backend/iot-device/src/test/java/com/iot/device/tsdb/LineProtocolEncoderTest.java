@@ -0,0 +1,144 @@
+package com.iot.device.tsdb;
+
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.client.write.Point;
+import com.iot.device.telemetry.TelemetryDecoder;
+import com.iot.device.telemetry.TelemetryRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * LineProtocolEncoder 与 {@link Point#toLineProtocol()} 的逐字节一致性测试
+ *
+ * @author IoT Platform
+ */
+class LineProtocolEncoderTest {
+
+    private static final String MEASUREMENT = "device_data";
+    private static final String TAG_DEVICE_ID = "device_id";
+    private static final long TIME = 1_700_000_000_123L;
+
+    @Test
+    void numbers() {
+        assertSameAsPoint("dev-1", "{\"temperature\":21.5,\"humidity\":40,\"voltage\":-3.3,\"count\":1234567890123,"
+                + "\"zero\":0,\"small\":0.000125,\"big\":1.5e12,\"whole\":42.0}");
+    }
+
+    @Test
+    void numberFormattingAcrossMagnitudes() {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20);
+            assertSameAsPoint("dev-1", "{\"v\":" + value + "}");
+            assertSameAsPoint("dev-1", "{\"v\":" + (long) value + "}");
+        }
+        assertSameAsPoint("dev-1", "{\"a\":-0.0,\"b\":0.001,\"c\":0.00099,\"d\":9999999.5,\"e\":10000000.5,"
+                + "\"f\":9007199254740993,\"g\":-9223372036854775807,\"h\":1.7976931348623157e308,\"i\":4.9e-324}");
+    }
+
+    @Test
+    void duplicateFieldsKeepLastValue() {
+        assertSameAsPoint("dev-1", "{\"b\":1,\"a\":2,\"b\":3,\"a\":null}");
+        assertSameAsPoint("dev-1", "{\"b\":1,\"b\":1e400,\"c\":\"x\",\"c\":true}");
+    }
+
+    @Test
+    void tagEscaping() {
+        assertSameAsPoint("dev 1", "{\"v\":1}");
+        assertSameAsPoint("dev,1", "{\"v\":1}");
+        assertSameAsPoint("dev=1", "{\"v\":1}");
+        assertSameAsPoint("a b,c=d\te", "{\"v\":1}");
+    }
+
+    @Test
+    void fieldNameEscaping() {
+        assertSameAsPoint("dev-1", "{\"my field\":1,\"a,b\":2,\"k=v\":3,\"params\":{\"power level\":4}}");
+    }
+
+    @Test
+    void stringFieldsWithQuotesAndBackslashes() {
+        assertSameAsPoint("dev-1", "{\"status\":\"on\",\"quoted\":\"say \\\"hi\\\"\",\"path\":\"C:\\\\data\\\\log\","
+                + "\"mixed\":\"\\\\\\\"\",\"text\":\"温度 \\\"高\\\"\",\"empty\":\"\"}");
+    }
+
+    @Test
+    void rawArrayField() {
+        assertSameAsPoint("dev-1", "{\"list\":[1,\"a\\\"b\",true]}");
+    }
+
+    @Test
+    void booleans() {
+        assertSameAsPoint("dev-1", "{\"switch\":true,\"alarm\":false,\"params\":{\"door\":true}}");
+    }
+
+    @Test
+    void nonFiniteDoublesAreDropped() {
+        assertSameAsPoint("dev-1", "{\"a\":1e400,\"b\":21.5,\"c\":-1e400,\"d\":null,\"e\":true}");
+    }
+
+    @Test
+    void recordWithoutWritableFields() {
+        TelemetryRecord record = decode("{\"a\":1e400,\"b\":null,\"c\":-1e400}");
+        assertEquals("", toPoint("dev-1", record).toLineProtocol());
+
+        StringBuilder out = new StringBuilder("previous line\n");
+        assertFalse(LineProtocolEncoder.encode(out, MEASUREMENT, TAG_DEVICE_ID, "dev-1", record, TIME));
+        assertEquals("previous line\n", out.toString());
+    }
+
+    @Test
+    void appendsToExistingBuffer() {
+        TelemetryRecord record = decode("{\"v\":1.25}");
+        StringBuilder out = new StringBuilder("x\n");
+        assertTrue(LineProtocolEncoder.encode(out, MEASUREMENT, TAG_DEVICE_ID, "dev-1", record, TIME));
+        assertEquals("x\n" + toPoint("dev-1", record).toLineProtocol(), out.toString());
+    }
+
+    private static void assertSameAsPoint(String deviceId, String json) {
+        TelemetryRecord record = decode(json);
+        String expected = toPoint(deviceId, record).toLineProtocol();
+
+        StringBuilder out = new StringBuilder();
+        assertTrue(LineProtocolEncoder.encode(out, MEASUREMENT, TAG_DEVICE_ID, deviceId, record, TIME));
+        assertEquals(expected, out.toString(), json);
+    }
+
+    private static TelemetryRecord decode(String json) {
+        TelemetryRecord record = new TelemetryRecord();
+        TelemetryDecoder.decode(json.getBytes(StandardCharsets.UTF_8), record);
+        return record;
+    }
+
+    /**
+     * 与 InfluxDbService 未启用批量写入时构造Point的方式一致
+     */
+    private static Point toPoint(String deviceId, TelemetryRecord data) {
+        Point point = Point.measurement(MEASUREMENT)
+                .addTag(TAG_DEVICE_ID, deviceId)
+                .time(TIME, WritePrecision.MS);
+        for (int i = 0; i < data.size(); i++) {
+            String key = data.fieldName(i);
+            switch (data.type(i)) {
+                case TelemetryRecord.TYPE_DOUBLE:
+                case TelemetryRecord.TYPE_LONG:
+                    point.addField(key, data.getDouble(i));
+                    break;
+                case TelemetryRecord.TYPE_BOOLEAN:
+                    point.addField(key, data.getBoolean(i));
+                    break;
+                case TelemetryRecord.TYPE_NULL:
+                    break;
+                default:
+                    point.addField(key, data.getString(i));
+                    break;
+            }
+        }
+        return point;
+    }
+}
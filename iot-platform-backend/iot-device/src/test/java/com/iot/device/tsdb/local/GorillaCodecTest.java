@@ -0,0 +1,255 @@
+package com.iot.device.tsdb.local;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * GorillaCodec / BitWriter / BitReader 编解码往返测试
+ *
+ * @author IoT Platform
+ */
+class GorillaCodecTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Test
+    void bitWriterAndReaderRoundTrip() {
+        BitWriter writer = new BitWriter(0);
+        writer.writeBit(true);
+        writer.writeBits(0b101, 3);
+        writer.writeBits(-5, 7);
+        writer.writeBits(Long.MIN_VALUE | 1, 64);
+        writer.writeBits(0xABCDE, 20);
+        writer.writeBits(-1L, 64);
+        byte[] bytes = writer.toByteArray();
+        assertEquals((1 + 3 + 7 + 64 + 20 + 64 + 7) / 8, bytes.length);
+
+        BitReader reader = new BitReader(ByteBuffer.wrap(bytes), 0);
+        assertEquals(true, reader.readBit());
+        assertEquals(0b101, reader.readBits(3));
+        assertEquals(-5, reader.readSigned(7));
+        assertEquals(Long.MIN_VALUE | 1, reader.readBits(64));
+        assertEquals(0xABCDE, reader.readBits(20));
+        assertEquals(-1L, reader.readSigned(64));
+    }
+
+    @Test
+    void bitReaderHonoursOffset() {
+        BitWriter writer = new BitWriter(4);
+        writer.writeBits(0x1234, 16);
+        byte[] payload = writer.toByteArray();
+        ByteBuffer buf = ByteBuffer.allocate(payload.length + 3);
+        buf.put(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF}).put(payload);
+        assertEquals(0x1234, new BitReader(buf, 3).readBits(16));
+    }
+
+    @Test
+    void deltaOfDeltaBands() {
+        // 各区间边界：0用1位，其余为前缀 + 7/9/12/64位
+        assertTimeBand(0, 0b0, 1, 0);
+        assertTimeBand(63, 0b10, 2, 7);
+        assertTimeBand(-64, 0b10, 2, 7);
+        assertTimeBand(64, 0b110, 3, 9);
+        assertTimeBand(-65, 0b110, 3, 9);
+        assertTimeBand(255, 0b110, 3, 9);
+        assertTimeBand(-256, 0b110, 3, 9);
+        assertTimeBand(256, 0b1110, 4, 12);
+        assertTimeBand(-257, 0b1110, 4, 12);
+        assertTimeBand(2047, 0b1110, 4, 12);
+        assertTimeBand(-2048, 0b1110, 4, 12);
+        assertTimeBand(2048, 0b1111, 4, 64);
+        assertTimeBand(-2049, 0b1111, 4, 64);
+        assertTimeBand(86_400_000L * 365, 0b1111, 4, 64);
+    }
+
+    /**
+     * 三个点：第一个差值为1000，第二个差值为1000+dod，按期望的位流逐位比对后再解码
+     */
+    private static void assertTimeBand(long dod, int prefix, int prefixBits, int valueBits) {
+        long[] times = {T0, T0 + 1000, T0 + 2000 + dod};
+        double[] values = {1, 0, 1};
+
+        BitWriter expected = new BitWriter(32);
+        expected.writeBits(T0, 64);
+        expected.writeBits(0b1110, 4);
+        expected.writeBits(1000, 12);
+        expected.writeBits(prefix, prefixBits);
+        if (valueBits > 0) {
+            expected.writeBits(dod, valueBits);
+        }
+        expected.writeBit(true);
+        expected.writeBit(false);
+        expected.writeBit(true);
+
+        byte[] encoded = GorillaCodec.encode(GorillaCodec.TYPE_BOOLEAN, times, values, null, times.length);
+        assertArrayEquals(expected.toByteArray(), encoded, "dod=" + dod);
+        assertRoundTrip(GorillaCodec.TYPE_BOOLEAN, times, values, null);
+    }
+
+    @Test
+    void negativeDeltas() {
+        long[] times = {T0, T0 - 1, T0 - 100, T0 - 100, T0 + 5_000, T0 - 86_400_000L, 0, -1, Long.MIN_VALUE / 4};
+        double[] values = new double[times.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 0.5;
+        }
+        assertRoundTrip(GorillaCodec.TYPE_DOUBLE, times, values, null);
+    }
+
+    @Test
+    void doublesWithRepeatsAndSpecialValues() {
+        double[] values = {21.5, 21.5, 21.6, 21.7, -21.7, 0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE, 1e-300, 1e300, 21.5};
+        assertRoundTrip(GorillaCodec.TYPE_DOUBLE, sequentialTimes(values.length), values, null);
+    }
+
+    @Test
+    void xorLeadingZerosCappedAt31() {
+        // 异或结果只有最低位不同：前导零63位，按5位字段上限记为31，有效位33位
+        long base = Double.doubleToRawLongBits(1.0);
+        double[] values = {
+                1.0,
+                Double.longBitsToDouble(base ^ 1L),
+                1.0,
+                Double.longBitsToDouble(base ^ 0x3L),
+                Double.longBitsToDouble(base ^ (1L << 40))
+        };
+        long[] times = sequentialTimes(values.length);
+
+        BitWriter expected = new BitWriter(64);
+        writeTimes(expected, times);
+        expected.writeBits(base, 64);
+        // 第1个差异：新窗口 leading=31, trailing=0, significant=33
+        expected.writeBits(0b11, 2);
+        expected.writeBits(31, 5);
+        expected.writeBits(32, 6);
+        expected.writeBits(1L, 33);
+        // 第2个差异仍为1，落在上一窗口内，只写33位有效位
+        expected.writeBits(0b10, 2);
+        expected.writeBits(1L, 33);
+        // 第3个差异为0b11，同样落在窗口内
+        expected.writeBits(0b10, 2);
+        expected.writeBits(0x3L, 33);
+        // 第4个差异为 (1<<40)^0b11，前导零23位超出窗口，开新窗口 leading=23, trailing=0
+        expected.writeBits(0b11, 2);
+        expected.writeBits(23, 5);
+        expected.writeBits(40, 6);
+        expected.writeBits((1L << 40) ^ 0x3L, 41);
+
+        byte[] encoded = GorillaCodec.encode(GorillaCodec.TYPE_DOUBLE, times, values, null, values.length);
+        assertArrayEquals(expected.toByteArray(), encoded);
+        assertRoundTrip(GorillaCodec.TYPE_DOUBLE, times, values, null);
+    }
+
+    @Test
+    void xorWith64SignificantBits() {
+        // 最高位和最低位同时不同：前导零和尾随零都为0，有效位长度64（写入63）
+        long base = Double.doubleToRawLongBits(-123.456);
+        long flip = Long.MIN_VALUE | 1L;
+        double[] values = {
+                -123.456,
+                Double.longBitsToDouble(base ^ flip),
+                -123.456,
+                Double.longBitsToDouble(base ^ 0x10L)
+        };
+        long[] times = sequentialTimes(values.length);
+
+        BitWriter expected = new BitWriter(64);
+        writeTimes(expected, times);
+        expected.writeBits(base, 64);
+        expected.writeBits(0b11, 2);
+        expected.writeBits(0, 5);
+        expected.writeBits(63, 6);
+        expected.writeBits(flip, 64);
+        // 窗口为全部64位，之后的差异都直接写64位
+        expected.writeBits(0b10, 2);
+        expected.writeBits(flip, 64);
+        expected.writeBits(0b10, 2);
+        expected.writeBits(0x10L, 64);
+
+        byte[] encoded = GorillaCodec.encode(GorillaCodec.TYPE_DOUBLE, times, values, null, values.length);
+        assertArrayEquals(expected.toByteArray(), encoded);
+        assertRoundTrip(GorillaCodec.TYPE_DOUBLE, times, values, null);
+    }
+
+    @Test
+    void booleanBlock() {
+        double[] values = {1, 0, 0, 1, 1, 1, 0, 1, 0, 0, 1};
+        assertRoundTrip(GorillaCodec.TYPE_BOOLEAN, sequentialTimes(values.length), values, null);
+    }
+
+    @Test
+    void stringBlock() {
+        String[] texts = {"on", "", "off", "温度过高", "a \"quoted\" \\ value", "emoji 😀", "on"};
+        assertRoundTrip(GorillaCodec.TYPE_STRING, sequentialTimes(texts.length), null, texts);
+    }
+
+    @Test
+    void singlePoint() {
+        assertRoundTrip(GorillaCodec.TYPE_DOUBLE, new long[]{T0}, new double[]{3.14}, null);
+        assertRoundTrip(GorillaCodec.TYPE_STRING, new long[]{T0}, null, new String[]{"x"});
+    }
+
+    @Test
+    void decodeAtOffset() {
+        long[] times = sequentialTimes(3);
+        double[] values = {1.5, 2.5, 3.5};
+        byte[] encoded = GorillaCodec.encode(GorillaCodec.TYPE_DOUBLE, times, values, null, 3);
+        ByteBuffer buf = ByteBuffer.allocate(encoded.length + 7);
+        buf.position(7);
+        buf.put(encoded);
+
+        long[] decodedTimes = new long[3];
+        double[] decodedValues = new double[3];
+        GorillaCodec.decode(buf, 7, GorillaCodec.TYPE_DOUBLE, 3, decodedTimes, decodedValues, null);
+        assertArrayEquals(times, decodedTimes);
+        assertArrayEquals(values, decodedValues);
+    }
+
+    private static long[] sequentialTimes(int count) {
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = T0 + i * 1000L;
+        }
+        return times;
+    }
+
+    /**
+     * 按编码规则写入 {@link #sequentialTimes} 的时间戳：首个差值1000走12位区间，之后dod为0
+     */
+    private static void writeTimes(BitWriter writer, long[] times) {
+        writer.writeBits(times[0], 64);
+        for (int i = 1; i < times.length; i++) {
+            if (i == 1) {
+                writer.writeBits(0b1110, 4);
+                writer.writeBits(1000, 12);
+            } else {
+                writer.writeBit(false);
+            }
+        }
+    }
+
+    private static void assertRoundTrip(byte type, long[] times, double[] values, String[] texts) {
+        int count = times.length;
+        byte[] encoded = GorillaCodec.encode(type, times, values, texts, count);
+
+        long[] decodedTimes = new long[count];
+        double[] decodedValues = new double[count];
+        String[] decodedTexts = new String[count];
+        GorillaCodec.decode(ByteBuffer.wrap(encoded), 0, type, count, decodedTimes, decodedValues, decodedTexts);
+
+        assertArrayEquals(times, decodedTimes);
+        if (type == GorillaCodec.TYPE_STRING) {
+            assertArrayEquals(texts, decodedTexts);
+        } else {
+            for (int i = 0; i < count; i++) {
+                assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decodedValues[i]),
+                        "index " + i);
+            }
+        }
+    }
+}
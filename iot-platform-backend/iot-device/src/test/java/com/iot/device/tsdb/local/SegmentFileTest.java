@@ -0,0 +1,158 @@
+package com.iot.device.tsdb.local;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 段文件追加、重新打开和尾部半写块截断测试
+ *
+ * @author IoT Platform
+ */
+class SegmentFileTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appendAndReopen() throws IOException {
+        SegmentFile segment = SegmentFile.create(dir, 1);
+        BlockRef temperature = appendDoubles(segment, "temperature", 21.5, 21.6, 21.4);
+        BlockRef status = appendTexts(segment, "status", "on", "off");
+        long size = Files.size(segment.getPath());
+        assertEquals(size, segment.getSize());
+
+        List<BlockRef> blocks = new ArrayList<>();
+        SegmentFile reopened = SegmentFile.open(segment.getPath(), 1, blocks);
+        assertNotNull(reopened);
+        assertEquals(size, reopened.getSize());
+        assertEquals(T0 + 1000, reopened.getMaxTime());
+        assertEquals(2, blocks.size());
+        assertBlock(temperature, blocks.get(0));
+        assertBlock(status, blocks.get(1));
+
+        MappedByteBuffer buf = reopened.map();
+        double[] values = new double[3];
+        GorillaCodec.decode(buf, (int) blocks.get(0).getPayloadOffset(), GorillaCodec.TYPE_DOUBLE, 3,
+                new long[3], values, null);
+        assertArrayEquals(new double[]{21.5, 21.6, 21.4}, values);
+        String[] texts = new String[2];
+        GorillaCodec.decode(buf, (int) blocks.get(1).getPayloadOffset(), GorillaCodec.TYPE_STRING, 2,
+                new long[2], null, texts);
+        assertArrayEquals(new String[]{"on", "off"}, texts);
+    }
+
+    @Test
+    void openTruncatesTornTailBlock() throws IOException {
+        SegmentFile segment = SegmentFile.create(dir, 2);
+        BlockRef first = appendDoubles(segment, "temperature", 1, 2, 3);
+        long intact = segment.getSize();
+        appendDoubles(segment, "humidity", 40, 41, 42);
+        long full = segment.getSize();
+
+        // 模拟进程在写第二个块时退出：只留下该块的一部分
+        for (long tornSize = intact + 1; tornSize < full; tornSize += 7) {
+            Path copy = dir.resolve(SegmentFile.fileName(100));
+            Files.copy(segment.getPath(), copy);
+            try (FileChannel channel = FileChannel.open(copy, StandardOpenOption.WRITE)) {
+                channel.truncate(tornSize);
+            }
+
+            List<BlockRef> blocks = new ArrayList<>();
+            SegmentFile reopened = SegmentFile.open(copy, 100, blocks);
+            assertNotNull(reopened);
+            assertEquals(1, blocks.size(), "tornSize=" + tornSize);
+            assertBlock(first, blocks.get(0));
+            assertEquals(intact, reopened.getSize());
+            assertEquals(intact, Files.size(copy));
+
+            // 截断后可以继续追加
+            appendDoubles(reopened, "humidity", 40, 41, 42);
+            blocks.clear();
+            SegmentFile again = SegmentFile.open(copy, 100, blocks);
+            assertNotNull(again);
+            assertEquals(2, blocks.size());
+            Files.delete(copy);
+        }
+    }
+
+    @Test
+    void openTruncatesBlockWithBadChecksum() throws IOException {
+        SegmentFile segment = SegmentFile.create(dir, 3);
+        appendDoubles(segment, "temperature", 1, 2, 3);
+        long intact = segment.getSize();
+        appendDoubles(segment, "humidity", 40, 41, 42);
+        long full = segment.getSize();
+
+        try (FileChannel channel = FileChannel.open(segment.getPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, full - 1);
+            last.flip();
+            byte flipped = (byte) (last.get() ^ 0xFF);
+            channel.write(ByteBuffer.wrap(new byte[]{flipped}), full - 1);
+        }
+
+        List<BlockRef> blocks = new ArrayList<>();
+        SegmentFile reopened = SegmentFile.open(segment.getPath(), 3, blocks);
+        assertNotNull(reopened);
+        assertEquals(1, blocks.size());
+        assertEquals(intact, Files.size(segment.getPath()));
+    }
+
+    @Test
+    void openRejectsInvalidHeader() throws IOException {
+        Path path = dir.resolve(SegmentFile.fileName(4));
+        Files.write(path, new byte[]{'N', 'O', 'P', 'E', 1, 0, 0});
+        assertNull(SegmentFile.open(path, 4, new ArrayList<>()));
+
+        Path shortFile = dir.resolve(SegmentFile.fileName(5));
+        Files.write(shortFile, new byte[]{'I', 'O'});
+        assertNull(SegmentFile.open(shortFile, 5, new ArrayList<>()));
+    }
+
+    private static BlockRef appendDoubles(SegmentFile segment, String field, double... values) throws IOException {
+        long[] times = times(values.length);
+        byte[] payload = GorillaCodec.encode(GorillaCodec.TYPE_DOUBLE, times, values, null, values.length);
+        return segment.append(field, GorillaCodec.TYPE_DOUBLE, values.length, times[0], times[times.length - 1], payload);
+    }
+
+    private static BlockRef appendTexts(SegmentFile segment, String field, String... texts) throws IOException {
+        long[] times = times(texts.length);
+        byte[] payload = GorillaCodec.encode(GorillaCodec.TYPE_STRING, times, null, texts, texts.length);
+        return segment.append(field, GorillaCodec.TYPE_STRING, texts.length, times[0], times[times.length - 1], payload);
+    }
+
+    private static long[] times(int count) {
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = T0 + i * 500L;
+        }
+        return times;
+    }
+
+    private static void assertBlock(BlockRef expected, BlockRef actual) {
+        assertEquals(expected.getField(), actual.getField());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getMinTime(), actual.getMinTime());
+        assertEquals(expected.getMaxTime(), actual.getMaxTime());
+        assertEquals(expected.getPayloadOffset(), actual.getPayloadOffset());
+        assertEquals(expected.getPayloadLength(), actual.getPayloadLength());
+    }
+}
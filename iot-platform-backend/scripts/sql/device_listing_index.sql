@@ -0,0 +1,9 @@
+-- 设备/产品列表游标分页索引
+-- 列表按 tenant_id 过滤、按 (created_at, id) 倒序翻页，游标条件 created_at <= ? AND (created_at < ? OR id < ?)
+-- 在该索引上是一次范围扫描，无需OFFSET跳过前面的行，也无需对结果排序
+
+USE iot_platform;
+
+ALTER TABLE iot_device ADD INDEX idx_tenant_created_id (tenant_id, created_at, id);
+
+ALTER TABLE iot_product ADD INDEX idx_tenant_created_id (tenant_id, created_at, id);